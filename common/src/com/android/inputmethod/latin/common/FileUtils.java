@@ -54,6 +54,25 @@ public class FileUtils {
         return hasDeletedAllFiles;
     }
 
+    /**
+     * @param path a file or a directory.
+     * @return the size of the file, or of all the files in the directory and its
+     *         subdirectories. Files that can't be listed count as empty.
+     */
+    public static long getSizeRecursively(final File path) {
+        if (!path.isDirectory()) {
+            return path.length();
+        }
+        long size = 0;
+        final File[] files = path.listFiles();
+        if (files != null) {
+            for (final File child : files) {
+                size += getSizeRecursively(child);
+            }
+        }
+        return size;
+    }
+
     public static boolean renameTo(final File fromFile, final File toFile) {
         toFile.delete();
         return fromFile.renameTo(toFile);
@@ -107,4 +107,10 @@ public final class StatsUtils {
 
     public static void onDecoderLaggy(final int operation, final long duration) {
     }
+
+    public static void onSuggestionRequestSuperseded(final boolean wasComputed) {
+    }
+
+    public static void onSpeculativeSuggestionsLookup(final boolean isHit) {
+    }
 }
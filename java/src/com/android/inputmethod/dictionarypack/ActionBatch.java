@@ -315,7 +315,7 @@ public final class ActionBatch {
                     mWordList.mVersion, mWordList.mFormatVersion);
             PrivateLog.log("Insert 'available' record for " + mWordList.mDescription
                     + " and locale " + mWordList.mLocale);
-            db.insert(MetadataDbHelper.METADATA_TABLE_NAME, null, values);
+            MetadataDbHelper.insertEntry(db, values);
         }
     }
 
@@ -366,7 +366,7 @@ public final class ActionBatch {
                     mWordList.mFileSize, mWordList.mVersion, mWordList.mFormatVersion);
             PrivateLog.log("Insert 'preinstalled' record for " + mWordList.mDescription
                     + " and locale " + mWordList.mLocale);
-            db.insert(MetadataDbHelper.METADATA_TABLE_NAME, null, values);
+            MetadataDbHelper.insertEntry(db, values);
         }
     }
 
@@ -408,10 +408,7 @@ public final class ActionBatch {
                     mWordList.mVersion, mWordList.mFormatVersion);
             PrivateLog.log("Updating record for " + mWordList.mDescription
                     + " and locale " + mWordList.mLocale);
-            db.update(MetadataDbHelper.METADATA_TABLE_NAME, values,
-                    MetadataDbHelper.WORDLISTID_COLUMN + " = ? AND "
-                            + MetadataDbHelper.VERSION_COLUMN + " = ?",
-                    new String[] { mWordList.mId, Integer.toString(mWordList.mVersion) });
+            MetadataDbHelper.updateEntry(db, mWordList.mId, mWordList.mVersion, values);
         }
     }
 
@@ -469,16 +466,10 @@ public final class ActionBatch {
                 // be accessible any more.
                 values.put(MetadataDbHelper.REMOTE_FILENAME_COLUMN, "");
                 values.put(MetadataDbHelper.STATUS_COLUMN, MetadataDbHelper.STATUS_DELETING);
-                db.update(MetadataDbHelper.METADATA_TABLE_NAME, values,
-                        MetadataDbHelper.WORDLISTID_COLUMN + " = ? AND "
-                                + MetadataDbHelper.VERSION_COLUMN + " = ?",
-                        new String[] { mWordList.mId, Integer.toString(mWordList.mVersion) });
+                MetadataDbHelper.updateEntry(db, mWordList.mId, mWordList.mVersion, values);
             } else {
                 // If it's AVAILABLE or DOWNLOADING or even UNKNOWN, delete the entry.
-                db.delete(MetadataDbHelper.METADATA_TABLE_NAME,
-                        MetadataDbHelper.WORDLISTID_COLUMN + " = ? AND "
-                                + MetadataDbHelper.VERSION_COLUMN + " = ?",
-                        new String[] { mWordList.mId, Integer.toString(mWordList.mVersion) });
+                MetadataDbHelper.deleteEntry(db, mWordList.mId, mWordList.mVersion);
             }
         }
     }
@@ -572,10 +563,7 @@ public final class ActionBatch {
             // marked DELETING but disappeared from the metadata on the server, it ended up
             // this way.
             if (TextUtils.isEmpty(remoteFilename)) {
-                db.delete(MetadataDbHelper.METADATA_TABLE_NAME,
-                        MetadataDbHelper.WORDLISTID_COLUMN + " = ? AND "
-                                + MetadataDbHelper.VERSION_COLUMN + " = ?",
-                        new String[] { mWordList.mId, Integer.toString(mWordList.mVersion) });
+                MetadataDbHelper.deleteEntry(db, mWordList.mId, mWordList.mVersion);
             } else {
                 MetadataDbHelper.markEntryAsAvailable(db, mWordList.mId, mWordList.mVersion);
             }
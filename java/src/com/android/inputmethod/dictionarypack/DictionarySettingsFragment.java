@@ -49,12 +49,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Locale;
 import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Preference screen.
  */
 public final class DictionarySettingsFragment extends PreferenceFragment
-        implements UpdateHandler.UpdateEventListener {
+        implements UpdateHandler.UpdateEventListener,
+        MetadataDbHelper.WordListMetadataChangeListener {
     private static final String TAG = DictionarySettingsFragment.class.getSimpleName();
 
     static final private String DICT_LIST_ID = "list";
@@ -62,6 +67,23 @@ public final class DictionarySettingsFragment extends PreferenceFragment
 
     static final private int MENU_UPDATE_NOW = Menu.FIRST;
 
+    private static final int WORKER_THREAD_TIMEOUT_SECONDS = 15;
+    private static final int MAX_WORKER_THREADS = 2;
+    /**
+     * An executor for the database and network work this screen does off the UI thread.
+     *
+     * It is bounded, so quickly repeated refreshes queue up instead of spawning a thread each.
+     * Core threads time out so that nothing is kept alive once the screen is gone.
+     */
+    private static final ThreadPoolExecutor sBackgroundExecutor = new ThreadPoolExecutor(
+            MAX_WORKER_THREADS /* corePoolSize */, MAX_WORKER_THREADS /* maximumPoolSize */,
+            WORKER_THREAD_TIMEOUT_SECONDS /* keepAliveTime */,
+            TimeUnit.SECONDS /* unit for keepAliveTime */,
+            new LinkedBlockingQueue<Runnable>() /* workQueue */);
+    static {
+        sBackgroundExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private View mLoadingView;
     private String mClientId;
     private ConnectivityManager mConnectivityManager;
@@ -71,6 +93,8 @@ public final class DictionarySettingsFragment extends PreferenceFragment
             new DictionaryListInterfaceState();
     // never null
     private TreeMap<String, WordListPreference> mCurrentPreferenceMap = new TreeMap<>();
+    // Whether a refresh of the interface is already queued. Used to coalesce refresh requests.
+    private final AtomicBoolean mIsRefreshPending = new AtomicBoolean(false);
 
     private final BroadcastReceiver mConnectivityChangedReceiver = new BroadcastReceiver() {
             @Override
@@ -135,13 +159,14 @@ public final class DictionarySettingsFragment extends PreferenceFragment
         super.onResume();
         mChangedSettings = false;
         UpdateHandler.registerUpdateEventListener(this);
+        MetadataDbHelper.registerWordListMetadataChangeListener(this);
         final Activity activity = getActivity();
         final IntentFilter filter = new IntentFilter();
         filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
         getActivity().registerReceiver(mConnectivityChangedReceiver, filter);
         refreshNetworkState();
 
-        new Thread("onResume") {
+        sBackgroundExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 if (!MetadataDbHelper.isClientKnown(activity, mClientId)) {
@@ -154,7 +179,7 @@ public final class DictionarySettingsFragment extends PreferenceFragment
                     activity.sendBroadcast(unknownClientBroadcast);
                 }
             }
-        }.start();
+        });
     }
 
     @Override
@@ -162,6 +187,7 @@ public final class DictionarySettingsFragment extends PreferenceFragment
         super.onPause();
         final Activity activity = getActivity();
         UpdateHandler.unregisterUpdateEventListener(this);
+        MetadataDbHelper.unregisterWordListMetadataChangeListener(this);
         activity.unregisterReceiver(mConnectivityChangedReceiver);
         if (mChangedSettings) {
             final Intent newDictBroadcast =
@@ -175,12 +201,31 @@ public final class DictionarySettingsFragment extends PreferenceFragment
     public void downloadedMetadata(final boolean succeeded) {
         stopLoadingAnimation();
         if (!succeeded) return; // If the download failed nothing changed, so no need to refresh
-        new Thread("refreshInterface") {
+        refreshInterfaceInBackground();
+    }
+
+    @Override
+    public void onWordListMetadataChanged(final String clientId) {
+        if (!TextUtils.equals(clientId, null == mClientId ? "" : mClientId)) return;
+        refreshInterfaceInBackground();
+    }
+
+    /**
+     * Queues a refresh of the interface on the background executor.
+     *
+     * Metadata changes tend to come in bursts, for example when a batch of actions is executed
+     * after the metadata has been downloaded. Only one refresh is queued at any given time; it
+     * reads the latest state when it runs, so further requests until then can be dropped.
+     */
+    private void refreshInterfaceInBackground() {
+        if (!mIsRefreshPending.compareAndSet(false, true)) return;
+        sBackgroundExecutor.execute(new Runnable() {
             @Override
             public void run() {
+                mIsRefreshPending.set(false);
                 refreshInterface();
             }
-        }.start();
+        });
     }
 
     @Override
@@ -378,7 +423,7 @@ public final class DictionarySettingsFragment extends PreferenceFragment
         mChangedSettings = true;
         UpdateHandler.registerUpdateEventListener(this);
         final Activity activity = getActivity();
-        new Thread("updateByHand") {
+        sBackgroundExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 // We call tryUpdate(), which returns whether we could successfully start an update.
@@ -388,19 +433,19 @@ public final class DictionarySettingsFragment extends PreferenceFragment
                     stopLoadingAnimation();
                 }
             }
-        }.start();
+        });
     }
 
     private void cancelRefresh() {
         UpdateHandler.unregisterUpdateEventListener(this);
         final Context context = getActivity();
-        new Thread("cancelByHand") {
+        sBackgroundExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 UpdateHandler.cancelUpdate(context, mClientId);
                 stopLoadingAnimation();
             }
-        }.start();
+        });
     }
 
     private void startLoadingAnimation() {
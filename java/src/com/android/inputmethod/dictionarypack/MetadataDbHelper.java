@@ -30,6 +30,8 @@ import com.android.inputmethod.latin.utils.DebugLogUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
@@ -144,6 +146,18 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
             + CLIENT_PENDINGID_COLUMN + " INTEGER, "
             + FLAGS_COLUMN + " INTEGER, "
             + "PRIMARY KEY (" + CLIENT_CLIENT_ID_COLUMN + "));";
+    // Secondary indexes for the columns the dictionary provider, the update handler and the
+    // settings screen look up by. The word list id is covered by the primary key.
+    private static final String[] METADATA_CREATE_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS " + METADATA_TABLE_NAME + "_" + STATUS_COLUMN
+                    + " ON " + METADATA_TABLE_NAME + " (" + STATUS_COLUMN + ");",
+            "CREATE INDEX IF NOT EXISTS " + METADATA_TABLE_NAME + "_" + LOCALE_COLUMN
+                    + " ON " + METADATA_TABLE_NAME + " (" + LOCALE_COLUMN + ");",
+            "CREATE INDEX IF NOT EXISTS " + METADATA_TABLE_NAME + "_" + PENDINGID_COLUMN
+                    + " ON " + METADATA_TABLE_NAME + " (" + PENDINGID_COLUMN + ");" };
+    private static final String[] METADATA_CREATE_CLIENT_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS " + CLIENT_TABLE_NAME + "_" + CLIENT_METADATA_URI_COLUMN
+                    + " ON " + CLIENT_TABLE_NAME + " (" + CLIENT_METADATA_URI_COLUMN + ");" };
 
     // List of all metadata table columns.
     static final String[] METADATA_TABLE_COLUMNS = { PENDINGID_COLUMN, TYPE_COLUMN,
@@ -184,10 +198,73 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
                 null, CURRENT_METADATA_DATABASE_VERSION);
         mContext = context;
         mClientId = clientId;
+        mWordListMetadataCache = new WordListMetadataCache(clientId);
     }
 
     private final Context mContext;
     private final String mClientId;
+    private final WordListMetadataCache mWordListMetadataCache;
+
+    // The word list caches of all open databases. The static helpers below receive a database
+    // rather than a helper instance, so this is how they find the cache to read from and write
+    // through to. Databases that are not registered here are simply not cached.
+    private static final IdentityHashMap<SQLiteDatabase, WordListMetadataCache> sCaches =
+            new IdentityHashMap<>();
+
+    @Nullable
+    private static WordListMetadataCache getCache(final SQLiteDatabase db) {
+        synchronized (sCaches) {
+            return sCaches.get(db);
+        }
+    }
+
+    /**
+     * An interface for components that want to know when the word list metadata of a client
+     * has been written to.
+     */
+    public interface WordListMetadataChangeListener {
+        void onWordListMetadataChanged(String clientId);
+    }
+
+    private static final List<WordListMetadataChangeListener> sChangeListeners =
+            Collections.synchronizedList(new LinkedList<WordListMetadataChangeListener>());
+
+    /**
+     * Register a new listener to be notified of metadata changes.
+     *
+     * Listeners are called on the thread that wrote to the database. Don't forget to call
+     * unregisterWordListMetadataChangeListener when done with it, or it will leak the register.
+     */
+    public static void registerWordListMetadataChangeListener(
+            final WordListMetadataChangeListener listener) {
+        sChangeListeners.add(listener);
+    }
+
+    /**
+     * Unregister a previously registered listener.
+     */
+    public static void unregisterWordListMetadataChangeListener(
+            final WordListMetadataChangeListener listener) {
+        sChangeListeners.remove(listener);
+    }
+
+    private static void notifyWordListMetadataChanged(final WordListMetadataCache cache) {
+        if (null == cache) return;
+        final ArrayList<WordListMetadataChangeListener> listeners;
+        synchronized (sChangeListeners) {
+            listeners = new ArrayList<>(sChangeListeners);
+        }
+        for (final WordListMetadataChangeListener listener : listeners) {
+            listener.onWordListMetadataChanged(cache.getClientId());
+        }
+    }
+
+    private static void onWordListWritten(final SQLiteDatabase db, final String id) {
+        final WordListMetadataCache cache = getCache(db);
+        if (null == cache) return;
+        cache.refreshWordListId(db, id);
+        notifyWordListMetadataChanged(cache);
+    }
 
     /**
      * Get the database itself. This always returns the same object for any client ID. If the
@@ -229,6 +306,38 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
         createClientTable(db);
     }
 
+    private static void createMetadataIndexesUnlessPresent(final SQLiteDatabase db) {
+        for (final String createIndex : METADATA_CREATE_INDEXES) {
+            db.execSQL(createIndex);
+        }
+    }
+
+    /**
+     * Make sure the indexes exist and register the word list cache for this database.
+     *
+     * Databases created before the indexes were introduced are already at the current version,
+     * so onCreate and onUpgrade are not called for them. Creating the indexes here covers them;
+     * CREATE INDEX IF NOT EXISTS is a no-op when they are already present.
+     *
+     * @see SQLiteOpenHelper#onOpen(SQLiteDatabase)
+     */
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            createMetadataIndexesUnlessPresent(db);
+            if (TextUtils.isEmpty(mClientId)) {
+                for (final String createIndex : METADATA_CREATE_CLIENT_INDEXES) {
+                    db.execSQL(createIndex);
+                }
+            }
+        }
+        mWordListMetadataCache.invalidate();
+        synchronized (sCaches) {
+            sCaches.put(db, mWordListMetadataCache);
+        }
+    }
+
     private static void addRawChecksumColumnUnlessPresent(final SQLiteDatabase db) {
         try {
             db.execSQL("SELECT " + RAW_CHECKSUM_COLUMN + " FROM "
@@ -569,26 +678,36 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
         result.put(columnId, cursor.getInt(cursor.getColumnIndex(columnId)));
     }
 
+    /**
+     * Reads the line the cursor is currently on as ContentValues.
+     * @param cursor a cursor over METADATA_TABLE_COLUMNS, positioned on a valid line.
+     * @return all the columns of the current line.
+     */
+    static ContentValues getCurrentLineAsContentValues(final Cursor cursor) {
+        final ContentValues result = new ContentValues(COLUMN_COUNT);
+        putIntResult(result, cursor, PENDINGID_COLUMN);
+        putIntResult(result, cursor, TYPE_COLUMN);
+        putIntResult(result, cursor, STATUS_COLUMN);
+        putStringResult(result, cursor, WORDLISTID_COLUMN);
+        putStringResult(result, cursor, LOCALE_COLUMN);
+        putStringResult(result, cursor, DESCRIPTION_COLUMN);
+        putStringResult(result, cursor, LOCAL_FILENAME_COLUMN);
+        putStringResult(result, cursor, REMOTE_FILENAME_COLUMN);
+        putIntResult(result, cursor, DATE_COLUMN);
+        putStringResult(result, cursor, RAW_CHECKSUM_COLUMN);
+        putStringResult(result, cursor, CHECKSUM_COLUMN);
+        putIntResult(result, cursor, RETRY_COUNT_COLUMN);
+        putIntResult(result, cursor, FILESIZE_COLUMN);
+        putIntResult(result, cursor, VERSION_COLUMN);
+        putIntResult(result, cursor, FORMATVERSION_COLUMN);
+        putIntResult(result, cursor, FLAGS_COLUMN);
+        return result;
+    }
+
     private static ContentValues getFirstLineAsContentValues(final Cursor cursor) {
         final ContentValues result;
         if (cursor.moveToFirst()) {
-            result = new ContentValues(COLUMN_COUNT);
-            putIntResult(result, cursor, PENDINGID_COLUMN);
-            putIntResult(result, cursor, TYPE_COLUMN);
-            putIntResult(result, cursor, STATUS_COLUMN);
-            putStringResult(result, cursor, WORDLISTID_COLUMN);
-            putStringResult(result, cursor, LOCALE_COLUMN);
-            putStringResult(result, cursor, DESCRIPTION_COLUMN);
-            putStringResult(result, cursor, LOCAL_FILENAME_COLUMN);
-            putStringResult(result, cursor, REMOTE_FILENAME_COLUMN);
-            putIntResult(result, cursor, DATE_COLUMN);
-            putStringResult(result, cursor, RAW_CHECKSUM_COLUMN);
-            putStringResult(result, cursor, CHECKSUM_COLUMN);
-            putIntResult(result, cursor, RETRY_COUNT_COLUMN);
-            putIntResult(result, cursor, FILESIZE_COLUMN);
-            putIntResult(result, cursor, VERSION_COLUMN);
-            putIntResult(result, cursor, FORMATVERSION_COLUMN);
-            putIntResult(result, cursor, FLAGS_COLUMN);
+            result = getCurrentLineAsContentValues(cursor);
             if (cursor.moveToNext()) {
                 // TODO: print the second level of the stack to the log so that we know
                 // in which code path the error happened
@@ -608,6 +727,14 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
      */
     public static ContentValues getContentValuesByPendingId(final SQLiteDatabase db,
             final long id) {
+        final WordListMetadataCache cache = getCache(db);
+        if (null != cache) {
+            // There should never be more than one result, see below.
+            for (final ContentValues values : cache.getAllRows(db)) {
+                if (values.getAsLong(PENDINGID_COLUMN) == id) return values;
+            }
+            return null;
+        }
         final Cursor cursor = db.query(METADATA_TABLE_NAME,
                 METADATA_TABLE_COLUMNS,
                 PENDINGID_COLUMN + "= ?",
@@ -638,6 +765,14 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
      */
     public static ContentValues getInstalledOrDeletingWordListContentValuesByWordListId(
             final SQLiteDatabase db, final String id) {
+        final WordListMetadataCache cache = getCache(db);
+        if (null != cache) {
+            for (final ContentValues values : cache.getRowsForWordListId(db, id)) {
+                final int status = values.getAsInteger(STATUS_COLUMN);
+                if (STATUS_INSTALLED == status || STATUS_DELETING == status) return values;
+            }
+            return null;
+        }
         final Cursor cursor = db.query(METADATA_TABLE_NAME,
                 METADATA_TABLE_COLUMNS,
                 WORDLISTID_COLUMN + "=? AND (" + STATUS_COLUMN + "=? OR " + STATUS_COLUMN + "=?)",
@@ -709,6 +844,20 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
     @Nullable
     public static ContentValues getContentValuesByWordListId(final SQLiteDatabase db,
             final String id, final int version) {
+        final WordListMetadataCache cache = getCache(db);
+        if (null != cache) {
+            ContentValues result = null;
+            for (final ContentValues values : cache.getRowsForWordListId(db, id)) {
+                final int formatVersion = values.getAsInteger(FORMATVERSION_COLUMN);
+                if (values.getAsInteger(VERSION_COLUMN) == version
+                        && formatVersion <= UpdateHandler.MAXIMUM_SUPPORTED_FORMAT_VERSION
+                        && (null == result
+                                || formatVersion > result.getAsInteger(FORMATVERSION_COLUMN))) {
+                    result = values;
+                }
+            }
+            return result;
+        }
         final Cursor cursor = db.query(METADATA_TABLE_NAME,
                 METADATA_TABLE_COLUMNS,
                 WORDLISTID_COLUMN + "= ? AND " + VERSION_COLUMN + "= ? AND "
@@ -741,6 +890,17 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
      */
     public static ContentValues getContentValuesOfLatestAvailableWordlistById(
             final SQLiteDatabase db, final String id) {
+        final WordListMetadataCache cache = getCache(db);
+        if (null != cache) {
+            ContentValues result = null;
+            for (final ContentValues values : cache.getRowsForWordListId(db, id)) {
+                if (null == result || values.getAsInteger(VERSION_COLUMN)
+                        > result.getAsInteger(VERSION_COLUMN)) {
+                    result = values;
+                }
+            }
+            return result;
+        }
         final Cursor cursor = db.query(METADATA_TABLE_NAME,
                 METADATA_TABLE_COLUMNS,
                 WORDLISTID_COLUMN + "= ?",
@@ -843,6 +1003,12 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
         final SQLiteDatabase db = getDb(context, clientId);
         db.execSQL("DROP TABLE IF EXISTS " + METADATA_TABLE_NAME);
         db.execSQL(METADATA_TABLE_CREATE);
+        createMetadataIndexesUnlessPresent(db);
+        final WordListMetadataCache cache = getCache(db);
+        if (null != cache) {
+            cache.invalidate();
+            notifyWordListMetadataChanged(cache);
+        }
         // Remove this client's entry in the clients table
         final SQLiteDatabase defaultDb = getDb(context, "");
         if (0 == defaultDb.delete(CLIENT_TABLE_NAME,
@@ -1000,6 +1166,7 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
                 db.insert(METADATA_TABLE_NAME, null, r);
                 db.setTransactionSuccessful();
                 db.endTransaction();
+                onWordListWritten(db, r.getAsString(WORDLISTID_COLUMN));
                 for (String filename : filenames) {
                     try {
                         final File f = new File(filename);
@@ -1026,8 +1193,12 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
      * @param id the DownloadManager id of the file.
      */
     public static void deleteDownloadingEntry(final SQLiteDatabase db, final long id) {
+        final ContentValues values = getContentValuesByPendingId(db, id);
         db.delete(METADATA_TABLE_NAME, PENDINGID_COLUMN + " = ? AND " + STATUS_COLUMN + " = ?",
                 new String[] { Long.toString(id), Integer.toString(STATUS_DOWNLOADING) });
+        if (null != values) {
+            onWordListWritten(db, values.getAsString(WORDLISTID_COLUMN));
+        }
     }
 
     /**
@@ -1043,6 +1214,41 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
     public static void deleteEntry(final SQLiteDatabase db, final String id, final int version) {
         db.delete(METADATA_TABLE_NAME, WORDLISTID_COLUMN + " = ? AND " + VERSION_COLUMN + " = ?",
                 new String[] { id, Integer.toString(version) });
+        onWordListWritten(db, id);
+    }
+
+    /**
+     * Inserts a new entry in the database.
+     *
+     * All writes to the metadata table must go through this class so that the word list cache
+     * stays in sync with the database.
+     *
+     * @param db the metadata database.
+     * @param values the values of the new entry, as returned by {@link #makeContentValues}.
+     * @return the row ID of the new entry, or -1 if an error occurred.
+     */
+    public static long insertEntry(final SQLiteDatabase db, final ContentValues values) {
+        final long rowId = db.insert(METADATA_TABLE_NAME, null, values);
+        if (-1 != rowId) {
+            onWordListWritten(db, values.getAsString(WORDLISTID_COLUMN));
+        }
+        return rowId;
+    }
+
+    /**
+     * Overwrites an existing entry in the database.
+     *
+     * @param db the metadata database.
+     * @param id the id of the word list.
+     * @param version the version of the word list.
+     * @param values the new values of the entry.
+     */
+    public static void updateEntry(final SQLiteDatabase db, final String id, final int version,
+            final ContentValues values) {
+        db.update(METADATA_TABLE_NAME, values,
+                WORDLISTID_COLUMN + " = ? AND " + VERSION_COLUMN + " = ?",
+                new String[] { id, Integer.toString(version) });
+        onWordListWritten(db, id);
     }
 
     /**
@@ -1061,9 +1267,7 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
         if (NOT_A_DOWNLOAD_ID != downloadId) {
             values.put(MetadataDbHelper.PENDINGID_COLUMN, downloadId);
         }
-        db.update(METADATA_TABLE_NAME, values,
-                WORDLISTID_COLUMN + " = ? AND " + VERSION_COLUMN + " = ?",
-                new String[] { id, Integer.toString(version) });
+        updateEntry(db, id, version, values);
     }
 
     /**
@@ -1145,9 +1349,7 @@ public class MetadataDbHelper extends SQLiteOpenHelper {
         if (retryCount > 1) {
             values.put(STATUS_COLUMN, STATUS_RETRYING);
             values.put(RETRY_COUNT_COLUMN, retryCount - 1);
-            db.update(METADATA_TABLE_NAME, values,
-                    WORDLISTID_COLUMN + " = ? AND " + VERSION_COLUMN + " = ?",
-                    new String[] { id, Integer.toString(version) });
+            updateEntry(db, id, version, values);
             return true;
         }
         return false;
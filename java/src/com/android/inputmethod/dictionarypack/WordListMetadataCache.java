@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.inputmethod.dictionarypack;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * An in-memory copy of the word list metadata table of one client database.
+ *
+ * The whole table is read in a single query the first time it is needed. After that, every
+ * write that goes through {@link MetadataDbHelper} re-reads the rows it touched, so the cache
+ * always reflects what was committed to the database. Callers always receive copies of the
+ * cached rows, so they are free to modify them.
+ *
+ * All database reads happen while holding the lock of this object. This guarantees that a
+ * refresh that follows a write can never be overwritten by a concurrent initial load that
+ * read the table before the write was committed.
+ */
+final class WordListMetadataCache {
+    private final String mClientId;
+    // Rows of the metadata table, grouped by word list id. null until loaded.
+    private HashMap<String, ArrayList<ContentValues>> mWordListsById = null;
+
+    public WordListMetadataCache(final String clientId) {
+        mClientId = clientId;
+    }
+
+    public String getClientId() {
+        return mClientId;
+    }
+
+    private void loadIfNecessaryLocked(final SQLiteDatabase db) {
+        if (null != mWordListsById) return;
+        final HashMap<String, ArrayList<ContentValues>> wordListsById = new HashMap<>();
+        final Cursor cursor = db.query(MetadataDbHelper.METADATA_TABLE_NAME,
+                MetadataDbHelper.METADATA_TABLE_COLUMNS, null, null, null, null, null);
+        if (null == cursor) return;
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    final ContentValues values =
+                            MetadataDbHelper.getCurrentLineAsContentValues(cursor);
+                    final String id = values.getAsString(MetadataDbHelper.WORDLISTID_COLUMN);
+                    ArrayList<ContentValues> rows = wordListsById.get(id);
+                    if (null == rows) {
+                        rows = new ArrayList<>();
+                        wordListsById.put(id, rows);
+                    }
+                    rows.add(values);
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        mWordListsById = wordListsById;
+    }
+
+    private static ArrayList<ContentValues> copyOf(final ArrayList<ContentValues> rows) {
+        final ArrayList<ContentValues> result = new ArrayList<>(rows.size());
+        for (final ContentValues row : rows) {
+            result.add(new ContentValues(row));
+        }
+        return result;
+    }
+
+    /**
+     * Returns copies of all the rows with the passed word list id, in no particular order.
+     *
+     * @param db the database this cache mirrors.
+     * @param id the word list id.
+     * @return the rows. Never null, but may be empty.
+     */
+    public synchronized ArrayList<ContentValues> getRowsForWordListId(final SQLiteDatabase db,
+            final String id) {
+        loadIfNecessaryLocked(db);
+        if (null == mWordListsById) return new ArrayList<>();
+        final ArrayList<ContentValues> rows = mWordListsById.get(id);
+        return null == rows ? new ArrayList<ContentValues>() : copyOf(rows);
+    }
+
+    /**
+     * Returns copies of all the rows in the table, in no particular order.
+     *
+     * @param db the database this cache mirrors.
+     * @return the rows. Never null, but may be empty.
+     */
+    public synchronized ArrayList<ContentValues> getAllRows(final SQLiteDatabase db) {
+        loadIfNecessaryLocked(db);
+        final ArrayList<ContentValues> result = new ArrayList<>();
+        if (null == mWordListsById) return result;
+        for (final ArrayList<ContentValues> rows : mWordListsById.values()) {
+            result.addAll(copyOf(rows));
+        }
+        return result;
+    }
+
+    /**
+     * Re-reads all the rows of a word list id after they have been written to.
+     *
+     * This is a lookup on the primary key prefix, so it does not scan the table.
+     *
+     * @param db the database this cache mirrors.
+     * @param id the word list id that was written to.
+     */
+    public synchronized void refreshWordListId(final SQLiteDatabase db, final String id) {
+        // If the cache has not been loaded yet, the next read will see the new state anyway.
+        if (null == mWordListsById) return;
+        final ArrayList<ContentValues> rows = new ArrayList<>();
+        final Cursor cursor = db.query(MetadataDbHelper.METADATA_TABLE_NAME,
+                MetadataDbHelper.METADATA_TABLE_COLUMNS,
+                MetadataDbHelper.WORDLISTID_COLUMN + " = ?", new String[] { id },
+                null, null, null);
+        if (null == cursor) {
+            // Can't tell what the database contains any more: start over on the next read.
+            mWordListsById = null;
+            return;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    rows.add(MetadataDbHelper.getCurrentLineAsContentValues(cursor));
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        if (rows.isEmpty()) {
+            mWordListsById.remove(id);
+        } else {
+            mWordListsById.put(id, rows);
+        }
+    }
+
+    /**
+     * Drops all the cached data. The table will be read again on the next access.
+     */
+    public synchronized void invalidate() {
+        mWordListsById = null;
+    }
+}
@@ -450,6 +450,24 @@ public class Key implements Comparable<Key> {
         return (filteredMoreKeys == moreKeys) ? key : new Key(key, filteredMoreKeys);
     }
 
+    /**
+     * Create a key of a <GridRows/> without parsing the keyboard it belongs to.
+     *
+     * @param templateKey a key of the same <GridRows/>, to take the size and flags from.
+     * @param label the label of the new key.
+     * @param code the code of the new key.
+     * @param outputText the output text of the new key.
+     */
+    @Nonnull
+    public static Key newGridRowsKey(@Nonnull final Key templateKey, @Nullable final String label,
+            final int code, @Nullable final String outputText) {
+        return new Key(label, templateKey.mIconId, code, outputText, null /* hintLabel */,
+                templateKey.mLabelFlags, templateKey.mBackgroundType, templateKey.mHitBox.left,
+                templateKey.mY, templateKey.mWidth + templateKey.mHorizontalGap,
+                templateKey.mHeight + templateKey.mVerticalGap, templateKey.mHorizontalGap,
+                templateKey.mVerticalGap);
+    }
+
     private static boolean needsToUpcase(final int labelFlags, final int keyboardElementId) {
         if ((labelFlags & LABEL_FLAGS_PRESERVE_CASE) != 0) return false;
         switch (keyboardElementId) {
@@ -60,6 +60,7 @@ import com.android.inputmethod.latin.settings.DebugSettings;
 import com.android.inputmethod.latin.utils.LanguageOnSpacebarUtils;
 import com.android.inputmethod.latin.utils.TypefaceUtils;
 
+import java.util.ArrayList;
 import java.util.Locale;
 import java.util.WeakHashMap;
 
@@ -153,7 +154,11 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
     private final Paint mBackgroundDimAlphaPaint = new Paint();
     private final View mMoreKeysKeyboardContainer;
     private final View mMoreKeysKeyboardForActionContainer;
-    private final WeakHashMap<Key, Keyboard> mMoreKeysKeyboardCache = new WeakHashMap<>();
+    // The more keys keyboards of each keyboard this view has shown, so that switching back to a
+    // keyboard, for example when shifting, finds them built.
+    private final WeakHashMap<Keyboard, MoreKeysKeyboardCache> mMoreKeysKeyboardCaches =
+            new WeakHashMap<>();
+    private MoreKeysKeyboardCache mMoreKeysKeyboardCache = new MoreKeysKeyboardCache();
     private final boolean mConfigShowMoreKeysKeyboardAtTouchedPoint;
     // More keys panel (used by both more keys keyboard and more suggestions view)
     // TODO: Consider extending to support multiple more keys panels
@@ -394,7 +399,7 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         mKeyDetector.setKeyboard(
                 keyboard, -getPaddingLeft(), -getPaddingTop() + getVerticalCorrection());
         PointerTracker.setKeyDetector(mKeyDetector);
-        mMoreKeysKeyboardCache.clear();
+        setMoreKeysKeyboardCache(keyboard);
 
         mSpaceKey = keyboard.getKey(Constants.CODE_SPACE);
         final int keyHeight = keyboard.mMostCommonKeyHeight - keyboard.mVerticalGap;
@@ -417,7 +422,16 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
      * @param delay the delay after which the preview is dismissed
      */
     public void setKeyPreviewPopupEnabled(final boolean previewEnabled, final int delay) {
+        final boolean wasPreviewEnabled = mKeyPreviewDrawParams.isPopupEnabled();
         mKeyPreviewDrawParams.setPopupEnabled(previewEnabled, delay);
+        if (previewEnabled != wasPreviewEnabled) {
+            // Which more keys keyboards can be built ahead depends on the key preview.
+            resetMoreKeysKeyboardCaches();
+            final Keyboard keyboard = getKeyboard();
+            if (keyboard != null) {
+                setMoreKeysKeyboardCache(keyboard);
+            }
+        }
     }
 
     /**
@@ -590,6 +604,56 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         mDrawingPreviewPlacerView.removeAllViews();
     }
 
+    private void setMoreKeysKeyboardCache(@Nonnull final Keyboard keyboard) {
+        final MoreKeysKeyboardCache moreKeysKeyboardCache = mMoreKeysKeyboardCaches.get(keyboard);
+        if (moreKeysKeyboardCache != null) {
+            mMoreKeysKeyboardCache = moreKeysKeyboardCache;
+            return;
+        }
+        mMoreKeysKeyboardCache = new MoreKeysKeyboardCache();
+        mMoreKeysKeyboardCaches.put(keyboard, mMoreKeysKeyboardCache);
+        prebuildMoreKeysKeyboards(keyboard);
+    }
+
+    private void resetMoreKeysKeyboardCaches() {
+        for (final MoreKeysKeyboardCache moreKeysKeyboardCache
+                : mMoreKeysKeyboardCaches.values()) {
+            moreKeysKeyboardCache.invalidate();
+        }
+        mMoreKeysKeyboardCaches.clear();
+        mMoreKeysKeyboardCache.invalidate();
+        mMoreKeysKeyboardCache = new MoreKeysKeyboardCache();
+    }
+
+    private boolean isSingleMoreKeyWithPreview(@Nonnull final Key key,
+            @Nonnull final MoreKeySpec[] moreKeys) {
+        // {@link KeyPreviewDrawParams#mPreviewVisibleWidth} should have been set at
+        // {@link KeyPreviewChoreographer#placeKeyPreview(Key,TextView,KeyboardIconsSet,KeyDrawParams,int,int[]},
+        // though there may be some chances that the value is zero. <code>width == 0</code>
+        // will cause zero-division error at
+        // {@link MoreKeysKeyboardParams#setParameters(int,int,int,int,int,int,boolean,int)}.
+        return mKeyPreviewDrawParams.isPopupEnabled() && !key.noKeyPreview()
+                && moreKeys.length == 1 && mKeyPreviewDrawParams.getVisibleWidth() > 0;
+    }
+
+    // Build the more keys keyboards of the keyboard before its keys are long pressed. The more
+    // keys keyboard of a key with a single more key and a key preview is left out, as it takes
+    // the size of the key preview that may not be known yet.
+    private void prebuildMoreKeysKeyboards(@Nonnull final Keyboard keyboard) {
+        final ArrayList<Key> keys = new ArrayList<>();
+        final ArrayList<Paint> paintsToMeasure = new ArrayList<>();
+        for (final Key key : keyboard.getSortedKeys()) {
+            final MoreKeySpec[] moreKeys = key.getMoreKeys();
+            if (moreKeys == null || (moreKeys.length == 1
+                    && mKeyPreviewDrawParams.isPopupEnabled() && !key.noKeyPreview())) {
+                continue;
+            }
+            keys.add(key);
+            paintsToMeasure.add(newLabelPaint(key));
+        }
+        mMoreKeysKeyboardCache.prebuild(getContext(), keyboard, keys, paintsToMeasure);
+    }
+
     // Implements {@link DrawingProxy@showMoreKeysKeyboard(Key,PointerTracker)}.
     @Override
     @Nullable
@@ -601,16 +665,8 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         }
         Keyboard moreKeysKeyboard = mMoreKeysKeyboardCache.get(key);
         if (moreKeysKeyboard == null) {
-            // {@link KeyPreviewDrawParams#mPreviewVisibleWidth} should have been set at
-            // {@link KeyPreviewChoreographer#placeKeyPreview(Key,TextView,KeyboardIconsSet,KeyDrawParams,int,int[]},
-            // though there may be some chances that the value is zero. <code>width == 0</code>
-            // will cause zero-division error at
-            // {@link MoreKeysKeyboardParams#setParameters(int,int,int,int,int,int,boolean,int)}.
-            final boolean isSingleMoreKeyWithPreview = mKeyPreviewDrawParams.isPopupEnabled()
-                    && !key.noKeyPreview() && moreKeys.length == 1
-                    && mKeyPreviewDrawParams.getVisibleWidth() > 0;
             final MoreKeysKeyboard.Builder builder = new MoreKeysKeyboard.Builder(
-                    getContext(), key, getKeyboard(), isSingleMoreKeyWithPreview,
+                    getContext(), key, getKeyboard(), isSingleMoreKeyWithPreview(key, moreKeys),
                     mKeyPreviewDrawParams.getVisibleWidth(),
                     mKeyPreviewDrawParams.getVisibleHeight(), newLabelPaint(key));
             moreKeysKeyboard = builder.build();
@@ -735,7 +791,7 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
 
     public void closing() {
         cancelAllOngoingEvents();
-        mMoreKeysKeyboardCache.clear();
+        resetMoreKeysKeyboardCaches();
     }
 
     public void onHideWindow() {
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.util.Log;
+
+import com.android.inputmethod.latin.utils.ExecutorUtils;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The {@link MoreKeysKeyboard}s of the keys of one {@link Keyboard}.
+ *
+ * The more keys keyboards are built in the background as soon as the parent keyboard is set,
+ * see {@link #prebuild(Context,Keyboard,ArrayList,ArrayList)}, so that a long press finds them
+ * ready. {@link MainKeyboardView} keeps them as long as the parent keyboard, so that switching
+ * back to a keyboard finds them built.
+ */
+final class MoreKeysKeyboardCache {
+    private static final String TAG = MoreKeysKeyboardCache.class.getSimpleName();
+
+    private final ConcurrentHashMap<Key, Keyboard> mMoreKeysKeyboards = new ConcurrentHashMap<>();
+    private volatile boolean mIsInvalidated;
+
+    @Nullable
+    public Keyboard get(@Nonnull final Key key) {
+        return mMoreKeysKeyboards.get(key);
+    }
+
+    public void put(@Nonnull final Key key, @Nonnull final Keyboard moreKeysKeyboard) {
+        if (!mIsInvalidated) {
+            mMoreKeysKeyboards.put(key, moreKeysKeyboard);
+        }
+    }
+
+    /**
+     * Forget the more keys keyboards, and stop building them in the background.
+     */
+    public void invalidate() {
+        mIsInvalidated = true;
+        mMoreKeysKeyboards.clear();
+    }
+
+    /**
+     * Build the more keys keyboards of <code>keys</code> in the background.
+     *
+     * @param context the context of {@link MoreKeysKeyboardView}.
+     * @param keyboard the {@link Keyboard} that contains the keys.
+     * @param keys the keys that have more keys, and whose more keys keyboard doesn't depend on
+     *        the key preview.
+     * @param paintsToMeasure the {@link Paint} objects to measure the more keys of each key with.
+     */
+    public void prebuild(@Nonnull final Context context, @Nonnull final Keyboard keyboard,
+            @Nonnull final ArrayList<Key> keys, @Nonnull final ArrayList<Paint> paintsToMeasure) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < keys.size(); i++) {
+                    if (mIsInvalidated) {
+                        return;
+                    }
+                    final Key key = keys.get(i);
+                    if (mMoreKeysKeyboards.containsKey(key)) {
+                        // The key has been long pressed while this was running.
+                        continue;
+                    }
+                    try {
+                        put(key, new MoreKeysKeyboard.Builder(context, key, keyboard,
+                                false /* isSingleMoreKeyWithPreview */,
+                                0 /* keyPreviewVisibleWidth */,
+                                0 /* keyPreviewVisibleHeight */,
+                                paintsToMeasure.get(i)).build());
+                    } catch (final RuntimeException e) {
+                        // The key will be built again when it is long pressed.
+                        Log.w(TAG, "Can't build more keys keyboard of " + key, e);
+                    }
+                }
+            }
+        });
+    }
+}
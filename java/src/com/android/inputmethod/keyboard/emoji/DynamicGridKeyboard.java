@@ -17,20 +17,26 @@
 package com.android.inputmethod.keyboard.emoji;
 
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.inputmethod.keyboard.Key;
 import com.android.inputmethod.keyboard.Keyboard;
 import com.android.inputmethod.latin.settings.Settings;
-import com.android.inputmethod.latin.utils.JsonUtils;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 /**
  * This is a Keyboard class where you can add keys dynamically shown in a grid layout
  */
@@ -38,6 +44,8 @@ final class DynamicGridKeyboard extends Keyboard {
     private static final String TAG = DynamicGridKeyboard.class.getSimpleName();
     private static final int TEMPLATE_KEY_CODE_0 = 0x30;
     private static final int TEMPLATE_KEY_CODE_1 = 0x31;
+    // Used recent keys are written to the preferences at most this often.
+    private static final long SAVE_RECENT_KEYS_DELAY_MILLIS = 2000;
     private final Object mLock = new Object();
 
     private final SharedPreferences mPrefs;
@@ -46,10 +54,24 @@ final class DynamicGridKeyboard extends Keyboard {
     private final int mColumnsNum;
     private final int mMaxKeyCount;
     private final boolean mIsRecents;
-    private final ArrayDeque<GridKey> mGridKeys = new ArrayDeque<>();
+    private final Key mTemplateKey;
+    // The keys are kept in the reverse order from the one they are shown in, so that adding a key
+    // first and evicting the oldest one are both constant time. Their coordinates are only
+    // computed when the sorted keys are requested.
+    private final LinkedHashSet<GridKey> mGridKeys = new LinkedHashSet<>();
     private final ArrayDeque<Key> mPendingKeys = new ArrayDeque<>();
+    private final Handler mSaveHandler;
+    private final Runnable mSaveRecentKeysTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                saveRecentKeys();
+            }
+        }
+    };
 
     private List<Key> mCachedGridKeys;
+    private boolean mIsSaveScheduled;
 
     public DynamicGridKeyboard(final SharedPreferences prefs, final Keyboard templateKeyboard,
             final int maxKeyCount, final int categoryId) {
@@ -62,6 +84,29 @@ final class DynamicGridKeyboard extends Keyboard {
         mMaxKeyCount = maxKeyCount;
         mIsRecents = categoryId == EmojiCategory.ID_RECENTS;
         mPrefs = prefs;
+        mTemplateKey = key0;
+        mSaveHandler = mIsRecents ? new Handler(Looper.getMainLooper()) : null;
+    }
+
+    /**
+     * Finds the keys to restore the recent keys with, from what was saved of them.
+     */
+    interface KeyFinder {
+        @Nullable
+        public Key findKeyByCode(final int code);
+
+        @Nullable
+        public Key findKeyByOutputText(@Nonnull final String outputText);
+    }
+
+    /**
+     * Creates a key that can be added to this keyboard, without building the keyboard it
+     * would otherwise come from.
+     */
+    @Nonnull
+    public Key newKey(@Nullable final String label, final int code,
+            @Nullable final String outputText) {
+        return Key.newGridRowsKey(mTemplateKey, label, code, outputText);
     }
 
     private Key getTemplateKey(final int code) {
@@ -79,20 +124,24 @@ final class DynamicGridKeyboard extends Keyboard {
         }
     }
 
+    /**
+     * Adds the pending keys and writes the recent keys now if a write is due, instead of waiting
+     * for the delayed write.
+     */
     public void flushPendingRecentKeys() {
         synchronized (mLock) {
             while (!mPendingKeys.isEmpty()) {
                 addKey(mPendingKeys.pollFirst(), true);
             }
-            saveRecentKeys();
+            if (mIsSaveScheduled) {
+                mSaveHandler.removeCallbacks(mSaveRecentKeysTask);
+                saveRecentKeys();
+            }
         }
     }
 
     public void addKeyFirst(final Key usedKey) {
         addKey(usedKey, true);
-        if (mIsRecents) {
-            saveRecentKeys();
-        }
     }
 
     public void addKeyLast(final Key usedKey) {
@@ -106,77 +155,62 @@ final class DynamicGridKeyboard extends Keyboard {
         synchronized (mLock) {
             mCachedGridKeys = null;
             final GridKey key = new GridKey(usedKey);
-            while (mGridKeys.remove(key)) {
-                // Remove duplicate keys.
-            }
+            mGridKeys.remove(key);
             if (addFirst) {
-                mGridKeys.addFirst(key);
-            } else {
-                mGridKeys.addLast(key);
-            }
-            while (mGridKeys.size() > mMaxKeyCount) {
-                mGridKeys.removeLast();
+                mGridKeys.add(key);
+                if (mGridKeys.size() > mMaxKeyCount) {
+                    final Iterator<GridKey> oldest = mGridKeys.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+                if (mIsRecents) {
+                    scheduleSaveRecentKeys();
+                }
+                return;
             }
-            int index = 0;
-            for (final GridKey gridKey : mGridKeys) {
-                final int keyX0 = getKeyX0(index);
-                final int keyY0 = getKeyY0(index);
-                final int keyX1 = getKeyX1(index);
-                final int keyY1 = getKeyY1(index);
-                gridKey.updateCoordinates(keyX0, keyY0, keyX1, keyY1);
-                index++;
+            // Adding a key last is only done while filling a keyboard, so the set can be rebuilt.
+            if (mGridKeys.size() >= mMaxKeyCount) {
+                return;
             }
+            final ArrayList<GridKey> keys = new ArrayList<>(mGridKeys);
+            mGridKeys.clear();
+            mGridKeys.add(key);
+            mGridKeys.addAll(keys);
+        }
+    }
+
+    private void scheduleSaveRecentKeys() {
+        if (mIsSaveScheduled) {
+            return;
         }
+        mIsSaveScheduled = true;
+        mSaveHandler.postDelayed(mSaveRecentKeysTask, SAVE_RECENT_KEYS_DELAY_MILLIS);
     }
 
     private void saveRecentKeys() {
+        mIsSaveScheduled = false;
         final ArrayList<Object> keys = new ArrayList<>();
-        for (final Key key : mGridKeys) {
+        for (final Key key : getKeysInDisplayOrder()) {
             if (key.getOutputText() != null) {
                 keys.add(key.getOutputText());
             } else {
                 keys.add(key.getCode());
             }
         }
-        final String jsonStr = JsonUtils.listToJsonStr(keys);
-        Settings.writeEmojiRecentKeys(mPrefs, jsonStr);
-    }
-
-    private static Key getKeyByCode(final Collection<DynamicGridKeyboard> keyboards,
-            final int code) {
-        for (final DynamicGridKeyboard keyboard : keyboards) {
-            for (final Key key : keyboard.getSortedKeys()) {
-                if (key.getCode() == code) {
-                    return key;
-                }
-            }
-        }
-        return null;
-    }
-
-    private static Key getKeyByOutputText(final Collection<DynamicGridKeyboard> keyboards,
-            final String outputText) {
-        for (final DynamicGridKeyboard keyboard : keyboards) {
-            for (final Key key : keyboard.getSortedKeys()) {
-                if (outputText.equals(key.getOutputText())) {
-                    return key;
-                }
-            }
-        }
-        return null;
+        Settings.writeEmojiRecentKeys(mPrefs, RecentKeysCodec.encode(keys));
     }
 
-    public void loadRecentKeys(final Collection<DynamicGridKeyboard> keyboards) {
+    public void loadRecentKeys(final KeyFinder keyFinder) {
         final String str = Settings.readEmojiRecentKeys(mPrefs);
-        final List<Object> keys = JsonUtils.jsonStrToList(str);
+        final List<Object> keys = RecentKeysCodec.decode(str);
         for (final Object o : keys) {
             final Key key;
             if (o instanceof Integer) {
                 final int code = (Integer)o;
-                key = getKeyByCode(keyboards, code);
+                key = keyFinder.findKeyByCode(code);
             } else if (o instanceof String) {
                 final String outputText = (String)o;
-                key = getKeyByOutputText(keyboards, outputText);
+                key = keyFinder.findKeyByOutputText(outputText);
             } else {
                 Log.w(TAG, "Invalid object: " + o);
                 continue;
@@ -205,13 +239,24 @@ final class DynamicGridKeyboard extends Keyboard {
         return row * mVerticalStep + mVerticalGap / 2;
     }
 
+    private ArrayList<GridKey> getKeysInDisplayOrder() {
+        final ArrayList<GridKey> keys = new ArrayList<>(mGridKeys);
+        Collections.reverse(keys);
+        return keys;
+    }
+
     @Override
     public List<Key> getSortedKeys() {
         synchronized (mLock) {
             if (mCachedGridKeys != null) {
                 return mCachedGridKeys;
             }
-            final ArrayList<Key> cachedKeys = new ArrayList<Key>(mGridKeys);
+            final ArrayList<GridKey> gridKeys = getKeysInDisplayOrder();
+            for (int index = 0; index < gridKeys.size(); index++) {
+                gridKeys.get(index).updateCoordinates(getKeyX0(index), getKeyY0(index),
+                        getKeyX1(index), getKeyY1(index));
+            }
+            final ArrayList<Key> cachedKeys = new ArrayList<Key>(gridKeys);
             mCachedGridKeys = Collections.unmodifiableList(cachedKeys);
             return mCachedGridKeys;
         }
@@ -256,6 +301,12 @@ final class DynamicGridKeyboard extends Keyboard {
             return TextUtils.equals(getOutputText(), key.getOutputText());
         }
 
+        @Override
+        public int hashCode() {
+            // {@link Key#hashCode()} also covers the coordinates, which {@link #equals} ignores.
+            return Arrays.hashCode(new Object[] { getCode(), getLabel(), getOutputText() });
+        }
+
         @Override
         public String toString() {
             return "GridKey: " + super.toString();
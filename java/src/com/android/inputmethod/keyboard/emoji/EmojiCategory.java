@@ -30,9 +30,12 @@ import com.android.inputmethod.keyboard.Key;
 import com.android.inputmethod.keyboard.Keyboard;
 import com.android.inputmethod.keyboard.KeyboardId;
 import com.android.inputmethod.keyboard.KeyboardLayoutSet;
+import com.android.inputmethod.keyboard.internal.CodesArrayParser;
 import com.android.inputmethod.latin.R;
+import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.settings.Settings;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -147,6 +150,27 @@ final class EmojiCategory {
             KeyboardId.ELEMENT_EMOJI_CATEGORY15,
             KeyboardId.ELEMENT_EMOJI_CATEGORY16 };
 
+    // The codesArray or textsArray of the <GridRows/> of each category keyboard in
+    // res/xml/kbd_emoji_*.xml. They tell how many keys a category has without building it.
+    private static final int[] sCategoryKeysArrayId = {
+            R.array.emoji_recents,
+            R.array.emoji_faces,
+            R.array.emoji_objects,
+            R.array.emoji_nature,
+            R.array.emoji_places,
+            R.array.emoji_symbols,
+            R.array.emoji_emoticons,
+            R.array.emoji_flags,
+            R.array.emoji_eight_smiley_people,
+            R.array.emoji_eight_animals_nature,
+            R.array.emoji_eight_food_drink,
+            R.array.emoji_eight_travel_places,
+            R.array.emoji_eight_activity,
+            R.array.emoji_eight_objects,
+            R.array.emoji_eight_symbols,
+            R.array.emoji_eight_flags,
+            R.array.emoji_eight_smiley_people_boring };
+
     private final SharedPreferences mPrefs;
     private final Resources mRes;
     private final int mMaxPageKeyCount;
@@ -154,8 +178,11 @@ final class EmojiCategory {
     private final HashMap<String, Integer> mCategoryNameToIdMap = new HashMap<>();
     private final int[] mCategoryTabIconId = new int[sCategoryName.length];
     private final ArrayList<CategoryProperties> mShownCategories = new ArrayList<>();
-    private final ConcurrentHashMap<Long, DynamicGridKeyboard> mCategoryKeyboardMap =
-            new ConcurrentHashMap<>();
+    private final DynamicGridKeyboard mRecentsKeyboard;
+    // Category keyboards are built when one of their pages is first shown. Pages that are not
+    // shown are only softly reachable, so that they are reclaimed when memory runs low.
+    private final ConcurrentHashMap<Long, SoftReference<DynamicGridKeyboard>>
+            mCategoryKeyboardMap = new ConcurrentHashMap<>();
 
     private int mCurrentCategoryId = EmojiCategory.ID_UNSPECIFIED;
     private int mCurrentCategoryPageId = 0;
@@ -171,6 +198,9 @@ final class EmojiCategory {
             mCategoryTabIconId[i] = emojiPaletteViewAttr.getResourceId(
                     sCategoryTabIconAttr[i], 0);
         }
+        mRecentsKeyboard = new DynamicGridKeyboard(mPrefs,
+                mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
+                mMaxPageKeyCount, EmojiCategory.ID_RECENTS);
 
         int defaultCategoryId = EmojiCategory.ID_SYMBOLS;
         addShownCategoryId(EmojiCategory.ID_RECENTS);
@@ -201,9 +231,7 @@ final class EmojiCategory {
         }
         addShownCategoryId(EmojiCategory.ID_EMOTICONS);
 
-        DynamicGridKeyboard recentsKbd =
-                getKeyboard(EmojiCategory.ID_RECENTS, 0 /* categoryPageId */);
-        recentsKbd.loadRecentKeys(mCategoryKeyboardMap.values());
+        mRecentsKeyboard.loadRecentKeys(new EmojiKeyFinder());
 
         mCurrentCategoryId = Settings.readLastShownEmojiCategoryId(mPrefs, defaultCategoryId);
         Log.i(TAG, "Last Emoji category id is " + mCurrentCategoryId);
@@ -212,15 +240,13 @@ final class EmojiCategory {
                     " is invalid, starting in " + defaultCategoryId);
             mCurrentCategoryId = defaultCategoryId;
         } else if (mCurrentCategoryId == EmojiCategory.ID_RECENTS &&
-                recentsKbd.getSortedKeys().isEmpty()) {
+                mRecentsKeyboard.getSortedKeys().isEmpty()) {
             Log.i(TAG, "No recent emojis found, starting in category " + defaultCategoryId);
             mCurrentCategoryId = defaultCategoryId;
         }
     }
 
     private void addShownCategoryId(final int categoryId) {
-        // Load a keyboard of categoryId
-        getKeyboard(categoryId, 0 /* categoryPageId */);
         final CategoryProperties properties =
                 new CategoryProperties(categoryId, getCategoryPageCount(categoryId));
         mShownCategories.add(properties);
@@ -328,8 +354,103 @@ final class EmojiCategory {
     }
 
     private int getCategoryPageCount(final int categoryId) {
-        final Keyboard keyboard = mLayoutSet.getKeyboard(sCategoryElementId[categoryId]);
-        return (keyboard.getSortedKeys().size() - 1) / mMaxPageKeyCount + 1;
+        return (getCategoryKeyCount(categoryId) - 1) / mMaxPageKeyCount + 1;
+    }
+
+    // Counts the keys KeyboardBuilder would put in the keyboard of the category, which is much
+    // cheaper than building it.
+    private int getCategoryKeyCount(final int categoryId) {
+        final String[] keySpecs = mRes.getStringArray(sCategoryKeysArrayId[categoryId]);
+        if (isTextsArrayCategoryId(categoryId)) {
+            return keySpecs.length;
+        }
+        int count = 0;
+        for (final String codesArraySpec : keySpecs) {
+            if (isSupportedCodesArraySpec(codesArraySpec)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isTextsArrayCategoryId(final int categoryId) {
+        return categoryId == EmojiCategory.ID_EMOTICONS;
+    }
+
+    private static boolean isSupportedCodesArraySpec(final String codesArraySpec) {
+        return Build.VERSION.SDK_INT
+                >= CodesArrayParser.getMinSupportSdkVersion(codesArraySpec);
+    }
+
+    /**
+     * Restores recent keys from the codes and texts arrays of the shown categories, as the
+     * keyboards of these categories may not have been built.
+     */
+    private final class EmojiKeyFinder implements DynamicGridKeyboard.KeyFinder {
+        private final HashMap<Integer, String> mCodesArraySpecsByCode = new HashMap<>();
+        private final HashMap<String, String> mCodesArraySpecsByOutputText = new HashMap<>();
+        private final HashMap<String, String> mTextsByOutputText = new HashMap<>();
+
+        public EmojiKeyFinder() {
+            for (final CategoryProperties properties : mShownCategories) {
+                final int categoryId = properties.mCategoryId;
+                if (categoryId == EmojiCategory.ID_RECENTS) {
+                    continue;
+                }
+                for (final String keySpec : mRes.getStringArray(sCategoryKeysArrayId[categoryId])) {
+                    if (isTextsArrayCategoryId(categoryId)) {
+                        putIfAbsent(mTextsByOutputText, getOutputTextOfText(keySpec), keySpec);
+                        continue;
+                    }
+                    if (!isSupportedCodesArraySpec(keySpec)) {
+                        continue;
+                    }
+                    final String outputText = CodesArrayParser.parseOutputText(keySpec);
+                    if (outputText != null) {
+                        putIfAbsent(mCodesArraySpecsByOutputText, outputText, keySpec);
+                    } else {
+                        putIfAbsent(mCodesArraySpecsByCode, CodesArrayParser.parseCode(keySpec),
+                                keySpec);
+                    }
+                }
+            }
+        }
+
+        // The first category that has a key wins, as the categories are searched in order.
+        private <K> void putIfAbsent(final HashMap<K, String> map, final K key,
+                final String value) {
+            if (!map.containsKey(key)) {
+                map.put(key, value);
+            }
+        }
+
+        // This must match KeyboardBuilder#parseGridRows.
+        private String getOutputTextOfText(final String text) {
+            return text + (char)Constants.CODE_SPACE;
+        }
+
+        private Key newKeyFromCodesArraySpec(final String codesArraySpec) {
+            return mRecentsKeyboard.newKey(CodesArrayParser.parseLabel(codesArraySpec),
+                    CodesArrayParser.parseCode(codesArraySpec),
+                    CodesArrayParser.parseOutputText(codesArraySpec));
+        }
+
+        @Override
+        public Key findKeyByCode(final int code) {
+            final String codesArraySpec = mCodesArraySpecsByCode.get(code);
+            return codesArraySpec == null ? null : newKeyFromCodesArraySpec(codesArraySpec);
+        }
+
+        @Override
+        public Key findKeyByOutputText(final String outputText) {
+            final String codesArraySpec = mCodesArraySpecsByOutputText.get(outputText);
+            if (codesArraySpec != null) {
+                return newKeyFromCodesArraySpec(codesArraySpec);
+            }
+            final String text = mTextsByOutputText.get(outputText);
+            return text == null ? null
+                    : mRecentsKeyboard.newKey(text, Constants.CODE_OUTPUT_TEXT, outputText);
+        }
     }
 
     // Returns a pair of the category id and the category page id from the view pager's page
@@ -363,40 +484,55 @@ final class EmojiCategory {
     }
 
     public DynamicGridKeyboard getKeyboard(final int categoryId, final int id) {
+        if (categoryId == EmojiCategory.ID_RECENTS) {
+            return mRecentsKeyboard;
+        }
         synchronized (mCategoryKeyboardMap) {
-            final Long categoryKeyboardMapKey = getCategoryKeyboardMapKey(categoryId, id);
-            if (mCategoryKeyboardMap.containsKey(categoryKeyboardMapKey)) {
-                return mCategoryKeyboardMap.get(categoryKeyboardMapKey);
-            }
-
-            if (categoryId == EmojiCategory.ID_RECENTS) {
-                final DynamicGridKeyboard kbd = new DynamicGridKeyboard(mPrefs,
-                        mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
-                        mMaxPageKeyCount, categoryId);
-                mCategoryKeyboardMap.put(categoryKeyboardMapKey, kbd);
-                return kbd;
+            final DynamicGridKeyboard cachedKeyboard =
+                    getCachedKeyboard(getCategoryKeyboardMapKey(categoryId, id));
+            if (cachedKeyboard != null) {
+                return cachedKeyboard;
             }
 
             final Keyboard keyboard = mLayoutSet.getKeyboard(sCategoryElementId[categoryId]);
             final Key[][] sortedKeys = sortKeysIntoPages(
                     keyboard.getSortedKeys(), mMaxPageKeyCount);
+            if (sortedKeys.length != getCategoryPageSize(categoryId)) {
+                Log.w(TAG, "Unexpected page count for category " + categoryId + ": "
+                        + sortedKeys.length);
+            }
+            DynamicGridKeyboard requestedKeyboard = null;
             for (int pageId = 0; pageId < sortedKeys.length; ++pageId) {
-                final DynamicGridKeyboard tempKeyboard = new DynamicGridKeyboard(mPrefs,
-                        mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
-                        mMaxPageKeyCount, categoryId);
-                for (final Key emojiKey : sortedKeys[pageId]) {
-                    if (emojiKey == null) {
-                        break;
+                final Long categoryKeyboardMapKey = getCategoryKeyboardMapKey(categoryId, pageId);
+                // Pages that are still alive are shown, so they must not be replaced.
+                DynamicGridKeyboard pageKeyboard = getCachedKeyboard(categoryKeyboardMapKey);
+                if (pageKeyboard == null) {
+                    pageKeyboard = new DynamicGridKeyboard(mPrefs,
+                            mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
+                            mMaxPageKeyCount, categoryId);
+                    for (final Key emojiKey : sortedKeys[pageId]) {
+                        if (emojiKey == null) {
+                            break;
+                        }
+                        pageKeyboard.addKeyLast(emojiKey);
                     }
-                    tempKeyboard.addKeyLast(emojiKey);
+                    mCategoryKeyboardMap.put(
+                            categoryKeyboardMapKey, new SoftReference<>(pageKeyboard));
+                }
+                if (pageId == id) {
+                    requestedKeyboard = pageKeyboard;
                 }
-                mCategoryKeyboardMap.put(
-                        getCategoryKeyboardMapKey(categoryId, pageId), tempKeyboard);
             }
-            return mCategoryKeyboardMap.get(categoryKeyboardMapKey);
+            return requestedKeyboard;
         }
     }
 
+    private DynamicGridKeyboard getCachedKeyboard(final Long categoryKeyboardMapKey) {
+        final SoftReference<DynamicGridKeyboard> ref =
+                mCategoryKeyboardMap.get(categoryKeyboardMapKey);
+        return (ref == null) ? null : ref.get();
+    }
+
     public int getTotalPageCountOfAllCategories() {
         int sum = 0;
         for (CategoryProperties properties : mShownCategories) {
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.emoji;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.android.inputmethod.latin.utils.JsonUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes the recent emoji keys, each one being either an Integer code or a String output text,
+ * into the string that is stored in the preferences.
+ *
+ * The keys are written in a small binary format that is encoded in Base64, which is several times
+ * shorter and cheaper to produce than the JSON that was used before. JSON strings are still read.
+ */
+final class RecentKeysCodec {
+    private static final String TAG = RecentKeysCodec.class.getSimpleName();
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int TYPE_CODE = 0;
+    private static final int TYPE_OUTPUT_TEXT = 1;
+    private static final String EMPTY_STRING = "";
+    // A JSON array starts with this, which is not in the Base64 alphabet.
+    private static final String JSON_ARRAY_START = "[";
+
+    private RecentKeysCodec() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static String encode(final List<Object> keys) {
+        if (keys.isEmpty()) {
+            return EMPTY_STRING;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(keys.size());
+            for (final Object key : keys) {
+                if (key instanceof Integer) {
+                    out.writeByte(TYPE_CODE);
+                    out.writeInt((Integer)key);
+                } else if (key instanceof String) {
+                    out.writeByte(TYPE_OUTPUT_TEXT);
+                    out.writeUTF((String)key);
+                } else {
+                    Log.w(TAG, "Invalid object: " + key);
+                    return EMPTY_STRING;
+                }
+            }
+            out.flush();
+        } catch (final IOException e) {
+            // A ByteArrayOutputStream does not throw.
+            Log.e(TAG, "Can't encode recent keys", e);
+            return EMPTY_STRING;
+        }
+        return Base64.encodeToString(bytes.toByteArray(), Base64.NO_WRAP);
+    }
+
+    public static List<Object> decode(final String str) {
+        if (str.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (str.startsWith(JSON_ARRAY_START)) {
+            return JsonUtils.jsonStrToList(str);
+        }
+        try {
+            final DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(Base64.decode(str, 0)));
+            if (in.readUnsignedByte() != FORMAT_VERSION) {
+                return Collections.emptyList();
+            }
+            final int count = in.readUnsignedByte();
+            final ArrayList<Object> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final int type = in.readUnsignedByte();
+                if (type == TYPE_CODE) {
+                    keys.add(in.readInt());
+                } else if (type == TYPE_OUTPUT_TEXT) {
+                    keys.add(in.readUTF());
+                } else {
+                    Log.w(TAG, "Invalid type: " + type);
+                    return Collections.emptyList();
+                }
+            }
+            return keys;
+        } catch (final IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Can't decode recent keys", e);
+            return Collections.emptyList();
+        }
+    }
+}
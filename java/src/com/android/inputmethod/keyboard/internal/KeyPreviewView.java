@@ -19,8 +19,6 @@ package com.android.inputmethod.keyboard.internal;
 import android.content.Context;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.text.TextPaint;
-import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.Gravity;
@@ -28,6 +26,7 @@ import android.widget.TextView;
 
 import com.android.inputmethod.keyboard.Key;
 import com.android.inputmethod.latin.R;
+import com.android.inputmethod.latin.utils.TypefaceUtils;
 
 import java.util.HashSet;
 
@@ -84,7 +83,7 @@ public class KeyPreviewView extends TextView {
         background.getPadding(mBackgroundPadding);
         final int maxWidth = background.getIntrinsicWidth() - mBackgroundPadding.left
                 - mBackgroundPadding.right;
-        final float width = getTextWidth(text, getPaint());
+        final float width = TypefaceUtils.getStringAdvance(text, getPaint());
         if (width <= maxWidth) {
             sNoScaleXTextSet.add(text);
             return;
@@ -96,20 +95,6 @@ public class KeyPreviewView extends TextView {
         sNoScaleXTextSet.clear();
     }
 
-    private static float getTextWidth(final String text, final TextPaint paint) {
-        if (TextUtils.isEmpty(text)) {
-            return 0.0f;
-        }
-        final int len = text.length();
-        final float[] widths = new float[len];
-        final int count = paint.getTextWidths(text, 0, len, widths);
-        float width = 0;
-        for (int i = 0; i < count; i++) {
-            width += widths[i];
-        }
-        return width;
-    }
-
     // Background state set
     private static final int[][][] KEY_PREVIEW_BACKGROUND_STATE_TABLE = {
         { // POSITION_MIDDLE
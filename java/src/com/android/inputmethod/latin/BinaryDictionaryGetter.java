@@ -25,8 +25,8 @@ import com.android.inputmethod.latin.common.LocaleUtils;
 import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 import com.android.inputmethod.latin.makedict.DictionaryHeader;
 import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
-import com.android.inputmethod.latin.utils.BinaryDictionaryUtils;
 import com.android.inputmethod.latin.utils.DictionaryInfoUtils;
+import com.android.inputmethod.latin.utils.WordListIndex;
 
 import java.io.File;
 import java.io.IOException;
@@ -173,7 +173,7 @@ final public class BinaryDictionaryGetter {
                     DictionaryInfoUtils.getWordListIdFromFileName(directory.getName());
             final int matchLevel = LocaleUtils.getMatchLevel(dirLocale, locale);
             if (LocaleUtils.isMatch(matchLevel)) {
-                final File[] wordLists = directory.listFiles();
+                final File[] wordLists = WordListIndex.getInstance().listFiles(directory);
                 if (null != wordLists) {
                     for (File wordList : wordLists) {
                         final String category =
@@ -205,7 +205,8 @@ final public class BinaryDictionaryGetter {
 
         try {
             // Read the version of the file
-            final DictionaryHeader header = BinaryDictionaryUtils.getHeader(file);
+            final DictionaryHeader header =
+                    WordListIndex.getInstance().getHeader(file, 0 /* offset */, file.length());
             final String version = header.mDictionaryOptions.mAttributes.get(VERSION_KEY);
             if (null == version) {
                 // No version in the options : the format is unexpected
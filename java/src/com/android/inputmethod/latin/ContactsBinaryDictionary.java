@@ -31,6 +31,7 @@ import com.android.inputmethod.latin.personalization.AccountUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -50,11 +51,24 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
     private final boolean mUseFirstLastBigrams;
     private final ContactsManager mContactsManager;
 
+    /**
+     * The names and words that the dictionary file contains.
+     */
+    private final ContactsDictionarySnapshot mSnapshot;
+
+    /**
+     * The names and words that the in-memory dictionary contains, or null if they are not known.
+     * Only accessed with the write lock held.
+     */
+    private ContactsDictionarySnapshot.Contents mIndexedContents;
+
     protected ContactsBinaryDictionary(final Context context, final Locale locale,
             final File dictFile, final String name) {
         super(context, getDictName(name, locale, dictFile), locale, Dictionary.TYPE_CONTACTS,
                 dictFile);
         mUseFirstLastBigrams = ContactsDictionaryUtils.useFirstLastBigramsForLocale(locale);
+        mSnapshot = new ContactsDictionarySnapshot(
+                getDictFile(context, getDictName(name, locale, dictFile), dictFile));
         mContactsManager = new ContactsManager(context);
         mContactsManager.registerForUpdates(this /* listener */);
         reloadDictionaryIfRequired();
@@ -80,19 +94,29 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
      */
     @Override
     public void loadInitialContentsLocked() {
-        loadDeviceAccountsEmailAddressesLocked();
-        loadDictionaryForUriLocked(ContactsContract.Profile.CONTENT_URI);
+        final List<String> accountVocabulary =
+                AccountUtils.getDeviceAccountsEmailAddresses(mContext);
+        loadDeviceAccountsEmailAddressesLocked(accountVocabulary);
+        final ArrayList<String> profileNames =
+                loadDictionaryForUriLocked(ContactsContract.Profile.CONTENT_URI);
         // TODO: Switch this URL to the newer ContactsContract too
-        loadDictionaryForUriLocked(Contacts.CONTENT_URI);
+        final ArrayList<String> contactNames = loadDictionaryForUriLocked(Contacts.CONTENT_URI);
+        // Since we were able to add content successfully, update the local
+        // state of the manager.
+        mContactsManager.updateLocalState(contactNames);
+        // The dictionary is flushed right after the initial contents are loaded, and a
+        // failed flush leaves no dictionary file behind, so the snapshot can't get ahead of
+        // the file.
+        mIndexedContents = new ContactsDictionarySnapshot.Contents(contactNames, profileNames,
+                accountVocabulary);
+        mSnapshot.write(mIndexedContents);
     }
 
     /**
      * Loads device accounts to the dictionary.
      */
-    private void loadDeviceAccountsEmailAddressesLocked() {
-        final List<String> accountVocabulary =
-                AccountUtils.getDeviceAccountsEmailAddresses(mContext);
-        if (accountVocabulary == null || accountVocabulary.isEmpty()) {
+    private void loadDeviceAccountsEmailAddressesLocked(final List<String> accountVocabulary) {
+        if (accountVocabulary.isEmpty()) {
             return;
         }
         for (String word : accountVocabulary) {
@@ -110,8 +134,10 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
 
     /**
      * Loads data within content providers to the dictionary.
+     *
+     * @return the names that were loaded.
      */
-    private void loadDictionaryForUriLocked(final Uri uri) {
+    private ArrayList<String> loadDictionaryForUriLocked(final Uri uri) {
         if (!PermissionsUtil.checkAllPermissionsGranted(
                 mContext, Manifest.permission.READ_CONTACTS)) {
             Log.i(TAG, "No permission to read contacts. Not loading the Dictionary.");
@@ -121,21 +147,22 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
         for (final String name : validNames) {
             addNameLocked(name);
         }
-        if (uri.equals(Contacts.CONTENT_URI)) {
-            // Since we were able to add content successfully, update the local
-            // state of the manager.
-            mContactsManager.updateLocalState(validNames);
-        }
+        return validNames;
+    }
+
+    @Override
+    void removeBinaryDictionaryLocked() {
+        mIndexedContents = null;
+        mSnapshot.delete();
+        super.removeBinaryDictionaryLocked();
     }
 
     /**
-     * Adds the words in a name (e.g., firstname/lastname) to the binary dictionary along with their
-     * bigrams depending on locale.
+     * Splits a name into the words that are added to the dictionary, in order.
      */
-    private void addNameLocked(final String name) {
+    private static ArrayList<String> getWordsInName(final String name) {
+        final ArrayList<String> words = new ArrayList<>();
         int len = StringUtils.codePointCount(name);
-        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
-                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
         // TODO: Better tokenization for non-Latin writing systems
         for (int i = 0; i < len; i++) {
             if (Character.isLetter(name.codePointAt(i))) {
@@ -149,30 +176,168 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
                 // capitalization of i.
                 final int wordLen = StringUtils.codePointCount(word);
                 if (wordLen <= MAX_WORD_LENGTH && wordLen > 1) {
-                    if (DEBUG) {
-                        Log.d(TAG, "addName " + name + ", " + word + ", "  + ngramContext);
-                    }
-                    runGCIfRequiredLocked(true /* mindsBlockByGC */);
-                    addUnigramLocked(word, ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS,
-                            null /* shortcut */, 0 /* shortcutFreq */, false /* isNotAWord */,
-                            false /* isPossiblyOffensive */,
-                            BinaryDictionary.NOT_A_VALID_TIMESTAMP);
-                    if (ngramContext.isValid() && mUseFirstLastBigrams) {
-                        runGCIfRequiredLocked(true /* mindsBlockByGC */);
-                        addNgramEntryLocked(ngramContext,
-                                word,
-                                ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS_BIGRAM,
-                                BinaryDictionary.NOT_A_VALID_TIMESTAMP);
-                    }
-                    ngramContext = ngramContext.getNextNgramContext(
-                            new NgramContext.WordInfo(word));
+                    words.add(word);
                 }
             }
         }
+        return words;
+    }
+
+    /**
+     * Adds the words in a name (e.g., firstname/lastname) to the binary dictionary along with their
+     * bigrams depending on locale.
+     */
+    private void addNameLocked(final String name) {
+        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
+                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
+        for (final String word : getWordsInName(name)) {
+            if (DEBUG) {
+                Log.d(TAG, "addName " + name + ", " + word + ", "  + ngramContext);
+            }
+            runGCIfRequiredLocked(true /* mindsBlockByGC */);
+            addUnigramLocked(word, ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS,
+                    null /* shortcut */, 0 /* shortcutFreq */, false /* isNotAWord */,
+                    false /* isPossiblyOffensive */,
+                    BinaryDictionary.NOT_A_VALID_TIMESTAMP);
+            if (ngramContext.isValid() && mUseFirstLastBigrams) {
+                runGCIfRequiredLocked(true /* mindsBlockByGC */);
+                addNgramEntryLocked(ngramContext,
+                        word,
+                        ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS_BIGRAM,
+                        BinaryDictionary.NOT_A_VALID_TIMESTAMP);
+            }
+            ngramContext = ngramContext.getNextNgramContext(new NgramContext.WordInfo(word));
+        }
+    }
+
+    /**
+     * Removes the words and n-grams of a name from the binary dictionary, except the ones that
+     * are still in use.
+     *
+     * @param name the name to remove.
+     * @param wordsInUse the words that are still in use.
+     * @param ngramsInUse the n-grams that are still in use, see {@link #getNgramKey}.
+     */
+    private void removeNameLocked(final String name, final HashSet<String> wordsInUse,
+            final HashSet<String> ngramsInUse) {
+        final BinaryDictionary binaryDictionary = getBinaryDictionary();
+        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
+                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
+        for (final String word : getWordsInName(name)) {
+            if (DEBUG) {
+                Log.d(TAG, "removeName " + name + ", " + word + ", "  + ngramContext);
+            }
+            if (ngramContext.isValid() && mUseFirstLastBigrams
+                    && !ngramsInUse.contains(getNgramKey(ngramContext, word))) {
+                binaryDictionary.removeNgramEntry(ngramContext, word);
+            }
+            if (!wordsInUse.contains(word)) {
+                binaryDictionary.removeUnigramEntry(word);
+            }
+            ngramContext = ngramContext.getNextNgramContext(new NgramContext.WordInfo(word));
+        }
+    }
+
+    private static String getNgramKey(final NgramContext ngramContext, final String word) {
+        return ngramContext.extractPrevWordsContext() + NgramContext.CONTEXT_SEPARATOR + word;
+    }
+
+    /**
+     * Collects the words and n-grams that the passed names add to the dictionary.
+     */
+    private void collectWordsAndNgrams(final Iterable<String> names,
+            final HashSet<String> outWords, final HashSet<String> outNgrams) {
+        for (final String name : names) {
+            NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
+                    BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
+            for (final String word : getWordsInName(name)) {
+                outWords.add(word);
+                if (ngramContext.isValid() && mUseFirstLastBigrams) {
+                    outNgrams.add(getNgramKey(ngramContext, word));
+                }
+                ngramContext = ngramContext.getNextNgramContext(new NgramContext.WordInfo(word));
+            }
+        }
+    }
+
+    /**
+     * Applies the names that were added to or removed from the contacts since the dictionary was
+     * last updated, instead of rebuilding the whole dictionary.
+     *
+     * Falls back to a full rebuild when the names the dictionary was built from are unknown, or
+     * when the profile names or the device accounts changed, which is rare.
+     */
+    private void updateContactsLocked() {
+        if (null == mIndexedContents) {
+            mIndexedContents = mSnapshot.read();
+        }
+        if (null == mIndexedContents) {
+            if (DEBUG) {
+                Log.d(TAG, "No contacts snapshot, rebuilding the dictionary.");
+            }
+            setNeedsToRecreate();
+            reloadDictionaryIfRequired();
+            return;
+        }
+        final ArrayList<String> profileNames =
+                mContactsManager.getValidNames(ContactsContract.Profile.CONTENT_URI);
+        final List<String> accountVocabulary =
+                AccountUtils.getDeviceAccountsEmailAddresses(mContext);
+        if (!mIndexedContents.hasSameProfileAndAccounts(profileNames, accountVocabulary)) {
+            if (DEBUG) {
+                Log.d(TAG, "Profile or accounts changed, rebuilding the dictionary.");
+            }
+            setNeedsToRecreate();
+            reloadDictionaryIfRequired();
+            return;
+        }
+        final HashSet<String> indexedNames = mIndexedContents.mContactNames;
+        final ArrayList<String> validNames = mContactsManager.getValidNames(Contacts.CONTENT_URI);
+        final HashSet<String> addedNames = new HashSet<>(validNames);
+        addedNames.removeAll(indexedNames);
+        final HashSet<String> removedNames = new HashSet<>(indexedNames);
+        removedNames.removeAll(validNames);
+        if (DEBUG) {
+            Log.d(TAG, "updateContacts: " + addedNames.size() + " added, "
+                    + removedNames.size() + " removed");
+        }
+        if (!removedNames.isEmpty()) {
+            // Words of removed names may also be part of other names, of the profile name or of
+            // an account.
+            final HashSet<String> wordsInUse = new HashSet<>();
+            final HashSet<String> ngramsInUse = new HashSet<>();
+            collectWordsAndNgrams(validNames, wordsInUse, ngramsInUse);
+            collectWordsAndNgrams(profileNames, wordsInUse, ngramsInUse);
+            wordsInUse.addAll(accountVocabulary);
+            for (final String name : removedNames) {
+                removeNameLocked(name, wordsInUse, ngramsInUse);
+            }
+        }
+        for (final String name : addedNames) {
+            addNameLocked(name);
+        }
+        mContactsManager.updateLocalState(validNames);
+        mIndexedContents = new ContactsDictionarySnapshot.Contents(validNames, profileNames,
+                accountVocabulary);
+        if (addedNames.isEmpty() && removedNames.isEmpty()) {
+            return;
+        }
+        // Only record the new names once the dictionary file contains them. If that fails, the
+        // next update after a restart can't trust the snapshot and rebuilds the dictionary.
+        if (getBinaryDictionary().flush()) {
+            mSnapshot.write(mIndexedContents);
+        } else {
+            mSnapshot.delete();
+        }
     }
 
     @Override
     public void onContactsChange() {
-        setNeedsToRecreate();
+        updateDictionaryWithWriteLock(new Runnable() {
+            @Override
+            public void run() {
+                updateContactsLocked();
+            }
+        });
     }
 }
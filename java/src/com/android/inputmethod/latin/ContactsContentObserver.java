@@ -28,6 +28,7 @@ import com.android.inputmethod.latin.ContactsManager.ContactsChangedListener;
 import com.android.inputmethod.latin.define.DebugFlags;
 import com.android.inputmethod.latin.permissions.PermissionsUtil;
 import com.android.inputmethod.latin.utils.ExecutorUtils;
+import com.android.inputmethod.latin.utils.SerialTaskQueue;
 
 import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -41,6 +42,8 @@ public class ContactsContentObserver implements Runnable {
     private final Context mContext;
     private final ContactsManager mManager;
     private final AtomicBoolean mRunning = new AtomicBoolean(false);
+    // Bursts of change notifications are coalesced into a single check.
+    private final SerialTaskQueue mTaskQueue = new SerialTaskQueue();
 
     private ContentObserver mContentObserver;
     private ContactsChangedListener mContactsChangedListener;
@@ -65,8 +68,8 @@ public class ContactsContentObserver implements Runnable {
         mContentObserver = new ContentObserver(null /* handler */) {
             @Override
             public void onChange(boolean self) {
-                ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD)
-                        .execute(ContactsContentObserver.this);
+                mTaskQueue.executeCoalesced(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_LOW,
+                        TAG /* coalescingKey */, ContactsContentObserver.this);
             }
         };
         final ContentResolver contentResolver = mContext.getContentResolver();
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.util.Log;
+
+import com.android.inputmethod.latin.common.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * What was last indexed into a contacts dictionary, persisted next to the dictionary so that
+ * later changes can be applied as a diff.
+ *
+ * The snapshot must never claim more than the dictionary file contains, so callers write it only
+ * after the dictionary has been flushed, and delete it whenever that is not possible.
+ */
+final class ContactsDictionarySnapshot {
+    private static final String TAG = ContactsDictionarySnapshot.class.getSimpleName();
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_EXTENSION = ".names";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private final File mFile;
+
+    /**
+     * The names and words that a contacts dictionary was built from.
+     */
+    public static final class Contents {
+        /**
+         * The names from {@link android.provider.ContactsContract.Contacts#CONTENT_URI}.
+         */
+        public final HashSet<String> mContactNames;
+        /**
+         * The names from {@link android.provider.ContactsContract.Profile#CONTENT_URI}.
+         */
+        public final HashSet<String> mProfileNames;
+        /**
+         * The words from the email addresses of the device accounts.
+         */
+        public final HashSet<String> mAccountWords;
+
+        public Contents(@Nonnull final Collection<String> contactNames,
+                @Nonnull final Collection<String> profileNames,
+                @Nonnull final Collection<String> accountWords) {
+            mContactNames = new HashSet<>(contactNames);
+            mProfileNames = new HashSet<>(profileNames);
+            mAccountWords = new HashSet<>(accountWords);
+        }
+
+        /**
+         * @return whether the profile names and account words are the same as these.
+         */
+        public boolean hasSameProfileAndAccounts(@Nonnull final Collection<String> profileNames,
+                @Nonnull final Collection<String> accountWords) {
+            return mProfileNames.equals(new HashSet<>(profileNames))
+                    && mAccountWords.equals(new HashSet<>(accountWords));
+        }
+    }
+
+    /**
+     * @param dictFile the dictionary file or directory this snapshot belongs to.
+     */
+    public ContactsDictionarySnapshot(@Nonnull final File dictFile) {
+        mFile = new File(dictFile.getParentFile(), dictFile.getName() + FILE_EXTENSION);
+    }
+
+    /**
+     * @return the contents of the snapshot, or null if there is no usable snapshot.
+     */
+    @Nullable
+    public Contents read() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final HashSet<String> contactNames = readStrings(in);
+            final HashSet<String> profileNames = readStrings(in);
+            return new Contents(contactNames, profileNames, readStrings(in));
+        } catch (final FileNotFoundException e) {
+            return null;
+        } catch (final IOException e) {
+            Log.e(TAG, "Can't read contacts snapshot: " + mFile.getName(), e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces the snapshot. On failure, the snapshot is deleted.
+     *
+     * @param contents what is now indexed.
+     * @return whether the snapshot was written.
+     */
+    public boolean write(@Nonnull final Contents contents) {
+        final File tempFile =
+                new File(mFile.getParentFile(), mFile.getName() + TEMP_FILE_EXTENSION);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            writeStrings(out, contents.mContactNames);
+            writeStrings(out, contents.mProfileNames);
+            writeStrings(out, contents.mAccountWords);
+            out.close();
+            out = null;
+            if (FileUtils.renameTo(tempFile, mFile)) {
+                return true;
+            }
+            Log.e(TAG, "Can't rename contacts snapshot: " + mFile.getName());
+        } catch (final IOException e) {
+            Log.e(TAG, "Can't write contacts snapshot: " + mFile.getName(), e);
+        } finally {
+            closeQuietly(out);
+        }
+        tempFile.delete();
+        delete();
+        return false;
+    }
+
+    public void delete() {
+        if (mFile.exists() && !mFile.delete()) {
+            Log.e(TAG, "Can't remove contacts snapshot: " + mFile.getName());
+        }
+    }
+
+    private static HashSet<String> readStrings(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final HashSet<String> strings = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(final DataOutputStream out,
+            final Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (final String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (null == closeable) return;
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            // Nothing more can be done.
+        }
+    }
+}
@@ -167,6 +167,14 @@ public abstract class Dictionary {
         return true;
     }
 
+    /**
+     * Subclasses may override to report the size of the data they keep open.
+     * @return an estimate of the size of this dictionary in bytes, or 0 if it is unknown.
+     */
+    public long getSizeInBytes() {
+        return 0;
+    }
+
     /**
      * Whether we think this suggestion should trigger an auto-commit. prevWord is the word
      * before the suggestion, so that we can use n-gram frequencies.
@@ -114,6 +114,15 @@ public final class DictionaryCollection extends Dictionary {
         return !mDictionaries.isEmpty();
     }
 
+    @Override
+    public long getSizeInBytes() {
+        long size = 0;
+        for (final Dictionary dict : mDictionaries) {
+            size += dict.getSizeInBytes();
+        }
+        return size;
+    }
+
     @Override
     public void close() {
         for (final Dictionary dict : mDictionaries)
@@ -121,6 +121,15 @@ public interface DictionaryFacilitator {
             final String dictNamePrefix,
             @Nullable final DictionaryInitializationListener listener);
 
+    /**
+     * Opens the main dictionary of a locale in the background, in anticipation of a call to
+     * {@link #resetDictionaries} for this locale.
+     *
+     * @param context the context to look up dictionary files with.
+     * @param locale the locale the user is expected to switch to next, or null if there is none.
+     */
+    void prefetchMainDictionary(final Context context, @Nullable final Locale locale);
+
     @UsedForTesting
     void resetDictionariesForTesting(
             final Context context,
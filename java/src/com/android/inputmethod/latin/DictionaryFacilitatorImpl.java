@@ -18,6 +18,7 @@ package com.android.inputmethod.latin;
 
 import android.Manifest;
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LruCache;
@@ -39,15 +40,21 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -68,7 +75,18 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     // dictionary.
     private static final int CAPITALIZED_FORM_MAX_PROBABILITY_FOR_INSERT = 140;
 
+    // The languages used before the current one are kept open up to this total size, so that
+    // switching back to them doesn't reload their dictionaries.
+    private static final long MAX_RECENT_DICTIONARY_GROUPS_SIZE_IN_BYTES = 64L * 1024 * 1024;
+    // How long to wait for the suggestions of the recent languages after those of the current
+    // language have been computed.
+    private static final long RECENT_LANGUAGE_SUGGESTIONS_TIMEOUT_MILLIS = 50;
+    private static final DictionaryGroup[] NO_DICTIONARY_GROUPS = new DictionaryGroup[0];
+
     private DictionaryGroup mDictionaryGroup = new DictionaryGroup();
+    // The dictionary groups of the languages used before the current one, the most recently used
+    // first. Only replaced while holding mLock.
+    private volatile DictionaryGroup[] mRecentDictionaryGroups = NO_DICTIONARY_GROUPS;
     private volatile CountDownLatch mLatchForWaitingLoadingMainDictionaries = new CountDownLatch(0);
     // To synchronize assigning mDictionaryGroup to ensure closing dictionaries.
     private final Object mLock = new Object();
@@ -86,6 +104,9 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     private static final Class<?>[] DICT_FACTORY_METHOD_ARG_TYPES =
             new Class[] { Context.class, Locale.class, File.class, String.class, String.class };
 
+    private final NextWordPredictionCache mNextWordPredictionCache =
+            new NextWordPredictionCache();
+
     private LruCache<String, Boolean> mValidSpellingWordReadCache;
     private LruCache<String, Boolean> mValidSpellingWordWriteCache;
 
@@ -214,6 +235,21 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 dict.close();
             }
         }
+
+        /**
+         * @return the size of the main dictionary and of the sub-dictionaries (contacts, user
+         *         history, personal...) of this group.
+         */
+        public long getSizeInBytes() {
+            long size = 0;
+            for (final String dictType : ALL_DICTIONARY_TYPES) {
+                final Dictionary dict = getDict(dictType);
+                if (dict != null) {
+                    size += dict.getSizeInBytes();
+                }
+            }
+            return size;
+        }
     }
 
     public DictionaryFacilitatorImpl() {
@@ -275,6 +311,81 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         return locale.equals(dictionaryGroup.mLocale) ? dictionaryGroup : null;
     }
 
+    @Nullable
+    static DictionaryGroup findDictionaryGroupWithLocale(final DictionaryGroup[] dictionaryGroups,
+            final Locale locale) {
+        for (final DictionaryGroup dictionaryGroup : dictionaryGroups) {
+            if (locale.equals(dictionaryGroup.mLocale)) {
+                return dictionaryGroup;
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(final DictionaryGroup[] dictionaryGroups,
+            final DictionaryGroup dictionaryGroup) {
+        for (final DictionaryGroup group : dictionaryGroups) {
+            if (group == dictionaryGroup) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeDictionaryGroups(final List<DictionaryGroup> dictionaryGroups) {
+        for (final DictionaryGroup dictionaryGroup : dictionaryGroups) {
+            for (final String dictType : ALL_DICTIONARY_TYPES) {
+                dictionaryGroup.closeDict(dictType);
+            }
+        }
+    }
+
+    /**
+     * Keeps the dictionary group that is being replaced open as a recent language, and evicts
+     * the least recently used languages beyond {@link #MAX_RECENT_DICTIONARY_GROUPS_SIZE_IN_BYTES}.
+     * Must be called while holding mLock.
+     *
+     * @param previousDictionaryGroup the dictionary group that is being replaced.
+     * @param reusedDictionaryGroup the dictionary group whose dictionaries are reused by the new
+     *        one, if any. It is not kept.
+     * @param evictAll whether to evict all the recent languages, e.g. because the dictionary
+     *        files may have changed.
+     * @return the evicted dictionary groups, to be closed.
+     */
+    @Nonnull
+    private ArrayList<DictionaryGroup> updateRecentDictionaryGroups(
+            @Nonnull final DictionaryGroup previousDictionaryGroup,
+            @Nullable final DictionaryGroup reusedDictionaryGroup, final boolean evictAll) {
+        final ArrayList<DictionaryGroup> candidates = new ArrayList<>();
+        if (null != previousDictionaryGroup.mLocale
+                && previousDictionaryGroup != reusedDictionaryGroup) {
+            previousDictionaryGroup.mWeightForTypingInLocale =
+                    DictionaryGroup.WEIGHT_FOR_TYPING_IN_NOT_MOST_PROBABLE_LANGUAGE;
+            previousDictionaryGroup.mWeightForGesturingInLocale =
+                    DictionaryGroup.WEIGHT_FOR_GESTURING_IN_NOT_MOST_PROBABLE_LANGUAGE;
+            candidates.add(previousDictionaryGroup);
+        }
+        for (final DictionaryGroup dictionaryGroup : mRecentDictionaryGroups) {
+            if (dictionaryGroup != reusedDictionaryGroup) {
+                candidates.add(dictionaryGroup);
+            }
+        }
+        final ArrayList<DictionaryGroup> recentDictionaryGroups = new ArrayList<>();
+        final ArrayList<DictionaryGroup> evictedDictionaryGroups = new ArrayList<>();
+        long size = 0;
+        for (final DictionaryGroup dictionaryGroup : candidates) {
+            size += dictionaryGroup.getSizeInBytes();
+            if (evictAll || size > MAX_RECENT_DICTIONARY_GROUPS_SIZE_IN_BYTES) {
+                evictedDictionaryGroups.add(dictionaryGroup);
+            } else {
+                recentDictionaryGroups.add(dictionaryGroup);
+            }
+        }
+        mRecentDictionaryGroups = recentDictionaryGroups.toArray(
+                new DictionaryGroup[recentDictionaryGroups.size()]);
+        return evictedDictionaryGroups;
+    }
+
     @Override
     public void resetDictionaries(
             final Context context,
@@ -303,8 +414,13 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         // Gather all dictionaries. We'll remove them from the list to clean up later.
         final ArrayList<String> dictTypeForLocale = new ArrayList<>();
         existingDictionariesToCleanup.put(newLocale, dictTypeForLocale);
-        final DictionaryGroup currentDictionaryGroupForLocale =
+        DictionaryGroup currentDictionaryGroupForLocale =
                 findDictionaryGroupWithLocale(mDictionaryGroup, newLocale);
+        if (currentDictionaryGroupForLocale == null && !forceReloadMainDictionary) {
+            // Switching back to a recent language reuses its dictionaries.
+            currentDictionaryGroupForLocale =
+                    findDictionaryGroupWithLocale(mRecentDictionaryGroups, newLocale);
+        }
         if (currentDictionaryGroupForLocale != null) {
             for (final String dictType : DYNAMIC_DICTIONARY_TYPES) {
                 if (currentDictionaryGroupForLocale.hasDict(dictType, account)) {
@@ -316,12 +432,15 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             }
         }
 
-        final DictionaryGroup dictionaryGroupForLocale =
-                findDictionaryGroupWithLocale(mDictionaryGroup, newLocale);
+        final DictionaryGroup dictionaryGroupForLocale = currentDictionaryGroupForLocale;
         final ArrayList<String> dictTypesToCleanupForLocale =
                 existingDictionariesToCleanup.get(newLocale);
         final boolean noExistingDictsForThisLocale = (null == dictionaryGroupForLocale);
 
+        if (forceReloadMainDictionary) {
+            // The dictionary files may have changed, so a prefetched dictionary may be stale.
+            MainDictionaryLoader.getInstance().clearPrefetchedMainDictionary();
+        }
         final Dictionary mainDict;
         if (forceReloadMainDictionary || noExistingDictsForThisLocale
                 || !dictionaryGroupForLocale.hasDict(Dictionary.TYPE_MAIN, account)) {
@@ -350,9 +469,10 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 new DictionaryGroup(newLocale, mainDict, account, subDicts);
 
         // Replace Dictionaries.
-        final DictionaryGroup oldDictionaryGroup;
+        final ArrayList<DictionaryGroup> evictedDictionaryGroups;
         synchronized (mLock) {
-            oldDictionaryGroup = mDictionaryGroup;
+            evictedDictionaryGroups = updateRecentDictionaryGroups(mDictionaryGroup,
+                    dictionaryGroupForLocale, forceReloadMainDictionary);
             mDictionaryGroup = newDictionaryGroup;
             if (hasAtLeastOneUninitializedMainDictionary()) {
                 asyncReloadUninitializedMainDictionaries(context, newLocale, listener);
@@ -366,13 +486,13 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         for (final Locale localeToCleanUp : existingDictionariesToCleanup.keySet()) {
             final ArrayList<String> dictTypesToCleanUp =
                     existingDictionariesToCleanup.get(localeToCleanUp);
-            final DictionaryGroup dictionarySetToCleanup =
-                    findDictionaryGroupWithLocale(oldDictionaryGroup, localeToCleanUp);
             for (final String dictType : dictTypesToCleanUp) {
-                dictionarySetToCleanup.closeDict(dictType);
+                dictionaryGroupForLocale.closeDict(dictType);
             }
         }
+        closeDictionaryGroups(evictedDictionaryGroups);
 
+        mNextWordPredictionCache.clear();
         if (mValidSpellingWordWriteCache != null) {
             mValidSpellingWordWriteCache.evictAll();
         }
@@ -382,7 +502,9 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             final Locale locale, final DictionaryInitializationListener listener) {
         final CountDownLatch latchForWaitingLoadingMainDictionary = new CountDownLatch(1);
         mLatchForWaitingLoadingMainDictionaries = latchForWaitingLoadingMainDictionary;
-        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+        // Main dictionaries are loaded on their own thread, so that they don't have to wait for
+        // user history updates and flushes that run on the keyboard executor.
+        MainDictionaryLoader.getInstance().execute(new Runnable() {
             @Override
             public void run() {
                 doReloadUninitializedMainDictionaries(
@@ -401,13 +523,14 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             Log.w(TAG, "Expected a dictionary group for " + locale + " but none found");
             return;
         }
-        final Dictionary mainDict =
-                DictionaryFactory.createMainDictionaryFromManager(context, locale);
+        final Dictionary mainDict = MainDictionaryLoader.getInstance().loadMainDictionary(
+                context, locale, null /* listener */);
         synchronized (mLock) {
-            if (locale.equals(dictionaryGroup.mLocale)) {
+            if (dictionaryGroup == mDictionaryGroup
+                    || contains(mRecentDictionaryGroups, dictionaryGroup)) {
                 dictionaryGroup.setMainDict(mainDict);
             } else {
-                // Dictionary facilitator has been reset for another locale.
+                // Dictionary facilitator has been reset, and the group has been closed.
                 mainDict.close();
             }
         }
@@ -417,6 +540,16 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         latchForWaitingLoadingMainDictionary.countDown();
     }
 
+    @Override
+    public void prefetchMainDictionary(final Context context, @Nullable final Locale locale) {
+        if (null != locale && (locale.equals(mDictionaryGroup.mLocale)
+                || null != findDictionaryGroupWithLocale(mRecentDictionaryGroups, locale))) {
+            // Already loaded or being loaded.
+            return;
+        }
+        MainDictionaryLoader.getInstance().prefetchMainDictionary(context, locale);
+    }
+
     @UsedForTesting
     public void resetDictionariesForTesting(final Context context, final Locale locale,
             final ArrayList<String> dictionaryTypes, final HashMap<String, File> dictionaryFiles,
@@ -445,18 +578,28 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 subDicts.put(dictType, dict);
             }
         }
-        mDictionaryGroup = new DictionaryGroup(locale, mainDictionary, account, subDicts);
+        final DictionaryGroup[] recentDictionaryGroups;
+        synchronized (mLock) {
+            recentDictionaryGroups = mRecentDictionaryGroups;
+            mRecentDictionaryGroups = NO_DICTIONARY_GROUPS;
+            mDictionaryGroup = new DictionaryGroup(locale, mainDictionary, account, subDicts);
+        }
+        closeDictionaryGroups(Arrays.asList(recentDictionaryGroups));
+        mNextWordPredictionCache.clear();
     }
 
     public void closeDictionaries() {
-        final DictionaryGroup dictionaryGroupToClose;
+        final ArrayList<DictionaryGroup> dictionaryGroupsToClose = new ArrayList<>();
         synchronized (mLock) {
-            dictionaryGroupToClose = mDictionaryGroup;
+            dictionaryGroupsToClose.add(mDictionaryGroup);
+            dictionaryGroupsToClose.addAll(Arrays.asList(mRecentDictionaryGroups));
             mDictionaryGroup = new DictionaryGroup();
+            mRecentDictionaryGroups = NO_DICTIONARY_GROUPS;
         }
-        for (final String dictType : ALL_DICTIONARY_TYPES) {
-            dictionaryGroupToClose.closeDict(dictType);
-        }
+        mNextWordPredictionCache.clear();
+        closeDictionaryGroups(dictionaryGroupsToClose);
+        // Nothing would take the prefetched main dictionary anymore.
+        MainDictionaryLoader.getInstance().clearPrefetchedMainDictionary();
     }
 
     @UsedForTesting
@@ -511,11 +654,37 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             addWordToUserHistory(mDictionaryGroup, ngramContextForCurrentWord, currentWord,
                     wasCurrentWordAutoCapitalized, (int) timeStampInSeconds,
                     blockPotentiallyOffensive);
+            evictNextWordPredictions(ngramContextForCurrentWord, currentWord);
             ngramContextForCurrentWord =
                     ngramContextForCurrentWord.getNextNgramContext(new WordInfo(currentWord));
         }
     }
 
+    /**
+     * Evicts the cached predictions that learning or unlearning a word changes. The user history
+     * dictionary is updated asynchronously, so this is done again once the update is applied.
+     */
+    private void evictNextWordPredictions(@Nonnull final NgramContext ngramContext,
+            @Nonnull final String word) {
+        final DictionaryGroup dictionaryGroup = mDictionaryGroup;
+        final Locale locale = dictionaryGroup.mLocale;
+        if (null == locale) {
+            return;
+        }
+        mNextWordPredictionCache.evict(ngramContext, word, locale);
+        final ExpandableBinaryDictionary userHistoryDictionary =
+                dictionaryGroup.getSubDict(Dictionary.TYPE_USER_HISTORY);
+        if (null == userHistoryDictionary) {
+            return;
+        }
+        userHistoryDictionary.runAfterPendingTasks(new Runnable() {
+            @Override
+            public void run() {
+                mNextWordPredictionCache.evict(ngramContext, word, locale);
+            }
+        });
+    }
+
     private void putWordIntoValidSpellingWordCache(
             @Nonnull final String caller,
             @Nonnull final String originalWord) {
@@ -604,6 +773,7 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         // TODO: Decide whether or not to remove the word on EVENT_BACKSPACE.
         if (eventType != Constants.EVENT_BACKSPACE) {
             removeWord(Dictionary.TYPE_USER_HISTORY, word);
+            evictNextWordPredictions(ngramContext, word);
         }
 
         // Update the spelling cache after unlearning. Words that are removed from user history
@@ -613,33 +783,170 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
 
     // TODO: Revise the way to fusion suggestion results.
     @Override
-    @Nonnull public SuggestionResults getSuggestionResults(ComposedData composedData,
-            NgramContext ngramContext, @Nonnull final Keyboard keyboard,
-            SettingsValuesForSuggestion settingsValuesForSuggestion, int sessionId,
-            int inputStyle) {
-        long proximityInfoHandle = keyboard.getProximityInfo().getNativeProximityInfo();
+    @Nonnull public SuggestionResults getSuggestionResults(final ComposedData composedData,
+            final NgramContext ngramContext, @Nonnull final Keyboard keyboard,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId,
+            final int inputStyle) {
+        // Predictions don't depend on the keyboard, and contexts come back often.
+        final boolean isPrediction = !composedData.mIsBatchMode
+                && composedData.mTypedWord.isEmpty() && ngramContext.isValid();
+        final List<Object> dictionaryState;
+        final int predictionCacheGeneration;
+        if (isPrediction) {
+            dictionaryState = getDictionaryState(settingsValuesForSuggestion);
+            final SuggestionResults cachedPredictions =
+                    mNextWordPredictionCache.get(ngramContext, dictionaryState);
+            if (null != cachedPredictions) {
+                return cachedPredictions;
+            }
+            predictionCacheGeneration = mNextWordPredictionCache.getGeneration();
+        } else {
+            dictionaryState = null;
+            predictionCacheGeneration = 0;
+        }
+        final long proximityInfoHandle = keyboard.getProximityInfo().getNativeProximityInfo();
+        // The recent languages are looked up on another thread while the current one is. That
+        // executor has a single thread, so that the sessions of a dictionary are never used by
+        // two lookups at once, even when one has timed out.
+        final DictionaryGroup[] recentDictionaryGroups =
+                settingsValuesForSuggestion.mUseRecentLanguages
+                        ? mRecentDictionaryGroups : NO_DICTIONARY_GROUPS;
+        final ArrayList<ArrayList<SuggestedWordInfo>> recentLanguageSuggestions =
+                new ArrayList<>();
+        final ArrayList<Future<Boolean>> recentLanguageTasks = new ArrayList<>();
+        for (final DictionaryGroup dictionaryGroup : recentDictionaryGroups) {
+            final ArrayList<SuggestedWordInfo> suggestions = new ArrayList<>();
+            recentLanguageSuggestions.add(suggestions);
+            recentLanguageTasks.add(ExecutorUtils.getBackgroundExecutor(ExecutorUtils.SUGGESTION)
+                    .submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return getSuggestions(dictionaryGroup, composedData, ngramContext,
+                                    proximityInfoHandle, settingsValuesForSuggestion, sessionId,
+                                    suggestions);
+                        }
+                    }));
+        }
+        final DictionaryGroup dictionaryGroup = mDictionaryGroup;
+        final ArrayList<SuggestedWordInfo> suggestions = new ArrayList<>();
+        boolean hasAllDictionarySuggestions = getSuggestions(dictionaryGroup, composedData,
+                ngramContext, proximityInfoHandle, settingsValuesForSuggestion, sessionId,
+                suggestions);
+        final long deadlineMillis =
+                SystemClock.uptimeMillis() + RECENT_LANGUAGE_SUGGESTIONS_TIMEOUT_MILLIS;
+        for (int i = 0; i < recentLanguageTasks.size(); i++) {
+            final Future<Boolean> task = recentLanguageTasks.get(i);
+            if (waitForRecentLanguageSuggestions(task, deadlineMillis)) {
+                suggestions.addAll(recentLanguageSuggestions.get(i));
+            } else {
+                // Interrupting the lookup stops it before its next dictionary, and makes a
+                // dynamic dictionary give up waiting for its lock.
+                task.cancel(true /* mayInterruptIfRunning */);
+                hasAllDictionarySuggestions = false;
+            }
+        }
+        // The scores already account for the weight of the language of each dictionary group.
         final SuggestionResults suggestionResults = new SuggestionResults(
                 SuggestedWords.MAX_SUGGESTIONS, ngramContext.isBeginningOfSentenceContext(),
                 false /* firstSuggestionExceedsConfidenceThreshold */);
+        suggestionResults.addAll(suggestions);
+        if (null != suggestionResults.mRawSuggestions) {
+            suggestionResults.mRawSuggestions.addAll(suggestions);
+        }
+        final Locale locale = dictionaryGroup.mLocale;
+        if (isPrediction && hasAllDictionarySuggestions && null != locale) {
+            mNextWordPredictionCache.put(ngramContext, dictionaryState,
+                    predictionCacheGeneration, suggestionResults, locale);
+        }
+        return suggestionResults;
+    }
+
+    /**
+     * Gets the suggestions of the dictionaries of a group, weighted for its language.
+     *
+     * @param outSuggestions the list to add the suggestions to.
+     * @return whether all the dictionaries returned suggestions.
+     */
+    private static boolean getSuggestions(@Nonnull final DictionaryGroup dictionaryGroup,
+            final ComposedData composedData, final NgramContext ngramContext,
+            final long proximityInfoHandle,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId,
+            @Nonnull final ArrayList<SuggestedWordInfo> outSuggestions) {
         final float[] weightOfLangModelVsSpatialModel =
                 new float[] { Dictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL };
+        boolean hasAllDictionarySuggestions = true;
         for (final String dictType : ALL_DICTIONARY_TYPES) {
-            final Dictionary dictionary = mDictionaryGroup.getDict(dictType);
+            if (Thread.currentThread().isInterrupted()) {
+                // The lookup of a recent language timed out, and its results won't be used.
+                return false;
+            }
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
             if (null == dictionary) continue;
             final float weightForLocale = composedData.mIsBatchMode
-                    ? mDictionaryGroup.mWeightForGesturingInLocale
-                    : mDictionaryGroup.mWeightForTypingInLocale;
+                    ? dictionaryGroup.mWeightForGesturingInLocale
+                    : dictionaryGroup.mWeightForTypingInLocale;
             final ArrayList<SuggestedWordInfo> dictionarySuggestions =
                     dictionary.getSuggestions(composedData, ngramContext,
                             proximityInfoHandle, settingsValuesForSuggestion, sessionId,
                             weightForLocale, weightOfLangModelVsSpatialModel);
-            if (null == dictionarySuggestions) continue;
-            suggestionResults.addAll(dictionarySuggestions);
-            if (null != suggestionResults.mRawSuggestions) {
-                suggestionResults.mRawSuggestions.addAll(dictionarySuggestions);
+            if (null == dictionarySuggestions) {
+                // The dictionary may be loading or busy.
+                hasAllDictionarySuggestions = false;
+                continue;
+            }
+            outSuggestions.addAll(dictionarySuggestions);
+        }
+        return hasAllDictionarySuggestions;
+    }
+
+    private static boolean waitForRecentLanguageSuggestions(@Nonnull final Future<Boolean> task,
+            final long deadlineMillis) {
+        final long timeoutMillis = Math.max(0, deadlineMillis - SystemClock.uptimeMillis());
+        try {
+            return task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            // The suggestions of the current language are not held up by the recent ones.
+            return false;
+        } catch (final InterruptedException | ExecutionException | CancellationException e) {
+            Log.e(TAG, "Failed to get the suggestions of a recent language", e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns what predictions depend on besides their context: the settings, and the identity
+     * and contents of the dictionaries. Learning doesn't change the state of the user history
+     * dictionary, see {@link NextWordPredictionCache}.
+     */
+    @Nonnull
+    private List<Object> getDictionaryState(
+            @Nonnull final SettingsValuesForSuggestion settingsValuesForSuggestion) {
+        final ArrayList<Object> state = new ArrayList<>();
+        state.add(settingsValuesForSuggestion.mBlockPotentiallyOffensive);
+        state.add(settingsValuesForSuggestion.mUseRecentLanguages);
+        addDictionaryState(mDictionaryGroup, state);
+        if (settingsValuesForSuggestion.mUseRecentLanguages) {
+            for (final DictionaryGroup dictionaryGroup : mRecentDictionaryGroups) {
+                addDictionaryState(dictionaryGroup, state);
+            }
+        }
+        return state;
+    }
+
+    private static void addDictionaryState(@Nonnull final DictionaryGroup dictionaryGroup,
+            @Nonnull final ArrayList<Object> outState) {
+        outState.add(dictionaryGroup);
+        outState.add(dictionaryGroup.mWeightForTypingInLocale);
+        for (final String dictType : ALL_DICTIONARY_TYPES) {
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
+            outState.add(dictionary);
+            if (dictionary instanceof ExpandableBinaryDictionary
+                    && !Dictionary.TYPE_USER_HISTORY.equals(dictType)) {
+                outState.add(((ExpandableBinaryDictionary)dictionary).getContentVersion());
+            } else if (null != dictionary) {
+                outState.add(dictionary.isInitialized());
             }
         }
-        return suggestionResults;
     }
 
     public boolean isValidSpellingWord(final String word) {
@@ -704,6 +1011,18 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
 
     @Override
     public boolean clearUserHistoryDictionary(final Context context) {
+        mNextWordPredictionCache.clear();
+        final ExpandableBinaryDictionary userHistoryDictionary =
+                mDictionaryGroup.getSubDict(Dictionary.TYPE_USER_HISTORY);
+        if (null != userHistoryDictionary) {
+            // Predictions may be computed before the dictionary is actually cleared.
+            userHistoryDictionary.runAfterPendingTasks(new Runnable() {
+                @Override
+                public void run() {
+                    mNextWordPredictionCache.clear();
+                }
+            });
+        }
         return clearSubDictionary(Dictionary.TYPE_USER_HISTORY);
     }
 
@@ -25,7 +25,6 @@ import com.android.inputmethod.latin.utils.DictionaryInfoUtils;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.Locale;
 
 /**
@@ -51,23 +50,17 @@ public final class DictionaryFactory {
                     createReadOnlyBinaryDictionary(context, locale));
         }
 
-        final LinkedList<Dictionary> dictList = new LinkedList<>();
         final ArrayList<AssetFileAddress> assetFileList =
                 BinaryDictionaryGetter.getDictionaryFiles(locale, context, true);
-        if (null != assetFileList) {
-            for (final AssetFileAddress f : assetFileList) {
-                final ReadOnlyBinaryDictionary readOnlyBinaryDictionary =
-                        new ReadOnlyBinaryDictionary(f.mFilename, f.mOffset, f.mLength,
+        final ArrayList<Dictionary> dictList = openMainDictionaryParts(context, assetFileList,
+                new MainDictionaryPartOpener() {
+                    @Override
+                    public ReadOnlyBinaryDictionary open(final int index,
+                            final AssetFileAddress f) {
+                        return new ReadOnlyBinaryDictionary(f.mFilename, f.mOffset, f.mLength,
                                 false /* useFullEditDistance */, locale, Dictionary.TYPE_MAIN);
-                if (readOnlyBinaryDictionary.isValidDictionary()) {
-                    dictList.add(readOnlyBinaryDictionary);
-                } else {
-                    readOnlyBinaryDictionary.close();
-                    // Prevent this dictionary to do any further harm.
-                    killDictionary(context, f);
-                }
-            }
-        }
+                    }
+                });
 
         // If the list is empty, that means we should not use any dictionary (for example, the user
         // explicitly disabled the main dictionary), so the following is okay. dictList is never
@@ -75,6 +68,49 @@ public final class DictionaryFactory {
         return new DictionaryCollection(Dictionary.TYPE_MAIN, locale, dictList);
     }
 
+    /**
+     * Opens one part of a main dictionary.
+     */
+    interface MainDictionaryPartOpener {
+        /**
+         * @param index the index of the part in the list of parts.
+         * @param f the address of the part.
+         * @return the part, or null if it could not be opened.
+         */
+        ReadOnlyBinaryDictionary open(int index, AssetFileAddress f);
+    }
+
+    /**
+     * Opens the parts of a main dictionary in priority order, and kills the invalid ones.
+     * @param context The context to contact the dictionary provider, if possible.
+     * @param assetFileList the addresses of the parts, or null if there are none.
+     * @param partOpener opens each part.
+     * @return the valid parts, in priority order.
+     */
+    static ArrayList<Dictionary> openMainDictionaryParts(final Context context,
+            final ArrayList<AssetFileAddress> assetFileList,
+            final MainDictionaryPartOpener partOpener) {
+        final ArrayList<Dictionary> dictList = new ArrayList<>();
+        if (null == assetFileList) {
+            return dictList;
+        }
+        for (int i = 0; i < assetFileList.size(); ++i) {
+            final AssetFileAddress f = assetFileList.get(i);
+            final ReadOnlyBinaryDictionary readOnlyBinaryDictionary = partOpener.open(i, f);
+            if (null == readOnlyBinaryDictionary) {
+                continue;
+            }
+            if (readOnlyBinaryDictionary.isValidDictionary()) {
+                dictList.add(readOnlyBinaryDictionary);
+            } else {
+                readOnlyBinaryDictionary.close();
+                // Prevent this dictionary to do any further harm.
+                killDictionary(context, f);
+            }
+        }
+        return dictList;
+    }
+
     /**
      * Kills a dictionary so that it is never used again, if possible.
      * @param context The context to contact the dictionary provider, if possible.
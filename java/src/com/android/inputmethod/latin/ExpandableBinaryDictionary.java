@@ -32,6 +32,7 @@ import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.AsyncResultHolder;
 import com.android.inputmethod.latin.utils.CombinedFormatUtils;
 import com.android.inputmethod.latin.utils.ExecutorUtils;
+import com.android.inputmethod.latin.utils.SerialTaskQueue;
 import com.android.inputmethod.latin.utils.WordInputEventForPersonalization;
 
 import java.io.File;
@@ -42,6 +43,7 @@ import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -67,6 +69,10 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     private static final int TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS = 100;
 
+    // Keys used to coalesce repeated flush and GC requests that have not started yet.
+    private static final String TASK_KEY_FLUSH = "Flush";
+    private static final String TASK_KEY_GC = "GC";
+
     /**
      * The maximum length of a word in this dictionary.
      */
@@ -104,6 +110,18 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     private final ReentrantReadWriteLock mLock;
 
+    /**
+     * Incremented by each task that runs with the write lock, that is each task that may change
+     * the contents of the dictionary.
+     */
+    private final AtomicInteger mContentVersion = new AtomicInteger();
+
+    /**
+     * Runs the tasks of this dictionary in order. Tasks of different dictionaries run in parallel
+     * on the lanes of {@link ExecutorUtils}.
+     */
+    private final SerialTaskQueue mTaskQueue;
+
     private Map<String, String> mAdditionalAttributeMap = null;
 
     /* A extension for a binary dictionary file. */
@@ -149,6 +167,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         mIsReloading = new AtomicBoolean();
         mNeedsToRecreate = false;
         mLock = new ReentrantReadWriteLock();
+        mTaskQueue = new SerialTaskQueue();
     }
 
     public static File getDictFile(final Context context, final String dictName,
@@ -162,24 +181,57 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         return dictFile != null ? dictFile.getName() : name + "." + locale.toString();
     }
 
-    private void asyncExecuteTaskWithWriteLock(final Runnable task) {
-        asyncExecuteTaskWithLock(mLock.writeLock(), task);
+    private void asyncExecuteTaskWithWriteLock(final String lane, final int priority,
+            final Runnable task) {
+        asyncExecuteTaskWithLock(mLock.writeLock(), lane, priority, null /* coalescingKey */, task);
     }
 
-    private static void asyncExecuteTaskWithLock(final Lock lock, final Runnable task) {
-        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+    /**
+     * Runs a task after all the tasks previously submitted for this dictionary.
+     *
+     * @param lock the lock to hold while running the task.
+     * @param lane the lane of {@link ExecutorUtils} to run the task on.
+     * @param priority the priority of the task in its lane.
+     * @param coalescingKey if the last pending task of this dictionary has this key, the task is
+     *        dropped. May be null.
+     * @param task the task.
+     */
+    private void asyncExecuteTaskWithLock(final Lock lock, final String lane, final int priority,
+            final String coalescingKey, final Runnable task) {
+        mTaskQueue.executeCoalesced(lane, priority, coalescingKey, new Runnable() {
             @Override
             public void run() {
                 lock.lock();
                 try {
                     task.run();
                 } finally {
+                    if (lock == mLock.writeLock()) {
+                        mContentVersion.incrementAndGet();
+                    }
                     lock.unlock();
                 }
             }
         });
     }
 
+    /**
+     * Returns the version of the contents of this dictionary. It changes whenever the dictionary
+     * is updated, reloaded or garbage collected, so results read from the dictionary remain valid
+     * as long as it is the same.
+     */
+    public int getContentVersion() {
+        return mContentVersion.get();
+    }
+
+    /**
+     * Runs a task once all the tasks previously submitted for this dictionary, such as updates,
+     * have been run.
+     */
+    public void runAfterPendingTasks(@Nonnull final Runnable task) {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.BACKGROUND_WRITE,
+                ExecutorUtils.PRIORITY_NORMAL, null /* coalescingKey */, task);
+    }
+
     @Nullable
     BinaryDictionary getBinaryDictionary() {
         return mBinaryDictionary;
@@ -197,7 +249,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      */
     @Override
     public void close() {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_NORMAL,
+                new Runnable() {
             @Override
             public void run() {
                 closeBinaryDictionary();
@@ -218,7 +271,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     }
 
     private void removeBinaryDictionary() {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_NORMAL,
+                new Runnable() {
             @Override
             public void run() {
                 removeBinaryDictionaryLocked();
@@ -246,7 +300,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     }
 
     public void clear() {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_NORMAL,
+                new Runnable() {
             @Override
             public void run() {
                 removeBinaryDictionaryLocked();
@@ -259,7 +314,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      * Check whether GC is needed and run GC if required.
      */
     public void runGCIfRequired(final boolean mindsBlockByGC) {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithLock(mLock.writeLock(), ExecutorUtils.BULK_IO,
+                ExecutorUtils.PRIORITY_LOW, TASK_KEY_GC, new Runnable() {
             @Override
             public void run() {
                 if (getBinaryDictionary() == null) {
@@ -276,7 +332,11 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         }
     }
 
-    private void updateDictionaryWithWriteLock(@Nonnull final Runnable updateTask) {
+    /**
+     * Runs an update task with the write lock held, once the dictionary has been loaded. The task
+     * is skipped if the dictionary can't be loaded.
+     */
+    protected void updateDictionaryWithWriteLock(@Nonnull final Runnable updateTask) {
         reloadDictionaryIfRequired();
         final Runnable task = new Runnable() {
             @Override
@@ -288,7 +348,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 updateTask.run();
             }
         };
-        asyncExecuteTaskWithWriteLock(task);
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BACKGROUND_WRITE,
+                ExecutorUtils.PRIORITY_NORMAL, task);
     }
 
     /**
@@ -320,7 +381,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      */
     public void removeUnigramEntryDynamically(final String word) {
         reloadDictionaryIfRequired();
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BACKGROUND_WRITE,
+                ExecutorUtils.PRIORITY_NORMAL, new Runnable() {
             @Override
             public void run() {
                 final BinaryDictionary binaryDictionary = getBinaryDictionary();
@@ -343,7 +405,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     public void addNgramEntry(@Nonnull final NgramContext ngramContext, final String word,
             final int frequency, final int timestamp) {
         reloadDictionaryIfRequired();
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BACKGROUND_WRITE,
+                ExecutorUtils.PRIORITY_NORMAL, new Runnable() {
             @Override
             public void run() {
                 if (getBinaryDictionary() == null) {
@@ -408,7 +471,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             @Nonnull final ArrayList<WordInputEventForPersonalization> inputEvents,
             final UpdateEntriesForInputEventsCallback callback) {
         reloadDictionaryIfRequired();
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BACKGROUND_WRITE,
+                ExecutorUtils.PRIORITY_NORMAL, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -428,6 +492,15 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         });
     }
 
+    /**
+     * The size of a dynamic dictionary is that of its files, which the native code reads in
+     * memory as a whole.
+     */
+    @Override
+    public long getSizeInBytes() {
+        return FileUtils.getSizeRecursively(mDictFile);
+    }
+
     @Override
     public ArrayList<SuggestedWordInfo> getSuggestions(final ComposedData composedData,
             final NgramContext ngramContext, final long proximityInfoHandle,
@@ -599,7 +672,10 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             return;
         }
         final File dictFile = mDictFile;
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        // The user typically waits on a reload, so it goes ahead of pending flushes and GCs of
+        // other dictionaries.
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_HIGH,
+                new Runnable() {
             @Override
             public void run() {
                 try {
@@ -633,7 +709,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      * Flush binary dictionary to dictionary file.
      */
     public void asyncFlushBinaryDictionary() {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithLock(mLock.writeLock(), ExecutorUtils.BULK_IO,
+                ExecutorUtils.PRIORITY_LOW, TASK_KEY_FLUSH, new Runnable() {
             @Override
             public void run() {
                 final BinaryDictionary binaryDictionary = getBinaryDictionary();
@@ -655,7 +732,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         final File dictFile = mDictFile;
         final AsyncResultHolder<DictionaryStats> result =
                 new AsyncResultHolder<>("DictionaryStats");
-        asyncExecuteTaskWithLock(mLock.readLock(), new Runnable() {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.LATENCY_CRITICAL,
+                ExecutorUtils.PRIORITY_HIGH, null /* coalescingKey */, new Runnable() {
             @Override
             public void run() {
                 result.set(new DictionaryStats(mLocale, dictName, dictName, dictFile, 0));
@@ -667,7 +745,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     @UsedForTesting
     public void waitAllTasksForTests() {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LATENCY_CRITICAL, ExecutorUtils.PRIORITY_NORMAL,
+                new Runnable() {
             @Override
             public void run() {
                 countDownLatch.countDown();
@@ -691,7 +770,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         reloadDictionaryIfRequired();
         final String tag = TAG;
         final String dictName = mDictName;
-        asyncExecuteTaskWithLock(mLock.readLock(), new Runnable() {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.BULK_IO,
+                ExecutorUtils.PRIORITY_LOW, null /* coalescingKey */, new Runnable() {
             @Override
             public void run() {
                 Log.d(tag, "Dump dictionary: " + dictName + " for " + mLocale);
@@ -730,7 +810,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         reloadDictionaryIfRequired();
         final AsyncResultHolder<WordProperty[]> result =
                 new AsyncResultHolder<>("WordPropertiesForSync");
-        asyncExecuteTaskWithLock(mLock.readLock(), new Runnable() {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.LATENCY_CRITICAL,
+                ExecutorUtils.PRIORITY_HIGH, null /* coalescingKey */, new Runnable() {
             @Override
             public void run() {
                 final ArrayList<WordProperty> wordPropertyList = new ArrayList<>();
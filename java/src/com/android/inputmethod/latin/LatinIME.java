@@ -250,8 +250,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             switch (msg.what) {
             case MSG_UPDATE_SUGGESTION_STRIP:
                 cancelUpdateSuggestionStrip();
-                latinIme.mInputLogic.performUpdateSuggestionStripSync(
-                        latinIme.mSettings.getCurrent(), msg.arg1 /* inputStyle */);
+                latinIme.mInputLogic.performUpdateSuggestionStrip(
+                        latinIme.mSettings.getCurrent(), msg.arg1 /* inputStyle */,
+                        switcher.getKeyboard(), switcher.getKeyboardShiftMode());
                 break;
             case MSG_UPDATE_SHIFT_STATE:
                 switcher.requestUpdatingShiftState(latinIme.getCurrentAutoCapsState(),
@@ -370,12 +371,24 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             return hasMessages(MSG_WAIT_FOR_DICTIONARY_LOAD);
         }
 
+        /**
+         * Cancel the pending update of the suggestion strip, including the suggestions that may
+         * be computed for it already.
+         */
         public void cancelUpdateSuggestionStrip() {
             removeMessages(MSG_UPDATE_SUGGESTION_STRIP);
+            final LatinIME latinIme = getOwnerInstance();
+            if (latinIme != null) {
+                latinIme.mInputLogic.cancelPendingSuggestions();
+            }
         }
 
         public boolean hasPendingUpdateSuggestions() {
-            return hasMessages(MSG_UPDATE_SUGGESTION_STRIP);
+            if (hasMessages(MSG_UPDATE_SUGGESTION_STRIP)) {
+                return true;
+            }
+            final LatinIME latinIme = getOwnerInstance();
+            return latinIme != null && latinIme.mInputLogic.isWaitingForSuggestions();
         }
 
         public boolean hasPendingReopenDictionaries() {
@@ -711,6 +724,10 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                 false /* forceReloadMainDictionary */,
                 settingsValues.mAccount, "" /* dictNamePrefix */,
                 this /* DictionaryInitializationListener */);
+        // Get the dictionary of the language the user is likely to switch to next ready, so that
+        // switching does not leave them without suggestions while it loads.
+        mDictionaryFacilitator.prefetchMainDictionary(this /* context */,
+                mRichImm.getPredictedNextSubtypeLocale());
         if (settingsValues.mAutoCorrectionEnabledPerUserSettings) {
             mInputLogic.mSuggest.setAutoCorrectionThreshold(
                     settingsValues.mAutoCorrectionThreshold);
@@ -1595,6 +1612,16 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         AccessibilityUtils.getInstance().setAutoCorrection(suggestedWords);
     }
 
+    @Override
+    public void prepareSuggestionStrip(final SuggestedWords suggestedWords) {
+        // This is called off the UI thread, where the input view may be replaced at any time.
+        // Measuring the suggestions for a view that is being replaced is harmless.
+        final SuggestionStripView suggestionStripView = mSuggestionStripView;
+        if (suggestionStripView != null && !suggestedWords.isEmpty()) {
+            suggestionStripView.prepareSuggestions(suggestedWords);
+        }
+    }
+
     // Called from {@link SuggestionStripView} through the {@link SuggestionStripView#Listener}
     // interface
     @Override
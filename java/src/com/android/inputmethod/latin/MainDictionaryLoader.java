@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Loads main dictionaries on dedicated threads.
+ *
+ * Main dictionary loads used to share the keyboard executor with user history updates and
+ * flushes, and opened the parts of a dictionary one after the other. This class runs loads on
+ * their own thread, opens the parts of a {@link DictionaryCollection} in parallel, and can open
+ * the dictionary of the locale the user is expected to switch to next ahead of time, on a
+ * background priority thread of its own so that it never delays a load the user is waiting on.
+ */
+public final class MainDictionaryLoader {
+    private static final String TAG = MainDictionaryLoader.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    private static final int MAX_PARALLEL_PART_LOADS = 4;
+    private static final int WORKER_THREAD_TIMEOUT_SECONDS = 15;
+
+    /**
+     * Receives progress updates about main dictionary loads. Methods are called on the thread
+     * that runs the load.
+     */
+    public interface LoadProgressListener {
+        void onMainDictionaryPartLoaded(Locale locale, int loadedPartCount, int partCount);
+        void onMainDictionaryLoaded(Locale locale, int partCount, long elapsedTimeMillis);
+    }
+
+    private static final MainDictionaryLoader sInstance = new MainDictionaryLoader();
+
+    public static MainDictionaryLoader getInstance() {
+        return sInstance;
+    }
+
+    // Runs the loads the user is waiting on, one at a time.
+    private final ThreadPoolExecutor mLoadExecutor;
+    // Runs prefetches one at a time, at background priority, so that a load never queues behind
+    // a prefetch.
+    private final ThreadPoolExecutor mPrefetchExecutor;
+    // Opens the parts of a single dictionary in parallel.
+    private final ThreadPoolExecutor mPartExecutor;
+
+    private final Object mPrefetchLock = new Object();
+    // The last prefetch and its result, or null if there is none. Guarded by mPrefetchLock.
+    private Prefetch mPrefetch;
+    private Future<DictionaryCollection> mPrefetchedDictionary;
+
+    /**
+     * Opens the main dictionary of a locale unless it has been abandoned before starting.
+     */
+    private final class Prefetch implements Callable<DictionaryCollection> {
+        public final Context mContext;
+        public final Locale mLocale;
+        // Both guarded by mPrefetchLock.
+        public boolean mIsStarted;
+        public boolean mIsAbandoned;
+
+        public Prefetch(final Context context, final Locale locale) {
+            mContext = context;
+            mLocale = locale;
+        }
+
+        @Override
+        public DictionaryCollection call() {
+            synchronized (mPrefetchLock) {
+                if (mIsAbandoned) return null;
+                mIsStarted = true;
+            }
+            return openMainDictionary(mContext, mLocale, null /* listener */);
+        }
+    }
+
+    private MainDictionaryLoader() {
+        mLoadExecutor = newExecutor("MainDictionaryLoader", 1 /* threadCount */,
+                Process.THREAD_PRIORITY_DEFAULT);
+        mPrefetchExecutor = newExecutor("MainDictionaryPrefetcher", 1 /* threadCount */,
+                Process.THREAD_PRIORITY_BACKGROUND);
+        mPartExecutor = newExecutor("MainDictionaryPartLoader",
+                Math.max(1, Math.min(MAX_PARALLEL_PART_LOADS,
+                        Runtime.getRuntime().availableProcessors())),
+                Process.THREAD_PRIORITY_DEFAULT);
+    }
+
+    private static ThreadPoolExecutor newExecutor(final String name, final int threadCount,
+            final int threadPriority) {
+        // Core threads time out so that an idle keyboard does not keep loader threads around.
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                WORKER_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mThreadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(threadPriority);
+                                runnable.run();
+                            }
+                        }, name + "-" + mThreadCount.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs a task on the main dictionary loading thread.
+     *
+     * @param task the task, typically one that calls {@link #loadMainDictionary}.
+     */
+    public void execute(@Nonnull final Runnable task) {
+        mLoadExecutor.execute(task);
+    }
+
+    /**
+     * Returns the main dictionary for a locale, using the prefetched one if it matches.
+     *
+     * This blocks until the dictionary is open. It must only be called from a task passed to
+     * {@link #execute}.
+     *
+     * @param context the context to look up dictionary files with.
+     * @param locale the locale to load the main dictionary of.
+     * @param listener a listener for progress updates, or null.
+     * @return the dictionary. Never null, but may be empty if no dictionary is available.
+     */
+    @Nonnull
+    public DictionaryCollection loadMainDictionary(@Nonnull final Context context,
+            @Nullable final Locale locale, @Nullable final LoadProgressListener listener) {
+        final DictionaryCollection prefetchedDictionary = takePrefetchedDictionary(locale);
+        if (null != prefetchedDictionary) {
+            if (DEBUG) {
+                Log.d(TAG, "Using prefetched main dictionary for " + locale);
+            }
+            return prefetchedDictionary;
+        }
+        return openMainDictionary(context, locale, listener);
+    }
+
+    /**
+     * Opens the main dictionary for a locale in the background, so that a later call to
+     * {@link #loadMainDictionary} for the same locale finds it ready.
+     *
+     * Only one dictionary is kept prefetched. A previously prefetched dictionary for another
+     * locale is closed.
+     *
+     * @param context the context to look up dictionary files with.
+     * @param locale the locale to prefetch the main dictionary of. Null clears the prefetch.
+     */
+    public void prefetchMainDictionary(@Nonnull final Context context,
+            @Nullable final Locale locale) {
+        synchronized (mPrefetchLock) {
+            if (null != locale && null != mPrefetch && locale.equals(mPrefetch.mLocale)) return;
+            abandonPrefetchLocked();
+            if (null != locale) {
+                mPrefetch = new Prefetch(context, locale);
+                mPrefetchedDictionary = mPrefetchExecutor.submit(mPrefetch);
+            }
+        }
+    }
+
+    /**
+     * Drops the prefetched dictionary, for example because dictionary files have changed.
+     */
+    public void clearPrefetchedMainDictionary() {
+        synchronized (mPrefetchLock) {
+            abandonPrefetchLocked();
+        }
+    }
+
+    /**
+     * Drops the current prefetch: it does nothing if it has not started yet, and its dictionary
+     * is closed once it is open otherwise. Must be called with mPrefetchLock held.
+     */
+    private void abandonPrefetchLocked() {
+        if (null == mPrefetch) return;
+        mPrefetch.mIsAbandoned = true;
+        if (mPrefetch.mIsStarted) {
+            closeWhenLoaded(mPrefetchedDictionary);
+        }
+        mPrefetch = null;
+        mPrefetchedDictionary = null;
+    }
+
+    @Nullable
+    private DictionaryCollection takePrefetchedDictionary(@Nullable final Locale locale) {
+        final Future<DictionaryCollection> prefetchedDictionary;
+        synchronized (mPrefetchLock) {
+            if (null == mPrefetch) return null;
+            if (!mPrefetch.mIsStarted) {
+                // Whatever its locale, a prefetch that has not started would only compete with
+                // this load. Loading now is no slower than waiting for it.
+                abandonPrefetchLocked();
+                return null;
+            }
+            if (!mPrefetch.mLocale.equals(locale)) return null;
+            prefetchedDictionary = mPrefetchedDictionary;
+            mPrefetch = null;
+            mPrefetchedDictionary = null;
+        }
+        // The prefetch is running or done on its own thread, and opens what we need.
+        try {
+            return prefetchedDictionary.get();
+        } catch (final InterruptedException | ExecutionException | CancellationException e) {
+            Log.e(TAG, "Failed to prefetch the main dictionary for " + locale, e);
+            return null;
+        }
+    }
+
+    private void closeWhenLoaded(@Nonnull final Future<DictionaryCollection> dictionary) {
+        // This runs after the prefetch itself since the prefetch executor is single-threaded.
+        mPrefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final DictionaryCollection dictionaryCollection = dictionary.get();
+                    if (null != dictionaryCollection) {
+                        dictionaryCollection.close();
+                    }
+                } catch (final InterruptedException | ExecutionException
+                        | CancellationException e) {
+                    // Nothing was opened, so there is nothing to close.
+                }
+            }
+        });
+    }
+
+    @Nonnull
+    private DictionaryCollection openMainDictionary(@Nonnull final Context context,
+            @Nullable final Locale locale, @Nullable final LoadProgressListener listener) {
+        final long startTime = SystemClock.uptimeMillis();
+        if (null == locale) {
+            return DictionaryFactory.createMainDictionaryFromManager(context, locale);
+        }
+        final ArrayList<AssetFileAddress> assetFileList =
+                BinaryDictionaryGetter.getDictionaryFiles(locale, context, true);
+        final int partCount = (null == assetFileList) ? 0 : assetFileList.size();
+        final ArrayList<Future<ReadOnlyBinaryDictionary>> parts = new ArrayList<>(partCount);
+        for (int i = 0; i < partCount; ++i) {
+            final AssetFileAddress f = assetFileList.get(i);
+            parts.add(mPartExecutor.submit(new Callable<ReadOnlyBinaryDictionary>() {
+                @Override
+                public ReadOnlyBinaryDictionary call() {
+                    return new ReadOnlyBinaryDictionary(f.mFilename, f.mOffset, f.mLength,
+                            false /* useFullEditDistance */, locale, Dictionary.TYPE_MAIN);
+                }
+            }));
+        }
+        // Collect the parts in their original order, which is their priority order.
+        final ArrayList<Dictionary> dictList = DictionaryFactory.openMainDictionaryParts(context,
+                assetFileList, new DictionaryFactory.MainDictionaryPartOpener() {
+                    @Override
+                    public ReadOnlyBinaryDictionary open(final int index,
+                            final AssetFileAddress f) {
+                        final ReadOnlyBinaryDictionary part = getPart(parts.get(index), f);
+                        if (null != listener) {
+                            listener.onMainDictionaryPartLoaded(locale, index + 1, partCount);
+                        }
+                        return part;
+                    }
+                });
+        final long elapsedTimeMillis = SystemClock.uptimeMillis() - startTime;
+        Log.i(TAG, "Loaded " + dictList.size() + "/" + partCount + " main dictionary parts"
+                + " for " + locale + " in " + elapsedTimeMillis + "ms");
+        if (null != listener) {
+            listener.onMainDictionaryLoaded(locale, partCount, elapsedTimeMillis);
+        }
+        // If the list is empty, that means we should not use any dictionary (for example, the user
+        // explicitly disabled the main dictionary), so the following is okay.
+        return new DictionaryCollection(Dictionary.TYPE_MAIN, locale, dictList);
+    }
+
+    @Nullable
+    private static ReadOnlyBinaryDictionary getPart(
+            @Nonnull final Future<ReadOnlyBinaryDictionary> part,
+            @Nonnull final AssetFileAddress f) {
+        try {
+            return part.get();
+        } catch (final InterruptedException | ExecutionException e) {
+            Log.e(TAG, "Failed to open main dictionary part " + f.mFilename, e);
+            return null;
+        }
+    }
+}
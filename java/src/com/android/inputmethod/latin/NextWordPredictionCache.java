@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.util.LruCache;
+
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.utils.SuggestionResults;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A bounded cache of the next word predictions of the recent contexts.
+ *
+ * Predictions are computed with an empty composer after each committed word, and contexts such
+ * as the beginning of a sentence come back again and again. An entry is only used while the
+ * dictionaries are in the state it has been computed with. Learning a word doesn't change that
+ * state, so it evicts the entries whose context or predictions contain the word instead, see
+ * {@link #evict(NgramContext,String,Locale)}.
+ */
+final class NextWordPredictionCache {
+    private static final int CAPACITY = 32;
+
+    private static final char BEGINNING_OF_SENTENCE_MARK = 'S';
+    private static final char WORD_MARK = 'W';
+    private static final char NO_WORD_MARK = 'N';
+    private static final char WORD_SEPARATOR = '\n';
+
+    private static final class Entry {
+        @Nonnull public final List<Object> mDictionaryState;
+        // The lower case previous word, or null if the context starts a sentence or is unknown.
+        @Nullable public final String mPrevWord;
+        public final boolean mIsBeginningOfSentence;
+        @Nonnull public final ArrayList<SuggestedWordInfo> mSuggestions;
+        @Nullable public final ArrayList<SuggestedWordInfo> mRawSuggestions;
+        public final boolean mFirstSuggestionExceedsConfidenceThreshold;
+
+        public Entry(@Nonnull final List<Object> dictionaryState, @Nullable final String prevWord,
+                @Nonnull final SuggestionResults results) {
+            mDictionaryState = dictionaryState;
+            mPrevWord = prevWord;
+            mIsBeginningOfSentence = results.mIsBeginningOfSentence;
+            mSuggestions = new ArrayList<>(results);
+            mRawSuggestions = (null == results.mRawSuggestions)
+                    ? null : new ArrayList<>(results.mRawSuggestions);
+            mFirstSuggestionExceedsConfidenceThreshold =
+                    results.mFirstSuggestionExceedsConfidenceThreshold;
+        }
+
+        public boolean hasSuggestion(@Nonnull final String lowerCaseWord,
+                @Nonnull final Locale locale) {
+            for (final SuggestedWordInfo info : mSuggestions) {
+                if (lowerCaseWord.equals(info.mWord.toLowerCase(locale))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Guarded by this.
+    private final LruCache<String, Entry> mEntries = new LruCache<>(CAPACITY);
+    // Incremented by each eviction, so that predictions computed meanwhile are not put.
+    private int mGeneration;
+
+    private static String getKey(@Nonnull final NgramContext ngramContext) {
+        final StringBuilder sb = new StringBuilder();
+        for (int n = 1; n <= ngramContext.getPrevWordCount(); n++) {
+            final CharSequence prevWord = ngramContext.getNthPrevWord(n);
+            if (ngramContext.isNthPrevWordBeginningOfSentence(n)) {
+                sb.append(BEGINNING_OF_SENTENCE_MARK);
+            } else if (null == prevWord || 0 == prevWord.length()) {
+                sb.append(NO_WORD_MARK);
+            } else {
+                sb.append(WORD_MARK).append(prevWord);
+            }
+            sb.append(WORD_SEPARATOR);
+        }
+        return sb.toString();
+    }
+
+    @Nullable
+    private static String getLowerCasePrevWord(@Nonnull final NgramContext ngramContext,
+            @Nonnull final Locale locale) {
+        if (!ngramContext.isValid() || ngramContext.isBeginningOfSentenceContext()) {
+            return null;
+        }
+        return ngramContext.getNthPrevWord(1).toString().toLowerCase(locale);
+    }
+
+    /**
+     * @return the current generation, to be passed to
+     * {@link #put(NgramContext,List,int,SuggestionResults,Locale)} along with the predictions
+     * computed from now on.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @param ngramContext the context of the predictions.
+     * @param dictionaryState the state of the dictionaries, compared with
+     *        {@link List#equals(Object)} to the one the predictions have been computed with.
+     * @return a copy of the cached predictions, or null if there are none for this state.
+     */
+    @Nullable
+    public synchronized SuggestionResults get(@Nonnull final NgramContext ngramContext,
+            @Nonnull final List<Object> dictionaryState) {
+        final Entry entry = mEntries.get(getKey(ngramContext));
+        if (null == entry || !entry.mDictionaryState.equals(dictionaryState)) {
+            return null;
+        }
+        final SuggestionResults results = new SuggestionResults(SuggestedWords.MAX_SUGGESTIONS,
+                entry.mIsBeginningOfSentence, entry.mFirstSuggestionExceedsConfidenceThreshold);
+        results.addAll(entry.mSuggestions);
+        if (null != results.mRawSuggestions && null != entry.mRawSuggestions) {
+            results.mRawSuggestions.addAll(entry.mRawSuggestions);
+        }
+        return results;
+    }
+
+    /**
+     * Caches predictions, unless an eviction happened since <code>generation</code> was read.
+     */
+    public synchronized void put(@Nonnull final NgramContext ngramContext,
+            @Nonnull final List<Object> dictionaryState, final int generation,
+            @Nonnull final SuggestionResults results, @Nonnull final Locale locale) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mEntries.put(getKey(ngramContext), new Entry(dictionaryState,
+                getLowerCasePrevWord(ngramContext, locale), results));
+    }
+
+    /**
+     * Evicts the predictions that learning or unlearning <code>word</code> after
+     * <code>ngramContext</code> may change: those for the same previous word, those after
+     * <code>word</code> itself, those that contain <code>word</code>, and those without a
+     * known previous word.
+     */
+    public synchronized void evict(@Nonnull final NgramContext ngramContext,
+            @Nonnull final String word, @Nonnull final Locale locale) {
+        ++mGeneration;
+        final String prevWord = getLowerCasePrevWord(ngramContext, locale);
+        final boolean isBeginningOfSentence = ngramContext.isBeginningOfSentenceContext();
+        final String lowerCaseWord = word.toLowerCase(locale);
+        for (final Map.Entry<String, Entry> mapEntry : mEntries.snapshot().entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            final boolean isStale;
+            if (null == entry.mPrevWord) {
+                isStale = !entry.mIsBeginningOfSentence || isBeginningOfSentence;
+            } else {
+                isStale = entry.mPrevWord.equals(prevWord)
+                        || entry.mPrevWord.equals(lowerCaseWord);
+            }
+            if (isStale || entry.hasSuggestion(lowerCaseWord, locale)) {
+                mEntries.remove(mapEntry.getKey());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        ++mGeneration;
+        mEntries.evictAll();
+    }
+}
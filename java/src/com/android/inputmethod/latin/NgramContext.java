@@ -18,7 +18,6 @@ package com.android.inputmethod.latin;
 
 import android.text.TextUtils;
 
-import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.latin.common.StringUtils;
 import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 
@@ -43,6 +42,8 @@ public class NgramContext {
 
     public static final String CONTEXT_SEPARATOR = " ";
 
+    private static final int[] EMPTY_CODE_POINTS = new int[0];
+
     public static NgramContext getEmptyPrevWordsContext(int maxPrevWordCount) {
         return new NgramContext(maxPrevWordCount, WordInfo.EMPTY_WORD_INFO);
     }
@@ -62,6 +63,9 @@ public class NgramContext {
         // Whether the current context is beginning of sentence or not. This is true when composing
         // at the beginning of an input field or composing a word after a sentence separator.
         public final boolean mIsBeginningOfSentence;
+        // The code points of mWord, computed when first needed. They are shared by all the
+        // contexts that contain this word, so they must not be modified.
+        private volatile int[] mCodePoints;
 
         // Beginning of sentence.
         private WordInfo() {
@@ -78,6 +82,19 @@ public class NgramContext {
             return mWord != null;
         }
 
+        /**
+         * @return the code points of the word. The array is shared and must not be modified.
+         */
+        @Nonnull
+        public int[] getCodePoints() {
+            int[] codePoints = mCodePoints;
+            if (codePoints == null) {
+                codePoints = isValid() ? StringUtils.toCodePointArray(mWord) : EMPTY_CODE_POINTS;
+                mCodePoints = codePoints;
+            }
+            return codePoints;
+        }
+
         @Override
         public int hashCode() {
             return Arrays.hashCode(new Object[] { mWord, mIsBeginningOfSentence } );
@@ -197,7 +214,6 @@ public class NgramContext {
     }
 
     // n is 1-indexed.
-    @UsedForTesting
     public boolean isNthPrevWordBeginningOfSentence(final int n) {
         if (n <= 0 || n > mPrevWordsCount) {
             return false;
@@ -205,16 +221,20 @@ public class NgramContext {
         return mPrevWordsInfo[n - 1].mIsBeginningOfSentence;
     }
 
+    /**
+     * Outputs the previous words to arrays that can be passed to native code. The code point
+     * arrays are shared with this context and must not be modified.
+     */
     public void outputToArray(final int[][] codePointArrays,
             final boolean[] isBeginningOfSentenceArray) {
         for (int i = 0; i < mPrevWordsCount; i++) {
             final WordInfo wordInfo = mPrevWordsInfo[i];
             if (wordInfo == null || !wordInfo.isValid()) {
-                codePointArrays[i] = new int[0];
+                codePointArrays[i] = EMPTY_CODE_POINTS;
                 isBeginningOfSentenceArray[i] = false;
                 continue;
             }
-            codePointArrays[i] = StringUtils.toCodePointArray(wordInfo.mWord);
+            codePointArrays[i] = wordInfo.getCodePoints();
             isBeginningOfSentenceArray[i] = wordInfo.mIsBeginningOfSentence;
         }
     }
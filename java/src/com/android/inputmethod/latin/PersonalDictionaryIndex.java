@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import com.android.inputmethod.latin.common.LocaleUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable index of the words and shortcuts of the personal dictionary.
+ *
+ * Words are kept lowercased in a single sorted array. Each locale of the dictionary has a bit set
+ * over that array, so that checking a word is a binary search followed by a bit test. The union
+ * of the bit sets that match an input locale is computed once and cached. Shortcuts are kept in a
+ * trie whose nodes hold the expansion for every locale that defines the shortcut. The rows the
+ * index was built from are kept in parallel arrays, so that it can be rebuilt when single rows
+ * change.
+ *
+ * Instances are safe to share between threads.
+ */
+final class PersonalDictionaryIndex {
+    /**
+     * A row of the personal dictionary, as read from {@link android.provider.UserDictionary}.
+     */
+    public static final class Entry {
+        public final long mId;
+        public final String mRawWord;
+        public final String mLocaleString;
+        @Nullable public final String mShortcut;
+        public final int mFrequency;
+
+        public Entry(final long id, @Nonnull final String rawWord,
+                @Nonnull final String localeString, @Nullable final String shortcut,
+                final int frequency) {
+            mId = id;
+            mRawWord = rawWord;
+            mLocaleString = localeString;
+            mShortcut = shortcut;
+            mFrequency = frequency;
+        }
+    }
+
+    private static final class ShortcutNode {
+        // Sorted keys of the children.
+        public final char[] mChildKeys;
+        public final ShortcutNode[] mChildren;
+        // The locales that define a shortcut ending at this node, and their expansions.
+        public final int[] mLocaleIds;
+        public final String[] mExpansions;
+
+        public ShortcutNode(final char[] childKeys, final ShortcutNode[] children,
+                final int[] localeIds, final String[] expansions) {
+            mChildKeys = childKeys;
+            mChildren = children;
+            mLocaleIds = localeIds;
+            mExpansions = expansions;
+        }
+
+        @Nullable
+        public ShortcutNode getChild(final char key) {
+            final int index = Arrays.binarySearch(mChildKeys, key);
+            return index < 0 ? null : mChildren[index];
+        }
+
+        @Nullable
+        public String getExpansion(final int localeId) {
+            for (int i = 0; i < mLocaleIds.length; ++i) {
+                if (mLocaleIds[i] == localeId) {
+                    return mExpansions[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
+    private static final String[] EMPTY_STRING_ARRAY = new String[0];
+    private static final char[] EMPTY_CHAR_ARRAY = new char[0];
+    private static final ShortcutNode[] EMPTY_NODE_ARRAY = new ShortcutNode[0];
+
+    private final String[] mWords;
+    private final Locale[] mLocales;
+    // For each locale, the words of the locale and their raw strings in index order.
+    private final BitSet[] mWordsPerLocale;
+    private final String[][] mRawWordsPerLocale;
+    @Nullable private final ShortcutNode mShortcutRoot;
+    private final int mShortcutCount;
+    // The rows, in the order they were added.
+    private final long[] mRowIds;
+    private final String[] mRowRawWords;
+    private final String[] mRowLocaleStrings;
+    private final String[] mRowShortcuts;
+    private final int[] mRowFrequencies;
+    // The words that are valid for an input locale, keyed by the input locale string.
+    private final ConcurrentHashMap<String, BitSet> mValidWordsCache = new ConcurrentHashMap<>();
+
+    private PersonalDictionaryIndex(final String[] words, final Locale[] locales,
+            final BitSet[] wordsPerLocale, final String[][] rawWordsPerLocale,
+            @Nullable final ShortcutNode shortcutRoot, final int shortcutCount,
+            final long[] rowIds, final String[] rowRawWords, final String[] rowLocaleStrings,
+            final String[] rowShortcuts, final int[] rowFrequencies) {
+        mWords = words;
+        mLocales = locales;
+        mWordsPerLocale = wordsPerLocale;
+        mRawWordsPerLocale = rawWordsPerLocale;
+        mShortcutRoot = shortcutRoot;
+        mShortcutCount = shortcutCount;
+        mRowIds = rowIds;
+        mRowRawWords = rowRawWords;
+        mRowLocaleStrings = rowLocaleStrings;
+        mRowShortcuts = rowShortcuts;
+        mRowFrequencies = rowFrequencies;
+    }
+
+    public int getWordCount() {
+        return mWords.length;
+    }
+
+    public int getShortcutCount() {
+        return mShortcutCount;
+    }
+
+    /**
+     * @return the number of rows the index was built from.
+     */
+    public int getRowCount() {
+        return mRowIds.length;
+    }
+
+    public long getRowId(final int row) {
+        return mRowIds[row];
+    }
+
+    public int getRowFrequency(final int row) {
+        return mRowFrequencies[row];
+    }
+
+    /**
+     * @param row the position of the row, in the order the rows were added.
+     * @return the row.
+     */
+    @Nonnull
+    public Entry getRow(final int row) {
+        return new Entry(mRowIds[row], mRowRawWords[row], mRowLocaleStrings[row],
+                mRowShortcuts[row], mRowFrequencies[row]);
+    }
+
+    /**
+     * @param lowercasedWord the word, lowercased in the input locale.
+     * @param inputLocale the input locale.
+     * @return whether the word is in a locale that matches the input locale.
+     */
+    public boolean isValidWord(@Nonnull final String lowercasedWord,
+            @Nonnull final Locale inputLocale) {
+        final int index = Arrays.binarySearch(mWords, lowercasedWord);
+        return index >= 0 && getValidWords(inputLocale).get(index);
+    }
+
+    private BitSet getValidWords(final Locale inputLocale) {
+        final String inputLocaleString = inputLocale.toString();
+        BitSet validWords = mValidWordsCache.get(inputLocaleString);
+        if (null != validWords) {
+            return validWords;
+        }
+        validWords = new BitSet(mWords.length);
+        for (int localeId = 0; localeId < mLocales.length; ++localeId) {
+            if (LocaleUtils.isMatch(LocaleUtils.getMatchLevel(
+                    mLocales[localeId].toString(), inputLocaleString))) {
+                validWords.or(mWordsPerLocale[localeId]);
+            }
+        }
+        mValidWordsCache.put(inputLocaleString, validWords);
+        return validWords;
+    }
+
+    /**
+     * @param inputLocale the input locale.
+     * @return the raw words of all the locales that match the input locale.
+     */
+    @Nonnull
+    public Set<String> getWordsForLocale(@Nonnull final Locale inputLocale) {
+        final HashSet<String> words = new HashSet<>();
+        final String inputLocaleString = inputLocale.toString();
+        for (int localeId = 0; localeId < mLocales.length; ++localeId) {
+            if (LocaleUtils.isMatch(LocaleUtils.getMatchLevel(
+                    mLocales[localeId].toString(), inputLocaleString))) {
+                words.addAll(Arrays.asList(mRawWordsPerLocale[localeId]));
+            }
+        }
+        return words;
+    }
+
+    private int getLocaleId(@Nonnull final Locale locale) {
+        for (int localeId = 0; localeId < mLocales.length; ++localeId) {
+            if (mLocales[localeId].equals(locale)) {
+                return localeId;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param shortcut the shortcut.
+     * @param locale the exact locale the shortcut has to be defined for.
+     * @return the expansion of the shortcut, or null if there is none.
+     */
+    @Nullable
+    public String expandShortcut(@Nonnull final String shortcut, @Nonnull final Locale locale) {
+        ShortcutNode node = mShortcutRoot;
+        for (int i = 0; null != node && i < shortcut.length(); ++i) {
+            node = node.getChild(shortcut.charAt(i));
+        }
+        if (null == node) {
+            return null;
+        }
+        final int localeId = getLocaleId(locale);
+        return localeId < 0 ? null : node.getExpansion(localeId);
+    }
+
+    /**
+     * @param locales the exact locales the shortcuts have to be defined for.
+     * @return all the shortcuts defined for any of the locales.
+     */
+    @Nonnull
+    public Set<String> getShortcutsForLocales(@Nonnull final Locale... locales) {
+        final HashSet<String> shortcuts = new HashSet<>();
+        if (null == mShortcutRoot) {
+            return shortcuts;
+        }
+        final BitSet localeIds = new BitSet(mLocales.length);
+        for (final Locale locale : locales) {
+            final int localeId = getLocaleId(locale);
+            if (localeId >= 0) {
+                localeIds.set(localeId);
+            }
+        }
+        if (!localeIds.isEmpty()) {
+            collectShortcuts(mShortcutRoot, new StringBuilder(), localeIds, shortcuts);
+        }
+        return shortcuts;
+    }
+
+    private static void collectShortcuts(final ShortcutNode node, final StringBuilder prefix,
+            final BitSet localeIds, final Set<String> outShortcuts) {
+        for (final int localeId : node.mLocaleIds) {
+            if (localeIds.get(localeId)) {
+                outShortcuts.add(prefix.toString());
+                break;
+            }
+        }
+        for (int i = 0; i < node.mChildren.length; ++i) {
+            prefix.append(node.mChildKeys[i]);
+            collectShortcuts(node.mChildren[i], prefix, localeIds, outShortcuts);
+            prefix.setLength(prefix.length() - 1);
+        }
+    }
+
+    /**
+     * Builds an index from the rows of the personal dictionary.
+     *
+     * Rows are expected in descending frequency order. When rows collide, the last one wins.
+     */
+    public static final class Builder {
+        private static final class MutableShortcutNode {
+            public final TreeMap<Character, MutableShortcutNode> mChildren = new TreeMap<>();
+            // Keyed by locale id.
+            public final TreeMap<Integer, String> mExpansions = new TreeMap<>();
+        }
+
+        private final HashMap<Locale, Integer> mLocaleIds = new HashMap<>();
+        private final ArrayList<Locale> mLocales = new ArrayList<>();
+        // Lowercased word -> locale id -> raw word.
+        private final HashMap<String, HashMap<Integer, String>> mWords = new HashMap<>();
+        private final MutableShortcutNode mShortcutRoot = new MutableShortcutNode();
+        private int mShortcutCount = 0;
+        private final ArrayList<Entry> mRows = new ArrayList<>();
+
+        /**
+         * @return the number of distinct lowercased words added so far.
+         */
+        public int getWordCount() {
+            return mWords.size();
+        }
+
+        public void addEntry(@Nonnull final Entry entry) {
+            mRows.add(entry);
+            final Locale locale = LocaleUtils.constructLocaleFromString(entry.mLocaleString);
+            Integer localeId = mLocaleIds.get(locale);
+            if (null == localeId) {
+                localeId = mLocales.size();
+                mLocaleIds.put(locale, localeId);
+                mLocales.add(locale);
+            }
+            final String word = entry.mRawWord.toLowerCase(locale);
+            HashMap<Integer, String> rawWords = mWords.get(word);
+            if (null == rawWords) {
+                rawWords = new HashMap<>();
+                mWords.put(word, rawWords);
+            }
+            // Share the string with the key when the raw word is already lowercase.
+            rawWords.put(localeId, word.equals(entry.mRawWord) ? word : entry.mRawWord);
+            if (null == entry.mShortcut) {
+                return;
+            }
+            MutableShortcutNode node = mShortcutRoot;
+            for (int i = 0; i < entry.mShortcut.length(); ++i) {
+                final char key = entry.mShortcut.charAt(i);
+                MutableShortcutNode child = node.mChildren.get(key);
+                if (null == child) {
+                    child = new MutableShortcutNode();
+                    node.mChildren.put(key, child);
+                }
+                node = child;
+            }
+            // Map to the raw input, which might be capitalized.
+            // This lets the user create a shortcut from "gm" to "General Motors".
+            if (null == node.mExpansions.put(localeId, rawWords.get(localeId))) {
+                ++mShortcutCount;
+            }
+        }
+
+        @Nonnull
+        public PersonalDictionaryIndex build() {
+            final String[] words = mWords.keySet().toArray(new String[mWords.size()]);
+            Arrays.sort(words);
+            final int localeCount = mLocales.size();
+            final BitSet[] wordsPerLocale = new BitSet[localeCount];
+            final ArrayList<ArrayList<String>> rawWordLists = new ArrayList<>(localeCount);
+            for (int localeId = 0; localeId < localeCount; ++localeId) {
+                wordsPerLocale[localeId] = new BitSet(words.length);
+                rawWordLists.add(new ArrayList<String>());
+            }
+            for (int index = 0; index < words.length; ++index) {
+                for (final Map.Entry<Integer, String> rawWord : mWords.get(words[index])
+                        .entrySet()) {
+                    final int localeId = rawWord.getKey();
+                    wordsPerLocale[localeId].set(index);
+                    rawWordLists.get(localeId).add(rawWord.getValue());
+                }
+            }
+            final String[][] rawWordsPerLocale = new String[localeCount][];
+            for (int localeId = 0; localeId < localeCount; ++localeId) {
+                final ArrayList<String> rawWords = rawWordLists.get(localeId);
+                rawWordsPerLocale[localeId] = rawWords.toArray(new String[rawWords.size()]);
+            }
+            final int rowCount = mRows.size();
+            final long[] rowIds = new long[rowCount];
+            final String[] rowRawWords = new String[rowCount];
+            final String[] rowLocaleStrings = new String[rowCount];
+            final String[] rowShortcuts = new String[rowCount];
+            final int[] rowFrequencies = new int[rowCount];
+            for (int row = 0; row < rowCount; ++row) {
+                final Entry entry = mRows.get(row);
+                rowIds[row] = entry.mId;
+                rowRawWords[row] = entry.mRawWord;
+                rowLocaleStrings[row] = entry.mLocaleString;
+                rowShortcuts[row] = entry.mShortcut;
+                rowFrequencies[row] = entry.mFrequency;
+            }
+            return new PersonalDictionaryIndex(words,
+                    mLocales.toArray(new Locale[localeCount]), wordsPerLocale, rawWordsPerLocale,
+                    mShortcutCount == 0 ? null : freeze(mShortcutRoot), mShortcutCount,
+                    rowIds, rowRawWords, rowLocaleStrings, rowShortcuts, rowFrequencies);
+        }
+
+        private static ShortcutNode freeze(final MutableShortcutNode node) {
+            final int childCount = node.mChildren.size();
+            final char[] childKeys = childCount == 0 ? EMPTY_CHAR_ARRAY : new char[childCount];
+            final ShortcutNode[] children =
+                    childCount == 0 ? EMPTY_NODE_ARRAY : new ShortcutNode[childCount];
+            int i = 0;
+            for (final Map.Entry<Character, MutableShortcutNode> child
+                    : node.mChildren.entrySet()) {
+                childKeys[i] = child.getKey();
+                children[i] = freeze(child.getValue());
+                ++i;
+            }
+            final int expansionCount = node.mExpansions.size();
+            final int[] localeIds =
+                    expansionCount == 0 ? EMPTY_INT_ARRAY : new int[expansionCount];
+            final String[] expansions =
+                    expansionCount == 0 ? EMPTY_STRING_ARRAY : new String[expansionCount];
+            int j = 0;
+            for (final Map.Entry<Integer, String> expansion : node.mExpansions.entrySet()) {
+                localeIds[j] = expansion.getKey();
+                expansions[j] = expansion.getValue();
+                ++j;
+            }
+            return new ShortcutNode(childKeys, children, localeIds, expansions);
+        }
+    }
+}
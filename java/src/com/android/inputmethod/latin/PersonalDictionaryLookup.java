@@ -17,6 +17,7 @@
 package com.android.inputmethod.latin;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
@@ -26,7 +27,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.inputmethod.annotations.UsedForTesting;
-import com.android.inputmethod.latin.common.CollectionUtils;
+import com.android.inputmethod.latin.PersonalDictionaryIndex.Entry;
 import com.android.inputmethod.latin.common.LocaleUtils;
 import com.android.inputmethod.latin.define.DebugFlags;
 import com.android.inputmethod.latin.utils.ExecutorUtils;
@@ -34,11 +35,9 @@ import com.android.inputmethod.latin.utils.ExecutorUtils;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -153,6 +152,7 @@ public class PersonalDictionaryLookup implements Closeable {
             if (DebugFlags.DEBUG_ENABLED) {
                 Log.d(mTag, "onChange() : URI = " + uri);
             }
+            recordChange(uri);
             // Cancel (but don't interrupt) any pending reloads (except the initial load).
             if (mReloadFuture != null && !mReloadFuture.isCancelled() &&
                     !mReloadFuture.isDone()) {
@@ -178,7 +178,76 @@ public class PersonalDictionaryLookup implements Closeable {
 
         @Override
         public void run() {
-            loadPersonalDictionary();
+            final long[] changedIds = takeChangedIds();
+            final boolean isDone = (null == changedIds) ? loadPersonalDictionary()
+                    : updatePersonalDictionary(changedIds);
+            if (isDone || mIsClosed.get()) {
+                return;
+            }
+            // Another load is running, and it may have read the rows before they changed. Keep
+            // the changes for the next reload, and make sure there is one.
+            restoreChangedIds(changedIds);
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(mTag, "run() : Scheduling reload in " + RELOAD_DELAY_MS + " ms");
+            }
+            mReloadFuture = ExecutorUtils.getBackgroundExecutor(mServiceName)
+                    .schedule(this, RELOAD_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The ids of the rows that changed since the last reload. Null if the whole dictionary needs
+     * to be reloaded, because a notification did not name a single row.
+     */
+    private HashSet<Long> mChangedIds = new HashSet<>();
+    private final Object mChangedIdsLock = new Object();
+
+    private void recordChange(@Nullable final Uri uri) {
+        long id = -1;
+        if (null != uri && uri.getPathSegments().size()
+                == UserDictionary.Words.CONTENT_URI.getPathSegments().size() + 1) {
+            try {
+                id = ContentUris.parseId(uri);
+            } catch (final NumberFormatException e) {
+                // Not a row URI: reload everything.
+            }
+        }
+        synchronized (mChangedIdsLock) {
+            if (id < 0) {
+                mChangedIds = null;
+            } else if (null != mChangedIds) {
+                mChangedIds.add(id);
+            }
+        }
+    }
+
+    @Nullable
+    private long[] takeChangedIds() {
+        final HashSet<Long> changedIds;
+        synchronized (mChangedIdsLock) {
+            changedIds = mChangedIds;
+            mChangedIds = new HashSet<>();
+        }
+        if (null == changedIds) {
+            return null;
+        }
+        final long[] ids = new long[changedIds.size()];
+        int i = 0;
+        for (final Long id : changedIds) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    private void restoreChangedIds(@Nullable final long[] ids) {
+        synchronized (mChangedIdsLock) {
+            if (null == ids) {
+                mChangedIds = null;
+            } else if (null != mChangedIds) {
+                for (final long id : ids) {
+                    mChangedIds.add(id);
+                }
+            }
         }
     }
 
@@ -196,16 +265,17 @@ public class PersonalDictionaryLookup implements Closeable {
     private AtomicBoolean mIsClosed = new AtomicBoolean(false);
 
     /**
-     * We store a map from a dictionary word to the set of locales & raw string(as it appears)
-     * We then iterate over the set of locales to find a match using LocaleUtils.
+     * The words and shortcuts of the personal dictionary. Built on the loading thread and
+     * replaced as a whole, so readers always see a consistent index.
      */
-    private volatile HashMap<String, HashMap<Locale, String>> mDictWords;
+    private volatile PersonalDictionaryIndex mIndex;
 
     /**
-     * We store a map from a shortcut to a word for each locale.
-     * Shortcuts that apply to any locale are keyed by {@link #ANY_LOCALE}.
+     * Whether the index was built from all the rows, in descending frequency order. False if the
+     * rows were capped at {@link #MAX_NUM_ENTRIES}, in which case single row changes can't be
+     * applied incrementally. Only accessed while loading.
      */
-    private volatile HashMap<Locale, HashMap<String, String>> mShortcutsPerLocale;
+    private boolean mIndexHasAllRows;
 
     /**
      *  The last-scheduled reload future.  Saved in order to cancel a pending reload if a new one
@@ -301,7 +371,7 @@ public class PersonalDictionaryLookup implements Closeable {
      * @return true if the initial load is successful
      */
     public boolean isLoaded() {
-        return mDictWords != null && mShortcutsPerLocale != null;
+        return mIndex != null;
     }
 
     /**
@@ -316,26 +386,11 @@ public class PersonalDictionaryLookup implements Closeable {
      * @return set of words that apply to the given locale.
      */
     public Set<String> getWordsForLocale(@Nonnull final Locale inputLocale) {
-        final HashMap<String, HashMap<Locale, String>> dictWords = mDictWords;
-        if (CollectionUtils.isNullOrEmpty(dictWords)) {
+        final PersonalDictionaryIndex index = mIndex;
+        if (null == index || index.getWordCount() == 0) {
             return Collections.emptySet();
         }
-
-        final Set<String> words = new HashSet<>();
-        final String inputLocaleString = inputLocale.toString();
-        for (String word : dictWords.keySet()) {
-            HashMap<Locale, String> localeStringMap = dictWords.get(word);
-                if (!CollectionUtils.isNullOrEmpty(localeStringMap)) {
-                    for (Locale wordLocale : localeStringMap.keySet()) {
-                        final String wordLocaleString = wordLocale.toString();
-                        final int match = LocaleUtils.getMatchLevel(wordLocaleString, inputLocaleString);
-                        if (LocaleUtils.isMatch(match)) {
-                            words.add(localeStringMap.get(wordLocale));
-                        }
-                    }
-            }
-        }
-        return words;
+        return index.getWordsForLocale(inputLocale);
     }
 
     /**
@@ -350,35 +405,18 @@ public class PersonalDictionaryLookup implements Closeable {
      * @return set of shortcuts that apply to the given locale.
      */
     public Set<String> getShortcutsForLocale(@Nonnull final Locale inputLocale) {
-        final Map<Locale, HashMap<String, String>> shortcutsPerLocale = mShortcutsPerLocale;
-        if (CollectionUtils.isNullOrEmpty(shortcutsPerLocale)) {
+        final PersonalDictionaryIndex index = mIndex;
+        if (null == index || index.getShortcutCount() == 0) {
             return Collections.emptySet();
         }
-
-        final Set<String> shortcuts = new HashSet<>();
-        if (!TextUtils.isEmpty(inputLocale.getCountry())) {
-            // First look for the country-specific shortcut: en_US, en_UK, fr_FR, etc.
-            final Map<String, String> countryShortcuts = shortcutsPerLocale.get(inputLocale);
-            if (!CollectionUtils.isNullOrEmpty(countryShortcuts)) {
-                shortcuts.addAll(countryShortcuts.keySet());
-            }
-        }
-
-        // Next look for the language-specific shortcut: en, fr, etc.
+        // Country-specific shortcuts (en_US, en_UK, fr_FR, etc.), language-specific shortcuts
+        // (en, fr, etc.) and global shortcuts.
         final Locale languageOnlyLocale =
                 LocaleUtils.constructLocaleFromString(inputLocale.getLanguage());
-        final Map<String, String> languageShortcuts = shortcutsPerLocale.get(languageOnlyLocale);
-        if (!CollectionUtils.isNullOrEmpty(languageShortcuts)) {
-            shortcuts.addAll(languageShortcuts.keySet());
-        }
-
-        // If all else fails, look for a global shortcut.
-        final Map<String, String> globalShortcuts = shortcutsPerLocale.get(ANY_LOCALE);
-        if (!CollectionUtils.isNullOrEmpty(globalShortcuts)) {
-            shortcuts.addAll(globalShortcuts.keySet());
+        if (TextUtils.isEmpty(inputLocale.getCountry())) {
+            return index.getShortcutsForLocales(languageOnlyLocale, ANY_LOCALE);
         }
-
-        return shortcuts;
+        return index.getShortcutsForLocales(inputLocale, languageOnlyLocale, ANY_LOCALE);
     }
 
     /**
@@ -404,47 +442,20 @@ public class PersonalDictionaryLookup implements Closeable {
         if (DebugFlags.DEBUG_ENABLED) {
             Log.d(mTag, "isValidWord() : Word [" + word + "] in Locale [" + inputLocale + "]");
         }
-        // Atomically obtain the current copy of mDictWords;
-        final HashMap<String, HashMap<Locale, String>> dictWords = mDictWords;
+        // Atomically obtain the current copy of mIndex;
+        final PersonalDictionaryIndex index = mIndex;
         // Lowercase the word using the given locale. Note, that dictionary
         // words are lowercased using their locale, and theoretically the
         // lowercasing between two matching locales may differ. For simplicity
-        // we ignore that possibility.
+        // we ignore that possibility. Note that this does not allocate when the
+        // word is already lowercase, which is the common case.
         final String lowercased = word.toLowerCase(inputLocale);
-        final HashMap<Locale, String> dictLocales = dictWords.get(lowercased);
-
-        if (CollectionUtils.isNullOrEmpty(dictLocales)) {
-            if (DebugFlags.DEBUG_ENABLED) {
-                Log.d(mTag, "isValidWord() : No entry for word [" + word + "]");
-            }
-            return false;
-        } else {
-            if (DebugFlags.DEBUG_ENABLED) {
-                Log.d(mTag, "isValidWord() : Found entry for word [" + word + "]");
-            }
-            // Iterate over the locales this word is in.
-            for (final Locale dictLocale : dictLocales.keySet()) {
-                final int matchLevel = LocaleUtils.getMatchLevel(dictLocale.toString(),
-                        inputLocale.toString());
-                if (DebugFlags.DEBUG_ENABLED) {
-                    Log.d(mTag, "isValidWord() : MatchLevel for DictLocale [" + dictLocale
-                            + "] and InputLocale [" + inputLocale + "] is " + matchLevel);
-                }
-                if (LocaleUtils.isMatch(matchLevel)) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "isValidWord() : MatchLevel " + matchLevel + " IS a match");
-                    }
-                    return true;
-                }
-                if (DebugFlags.DEBUG_ENABLED) {
-                    Log.d(mTag, "isValidWord() : MatchLevel " + matchLevel + " is NOT a match");
-                }
-            }
-            if (DebugFlags.DEBUG_ENABLED) {
-                Log.d(mTag, "isValidWord() : False, since none of the locales matched");
-            }
-            return false;
+        final boolean isValid = index.isValidWord(lowercased, inputLocale);
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(mTag, "isValidWord() : Word [" + word + "] is "
+                    + (isValid ? "" : "NOT ") + "valid for [" + inputLocale + "]");
         }
+        return isValid;
     }
 
     /**
@@ -460,11 +471,11 @@ public class PersonalDictionaryLookup implements Closeable {
             Log.d(mTag, "expandShortcut() : Shortcut [" + shortcut + "] for [" + inputLocale + "]");
         }
 
-        // Atomically obtain the current copy of mShortcuts;
-        final HashMap<Locale, HashMap<String, String>> shortcutsPerLocale = mShortcutsPerLocale;
+        // Atomically obtain the current copy of mIndex;
+        final PersonalDictionaryIndex index = mIndex;
 
         // Exit as early as possible. Most users don't use shortcuts.
-        if (CollectionUtils.isNullOrEmpty(shortcutsPerLocale)) {
+        if (null == index || index.getShortcutCount() == 0) {
             if (DebugFlags.DEBUG_ENABLED) {
                 Log.d(mTag, "expandShortcut() : User has no shortcuts");
             }
@@ -473,8 +484,7 @@ public class PersonalDictionaryLookup implements Closeable {
 
         if (!TextUtils.isEmpty(inputLocale.getCountry())) {
             // First look for the country-specific shortcut: en_US, en_UK, fr_FR, etc.
-            final String expansionForCountry = expandShortcut(
-                    shortcutsPerLocale, shortcut, inputLocale);
+            final String expansionForCountry = index.expandShortcut(shortcut, inputLocale);
             if (!TextUtils.isEmpty(expansionForCountry)) {
                 if (DebugFlags.DEBUG_ENABLED) {
                     Log.d(mTag, "expandShortcut() : Country expansion is ["
@@ -487,8 +497,7 @@ public class PersonalDictionaryLookup implements Closeable {
         // Next look for the language-specific shortcut: en, fr, etc.
         final Locale languageOnlyLocale =
                 LocaleUtils.constructLocaleFromString(inputLocale.getLanguage());
-        final String expansionForLanguage = expandShortcut(
-                shortcutsPerLocale, shortcut, languageOnlyLocale);
+        final String expansionForLanguage = index.expandShortcut(shortcut, languageOnlyLocale);
         if (!TextUtils.isEmpty(expansionForLanguage)) {
             if (DebugFlags.DEBUG_ENABLED) {
                 Log.d(mTag, "expandShortcut() : Language expansion is ["
@@ -498,153 +507,205 @@ public class PersonalDictionaryLookup implements Closeable {
         }
 
         // If all else fails, look for a global shortcut.
-        final String expansionForGlobal = expandShortcut(shortcutsPerLocale, shortcut, ANY_LOCALE);
+        final String expansionForGlobal = index.expandShortcut(shortcut, ANY_LOCALE);
         if (!TextUtils.isEmpty(expansionForGlobal) && DebugFlags.DEBUG_ENABLED) {
             Log.d(mTag, "expandShortcut() : Global expansion is [" + expansionForGlobal + "]");
         }
         return expansionForGlobal;
     }
 
-    @Nullable private String expandShortcut(
-            @Nullable final HashMap<Locale, HashMap<String, String>> shortcutsPerLocale,
-            @Nonnull final String shortcut,
-            @Nonnull final Locale locale) {
-        if (CollectionUtils.isNullOrEmpty(shortcutsPerLocale)) {
-            return null;
-        }
-        final HashMap<String, String> localeShortcuts = shortcutsPerLocale.get(locale);
-        if (CollectionUtils.isNullOrEmpty(localeShortcuts)) {
-            return null;
-        }
-        return localeShortcuts.get(shortcut);
-    }
-
     /**
      * Loads the personal dictionary in the current thread.
      *
      * Only one reload can happen at a time. If already running, will exit quickly.
+     *
+     * @return false if another load was running, in which case nothing was loaded.
      */
-    private void loadPersonalDictionary() {
+    private boolean loadPersonalDictionary() {
         // Bail out if already in the process of loading.
         if (!mIsLoading.compareAndSet(false, true)) {
             Log.i(mTag, "loadPersonalDictionary() : Already Loading (exit)");
-            return;
+            return false;
         }
         Log.i(mTag, "loadPersonalDictionary() : Start Loading");
-        HashMap<String, HashMap<Locale, String>> dictWords = new HashMap<>();
-        HashMap<Locale, HashMap<String, String>> shortcutsPerLocale = new HashMap<>();
+        final PersonalDictionaryIndex.Builder builder = new PersonalDictionaryIndex.Builder();
+        boolean hasAllRows = true;
         // Load the dictionary.  Items are returned in the default sort order (by frequency).
-        Cursor cursor = mResolver.query(UserDictionary.Words.CONTENT_URI,
+        final Cursor cursor = mResolver.query(UserDictionary.Words.CONTENT_URI,
                 null, null, null, UserDictionary.Words.DEFAULT_SORT_ORDER);
-        if (null == cursor || cursor.getCount() < 1) {
-            Log.i(mTag, "loadPersonalDictionary() : Empty");
-        } else {
-            // Iterate over the entries in the personal dictionary.  Note, that iteration is in
-            // descending frequency by default.
-            while (dictWords.size() < MAX_NUM_ENTRIES && cursor.moveToNext()) {
-                // If there is no column for locale, skip this entry. An empty
-                // locale on the other hand will not be skipped.
-                final int dictLocaleIndex = cursor.getColumnIndex(UserDictionary.Words.LOCALE);
-                if (dictLocaleIndex < 0) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Entry without LOCALE, skipping");
-                    }
-                    continue;
-                }
-                // If there is no column for word, skip this entry.
-                final int dictWordIndex = cursor.getColumnIndex(UserDictionary.Words.WORD);
-                if (dictWordIndex < 0) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Entry without WORD, skipping");
-                    }
-                    continue;
-                }
-                // If the word is null, skip this entry.
-                final String rawDictWord = cursor.getString(dictWordIndex);
-                if (null == rawDictWord) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Null word");
-                    }
-                    continue;
-                }
-                // If the locale is null, that's interpreted to mean all locales. Note, the special
-                // zz locale for an Alphabet (QWERTY) layout will not match any actual language.
-                String localeString = cursor.getString(dictLocaleIndex);
-                if (null == localeString) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Null locale for word [" +
-                                rawDictWord + "], assuming all locales");
-                    }
-                    // For purposes of LocaleUtils, an empty locale matches everything.
-                    localeString = "";
-                }
-                final Locale dictLocale = LocaleUtils.constructLocaleFromString(localeString);
-                // Lowercase the word before storing it.
-                final String dictWord = rawDictWord.toLowerCase(dictLocale);
-                if (DebugFlags.DEBUG_ENABLED) {
-                    Log.d(mTag, "loadPersonalDictionary() : Adding word [" + dictWord
-                            + "] for locale " + dictLocale + "with value" + rawDictWord);
-                }
-                // Check if there is an existing entry for this word.
-                HashMap<Locale, String> dictLocales = dictWords.get(dictWord);
-                if (CollectionUtils.isNullOrEmpty(dictLocales)) {
-                    // If there is no entry for this word, create one.
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Word [" + dictWord +
-                                "] not seen for other locales, creating new entry");
+        try {
+            if (null == cursor || cursor.getCount() < 1) {
+                Log.i(mTag, "loadPersonalDictionary() : Empty");
+            } else {
+                // Iterate over the entries in the personal dictionary.  Note, that iteration is in
+                // descending frequency by default.
+                while (builder.getWordCount() < MAX_NUM_ENTRIES && cursor.moveToNext()) {
+                    final Entry entry = readEntry(cursor);
+                    if (null != entry) {
+                        builder.addEntry(entry);
                     }
-                    dictLocales = new HashMap<>();
-                    dictWords.put(dictWord, dictLocales);
                 }
-                // Append the locale to the list of locales this word is in.
-                dictLocales.put(dictLocale, rawDictWord);
-
-                // If there is no column for a shortcut, we're done.
-                final int shortcutIndex = cursor.getColumnIndex(UserDictionary.Words.SHORTCUT);
-                if (shortcutIndex < 0) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Entry without SHORTCUT, done");
-                    }
-                    continue;
+                if (builder.getWordCount() >= MAX_NUM_ENTRIES) {
+                    // Rows may have been dropped, so later changes need a full reload.
+                    hasAllRows = false;
                 }
-                // If the shortcut is null, we're done.
-                final String shortcut = cursor.getString(shortcutIndex);
-                if (shortcut == null) {
-                    if (DebugFlags.DEBUG_ENABLED) {
-                        Log.d(mTag, "loadPersonalDictionary() : Null shortcut");
+            }
+        } finally {
+            if (null != cursor) {
+                cursor.close();
+            }
+        }
+        setIndex(builder.build(), hasAllRows);
+        return true;
+    }
+
+    /**
+     * Applies changes to single rows of the personal dictionary in the current thread, without
+     * querying the whole dictionary again.
+     *
+     * Falls back to a full reload when the rows of the dictionary are not all known.
+     *
+     * @param changedIds the ids of the rows that were added, changed or removed.
+     * @return false if another load was running, in which case nothing was updated.
+     */
+    private boolean updatePersonalDictionary(@Nonnull final long[] changedIds) {
+        if (!mIsLoading.compareAndSet(false, true)) {
+            Log.i(mTag, "updatePersonalDictionary() : Already Loading (exit)");
+            return false;
+        }
+        final PersonalDictionaryIndex previousIndex = mIndex;
+        if (null == previousIndex || !mIndexHasAllRows) {
+            mIsLoading.set(false);
+            return loadPersonalDictionary();
+        }
+        Log.i(mTag, "updatePersonalDictionary() : Updating " + changedIds.length + " rows");
+        final HashSet<Long> changedIdSet = new HashSet<>();
+        final ArrayList<Entry> changedEntries = new ArrayList<>();
+        for (final long id : changedIds) {
+            changedIdSet.add(id);
+            final Cursor cursor = mResolver.query(
+                    ContentUris.withAppendedId(UserDictionary.Words.CONTENT_URI, id),
+                    null, null, null, null);
+            try {
+                if (null != cursor && cursor.moveToFirst()) {
+                    final Entry entry = readEntry(cursor);
+                    if (null != entry) {
+                        // Keep the changed rows in descending frequency order, after the rows
+                        // with the same frequency.
+                        int position = 0;
+                        while (position < changedEntries.size()
+                                && changedEntries.get(position).mFrequency >= entry.mFrequency) {
+                            ++position;
+                        }
+                        changedEntries.add(position, entry);
                     }
-                    continue;
                 }
-                // Else, save the shortcut.
-                HashMap<String, String> localeShortcuts = shortcutsPerLocale.get(dictLocale);
-                if (localeShortcuts == null) {
-                    localeShortcuts = new HashMap<>();
-                    shortcutsPerLocale.put(dictLocale, localeShortcuts);
+            } finally {
+                if (null != cursor) {
+                    cursor.close();
                 }
-                // Map to the raw input, which might be capitalized.
-                // This lets the user create a shortcut from "gm" to "General Motors".
-                localeShortcuts.put(shortcut, rawDictWord);
             }
         }
+        // Merge the changed rows into the unchanged rows of the previous index, each after the
+        // rows with the same frequency, so that colliding rows resolve as in a full reload.
+        final PersonalDictionaryIndex.Builder builder = new PersonalDictionaryIndex.Builder();
+        int changedPosition = 0;
+        for (int row = 0; row < previousIndex.getRowCount(); ++row) {
+            if (changedIdSet.contains(previousIndex.getRowId(row))) {
+                continue;
+            }
+            final int frequency = previousIndex.getRowFrequency(row);
+            while (changedPosition < changedEntries.size()
+                    && changedEntries.get(changedPosition).mFrequency > frequency) {
+                builder.addEntry(changedEntries.get(changedPosition++));
+            }
+            builder.addEntry(previousIndex.getRow(row));
+        }
+        while (changedPosition < changedEntries.size()) {
+            builder.addEntry(changedEntries.get(changedPosition++));
+        }
+        if (builder.getWordCount() >= MAX_NUM_ENTRIES) {
+            // Let a full reload decide which rows to drop.
+            mIsLoading.set(false);
+            return loadPersonalDictionary();
+        }
+        setIndex(builder.build(), true /* hasAllRows */);
+        return true;
+    }
 
-        List<DictionaryStats> stats = new ArrayList<>();
-        stats.add(new DictionaryStats(ANY_LOCALE, Dictionary.TYPE_USER, dictWords.size()));
-        int numShortcuts = 0;
-        for (HashMap<String, String> shortcuts : shortcutsPerLocale.values()) {
-            numShortcuts += shortcuts.size();
+    /**
+     * Reads the row the cursor points to.
+     *
+     * @return the row, or null if it should be skipped.
+     */
+    @Nullable
+    private Entry readEntry(@Nonnull final Cursor cursor) {
+        // If there is no column for locale, skip this entry. An empty
+        // locale on the other hand will not be skipped.
+        final int dictLocaleIndex = cursor.getColumnIndex(UserDictionary.Words.LOCALE);
+        if (dictLocaleIndex < 0) {
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(mTag, "loadPersonalDictionary() : Entry without LOCALE, skipping");
+            }
+            return null;
+        }
+        // If there is no column for word, skip this entry.
+        final int dictWordIndex = cursor.getColumnIndex(UserDictionary.Words.WORD);
+        if (dictWordIndex < 0) {
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(mTag, "loadPersonalDictionary() : Entry without WORD, skipping");
+            }
+            return null;
+        }
+        // If the word is null, skip this entry.
+        final String rawDictWord = cursor.getString(dictWordIndex);
+        if (null == rawDictWord) {
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(mTag, "loadPersonalDictionary() : Null word");
+            }
+            return null;
         }
-        stats.add(new DictionaryStats(ANY_LOCALE, Dictionary.TYPE_USER_SHORTCUT, numShortcuts));
+        // If the locale is null, that's interpreted to mean all locales. Note, the special
+        // zz locale for an Alphabet (QWERTY) layout will not match any actual language.
+        String localeString = cursor.getString(dictLocaleIndex);
+        if (null == localeString) {
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(mTag, "loadPersonalDictionary() : Null locale for word [" +
+                        rawDictWord + "], assuming all locales");
+            }
+            // For purposes of LocaleUtils, an empty locale matches everything.
+            localeString = "";
+        }
+        // A missing shortcut column or a null shortcut both mean there is no shortcut.
+        final int shortcutIndex = cursor.getColumnIndex(UserDictionary.Words.SHORTCUT);
+        final String shortcut = shortcutIndex < 0 ? null : cursor.getString(shortcutIndex);
+        final int idIndex = cursor.getColumnIndex(UserDictionary.Words._ID);
+        final int frequencyIndex = cursor.getColumnIndex(UserDictionary.Words.FREQUENCY);
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(mTag, "loadPersonalDictionary() : Adding word [" + rawDictWord
+                    + "] for locale [" + localeString + "] with shortcut [" + shortcut + "]");
+        }
+        return new Entry(idIndex < 0 ? -1 : cursor.getLong(idIndex), rawDictWord, localeString,
+                shortcut, frequencyIndex < 0 ? 0 : cursor.getInt(frequencyIndex));
+    }
+
+    private void setIndex(@Nonnull final PersonalDictionaryIndex index,
+            final boolean hasAllRows) {
+        List<DictionaryStats> stats = new ArrayList<>();
+        stats.add(new DictionaryStats(ANY_LOCALE, Dictionary.TYPE_USER, index.getWordCount()));
+        stats.add(new DictionaryStats(ANY_LOCALE, Dictionary.TYPE_USER_SHORTCUT,
+                index.getShortcutCount()));
         mDictionaryStats = stats;
 
-        // Atomically replace the copy of mDictWords and mShortcuts.
-        mDictWords = dictWords;
-        mShortcutsPerLocale = shortcutsPerLocale;
+        // Atomically replace the index.
+        mIndexHasAllRows = hasAllRows;
+        mIndex = index;
 
         // Allow other calls to loadPersonalDictionary to execute now.
         mIsLoading.set(false);
 
-        Log.i(mTag, "loadPersonalDictionary() : Loaded " + mDictWords.size()
-                + " words and " + numShortcuts + " shortcuts");
+        Log.i(mTag, "loadPersonalDictionary() : Loaded " + index.getWordCount()
+                + " words and " + index.getShortcutCount() + " shortcuts");
 
         notifyListeners();
     }
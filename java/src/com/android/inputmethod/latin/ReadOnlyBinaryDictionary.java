@@ -49,6 +49,11 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
         return mBinaryDictionary.isValidDictionary();
     }
 
+    @Override
+    public long getSizeInBytes() {
+        return mBinaryDictionary.getSizeInBytes();
+    }
+
     @Override
     public ArrayList<SuggestedWordInfo> getSuggestions(final ComposedData composedData,
             final NgramContext ngramContext, final long proximityInfoHandle,
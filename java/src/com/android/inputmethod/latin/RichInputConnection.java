@@ -67,6 +67,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     private static final int NUM_CHARS_TO_GET_BEFORE_CURSOR = 40;
     private static final int NUM_CHARS_TO_GET_AFTER_CURSOR = 40;
     private static final int INVALID_CURSOR_POSITION = -1;
+    // The characters other than line breaks that NgramContextUtils splits words on.
+    private static final String WORD_SPACES_IN_A_LINE = " \t\u000B\f";
 
     /**
      * The amount of time a {@link #reloadTextCache} call needs to take for the keyboard to enter
@@ -118,6 +120,41 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * This contains the currently composing text, as LatinIME thinks the TextView is seeing it.
      */
     private final StringBuilder mComposingText = new StringBuilder();
+    /**
+     * This contains the text immediately following the cursor, when it is known. Our own edits
+     * happen before the cursor and leave this text alone, so it is only fetched again from the
+     * TextView after the cursor moved or after an edit that reached past the cursor.
+     */
+    private final StringBuilder mTextAfterCursor = new StringBuilder();
+    private boolean mIsTextAfterCursorKnown;
+    /**
+     * Whether mTextAfterCursor extends to the end of the text in the TextView.
+     */
+    private boolean mTextAfterCursorReachesEnd;
+    /**
+     * Whether the composing text extends past the cursor, in which case replacing it changes the
+     * text after the cursor.
+     */
+    private boolean mIsComposingTextPastCursor;
+    /**
+     * Incremented whenever mCommittedTextBeforeComposingText changes, so that what is computed
+     * from it can be kept until then. The text is changed on the main thread, but what is
+     * computed from it is also asked for on the thread that computes suggestions, so it is
+     * incremented once the change is complete: what is computed from a text in the middle of a
+     * change is never kept for the new text.
+     */
+    private volatile int mCommittedTextVersion;
+    /**
+     * The last n-gram context computed from mCommittedTextBeforeComposingText. It is replaced as
+     * a whole so that it can be read from any thread.
+     */
+    private volatile CachedNgramContext mCachedNgramContext;
+    /**
+     * The last caps mode computed from mCommittedTextBeforeComposingText. The caps mode is asked
+     * for several times for each key press, while the text only changes once. It is replaced as
+     * a whole so that it can be read from any thread.
+     */
+    private volatile CachedCapsMode mCachedCapsMode;
 
     /**
      * This variable is a temporary object used in {@link #commitText(CharSequence,int)}
@@ -155,6 +192,24 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public void onStartInput() {
         mLastSlowInputConnectionTime = -SLOW_INPUTCONNECTION_PERSIST_MS;
+        invalidateTextAfterCursor();
+    }
+
+    private void invalidateTextAfterCursor() {
+        mTextAfterCursor.setLength(0);
+        mIsTextAfterCursorKnown = false;
+        mTextAfterCursorReachesEnd = false;
+    }
+
+    /**
+     * Forgets the text after the cursor if the composing text that is about to be replaced
+     * extends past the cursor.
+     */
+    private void onReplacingComposingText() {
+        if (mIsComposingTextPastCursor) {
+            invalidateTextAfterCursor();
+            mIsComposingTextPastCursor = false;
+        }
     }
 
     private void checkConsistencyForDebug() {
@@ -234,6 +289,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         mExpectedSelStart = newSelStart;
         mExpectedSelEnd = newSelEnd;
         mComposingText.setLength(0);
+        mIsComposingTextPastCursor = false;
         final boolean didReloadTextSuccessfully = reloadTextCache();
         if (!didReloadTextSuccessfully) {
             Log.d(TAG, "Will try to retrieve text later.");
@@ -252,6 +308,9 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     private boolean reloadTextCache() {
         mCommittedTextBeforeComposingText.setLength(0);
+        ++mCommittedTextVersion;
+        // The text after the cursor is only fetched when it is needed.
+        invalidateTextAfterCursor();
         mIC = mParent.getCurrentInputConnection();
         // Call upon the inputconnection directly since our own method is using the cache, and
         // we want to refresh it.
@@ -265,10 +324,12 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             // framework bug... Fall back to ground state and return false.
             mExpectedSelStart = INVALID_CURSOR_POSITION;
             mExpectedSelEnd = INVALID_CURSOR_POSITION;
+            ++mCommittedTextVersion;
             Log.e(TAG, "Unable to connect to the editor to retrieve text.");
             return false;
         }
         mCommittedTextBeforeComposingText.append(textBeforeCursor);
+        ++mCommittedTextVersion;
         return true;
     }
 
@@ -287,7 +348,9 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         // In the practice right now this is only called when input ends so it will be reset so
         // it works, but it's wrong and should be fixed.
         mCommittedTextBeforeComposingText.append(mComposingText);
+        ++mCommittedTextVersion;
         mComposingText.setLength(0);
+        mIsComposingTextPastCursor = false;
         if (isConnected()) {
             mIC.finishComposingText();
         }
@@ -302,7 +365,9 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void commitText(final CharSequence text, final int newCursorPosition) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        onReplacingComposingText();
         mCommittedTextBeforeComposingText.append(text);
+        ++mCommittedTextVersion;
         // TODO: the following is exceedingly error-prone. Right now when the cursor is in the
         // middle of the composing word mComposingText only holds the part of the composing text
         // that is before the cursor, so this actually works, but it's terribly confusing. Fix this.
@@ -385,12 +450,67 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                         + "Setting caps mode without knowing text.");
             }
         }
+        // Read the version before copying the text, so that a change of the text while it is
+        // copied also changes the version and the result is not reused for the new text.
+        final int committedTextVersion = mCommittedTextVersion;
+        final CachedCapsMode cachedCapsMode = mCachedCapsMode;
+        if (null != cachedCapsMode && cachedCapsMode.isFor(committedTextVersion, inputType,
+                spacingAndPunctuations, hasSpaceBefore)) {
+            return cachedCapsMode.mCapsMode;
+        }
         // This never calls InputConnection#getCapsMode - in fact, it's a static method that
         // never blocks or initiates IPC.
-        // TODO: don't call #toString() here. Instead, all accesses to
+        // TODO: don't copy the text here. Instead, all accesses to
         // mCommittedTextBeforeComposingText should be done on the main thread.
-        return CapsModeUtils.getCapsMode(mCommittedTextBeforeComposingText.toString(), inputType,
+        final int capsMode = CapsModeUtils.getCapsMode(getCommittedTextSnapshot(), inputType,
                 spacingAndPunctuations, hasSpaceBefore);
+        mCachedCapsMode = new CachedCapsMode(committedTextVersion, inputType,
+                spacingAndPunctuations, hasSpaceBefore, capsMode);
+        return capsMode;
+    }
+
+    /**
+     * Copies the end of mCommittedTextBeforeComposingText, as much of it as
+     * {@link #reloadTextCache} fetches, so that what is computed from the copy is the same as
+     * right after a reload.
+     *
+     * This may be called from the thread that computes suggestions while the main thread edits
+     * the text, so what is computed from the text is computed from this copy.
+     */
+    @Nonnull
+    private String getCommittedTextSnapshot() {
+        final int start = Math.max(mCommittedTextBeforeComposingText.length()
+                - Constants.EDITOR_CONTENTS_CACHE_SIZE, 0);
+        // The text may have been shortened on the main thread since its length was read. In
+        // this case the version changed too, so the result is not kept.
+        return start < mCommittedTextBeforeComposingText.length()
+                ? mCommittedTextBeforeComposingText.substring(start) : "";
+    }
+
+    private static final class CachedCapsMode {
+        private final int mCommittedTextVersion;
+        private final int mInputType;
+        private final SpacingAndPunctuations mSpacingAndPunctuations;
+        private final boolean mHasSpaceBefore;
+        public final int mCapsMode;
+
+        public CachedCapsMode(final int committedTextVersion, final int inputType,
+                final SpacingAndPunctuations spacingAndPunctuations, final boolean hasSpaceBefore,
+                final int capsMode) {
+            mCommittedTextVersion = committedTextVersion;
+            mInputType = inputType;
+            mSpacingAndPunctuations = spacingAndPunctuations;
+            mHasSpaceBefore = hasSpaceBefore;
+            mCapsMode = capsMode;
+        }
+
+        public boolean isFor(final int committedTextVersion, final int inputType,
+                final SpacingAndPunctuations spacingAndPunctuations,
+                final boolean hasSpaceBefore) {
+            return mCommittedTextVersion == committedTextVersion && mInputType == inputType
+                    && mSpacingAndPunctuations == spacingAndPunctuations
+                    && mHasSpaceBefore == hasSpaceBefore;
+        }
     }
 
     public int getCodePointBeforeCursor() {
@@ -442,10 +562,29 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     }
 
     public CharSequence getTextAfterCursor(final int n, final int flags) {
-        return getTextAfterCursorAndDetectLaggyConnection(
+        // Styles are not cached, so they always have to be fetched from the TextView.
+        if (0 == flags && mIsTextAfterCursorKnown
+                && (mTextAfterCursor.length() >= n || mTextAfterCursorReachesEnd)) {
+            return mTextAfterCursor.substring(0, Math.min(n, mTextAfterCursor.length()));
+        }
+        // Fetch a little more than needed so that the next requests can use the cache.
+        final int numCharsToGet = Math.max(n, NUM_CHARS_TO_GET_AFTER_CURSOR);
+        final CharSequence textAfterCursor = getTextAfterCursorAndDetectLaggyConnection(
                 OPERATION_GET_TEXT_AFTER_CURSOR,
                 SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS,
-                n, flags);
+                numCharsToGet, flags);
+        if (null == textAfterCursor) {
+            return null;
+        }
+        setTextAfterCursor(textAfterCursor, numCharsToGet);
+        return textAfterCursor.length() > n ? textAfterCursor.subSequence(0, n) : textAfterCursor;
+    }
+
+    private void setTextAfterCursor(final CharSequence textAfterCursor, final int requestedLength) {
+        mTextAfterCursor.setLength(0);
+        mTextAfterCursor.append(textAfterCursor.toString());
+        mIsTextAfterCursorKnown = true;
+        mTextAfterCursorReachesEnd = textAfterCursor.length() < requestedLength;
     }
 
     private CharSequence getTextAfterCursorAndDetectLaggyConnection(
@@ -484,6 +623,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             final int len = Math.max(mCommittedTextBeforeComposingText.length()
                     + remainingChars, 0);
             mCommittedTextBeforeComposingText.setLength(len);
+            ++mCommittedTextVersion;
         }
         if (mExpectedSelStart > beforeLength) {
             mExpectedSelStart -= beforeLength;
@@ -511,6 +651,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
             if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+            onReplacingComposingText();
+            ++mCommittedTextVersion;
             // This method is only called for enter or backspace when speaking to old applications
             // (target SDK <= 15 (Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)), or for digits.
             // When talking to new applications we never use this method because it's inherently
@@ -553,6 +695,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 mExpectedSelEnd = mExpectedSelStart;
                 break;
             }
+            ++mCommittedTextVersion;
         }
         if (isConnected()) {
             mIC.sendKeyEvent(keyEvent);
@@ -565,6 +708,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         final CharSequence textBeforeCursor =
                 getTextBeforeCursor(Constants.EDITOR_CONTENTS_CACHE_SIZE + (end - start), 0);
         mCommittedTextBeforeComposingText.setLength(0);
+        ++mCommittedTextVersion;
         if (!TextUtils.isEmpty(textBeforeCursor)) {
             // The cursor is not necessarily at the end of the composing text, but we have its
             // position in mExpectedSelStart and mExpectedSelEnd. In this case we want the start
@@ -577,6 +721,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             mCommittedTextBeforeComposingText.append(
                     textBeforeCursor.subSequence(0, indexOfStartOfComposingText));
         }
+        ++mCommittedTextVersion;
+        mIsComposingTextPastCursor = end > mExpectedSelEnd;
         if (isConnected()) {
             mIC.setComposingRegion(start, end);
         }
@@ -585,6 +731,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void setComposingText(final CharSequence text, final int newCursorPosition) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        onReplacingComposingText();
         mExpectedSelStart += text.length() - mComposingText.length();
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
@@ -642,7 +789,9 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         CharSequence text = completionInfo.getText();
         // text should never be null, but just in case, it's better to insert nothing than to crash
         if (null == text) text = "";
+        onReplacingComposingText();
         mCommittedTextBeforeComposingText.append(text);
+        ++mCommittedTextVersion;
         mExpectedSelStart += text.length() - mComposingText.length();
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
@@ -660,6 +809,13 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         if (!isConnected()) {
             return NgramContext.EMPTY_PREV_WORDS_INFO;
         }
+        if (!DEBUG_PREVIOUS_TEXT) {
+            final NgramContext ngramContext =
+                    getNgramContextFromCommittedText(spacingAndPunctuations, n);
+            if (null != ngramContext) {
+                return ngramContext;
+            }
+        }
         final CharSequence prev = getTextBeforeCursor(NUM_CHARS_TO_GET_BEFORE_CURSOR, 0);
         if (DEBUG_PREVIOUS_TEXT && null != prev) {
             final int checkLength = NUM_CHARS_TO_GET_BEFORE_CURSOR - 1;
@@ -683,6 +839,94 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 prev, spacingAndPunctuations, n);
     }
 
+    /**
+     * Gets the n-gram context from the committed text alone, which only changes when we commit,
+     * delete or reload text, so the context is computed once for all the suggestions requested
+     * in between, notably once for all the letters of the word being composed.
+     *
+     * @return the context, or null if it can't be told from the committed text, in which case it
+     *   should be computed from the text before the cursor.
+     */
+    @Nullable
+    private NgramContext getNgramContextFromCommittedText(
+            final SpacingAndPunctuations spacingAndPunctuations, final int n) {
+        if (INVALID_CURSOR_POSITION == mExpectedSelStart) {
+            return null;
+        }
+        // Read the version before copying the texts. The version is incremented once a change
+        // of the committed text is complete, so a context computed from a text that is being
+        // rebuilt is kept under an older version and is never reused.
+        final int committedTextVersion = mCommittedTextVersion;
+        final String committedText = getCommittedTextSnapshot();
+        final String composingText = mComposingText.toString();
+        final int nInCommittedText;
+        final int composingTextLength = composingText.length();
+        if (0 == composingTextLength) {
+            nInCommittedText = n;
+        } else {
+            // The composing text is the last word if it is a plain word that starts after a
+            // space; the context of the nth word is that of the (n - 1)th committed word. After
+            // a line break, the composing text is alone on its line, which this can't tell.
+            if (n < 2) {
+                return null;
+            }
+            if (!committedText.isEmpty() && WORD_SPACES_IN_A_LINE.indexOf(
+                    committedText.charAt(committedText.length() - 1)) < 0) {
+                return null;
+            }
+            if (spacingAndPunctuations.isWordConnector(composingText.charAt(0))) {
+                return null;
+            }
+            for (int i = 0; i < composingTextLength; ++i) {
+                if (Character.isWhitespace(composingText.charAt(i))) {
+                    return null;
+                }
+            }
+            nInCommittedText = n - 1;
+        }
+        final CachedNgramContext cachedNgramContext = mCachedNgramContext;
+        if (null != cachedNgramContext
+                && cachedNgramContext.isFor(committedTextVersion, nInCommittedText,
+                        spacingAndPunctuations)) {
+            return cachedNgramContext.mNgramContext;
+        }
+        final int committedTextLength = committedText.length();
+        if (committedTextLength < NUM_CHARS_TO_GET_BEFORE_CURSOR
+                && committedTextLength < mExpectedSelStart - composingTextLength) {
+            // Not enough text is cached to tell the context.
+            return null;
+        }
+        final String prev = committedText.substring(
+                Math.max(committedTextLength - NUM_CHARS_TO_GET_BEFORE_CURSOR, 0));
+        final NgramContext ngramContext = NgramContextUtils.getNgramContextFromNthPreviousWord(
+                prev, spacingAndPunctuations, nInCommittedText);
+        mCachedNgramContext = new CachedNgramContext(committedTextVersion, nInCommittedText,
+                spacingAndPunctuations, ngramContext);
+        return ngramContext;
+    }
+
+    private static final class CachedNgramContext {
+        private final int mCommittedTextVersion;
+        private final int mN;
+        private final SpacingAndPunctuations mSpacingAndPunctuations;
+        public final NgramContext mNgramContext;
+
+        public CachedNgramContext(final int committedTextVersion, final int n,
+                final SpacingAndPunctuations spacingAndPunctuations,
+                final NgramContext ngramContext) {
+            mCommittedTextVersion = committedTextVersion;
+            mN = n;
+            mSpacingAndPunctuations = spacingAndPunctuations;
+            mNgramContext = ngramContext;
+        }
+
+        public boolean isFor(final int committedTextVersion, final int n,
+                final SpacingAndPunctuations spacingAndPunctuations) {
+            return mCommittedTextVersion == committedTextVersion && mN == n
+                    && mSpacingAndPunctuations == spacingAndPunctuations;
+        }
+    }
+
     private static boolean isPartOfCompositionForScript(final int codePoint,
             final SpacingAndPunctuations spacingAndPunctuations, final int scriptId) {
         // We always consider word connectors part of compositions.
@@ -718,7 +962,57 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         if (before == null || after == null) {
             return null;
         }
+        setTextAfterCursor(after, NUM_CHARS_TO_GET_AFTER_CURSOR);
+        reloadTextCacheIfDrifted(before);
+
+        final int startIndexInBefore =
+                getStartIndexOfWordBeforeCursor(before, spacingAndPunctuations, scriptId);
+        final int endIndexInAfter =
+                getEndIndexOfWordAfterCursor(after, spacingAndPunctuations, scriptId);
+        final boolean hasUrlSpans =
+                SpannableStringUtils.hasUrlSpans(before, startIndexInBefore, before.length())
+                || SpannableStringUtils.hasUrlSpans(after, 0, endIndexInAfter);
+        // We don't use TextUtils#concat because it copies all spans without respect to their
+        // nature. If the text includes a PARAGRAPH span and it has been split, then
+        // TextUtils#concat will crash when it tries to concat both sides of it.
+        return new TextRange(
+                SpannableStringUtils.concatWithNonParagraphSuggestionSpansOnly(before, after),
+                        startIndexInBefore, before.length() + endIndexInAfter, before.length(),
+                        hasUrlSpans);
+    }
 
+    /**
+     * Returns the word surrounding the cursor, like {@link #getWordRangeAtCursor} does but without
+     * the styles, which allows it to use the cached text instead of calling upon the TextView.
+     *
+     * @param spacingAndPunctuations the rules for spacing and punctuation
+     * @param scriptId the script we consider to be writing words, as one of ScriptUtils.SCRIPT_*
+     * @return the word surrounding the cursor, or null if we are not connected to the editor
+     */
+    @Nullable
+    public String getWordAtCursor(final SpacingAndPunctuations spacingAndPunctuations,
+            final int scriptId) {
+        mIC = mParent.getCurrentInputConnection();
+        if (!isConnected()) {
+            return null;
+        }
+        final CharSequence before = getTextBeforeCursor(NUM_CHARS_TO_GET_BEFORE_CURSOR, 0);
+        final CharSequence after = getTextAfterCursor(NUM_CHARS_TO_GET_AFTER_CURSOR, 0);
+        if (before == null || after == null) {
+            return null;
+        }
+        final int startIndexInBefore =
+                getStartIndexOfWordBeforeCursor(before, spacingAndPunctuations, scriptId);
+        final int endIndexInAfter =
+                getEndIndexOfWordAfterCursor(after, spacingAndPunctuations, scriptId);
+        return new StringBuilder()
+                .append(before, startIndexInBefore, before.length())
+                .append(after, 0, endIndexInAfter)
+                .toString();
+    }
+
+    private static int getStartIndexOfWordBeforeCursor(final CharSequence before,
+            final SpacingAndPunctuations spacingAndPunctuations, final int scriptId) {
         // Going backward, find the first breaking point (separator)
         int startIndexInBefore = before.length();
         while (startIndexInBefore > 0) {
@@ -731,7 +1025,11 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 --startIndexInBefore;
             }
         }
+        return startIndexInBefore;
+    }
 
+    private static int getEndIndexOfWordAfterCursor(final CharSequence after,
+            final SpacingAndPunctuations spacingAndPunctuations, final int scriptId) {
         // Find last word separator after the cursor
         int endIndexInAfter = -1;
         while (++endIndexInAfter < after.length()) {
@@ -743,17 +1041,28 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 ++endIndexInAfter;
             }
         }
+        return endIndexInAfter;
+    }
 
-        final boolean hasUrlSpans =
-                SpannableStringUtils.hasUrlSpans(before, startIndexInBefore, before.length())
-                || SpannableStringUtils.hasUrlSpans(after, 0, endIndexInAfter);
-        // We don't use TextUtils#concat because it copies all spans without respect to their
-        // nature. If the text includes a PARAGRAPH span and it has been split, then
-        // TextUtils#concat will crash when it tries to concat both sides of it.
-        return new TextRange(
-                SpannableStringUtils.concatWithNonParagraphSuggestionSpansOnly(before, after),
-                        startIndexInBefore, before.length() + endIndexInAfter, before.length(),
-                        hasUrlSpans);
+    /**
+     * Compares text just fetched from the TextView with the cached text before the cursor, and
+     * reloads the cache if they disagree. This happens when the editor changed the text without
+     * moving the cursor in a way we would notice, so we only pay for a reload in that case.
+     *
+     * @param textBeforeCursor the text before the cursor, as just returned by the TextView.
+     */
+    private void reloadTextCacheIfDrifted(final CharSequence textBeforeCursor) {
+        if (INVALID_CURSOR_POSITION == mExpectedSelStart || mComposingText.length() > 0) {
+            return;
+        }
+        final int cachedLength = mCommittedTextBeforeComposingText.length();
+        final int length = Math.min(textBeforeCursor.length(), cachedLength);
+        if (TextUtils.regionMatches(mCommittedTextBeforeComposingText, cachedLength - length,
+                textBeforeCursor, textBeforeCursor.length() - length, length)) {
+            return;
+        }
+        Log.i(TAG, "Cached text before the cursor is out of date, reloading it.");
+        reloadTextCache();
     }
 
     public boolean isCursorTouchingWord(final SpacingAndPunctuations spacingAndPunctuations,
@@ -923,6 +1232,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     public void tryFixLyingCursorPosition() {
         mIC = mParent.getCurrentInputConnection();
+        // The cursor position decides whether the cached text is long enough for a context.
+        ++mCommittedTextVersion;
         final CharSequence textBeforeCursor = getTextBeforeCursor(
                 Constants.EDITOR_CONTENTS_CACHE_SIZE, 0);
         final CharSequence selectedText = isConnected() ? mIC.getSelectedText(0 /* flags */) : null;
@@ -959,6 +1270,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 }
             }
         }
+        ++mCommittedTextVersion;
     }
 
     @Override
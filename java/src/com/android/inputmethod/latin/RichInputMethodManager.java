@@ -38,9 +38,11 @@ import com.android.inputmethod.latin.utils.AdditionalSubtypeUtils;
 import com.android.inputmethod.latin.utils.LanguageOnSpacebarUtils;
 import com.android.inputmethod.latin.utils.SubtypeLocaleUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -69,8 +71,11 @@ public class RichInputMethodManager {
     private RichInputMethodSubtype mCurrentRichInputMethodSubtype;
     private InputMethodInfo mShortcutInputMethodInfo;
     private InputMethodSubtype mShortcutSubtype;
+    // Locales of the subtypes that were in use before the current one, most recent first.
+    private final LinkedList<Locale> mSubtypeLocaleHistory = new LinkedList<>();
 
     private static final int INDEX_NOT_FOUND = -1;
+    private static final int MAX_SUBTYPE_LOCALE_HISTORY_SIZE = 4;
 
     public static RichInputMethodManager getInstance() {
         sInstance.checkInitialized();
@@ -320,6 +325,9 @@ public class RichInputMethodManager {
     }
 
     public void onSubtypeChanged(@Nonnull final InputMethodSubtype newSubtype) {
+        if (null != mCurrentRichInputMethodSubtype) {
+            recordSubtypeLocaleInHistory(mCurrentRichInputMethodSubtype.getLocale());
+        }
         updateCurrentSubtype(newSubtype);
         updateShortcutIme();
         if (DEBUG) {
@@ -530,6 +538,55 @@ public class RichInputMethodManager {
         return true;
     }
 
+    private synchronized void recordSubtypeLocaleInHistory(@Nonnull final Locale locale) {
+        mSubtypeLocaleHistory.remove(locale);
+        mSubtypeLocaleHistory.addFirst(locale);
+        while (mSubtypeLocaleHistory.size() > MAX_SUBTYPE_LOCALE_HISTORY_SIZE) {
+            mSubtypeLocaleHistory.removeLast();
+        }
+    }
+
+    /**
+     * Guesses the locale of the subtype the user is most likely to switch to next.
+     *
+     * Multilingual users typically go back and forth between two languages, so this is the most
+     * recently used locale other than the current one, provided that a subtype of this IME is
+     * still enabled for it. If there is no such history, this is the locale of the subtype that
+     * follows the current one in the list of enabled subtypes, which is where the language
+     * switch key goes.
+     *
+     * @return the predicted locale, or null if there is no other enabled locale.
+     */
+    @Nullable
+    public Locale getPredictedNextSubtypeLocale() {
+        final Locale currentLocale = getCurrentSubtypeLocale();
+        final List<InputMethodSubtype> enabledSubtypes =
+                getMyEnabledInputMethodSubtypeList(true /* allowsImplicitlySelectedSubtypes */);
+        final List<Locale> history;
+        synchronized (this) {
+            history = new ArrayList<>(mSubtypeLocaleHistory);
+        }
+        for (final Locale locale : history) {
+            if (locale.equals(currentLocale)) continue;
+            for (final InputMethodSubtype subtype : enabledSubtypes) {
+                if (locale.equals(SubtypeLocaleUtils.getSubtypeLocale(subtype))) {
+                    return locale;
+                }
+            }
+        }
+        final int currentIndex = getSubtypeIndexInList(
+                getCurrentSubtype().getRawSubtype(), enabledSubtypes);
+        final int count = enabledSubtypes.size();
+        for (int i = 1; i <= count; ++i) {
+            final Locale locale = SubtypeLocaleUtils.getSubtypeLocale(
+                    enabledSubtypes.get((currentIndex + i) % count));
+            if (!locale.equals(currentLocale)) {
+                return locale;
+            }
+        }
+        return null;
+    }
+
     private void updateCurrentSubtype(@Nullable final InputMethodSubtype subtype) {
         mCurrentRichInputMethodSubtype = RichInputMethodSubtype.getRichInputMethodSubtype(subtype);
     }
@@ -49,6 +49,9 @@ public final class Suggest {
     // We are sharing the same ID between typing and gesture to save RAM footprint.
     public static final int SESSION_ID_TYPING = 0;
     public static final int SESSION_ID_GESTURE = 0;
+    // Speculative suggestions have a session of their own, so that the typing session can still
+    // continue its search from the previous keystroke.
+    public static final int SESSION_ID_SPECULATION = 1;
 
     // Close to -2**31
     private static final int SUPPRESS_SUGGEST_THRESHOLD = -2000000000;
@@ -106,10 +109,25 @@ public final class Suggest {
         } else {
             getSuggestedWordsForNonBatchInput(wordComposer, ngramContext, keyboard,
                     settingsValuesForSuggestion, inputStyle, isCorrectionEnabled,
-                    sequenceNumber, callback);
+                    sequenceNumber, SESSION_ID_TYPING, callback);
         }
     }
 
+    /**
+     * Computes the suggestions for input that is likely to be typed next. This is the same as
+     * {@link #getSuggestedWords} for {@link SuggestedWords#INPUT_STYLE_TYPING}, but uses
+     * {@link #SESSION_ID_SPECULATION}.
+     */
+    public void getSpeculativeSuggestedWords(final WordComposer wordComposer,
+            final NgramContext ngramContext, final Keyboard keyboard,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion,
+            final boolean isCorrectionEnabled, final OnGetSuggestedWordsCallback callback) {
+        getSuggestedWordsForNonBatchInput(wordComposer, ngramContext, keyboard,
+                settingsValuesForSuggestion, SuggestedWords.INPUT_STYLE_TYPING,
+                isCorrectionEnabled, SuggestedWords.NOT_A_SEQUENCE_NUMBER,
+                SESSION_ID_SPECULATION, callback);
+    }
+
     private static ArrayList<SuggestedWordInfo> getTransformedSuggestedWordInfoList(
             final WordComposer wordComposer, final SuggestionResults results,
             final int trailingSingleQuotesCount, final Locale defaultLocale) {
@@ -153,7 +171,8 @@ public final class Suggest {
             final NgramContext ngramContext, final Keyboard keyboard,
             final SettingsValuesForSuggestion settingsValuesForSuggestion,
             final int inputStyleIfNotPrediction, final boolean isCorrectionEnabled,
-            final int sequenceNumber, final OnGetSuggestedWordsCallback callback) {
+            final int sequenceNumber, final int sessionId,
+            final OnGetSuggestedWordsCallback callback) {
         final String typedWordString = wordComposer.getTypedWord();
         final int trailingSingleQuotesCount =
                 StringUtils.getTrailingSingleQuotesCount(typedWordString);
@@ -163,7 +182,7 @@ public final class Suggest {
 
         final SuggestionResults suggestionResults = mDictionaryFacilitator.getSuggestionResults(
                 wordComposer.getComposedDataSnapshot(), ngramContext, keyboard,
-                settingsValuesForSuggestion, SESSION_ID_TYPING, inputStyleIfNotPrediction);
+                settingsValuesForSuggestion, sessionId, inputStyleIfNotPrediction);
         final Locale locale = mDictionaryFacilitator.getLocale();
         final ArrayList<SuggestedWordInfo> suggestionsContainer =
                 getTransformedSuggestedWordInfoList(wordComposer, suggestionResults,
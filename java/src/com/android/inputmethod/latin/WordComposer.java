@@ -93,6 +93,28 @@ public final class WordComposer {
         refreshTypedWordCache();
     }
 
+    /**
+     * Creates a copy of a word composer, that can be read on another thread while the original
+     * keeps changing.
+     * @param source the word composer to copy.
+     */
+    public WordComposer(@Nonnull final WordComposer source) {
+        mCombinerChain = new CombinerChain(source.mTypedWordCache.toString());
+        mCombiningSpec = source.mCombiningSpec;
+        mEvents = new ArrayList<>(source.mEvents);
+        mInputPointers.copy(source.mInputPointers);
+        mAutoCorrection = source.mAutoCorrection;
+        mIsResumed = source.mIsResumed;
+        mIsBatchMode = source.mIsBatchMode;
+        mRejectedBatchModeSuggestion = source.mRejectedBatchModeSuggestion;
+        mCapsCount = source.mCapsCount;
+        mDigitsCount = source.mDigitsCount;
+        mCapitalizedMode = source.mCapitalizedMode;
+        mCursorPositionWithinWord = source.mCursorPositionWithinWord;
+        mIsOnlyFirstCharCapitalized = source.mIsOnlyFirstCharCapitalized;
+        refreshTypedWordCache();
+    }
+
     public ComposedData getComposedDataSnapshot() {
         return new ComposedData(getInputPointers(), isBatchMode(), mTypedWordCache.toString());
     }
@@ -46,6 +46,7 @@ import com.android.inputmethod.latin.SuggestedWords;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.WordComposer;
 import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.CoordinateUtils;
 import com.android.inputmethod.latin.common.InputPointers;
 import com.android.inputmethod.latin.common.StringUtils;
 import com.android.inputmethod.latin.define.DebugFlags;
@@ -63,8 +64,10 @@ import java.util.ArrayList;
 import java.util.Locale;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * This class manages the input logic.
@@ -72,6 +75,14 @@ import javax.annotation.Nonnull;
 public final class InputLogic {
     private static final String TAG = InputLogic.class.getSimpleName();
 
+    /**
+     * The time a suggestion computation is expected to take at most. Longer computations are
+     * reported as laggy. Nobody waits for them, but their results show up late.
+     */
+    private static final long SUGGESTION_LATENCY_BUDGET_MILLIS =
+            Constants.GET_SUGGESTED_WORDS_TIMEOUT;
+    private static final int DECODER_OPERATION_GET_SUGGESTED_WORDS = 0;
+
     // TODO : Remove this member when we can.
     final LatinIME mLatinIME;
     private final SuggestionStripViewAccessor mSuggestionStripViewAccessor;
@@ -105,6 +116,13 @@ public final class InputLogic {
     private boolean mIsAutoCorrectionIndicatorOn;
     private long mDoubleSpacePeriodCountdownStart;
 
+    // The id of the latest request of suggestions to show in the strip. Results of older requests
+    // are for text that has been typed past, so they are dropped.
+    private final AtomicInteger mLatestSuggestionRequestId = new AtomicInteger();
+    // Whether the results of the latest request are yet to come. Only used on the UI thread.
+    private boolean mIsWaitingForSuggestions;
+    private final SpeculativeSuggestions mSpeculativeSuggestions = new SpeculativeSuggestions();
+
     // The word being corrected while the cursor is in the middle of the word.
     // Note: This does not have a composing span, so it must be handled separately.
     private String mWordBeingCorrectedByCursor = null;
@@ -1193,11 +1211,11 @@ public final class InputLogic {
         if (!mConnection.hasSelection()
                 && settingsValues.isSuggestionsEnabledPerUserSettings()
                 && settingsValues.mSpacingAndPunctuations.mCurrentLanguageHasSpaces) {
-            final TextRange range = mConnection.getWordRangeAtCursor(
+            final String word = mConnection.getWordAtCursor(
                     settingsValues.mSpacingAndPunctuations,
                     currentKeyboardScriptId);
-            if (range != null) {
-                return range.mWord.toString();
+            if (word != null) {
+                return word;
             }
         }
         return "";
@@ -1450,19 +1468,10 @@ public final class InputLogic {
             startTimeMillis = System.currentTimeMillis();
             Log.d(TAG, "performUpdateSuggestionStripSync()");
         }
-        // Check if we have a suggestion engine attached.
-        if (!settingsValues.needsToLookupSuggestions()) {
-            if (mWordComposer.isComposingWord()) {
-                Log.w(TAG, "Called updateSuggestionsOrPredictions but suggestions were not "
-                        + "requested!");
-            }
-            // Clear the suggestions strip.
-            mSuggestionStripViewAccessor.showSuggestionStrip(SuggestedWords.getEmptyInstance());
-            return;
-        }
-
-        if (!mWordComposer.isComposingWord() && !settingsValues.mBigramPredictionEnabled) {
-            mSuggestionStripViewAccessor.setNeutralSuggestionStrip();
+        // This supersedes any request that is still being computed.
+        mLatestSuggestionRequestId.incrementAndGet();
+        mIsWaitingForSuggestions = false;
+        if (!needsToLookupSuggestions(settingsValues)) {
             return;
         }
 
@@ -1471,21 +1480,8 @@ public final class InputLogic {
                 new OnGetSuggestedWordsCallback() {
                     @Override
                     public void onGetSuggestedWords(final SuggestedWords suggestedWords) {
-                        final String typedWordString = mWordComposer.getTypedWord();
-                        final SuggestedWordInfo typedWordInfo = new SuggestedWordInfo(
-                                typedWordString, "" /* prevWordsContext */,
-                                SuggestedWordInfo.MAX_SCORE,
-                                SuggestedWordInfo.KIND_TYPED, Dictionary.DICTIONARY_USER_TYPED,
-                                SuggestedWordInfo.NOT_AN_INDEX /* indexOfTouchPointOfSecondWord */,
-                                SuggestedWordInfo.NOT_A_CONFIDENCE);
-                        // Show new suggestions if we have at least one. Otherwise keep the old
-                        // suggestions with the new typed word. Exception: if the length of the
-                        // typed word is <= 1 (after a deletion typically) we clear old suggestions.
-                        if (suggestedWords.size() > 1 || typedWordString.length() <= 1) {
-                            holder.set(suggestedWords);
-                        } else {
-                            holder.set(retrieveOlderSuggestions(typedWordInfo, mSuggestedWords));
-                        }
+                        holder.set(getSuggestedWordsToShow(
+                                suggestedWords, mWordComposer.getTypedWord(), mSuggestedWords));
                     }
                 }
         );
@@ -1502,6 +1498,235 @@ public final class InputLogic {
         }
     }
 
+    /**
+     * Update the suggestion strip without waiting for the suggestions.
+     *
+     * The suggestions are computed on the InputLogicHandler thread from a copy of the current
+     * input, and shown when they come back if no newer request was made and the input did not
+     * change in the meantime. Requests that are superseded before they start are not computed.
+     *
+     * @param settingsValues the current values of the settings.
+     * @param inputStyle the input style of the suggestions.
+     * @param keyboard the current keyboard, or null if there isn't one yet.
+     * @param keyboardShiftMode the current shift mode of the keyboard.
+     */
+    // Called on the UI thread.
+    public void performUpdateSuggestionStrip(final SettingsValues settingsValues,
+            final int inputStyle, @Nullable final Keyboard keyboard,
+            final int keyboardShiftMode) {
+        final int requestId = mLatestSuggestionRequestId.incrementAndGet();
+        mIsWaitingForSuggestions = false;
+        if (!needsToLookupSuggestions(settingsValues) || null == keyboard) {
+            return;
+        }
+        mWordComposer.adviseCapitalizedModeBeforeFetchingSuggestions(
+                getActualCapsMode(settingsValues, keyboardShiftMode));
+        // Everything the computation reads from the input is taken now, since the UI thread
+        // keeps changing it while the computation runs.
+        final WordComposer wordComposer = new WordComposer(mWordComposer);
+        final NgramContext ngramContext = getNgramContextFromNthPreviousWordForSuggestion(
+                settingsValues.mSpacingAndPunctuations,
+                wordComposer.isComposingWord() ? 2 : 1);
+        final int expectedSelectionStart = mConnection.getExpectedSelectionStart();
+        final SettingsValuesForSuggestion settingsValuesForSuggestion =
+                new SettingsValuesForSuggestion(settingsValues.mBlockPotentiallyOffensive,
+                        settingsValues.mMultilingualSuggestionsEnabled);
+        final boolean isCorrectionEnabled = settingsValues.mAutoCorrectionEnabledPerUserSettings;
+        final long requestTimeMillis = SystemClock.uptimeMillis();
+        final boolean isSpeculationEnabled = settingsValues.mSpeculativeSuggestionsEnabled
+                && !wordComposer.isBatchMode();
+        if (isSpeculationEnabled) {
+            final SuggestedWords speculativeSuggestedWords = mSpeculativeSuggestions.take(
+                    wordComposer, ngramContext, keyboard, isCorrectionEnabled,
+                    settingsValuesForSuggestion.mBlockPotentiallyOffensive);
+            if (null != speculativeSuggestedWords) {
+                // These are shown until the suggestions for the actual touch position are
+                // computed. We are still waiting for those, so they are the ones a separator
+                // auto-corrects with.
+                mSuggestionStripViewAccessor.showSuggestionStrip(getSuggestedWordsToShow(
+                        speculativeSuggestedWords, wordComposer.getTypedWord(), mSuggestedWords));
+            }
+        } else {
+            mSpeculativeSuggestions.clear();
+        }
+        final Runnable computation = new Runnable() {
+            @Override
+            public void run() {
+                if (requestId != mLatestSuggestionRequestId.get()) {
+                    StatsUtils.onSuggestionRequestSuperseded(false /* wasComputed */);
+                    return;
+                }
+                final long startTimeMillis = SystemClock.uptimeMillis();
+                mSuggest.getSuggestedWords(wordComposer, ngramContext, keyboard,
+                        settingsValuesForSuggestion, isCorrectionEnabled, inputStyle,
+                        SuggestedWords.NOT_A_SEQUENCE_NUMBER, new OnGetSuggestedWordsCallback() {
+                            @Override
+                            public void onGetSuggestedWords(final SuggestedWords suggestedWords) {
+                                onSuggestedWordsComputed(requestId, wordComposer.getTypedWord(),
+                                        expectedSelectionStart, suggestedWords);
+                                if (isSpeculationEnabled) {
+                                    computeSpeculativeSuggestions(requestId, startTimeMillis,
+                                            wordComposer, ngramContext, keyboard,
+                                            settingsValuesForSuggestion, isCorrectionEnabled,
+                                            suggestedWords);
+                                }
+                            }
+                        });
+                final long durationMillis = SystemClock.uptimeMillis() - startTimeMillis;
+                if (durationMillis >= SUGGESTION_LATENCY_BUDGET_MILLIS) {
+                    Log.w(TAG, "Slow suggestions: took " + durationMillis + " ms, requested "
+                            + (startTimeMillis - requestTimeMillis) + " ms before.");
+                    StatsUtils.onDecoderLaggy(DECODER_OPERATION_GET_SUGGESTED_WORDS,
+                            durationMillis);
+                }
+            }
+        };
+        if (mInputLogicHandler.computeSuggestedWords(computation)) {
+            StatsUtils.onSuggestionRequestSuperseded(false /* wasComputed */);
+        }
+        mIsWaitingForSuggestions = true;
+    }
+
+    // Called on the InputLogicHandler thread.
+    void onSuggestedWordsComputed(final int requestId, final String typedWord,
+            final int expectedSelectionStart, final SuggestedWords suggestedWords) {
+        if (requestId == mLatestSuggestionRequestId.get()) {
+            mSuggestionStripViewAccessor.prepareSuggestionStrip(suggestedWords);
+        }
+        mLatinIME.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestId != mLatestSuggestionRequestId.get()) {
+                    StatsUtils.onSuggestionRequestSuperseded(true /* wasComputed */);
+                    return;
+                }
+                mIsWaitingForSuggestions = false;
+                // A new request is on its way if the input changed since this one was made.
+                if (expectedSelectionStart != mConnection.getExpectedSelectionStart()
+                        || !typedWord.equals(mWordComposer.getTypedWord())) {
+                    StatsUtils.onSuggestionRequestSuperseded(true /* wasComputed */);
+                    return;
+                }
+                mSuggestionStripViewAccessor.showSuggestionStrip(
+                        getSuggestedWordsToShow(suggestedWords, typedWord, mSuggestedWords));
+            }
+        });
+    }
+
+    /**
+     * Schedule the computation of suggestions for the keys that are likely to be typed next.
+     *
+     * The likely next keys come from the suggestions for the current input. Each speculation
+     * taps the center of its key, and they all have to start within
+     * {@link SpeculativeSuggestions#SPECULATION_BUDGET_MILLIS}. Nothing is speculated when the
+     * suggestions for the current input took longer than that.
+     */
+    // Called on the InputLogicHandler thread.
+    void computeSpeculativeSuggestions(final int requestId, final long startTimeMillis,
+            final WordComposer wordComposer, final NgramContext ngramContext,
+            final Keyboard keyboard,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion,
+            final boolean isCorrectionEnabled, final SuggestedWords suggestedWords) {
+        final long nowMillis = SystemClock.uptimeMillis();
+        if (requestId != mLatestSuggestionRequestId.get()
+                || nowMillis - startTimeMillis > SpeculativeSuggestions.SPECULATION_BUDGET_MILLIS) {
+            return;
+        }
+        final int[] codePoints = SpeculativeSuggestions.getLikelyNextCodePoints(suggestedWords,
+                wordComposer.getTypedWord(), keyboard,
+                SpeculativeSuggestions.MAX_SPECULATION_COUNT);
+        final int[] coordinates = keyboard.getCoordinates(codePoints);
+        final int generation = mSpeculativeSuggestions.getGeneration();
+        final long deadlineMillis = nowMillis + SpeculativeSuggestions.SPECULATION_BUDGET_MILLIS;
+        for (int i = 0; i < codePoints.length; i++) {
+            final Event event = Event.createSoftwareKeypressEvent(codePoints[i],
+                    Event.NOT_A_KEY_CODE, CoordinateUtils.xFromArray(coordinates, i),
+                    CoordinateUtils.yFromArray(coordinates, i), false /* isKeyRepeat */);
+            mInputLogicHandler.computeSpeculativeSuggestedWords(new Runnable() {
+                @Override
+                public void run() {
+                    if (requestId != mLatestSuggestionRequestId.get()
+                            || SystemClock.uptimeMillis() >= deadlineMillis) {
+                        return;
+                    }
+                    final WordComposer speculativeWordComposer = new WordComposer(wordComposer);
+                    speculativeWordComposer.applyProcessedEvent(
+                            speculativeWordComposer.processEvent(event));
+                    mSuggest.getSpeculativeSuggestedWords(speculativeWordComposer, ngramContext,
+                            keyboard, settingsValuesForSuggestion, isCorrectionEnabled,
+                            new OnGetSuggestedWordsCallback() {
+                                @Override
+                                public void onGetSuggestedWords(
+                                        final SuggestedWords speculativeSuggestedWords) {
+                                    mSpeculativeSuggestions.add(generation,
+                                            speculativeWordComposer, ngramContext, keyboard,
+                                            isCorrectionEnabled,
+                                            settingsValuesForSuggestion.mBlockPotentiallyOffensive,
+                                            speculativeSuggestedWords);
+                                }
+                            });
+                }
+            });
+        }
+    }
+
+    /**
+     * @return whether suggestions were requested by
+     * {@link #performUpdateSuggestionStrip(SettingsValues,int,Keyboard,int)} and are not shown
+     * yet.
+     */
+    // Called on the UI thread.
+    public boolean isWaitingForSuggestions() {
+        return mIsWaitingForSuggestions;
+    }
+
+    /**
+     * Cancel the suggestions that are being computed, so that their results are not shown.
+     */
+    // Called on the UI thread.
+    public void cancelPendingSuggestions() {
+        mLatestSuggestionRequestId.incrementAndGet();
+        mIsWaitingForSuggestions = false;
+    }
+
+    /**
+     * Clear the suggestion strip if no suggestions need to be looked up for the current input.
+     * @return whether suggestions need to be looked up.
+     */
+    private boolean needsToLookupSuggestions(final SettingsValues settingsValues) {
+        // Check if we have a suggestion engine attached.
+        if (!settingsValues.needsToLookupSuggestions()) {
+            if (mWordComposer.isComposingWord()) {
+                Log.w(TAG, "Called updateSuggestionsOrPredictions but suggestions were not "
+                        + "requested!");
+            }
+            // Clear the suggestions strip.
+            mSuggestionStripViewAccessor.showSuggestionStrip(SuggestedWords.getEmptyInstance());
+            return false;
+        }
+        if (!mWordComposer.isComposingWord() && !settingsValues.mBigramPredictionEnabled) {
+            mSuggestionStripViewAccessor.setNeutralSuggestionStrip();
+            return false;
+        }
+        return true;
+    }
+
+    private static SuggestedWords getSuggestedWordsToShow(final SuggestedWords suggestedWords,
+            final String typedWordString, final SuggestedWords previousSuggestedWords) {
+        // Show new suggestions if we have at least one. Otherwise keep the old suggestions with
+        // the new typed word. Exception: if the length of the typed word is <= 1 (after a
+        // deletion typically) we clear old suggestions.
+        if (suggestedWords.size() > 1 || typedWordString.length() <= 1) {
+            return suggestedWords;
+        }
+        final SuggestedWordInfo typedWordInfo = new SuggestedWordInfo(
+                typedWordString, "" /* prevWordsContext */, SuggestedWordInfo.MAX_SCORE,
+                SuggestedWordInfo.KIND_TYPED, Dictionary.DICTIONARY_USER_TYPED,
+                SuggestedWordInfo.NOT_AN_INDEX /* indexOfTouchPointOfSecondWord */,
+                SuggestedWordInfo.NOT_A_CONFIDENCE);
+        return retrieveOlderSuggestions(typedWordInfo, previousSuggestedWords);
+    }
+
     /**
      * Check if the cursor is touching a word. If so, restart suggestions on this word, else
      * do nothing.
@@ -2254,7 +2479,8 @@ public final class InputLogic {
                         // hence 2; if we aren't, we should just skip whitespace if any, so 1.
                         mWordComposer.isComposingWord() ? 2 : 1),
                 keyboard,
-                new SettingsValuesForSuggestion(settingsValues.mBlockPotentiallyOffensive),
+                new SettingsValuesForSuggestion(settingsValues.mBlockPotentiallyOffensive,
+                        settingsValues.mMultilingualSuggestionsEnabled),
                 settingsValues.mAutoCorrectionEnabledPerUserSettings,
                 inputStyle, sequenceNumber, callback);
     }
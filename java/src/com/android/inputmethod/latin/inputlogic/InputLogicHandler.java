@@ -38,6 +38,8 @@ class InputLogicHandler implements Handler.Callback {
     private boolean mInBatchInput; // synchronized using {@link #mLock}.
 
     private static final int MSG_GET_SUGGESTED_WORDS = 1;
+    private static final int MSG_COMPUTE_SUGGESTED_WORDS = 2;
+    private static final int MSG_COMPUTE_SPECULATIVE_SUGGESTED_WORDS = 3;
 
     // A handler that never does anything. This is used for cases where events come before anything
     // is initialized, though probably only the monkey can actually do this.
@@ -59,6 +61,10 @@ class InputLogicHandler implements Handler.Callback {
         @Override
         public void getSuggestedWords(final int sessionId, final int sequenceNumber,
                 final OnGetSuggestedWordsCallback callback) {}
+        @Override
+        public boolean computeSuggestedWords(final Runnable computation) { return false; }
+        @Override
+        public void computeSpeculativeSuggestedWords(final Runnable computation) {}
     };
 
     InputLogicHandler() {
@@ -98,6 +104,10 @@ class InputLogicHandler implements Handler.Callback {
                 mLatinIME.getSuggestedWords(msg.arg1 /* inputStyle */,
                         msg.arg2 /* sequenceNumber */, (OnGetSuggestedWordsCallback) msg.obj);
                 break;
+            case MSG_COMPUTE_SUGGESTED_WORDS:
+            case MSG_COMPUTE_SPECULATIVE_SUGGESTED_WORDS:
+                ((Runnable) msg.obj).run();
+                break;
         }
         return true;
     }
@@ -218,4 +228,39 @@ class InputLogicHandler implements Handler.Callback {
         mNonUIThreadHandler.obtainMessage(
                 MSG_GET_SUGGESTED_WORDS, inputStyle, sequenceNumber, callback).sendToTarget();
     }
+
+    /**
+     * Schedule a computation of suggestions that nobody waits for.
+     *
+     * The computation replaces the one that may still be waiting in the queue, since that one is
+     * for input that is now out of date.
+     *
+     * @param computation the computation, which takes care of delivering its results.
+     * @return whether a computation that had not started yet was dropped.
+     */
+    // Called on the UI thread by InputLogic.
+    public boolean computeSuggestedWords(final Runnable computation) {
+        final boolean hasDroppedComputation =
+                mNonUIThreadHandler.hasMessages(MSG_COMPUTE_SUGGESTED_WORDS);
+        mNonUIThreadHandler.removeMessages(MSG_COMPUTE_SUGGESTED_WORDS);
+        // Speculations are for the input that is being replaced.
+        mNonUIThreadHandler.removeMessages(MSG_COMPUTE_SPECULATIVE_SUGGESTED_WORDS);
+        mNonUIThreadHandler.obtainMessage(MSG_COMPUTE_SUGGESTED_WORDS, computation)
+                .sendToTarget();
+        return hasDroppedComputation;
+    }
+
+    /**
+     * Schedule a computation of suggestions for input that may be typed next.
+     *
+     * The computation runs once the thread is idle, and is dropped as soon as suggestions are
+     * requested for actual input.
+     *
+     * @param computation the computation, which takes care of keeping its results.
+     */
+    // Called on the Non-UI handler thread by InputLogic.
+    public void computeSpeculativeSuggestedWords(final Runnable computation) {
+        mNonUIThreadHandler.obtainMessage(MSG_COMPUTE_SPECULATIVE_SUGGESTED_WORDS, computation)
+                .sendToTarget();
+    }
 }
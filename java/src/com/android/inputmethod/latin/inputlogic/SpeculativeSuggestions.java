@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.inputlogic;
+
+import android.util.Log;
+
+import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.keyboard.KeyboardId;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.SuggestedWords;
+import com.android.inputmethod.latin.WordComposer;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.define.DebugFlags;
+import com.android.inputmethod.latin.utils.StatsUtils;
+
+import java.util.ArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Suggestions computed ahead of time for the keys that are likely to be typed next.
+ *
+ * The likely next keys are the next letters of the best suggestions for the current input, see
+ * {@link #getLikelyNextCodePoints(SuggestedWords,String,Keyboard,int)}. The suggestions for the
+ * input followed by a tap at the center of each of these keys are computed while the input logic
+ * thread is idle. When the next keystroke matches one of them, its suggestions can be shown
+ * before the actual ones are computed.
+ */
+final class SpeculativeSuggestions {
+    private static final String TAG = SpeculativeSuggestions.class.getSimpleName();
+    private static final boolean DEBUG = DebugFlags.DEBUG_ENABLED;
+
+    // The number of next keys to compute suggestions for after each keystroke.
+    public static final int MAX_SPECULATION_COUNT = 3;
+    // The time that may be spent computing speculative suggestions after each keystroke.
+    // Speculation is skipped when the suggestions for the keystroke itself took longer.
+    public static final long SPECULATION_BUDGET_MILLIS = 40;
+
+    private static final int HIT_RATE_LOG_INTERVAL = 100;
+
+    private static final class Speculation {
+        public final String mTypedWord;
+        public final NgramContext mNgramContext;
+        public final Keyboard mKeyboard;
+        public final boolean mIsAllUpperCase;
+        public final boolean mIsOnlyFirstCharCapitalized;
+        public final boolean mIsCorrectionEnabled;
+        public final boolean mBlockPotentiallyOffensive;
+        public final SuggestedWords mSuggestedWords;
+
+        public Speculation(final WordComposer wordComposer, final NgramContext ngramContext,
+                final Keyboard keyboard, final boolean isCorrectionEnabled,
+                final boolean blockPotentiallyOffensive, final SuggestedWords suggestedWords) {
+            mTypedWord = wordComposer.getTypedWord();
+            mNgramContext = ngramContext;
+            mKeyboard = keyboard;
+            mIsAllUpperCase = wordComposer.isAllUpperCase();
+            mIsOnlyFirstCharCapitalized = wordComposer.isOrWillBeOnlyFirstCharCapitalized();
+            mIsCorrectionEnabled = isCorrectionEnabled;
+            mBlockPotentiallyOffensive = blockPotentiallyOffensive;
+            mSuggestedWords = suggestedWords;
+        }
+
+        public boolean matches(final WordComposer wordComposer, final NgramContext ngramContext,
+                final Keyboard keyboard, final boolean isCorrectionEnabled,
+                final boolean blockPotentiallyOffensive) {
+            return mTypedWord.equals(wordComposer.getTypedWord())
+                    && hasSameKeyPositions(mKeyboard, keyboard)
+                    && mIsAllUpperCase == wordComposer.isAllUpperCase()
+                    && mIsOnlyFirstCharCapitalized
+                            == wordComposer.isOrWillBeOnlyFirstCharCapitalized()
+                    && mIsCorrectionEnabled == isCorrectionEnabled
+                    && mBlockPotentiallyOffensive == blockPotentiallyOffensive
+                    && mNgramContext.equals(ngramContext);
+        }
+    }
+
+    // The keyboard shifts back after the first letter of a sentence, and the shifted and unshifted
+    // alphabet keyboards have their keys at the same positions.
+    private static boolean hasSameKeyPositions(final Keyboard keyboard1,
+            final Keyboard keyboard2) {
+        if (keyboard1 == keyboard2) {
+            return true;
+        }
+        final KeyboardId id1 = keyboard1.mId;
+        final KeyboardId id2 = keyboard2.mId;
+        return id1.isAlphabetKeyboard() && id2.isAlphabetKeyboard()
+                && id1.mSubtype.equals(id2.mSubtype)
+                && id1.mWidth == id2.mWidth && id1.mHeight == id2.mHeight
+                && id1.mMode == id2.mMode && id1.mIsSplitLayout == id2.mIsSplitLayout;
+    }
+
+    // The speculations made since the latest keystroke. Guarded by this.
+    private final ArrayList<Speculation> mSpeculations = new ArrayList<>();
+    // Incremented by each keystroke, so that speculations for an older one are dropped.
+    // Guarded by this.
+    private int mGeneration;
+    // Guarded by this.
+    private int mLookupCount;
+    private int mHitCount;
+
+    /**
+     * Returns the likely next letters of the input, from the best suggestions for it.
+     *
+     * @param suggestedWords the suggestions for the input.
+     * @param typedWord the input.
+     * @param keyboard the current keyboard. Letters it has no key for are skipped.
+     * @param maxCount the maximum number of letters to return.
+     * @return the next letters, the most likely first.
+     */
+    @Nonnull
+    public static int[] getLikelyNextCodePoints(@Nonnull final SuggestedWords suggestedWords,
+            @Nonnull final String typedWord, @Nonnull final Keyboard keyboard,
+            final int maxCount) {
+        final int typedLength = typedWord.length();
+        final int[] codePoints = new int[maxCount];
+        int count = 0;
+        for (int i = 0; i < suggestedWords.size() && count < maxCount; i++) {
+            final String word = suggestedWords.getWord(i);
+            if (word.length() <= typedLength
+                    || !word.regionMatches(true /* ignoreCase */, 0, typedWord, 0, typedLength)) {
+                continue;
+            }
+            final int nextCodePoint = getCodePointOnKeyboard(
+                    word.codePointAt(typedLength), keyboard);
+            if (Constants.NOT_A_CODE != nextCodePoint && Character.isLetter(nextCodePoint)
+                    && !contains(codePoints, count, nextCodePoint)) {
+                codePoints[count++] = nextCodePoint;
+            }
+        }
+        final int[] likelyCodePoints = new int[count];
+        System.arraycopy(codePoints, 0, likelyCodePoints, 0, count);
+        return likelyCodePoints;
+    }
+
+    private static int getCodePointOnKeyboard(final int codePoint, final Keyboard keyboard) {
+        if (null != keyboard.getKey(codePoint)) {
+            return codePoint;
+        }
+        // Suggestions are capitalized like the input, the keyboard may not be.
+        final int lowerCaseCodePoint = Character.toLowerCase(codePoint);
+        if (null != keyboard.getKey(lowerCaseCodePoint)) {
+            return lowerCaseCodePoint;
+        }
+        return Constants.NOT_A_CODE;
+    }
+
+    private static boolean contains(final int[] codePoints, final int count,
+            final int codePoint) {
+        for (int i = 0; i < count; i++) {
+            if (codePoints[i] == codePoint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the generation to pass to
+     * {@link #add(int,WordComposer,NgramContext,Keyboard,boolean,boolean,SuggestedWords)}
+     * along with the speculations made for the current keystroke.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Keeps the suggestions computed for a likely next input, unless a keystroke happened since
+     * <code>generation</code> was read.
+     */
+    public synchronized void add(final int generation, @Nonnull final WordComposer wordComposer,
+            @Nonnull final NgramContext ngramContext, @Nonnull final Keyboard keyboard,
+            final boolean isCorrectionEnabled, final boolean blockPotentiallyOffensive,
+            @Nonnull final SuggestedWords suggestedWords) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mSpeculations.add(new Speculation(wordComposer, ngramContext, keyboard,
+                isCorrectionEnabled, blockPotentiallyOffensive, suggestedWords));
+    }
+
+    /**
+     * Looks up the suggestions speculated for a new input, and drops all the speculations.
+     *
+     * @return the speculated suggestions, or null if the input is not one that was speculated.
+     */
+    @Nullable
+    public synchronized SuggestedWords take(@Nonnull final WordComposer wordComposer,
+            @Nonnull final NgramContext ngramContext, @Nonnull final Keyboard keyboard,
+            final boolean isCorrectionEnabled, final boolean blockPotentiallyOffensive) {
+        ++mGeneration;
+        if (mSpeculations.isEmpty()) {
+            return null;
+        }
+        SuggestedWords suggestedWords = null;
+        for (final Speculation speculation : mSpeculations) {
+            if (speculation.matches(wordComposer, ngramContext, keyboard, isCorrectionEnabled,
+                    blockPotentiallyOffensive)) {
+                suggestedWords = speculation.mSuggestedWords;
+                break;
+            }
+        }
+        mSpeculations.clear();
+        ++mLookupCount;
+        if (null != suggestedWords) {
+            ++mHitCount;
+        }
+        StatsUtils.onSpeculativeSuggestionsLookup(null != suggestedWords);
+        if (DEBUG && 0 == mLookupCount % HIT_RATE_LOG_INTERVAL) {
+            Log.d(TAG, "Hits: " + mHitCount + "/" + mLookupCount + " ("
+                    + Math.round(getHitRate() * 100) + "%)");
+        }
+        return suggestedWords;
+    }
+
+    /**
+     * @return the proportion of the keystrokes after a speculation that matched one, from 0 to 1.
+     */
+    public synchronized float getHitRate() {
+        return 0 == mLookupCount ? 0.0f : (float)mHitCount / mLookupCount;
+    }
+
+    /**
+     * Drops the speculations, without counting a lookup.
+     */
+    public synchronized void clear() {
+        ++mGeneration;
+        mSpeculations.clear();
+    }
+}
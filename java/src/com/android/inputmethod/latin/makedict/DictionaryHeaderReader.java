@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the header of a single file dictionary without opening it in native code.
+ *
+ * Only the header bytes are mapped and parsed, see the header layout in {@link FormatSpec}.
+ */
+public final class DictionaryHeaderReader {
+    // Magic number (4 bytes), version (2 bytes), flags (2 bytes), header size (4 bytes).
+    private static final int FIXED_HEADER_SIZE = 12;
+    private static final int VERSION_POSITION = 4;
+    private static final int HEADER_SIZE_POSITION = 8;
+
+    private DictionaryHeaderReader() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Reads the header of a dictionary.
+     *
+     * @param file the file that contains the dictionary.
+     * @param offset the offset of the dictionary in the file.
+     * @param length the length of the dictionary.
+     * @return the header, or null if the dictionary is not a single file dictionary of a format
+     * this reader supports. Its header can still be read by opening it.
+     * @throws IOException if the file can't be read.
+     */
+    @Nullable
+    public static DictionaryHeader readHeader(@Nonnull final File file, final long offset,
+            final long length) throws IOException {
+        if (!file.isFile() || length < FIXED_HEADER_SIZE) {
+            return null;
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (offset + length > channel.size()) {
+                return null;
+            }
+            final MappedByteBuffer fixedHeader =
+                    channel.map(FileChannel.MapMode.READ_ONLY, offset, FIXED_HEADER_SIZE);
+            if (FormatSpec.MAGIC_NUMBER != fixedHeader.getInt(0)) {
+                return null;
+            }
+            final int version = fixedHeader.getShort(VERSION_POSITION) & 0xFFFF;
+            final int headerSize = fixedHeader.getInt(HEADER_SIZE_POSITION);
+            if (FormatSpec.VERSION202 != version || headerSize < FIXED_HEADER_SIZE
+                    || headerSize > length) {
+                return null;
+            }
+            final MappedByteBuffer header =
+                    channel.map(FileChannel.MapMode.READ_ONLY, offset, headerSize);
+            header.position(FIXED_HEADER_SIZE);
+            final HashMap<String, String> attributes = new HashMap<>();
+            while (header.hasRemaining()) {
+                final String key = readString(header);
+                final String value = readString(header);
+                attributes.put(key, value);
+            }
+            final boolean hasHistoricalInfo = DictionaryHeader.ATTRIBUTE_VALUE_TRUE.equals(
+                    attributes.get(DictionaryHeader.HAS_HISTORICAL_INFO_KEY));
+            return new DictionaryHeader(headerSize, new DictionaryOptions(attributes),
+                    new FormatOptions(version, hasHistoricalInfo));
+        } catch (final BufferUnderflowException | IllegalArgumentException
+                | UnsupportedFormatException e) {
+            // The header is truncated, has an invalid character or misses mandatory attributes.
+            return null;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a string in the character format described in {@link FormatSpec}. The header
+     * doesn't use the code point table of the dictionary.
+     */
+    private static String readString(final MappedByteBuffer buffer) {
+        final StringBuilder sb = new StringBuilder();
+        while (true) {
+            final int firstByte = buffer.get() & 0xFF;
+            if (FormatSpec.PTNODE_CHARACTERS_TERMINATOR == firstByte) {
+                return sb.toString();
+            }
+            if (firstByte >= FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE) {
+                sb.appendCodePoint(firstByte);
+            } else {
+                sb.appendCodePoint((firstByte << 16) + (buffer.getShort() & 0xFFFF));
+            }
+        }
+    }
+}
@@ -46,6 +46,8 @@ public final class DebugSettings {
     public static final String PREF_SHOULD_SHOW_LXX_SUGGESTION_UI =
             "pref_should_show_lxx_suggestion_ui";
     public static final String PREF_SLIDING_KEY_INPUT_PREVIEW = "pref_sliding_key_input_preview";
+    public static final String PREF_SPECULATIVE_SUGGESTIONS = "pref_speculative_suggestions";
+    public static final String PREF_MULTILINGUAL_SUGGESTIONS = "pref_multilingual_suggestions";
 
     private DebugSettings() {
         // This class is not publicly instantiable.
@@ -79,6 +79,10 @@ public class SettingsValues {
     public final boolean mGestureTrailEnabled;
     public final boolean mGestureFloatingPreviewTextEnabled;
     public final boolean mSlidingKeyInputPreviewEnabled;
+    // Compute suggestions ahead of time for the keys that are likely to be typed next
+    public final boolean mSpeculativeSuggestionsEnabled;
+    // Also suggest words from the recently used languages
+    public final boolean mMultilingualSuggestionsEnabled;
     public final int mKeyLongpressTimeout;
     public final boolean mEnableEmojiAltPhysicalKey;
     public final boolean mShowAppIcon;
@@ -137,6 +141,10 @@ public class SettingsValues {
         mKeyPreviewPopupOn = Settings.readKeyPreviewPopupEnabled(prefs, res);
         mSlidingKeyInputPreviewEnabled = prefs.getBoolean(
                 DebugSettings.PREF_SLIDING_KEY_INPUT_PREVIEW, true);
+        mSpeculativeSuggestionsEnabled = prefs.getBoolean(
+                DebugSettings.PREF_SPECULATIVE_SUGGESTIONS, false);
+        mMultilingualSuggestionsEnabled = prefs.getBoolean(
+                DebugSettings.PREF_MULTILINGUAL_SUGGESTIONS, false);
         mShowsVoiceInputKey = needsToShowVoiceInputKey(prefs, res)
                 && mInputAttributes.mShouldShowVoiceInputKey
                 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
@@ -409,6 +417,10 @@ public class SettingsValues {
         sb.append("" + mGestureFloatingPreviewTextEnabled);
         sb.append("\n   mSlidingKeyInputPreviewEnabled = ");
         sb.append("" + mSlidingKeyInputPreviewEnabled);
+        sb.append("\n   mSpeculativeSuggestionsEnabled = ");
+        sb.append("" + mSpeculativeSuggestionsEnabled);
+        sb.append("\n   mMultilingualSuggestionsEnabled = ");
+        sb.append("" + mMultilingualSuggestionsEnabled);
         sb.append("\n   mKeyLongpressTimeout = ");
         sb.append("" + mKeyLongpressTimeout);
         sb.append("\n   mLocale = ");
@@ -18,8 +18,12 @@ package com.android.inputmethod.latin.settings;
 
 public class SettingsValuesForSuggestion {
     public final boolean mBlockPotentiallyOffensive;
+    // Whether to also suggest words from the languages that have been used recently.
+    public final boolean mUseRecentLanguages;
 
-    public SettingsValuesForSuggestion(final boolean blockPotentiallyOffensive) {
+    public SettingsValuesForSuggestion(final boolean blockPotentiallyOffensive,
+            final boolean useRecentLanguages) {
         mBlockPotentiallyOffensive = blockPotentiallyOffensive;
+        mUseRecentLanguages = useRecentLanguages;
     }
 }
@@ -46,6 +46,8 @@ public final class MoreSuggestions extends Keyboard {
         private final int[] mNumColumnsInRow = new int[SuggestedWords.MAX_SUGGESTIONS];
         private static final int MAX_COLUMNS_IN_ROW = 3;
         private int mNumRows;
+        // Otherwise the words would be measured again each time the pane is shown.
+        private final TextMeasurementCache mTextMeasurementCache = new TextMeasurementCache();
         public Drawable mDivider;
         public int mDividerWidth;
 
@@ -75,7 +77,7 @@ public final class MoreSuggestions extends Keyboard {
                     word = suggestedWords.getLabel(index);
                 }
                 // TODO: Should take care of text x-scaling.
-                mWidths[index] = (int)(TypefaceUtils.getStringWidth(word, paint) + padding);
+                mWidths[index] = (int)(getWordWidth(word, paint) + padding);
                 final int numColumn = index - rowStartIndex + 1;
                 final int columnWidth =
                         (maxWidth - mDividerWidth * (numColumn - 1)) / numColumn;
@@ -100,6 +102,17 @@ public final class MoreSuggestions extends Keyboard {
             return index - fromIndex;
         }
 
+        private int getWordWidth(final String word, final Paint paint) {
+            final float textSize = paint.getTextSize();
+            final int cachedWidth = mTextMeasurementCache.getWidth(word, textSize, 0 /* style */);
+            if (cachedWidth != TextMeasurementCache.NOT_A_WIDTH) {
+                return cachedWidth;
+            }
+            final int width = (int)TypefaceUtils.getStringWidth(word, paint);
+            mTextMeasurementCache.putWidth(word, textSize, 0 /* style */, width);
+            return width;
+        }
+
         private boolean fitInWidth(final int startIndex, final int endIndex, final int width) {
             for (int index = startIndex; index < endIndex; index++) {
                 if (mWidths[index] > width)
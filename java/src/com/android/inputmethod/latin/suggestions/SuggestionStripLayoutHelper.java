@@ -104,6 +104,10 @@ final class SuggestionStripLayoutHelper {
     private static final int AUTO_CORRECT_UNDERLINE = 0x02;
     private static final int VALID_TYPED_WORD_BOLD = 0x04;
 
+    private final TextMeasurementCache mTextMeasurementCache = new TextMeasurementCache();
+    // A copy of the paint of the word views, to measure suggested words before they are shown.
+    private final TextPaint mMeasuringPaint;
+
     public SuggestionStripLayoutHelper(final Context context, final AttributeSet attrs,
             final int defStyle, final ArrayList<TextView> wordViews,
             final ArrayList<View> dividerViews, final ArrayList<TextView> debugInfoViews) {
@@ -113,6 +117,7 @@ final class SuggestionStripLayoutHelper {
 
         final TextView wordView = wordViews.get(0);
         final View dividerView = dividerViews.get(0);
+        mMeasuringPaint = new TextPaint(wordView.getPaint());
         mPadding = wordView.getCompoundPaddingLeft() + wordView.getCompoundPaddingRight();
         dividerView.measure(
                 ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
@@ -224,6 +229,27 @@ final class SuggestionStripLayoutHelper {
         return spannedWord;
     }
 
+    /**
+     * Measure the words of <code>suggestedWords</code> that may be shown in the suggestion strip,
+     * so that laying them out with
+     * {@link #layoutAndReturnStartIndexOfMoreSuggestions(Context,SuggestedWords,ViewGroup,ViewGroup)}
+     * finds their widths in the cache. This may be called on any thread.
+     *
+     * @param suggestedWords suggestions that are about to be shown in the suggestions strip.
+     */
+    public void prepareLayout(final SuggestedWords suggestedWords) {
+        if (suggestedWords.isPunctuationSuggestions()) {
+            return;
+        }
+        // The typed word may be omitted from the strip, hence the additional word.
+        final int count = Math.min(suggestedWords.size(), mSuggestionsCountInStrip + 1);
+        synchronized (mMeasuringPaint) {
+            for (int index = 0; index < count; index++) {
+                getTextWidth(getStyledSuggestedWord(suggestedWords, index), mMeasuringPaint);
+            }
+        }
+    }
+
     /**
      * Convert an index of {@link SuggestedWords} to position in the suggestion strip.
      * @param indexInSuggestedWords the index of {@link SuggestedWords}.
@@ -566,7 +592,7 @@ final class SuggestionStripLayoutHelper {
         }
     }
 
-    private static float getTextScaleX(@Nullable final CharSequence text, final int maxWidth,
+    private float getTextScaleX(@Nullable final CharSequence text, final int maxWidth,
             final TextPaint paint) {
         paint.setTextScaleX(1.0f);
         final int width = getTextWidth(text, paint);
@@ -577,7 +603,7 @@ final class SuggestionStripLayoutHelper {
     }
 
     @Nullable
-    private static CharSequence getEllipsizedTextWithSettingScaleX(
+    private CharSequence getEllipsizedTextWithSettingScaleX(
             @Nullable final CharSequence text, final int maxWidth, @Nonnull final TextPaint paint) {
         if (text == null) {
             return null;
@@ -590,26 +616,45 @@ final class SuggestionStripLayoutHelper {
 
         // <code>text</code> must be ellipsized with minimum text scale x.
         paint.setTextScaleX(MIN_TEXT_XSCALE);
-        final boolean hasBoldStyle = hasStyleSpan(text, BOLD_SPAN);
-        final boolean hasUnderlineStyle = hasStyleSpan(text, UNDERLINE_SPAN);
+        final int style = getTextStyle(text);
+        final float textSize = paint.getTextSize();
+        final CharSequence cachedText =
+                mTextMeasurementCache.getEllipsizedText(text, textSize, style, maxWidth);
+        if (cachedText != null) {
+            return cachedText;
+        }
         // TextUtils.ellipsize erases any span object existed after ellipsized point.
         // We have to restore these spans afterward.
         final CharSequence ellipsizedText = TextUtils.ellipsize(
                 text, paint, maxWidth, TextUtils.TruncateAt.MIDDLE);
-        if (!hasBoldStyle && !hasUnderlineStyle) {
+        if (style == 0) {
+            mTextMeasurementCache.putEllipsizedText(
+                    text, textSize, style, maxWidth, ellipsizedText);
             return ellipsizedText;
         }
         final Spannable spannableText = (ellipsizedText instanceof Spannable)
                 ? (Spannable)ellipsizedText : new SpannableString(ellipsizedText);
-        if (hasBoldStyle) {
+        if ((style & TextMeasurementCache.STYLE_BOLD) != 0) {
             addStyleSpan(spannableText, BOLD_SPAN);
         }
-        if (hasUnderlineStyle) {
+        if ((style & TextMeasurementCache.STYLE_UNDERLINE) != 0) {
             addStyleSpan(spannableText, UNDERLINE_SPAN);
         }
+        mTextMeasurementCache.putEllipsizedText(text, textSize, style, maxWidth, spannableText);
         return spannableText;
     }
 
+    private static int getTextStyle(@Nonnull final CharSequence text) {
+        int style = 0;
+        if (hasStyleSpan(text, BOLD_SPAN)) {
+            style |= TextMeasurementCache.STYLE_BOLD;
+        }
+        if (hasStyleSpan(text, UNDERLINE_SPAN)) {
+            style |= TextMeasurementCache.STYLE_UNDERLINE;
+        }
+        return style;
+    }
+
     private static boolean hasStyleSpan(@Nullable final CharSequence text,
             final CharacterStyle style) {
         if (text instanceof Spanned) {
@@ -623,10 +668,18 @@ final class SuggestionStripLayoutHelper {
         text.setSpan(style, 0, text.length(), Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
     }
 
-    private static int getTextWidth(@Nullable final CharSequence text, final TextPaint paint) {
+    private int getTextWidth(@Nullable final CharSequence text, final TextPaint paint) {
         if (TextUtils.isEmpty(text)) {
             return 0;
         }
+        // The width only depends on whether the text is bold, and is measured with a text scale x
+        // of 1.0.
+        final int style = hasStyleSpan(text, BOLD_SPAN) ? TextMeasurementCache.STYLE_BOLD : 0;
+        final float textSize = paint.getTextSize();
+        final int cachedWidth = mTextMeasurementCache.getWidth(text, textSize, style);
+        if (cachedWidth != TextMeasurementCache.NOT_A_WIDTH) {
+            return cachedWidth;
+        }
         final int length = text.length();
         final float[] widths = new float[length];
         final int count;
@@ -641,6 +694,7 @@ final class SuggestionStripLayoutHelper {
         for (int i = 0; i < count; i++) {
             width += Math.round(widths[i] + 0.5f);
         }
+        mTextMeasurementCache.putWidth(text, textSize, style, width);
         return width;
     }
 
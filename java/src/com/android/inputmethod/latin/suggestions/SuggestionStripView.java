@@ -205,6 +205,16 @@ public final class SuggestionStripView extends RelativeLayout implements OnClick
         mStripVisibilityGroup.showSuggestionsStrip();
     }
 
+    /**
+     * Measure the suggestions that are about to be passed to
+     * {@link #setSuggestions(SuggestedWords,boolean)}, so that the UI thread only has to bind them
+     * to the views. This may be called on any thread.
+     * @param suggestedWords the suggestions to measure.
+     */
+    public void prepareSuggestions(final SuggestedWords suggestedWords) {
+        mLayoutHelper.prepareLayout(suggestedWords);
+    }
+
     public void setMoreSuggestionsHeight(final int remainingHeight) {
         mLayoutHelper.setMoreSuggestionsHeight(remainingHeight);
     }
@@ -24,4 +24,6 @@ import com.android.inputmethod.latin.SuggestedWords;
 public interface SuggestionStripViewAccessor {
     public void setNeutralSuggestionStrip();
     public void showSuggestionStrip(final SuggestedWords suggestedWords);
+    // May be called on any thread, before the same suggestions are shown.
+    public void prepareSuggestionStrip(final SuggestedWords suggestedWords);
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.suggestions;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A bounded cache of the measurements that are made to lay out suggested words: the widths of
+ * the words, and the ellipsized texts that fit them in a given width. The entries are keyed by the
+ * word, the text size and the style, so that a single cache may serve several paints.
+ *
+ * This class is thread safe, so that words may be measured before they are shown.
+ */
+final class TextMeasurementCache {
+    public static final int NOT_A_WIDTH = -1;
+    public static final int STYLE_BOLD = 0x01;
+    public static final int STYLE_UNDERLINE = 0x02;
+
+    private static final int NO_MAX_WIDTH = 0;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final LruCache<Key, Integer> mWidths;
+    private final LruCache<Key, CharSequence> mEllipsizedTexts;
+
+    private static final class Key {
+        private final String mText;
+        private final float mTextSize;
+        private final int mStyle;
+        private final int mMaxWidth;
+        private final int mHashCode;
+
+        public Key(final String text, final float textSize, final int style, final int maxWidth) {
+            mText = text;
+            mTextSize = textSize;
+            mStyle = style;
+            mMaxWidth = maxWidth;
+            int hashCode = text.hashCode();
+            hashCode = hashCode * 31 + Float.floatToIntBits(textSize);
+            hashCode = hashCode * 31 + style;
+            mHashCode = hashCode * 31 + maxWidth;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key)o;
+            return mTextSize == key.mTextSize && mStyle == key.mStyle
+                    && mMaxWidth == key.mMaxWidth && mText.equals(key.mText);
+        }
+    }
+
+    public TextMeasurementCache() {
+        mWidths = new LruCache<>(DEFAULT_CAPACITY);
+        mEllipsizedTexts = new LruCache<>(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the width of <code>text</code>, or {@link #NOT_A_WIDTH} if it has not been measured
+     * with the same text size and style.
+     */
+    public int getWidth(@Nonnull final CharSequence text, final float textSize, final int style) {
+        final Integer width = mWidths.get(new Key(text.toString(), textSize, style, NO_MAX_WIDTH));
+        return width == null ? NOT_A_WIDTH : width;
+    }
+
+    public void putWidth(@Nonnull final CharSequence text, final float textSize, final int style,
+            final int width) {
+        mWidths.put(new Key(text.toString(), textSize, style, NO_MAX_WIDTH), width);
+    }
+
+    /**
+     * @return the ellipsized <code>text</code> that fits in <code>maxWidth</code>, or null if it
+     * has not been computed with the same text size and style.
+     */
+    @Nullable
+    public CharSequence getEllipsizedText(@Nonnull final CharSequence text, final float textSize,
+            final int style, final int maxWidth) {
+        return mEllipsizedTexts.get(new Key(text.toString(), textSize, style, maxWidth));
+    }
+
+    public void putEllipsizedText(@Nonnull final CharSequence text, final float textSize,
+            final int style, final int maxWidth, @Nonnull final CharSequence ellipsizedText) {
+        // Only immutable texts are cached, as the same entry may be handed out several times.
+        mEllipsizedTexts.put(new Key(text.toString(), textSize, style, maxWidth),
+                TextUtils.stringOrSpannedString(ellipsizedText));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free cache of the metrics of single code points.
+ *
+ * A metric is keyed by a primitive long that packs the code point, the kind of metric, the id of
+ * the typeface and the text size, see {@link #getKey(int,int,int,float)}. The entries live in an
+ * open-addressed table of immutable objects, so that a lookup neither takes a lock nor allocates.
+ * When all the slots a key may go in are taken, the new entry replaces the first one.
+ */
+final class CodePointMetricsCache {
+    public static final float NOT_A_METRIC = -1.0f;
+    public static final int MAX_TYPEFACE_ID = 0xFF;
+
+    private static final int MAX_KIND = 0x7;
+    private static final int CAPACITY_BITS = 9;
+    private static final int CAPACITY = 1 << CAPACITY_BITS;
+    private static final int MAX_PROBES = 8;
+
+    private static final class Entry {
+        public final long mKey;
+        public final float mValue;
+
+        public Entry(final long key, final float value) {
+            mKey = key;
+            mValue = value;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> mEntries = new AtomicReferenceArray<>(CAPACITY);
+
+    /**
+     * @param codePoint the code point, up to {@link Character#MAX_CODE_POINT}.
+     * @param kind the kind of metric, from 0 to 7.
+     * @param typefaceId the id of the typeface, from 0 to {@link #MAX_TYPEFACE_ID}.
+     * @param textSize the text size.
+     * @return the key of the metric.
+     */
+    public static long getKey(final int codePoint, final int kind, final int typefaceId,
+            final float textSize) {
+        return ((long)Float.floatToIntBits(textSize) << 32)
+                | ((long)(typefaceId & MAX_TYPEFACE_ID) << 24)
+                | ((kind & MAX_KIND) << 21)
+                | (codePoint & 0x1FFFFF);
+    }
+
+    private static int getFirstIndex(final long key) {
+        final int hash = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+        return hash >>> (Integer.SIZE - CAPACITY_BITS);
+    }
+
+    /**
+     * @return the metric of <code>key</code>, or {@link #NOT_A_METRIC} if it is not cached.
+     */
+    public float get(final long key) {
+        final int firstIndex = getFirstIndex(key);
+        for (int i = 0; i < MAX_PROBES; ++i) {
+            final Entry entry = mEntries.get((firstIndex + i) & (CAPACITY - 1));
+            if (entry == null) {
+                return NOT_A_METRIC;
+            }
+            if (entry.mKey == key) {
+                return entry.mValue;
+            }
+        }
+        return NOT_A_METRIC;
+    }
+
+    public void put(final long key, final float value) {
+        final Entry newEntry = new Entry(key, value);
+        final int firstIndex = getFirstIndex(key);
+        for (int i = 0; i < MAX_PROBES; ++i) {
+            final int index = (firstIndex + i) & (CAPACITY - 1);
+            if (mEntries.compareAndSet(index, null, newEntry)) {
+                return;
+            }
+            // Another thread may have just cached the same metric.
+            if (mEntries.get(index).mKey == key) {
+                return;
+            }
+        }
+        mEntries.set(firstIndex, newEntry);
+    }
+}
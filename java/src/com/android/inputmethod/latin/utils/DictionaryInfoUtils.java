@@ -200,7 +200,8 @@ public class DictionaryInfoUtils {
      * Helper method to the list of cache directories, one for each distinct locale.
      */
     public static File[] getCachedDirectoryList(final Context context) {
-        return new File(DictionaryInfoUtils.getWordListCacheDirectory(context)).listFiles();
+        return WordListIndex.getInstance(context).listFiles(
+                new File(DictionaryInfoUtils.getWordListCacheDirectory(context)));
     }
 
     public static File[] getStagingDirectoryList(final Context context) {
@@ -407,7 +408,7 @@ public class DictionaryInfoUtils {
             final long offset, final long length) {
         try {
             final DictionaryHeader header =
-                    BinaryDictionaryUtils.getHeaderWithOffsetAndLength(file, offset, length);
+                    WordListIndex.getInstance().getHeader(file, offset, length);
             return header;
         } catch (UnsupportedFormatException e) {
             return null;
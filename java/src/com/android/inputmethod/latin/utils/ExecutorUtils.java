@@ -25,9 +25,19 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
 
 /**
  * Utilities to manage executors.
+ *
+ * Besides the single threaded {@link #KEYBOARD} and {@link #SPELLING} executors, background work
+ * is spread over lanes so that a slow task of one kind does not hold up tasks of another kind:
+ * {@link #LATENCY_CRITICAL} for short reads something user-visible waits on,
+ * {@link #BACKGROUND_WRITE} for incremental dictionary updates and {@link #BULK_IO} for loading,
+ * flushing and garbage collecting whole dictionaries. Tasks that must run in order should be
+ * submitted through a {@link SerialTaskQueue}.
  */
 public class ExecutorUtils {
 
@@ -35,16 +45,40 @@ public class ExecutorUtils {
 
     public static final String KEYBOARD = "Keyboard";
     public static final String SPELLING = "Spelling";
+    public static final String SUGGESTION = "Suggestion";
+
+    public static final String LATENCY_CRITICAL = "LatencyCritical";
+    public static final String BACKGROUND_WRITE = "BackgroundWrite";
+    public static final String BULK_IO = "BulkIo";
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
 
     private static ScheduledExecutorService sKeyboardExecutorService = newExecutorService(KEYBOARD);
     private static ScheduledExecutorService sSpellingExecutorService = newExecutorService(SPELLING);
+    private static ScheduledExecutorService sSuggestionExecutorService =
+            newExecutorService(SUGGESTION);
+
+    private static final LaneExecutor sLatencyCriticalLane =
+            newLaneExecutor(LATENCY_CRITICAL, 1 /* threadCount */);
+    private static final LaneExecutor sBackgroundWriteLane =
+            newLaneExecutor(BACKGROUND_WRITE, 1 /* threadCount */);
+    // Two threads, so that a long flush or GC of one dictionary does not hold up the load of
+    // another one.
+    private static final LaneExecutor sBulkIoLane = newLaneExecutor(BULK_IO, 2 /* threadCount */);
 
     private static ScheduledExecutorService newExecutorService(final String name) {
         return Executors.newSingleThreadScheduledExecutor(new ExecutorFactory(name));
     }
 
+    private static LaneExecutor newLaneExecutor(final String name, final int threadCount) {
+        return new LaneExecutor(name, threadCount, new ExecutorFactory(name));
+    }
+
     private static class ExecutorFactory implements ThreadFactory {
         private final String mName;
+        private final AtomicInteger mThreadCount = new AtomicInteger();
 
         private ExecutorFactory(final String name) {
             mName = name;
@@ -52,7 +86,8 @@ public class ExecutorUtils {
 
         @Override
         public Thread newThread(final Runnable runnable) {
-            Thread thread = new Thread(runnable, TAG);
+            Thread thread = new Thread(runnable, TAG + "-" + mName + "-"
+                    + mThreadCount.incrementAndGet());
             thread.setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
                 @Override
                 public void uncaughtException(Thread thread, Throwable ex) {
@@ -89,11 +124,53 @@ public class ExecutorUtils {
                 return sKeyboardExecutorService;
             case SPELLING:
                 return sSpellingExecutorService;
+            case SUGGESTION:
+                return sSuggestionExecutorService;
             default:
                 throw new IllegalArgumentException("Invalid executor: " + name);
         }
     }
 
+    /**
+     * Runs a task on a lane.
+     *
+     * @param lane the lane: {@link #LATENCY_CRITICAL}, {@link #BACKGROUND_WRITE} or
+     *        {@link #BULK_IO}.
+     * @param priority the priority of the task in its lane, e.g. {@link #PRIORITY_NORMAL}.
+     * @param task the task to run.
+     */
+    public static void execute(@Nonnull final String lane, final int priority,
+            @Nonnull final Runnable task) {
+        if (sExecutorServiceForTests != null) {
+            sExecutorServiceForTests.execute(task);
+            return;
+        }
+        getLaneExecutor(lane).execute(priority, task);
+    }
+
+    /**
+     * @param lane the lane: {@link #LATENCY_CRITICAL}, {@link #BACKGROUND_WRITE} or
+     *        {@link #BULK_IO}.
+     * @return the queue depth and wait time metrics of the lane.
+     */
+    @Nonnull
+    public static LaneExecutor.Stats getLaneStats(@Nonnull final String lane) {
+        return getLaneExecutor(lane).getStats();
+    }
+
+    private static LaneExecutor getLaneExecutor(final String lane) {
+        switch (lane) {
+            case LATENCY_CRITICAL:
+                return sLatencyCriticalLane;
+            case BACKGROUND_WRITE:
+                return sBackgroundWriteLane;
+            case BULK_IO:
+                return sBulkIoLane;
+            default:
+                throw new IllegalArgumentException("Invalid lane: " + lane);
+        }
+    }
+
     public static void killTasks(final String name) {
         final ScheduledExecutorService executorService = getBackgroundExecutor(name);
         executorService.shutdownNow();
@@ -113,6 +190,9 @@ public class ExecutorUtils {
             case SPELLING:
                 sSpellingExecutorService = newExecutorService(SPELLING);
                 break;
+            case SUGGESTION:
+                sSuggestionExecutorService = newExecutorService(SUGGESTION);
+                break;
             default:
                 throw new IllegalArgumentException("Invalid executor: " + name);
         }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A pool of threads that runs tasks in priority order and keeps track of how long tasks wait.
+ *
+ * Tasks with a higher priority run first. Tasks with the same priority run in the order they
+ * were submitted. Lanes are created by {@link ExecutorUtils}.
+ */
+public final class LaneExecutor {
+    private static final int THREAD_TIMEOUT_SECONDS = 30;
+
+    /**
+     * A snapshot of the metrics of a lane.
+     */
+    public static final class Stats {
+        public final String mName;
+        public final int mQueueDepth;
+        public final int mMaxQueueDepth;
+        public final long mExecutedTaskCount;
+        public final long mTotalWaitTimeMillis;
+        public final long mMaxWaitTimeMillis;
+
+        Stats(final String name, final int queueDepth, final int maxQueueDepth,
+                final long executedTaskCount, final long totalWaitTimeMillis,
+                final long maxWaitTimeMillis) {
+            mName = name;
+            mQueueDepth = queueDepth;
+            mMaxQueueDepth = maxQueueDepth;
+            mExecutedTaskCount = executedTaskCount;
+            mTotalWaitTimeMillis = totalWaitTimeMillis;
+            mMaxWaitTimeMillis = maxWaitTimeMillis;
+        }
+
+        public long getAverageWaitTimeMillis() {
+            return mExecutedTaskCount == 0 ? 0 : mTotalWaitTimeMillis / mExecutedTaskCount;
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": queueDepth=" + mQueueDepth + " maxQueueDepth=" + mMaxQueueDepth
+                    + " executed=" + mExecutedTaskCount
+                    + " averageWaitMs=" + getAverageWaitTimeMillis()
+                    + " maxWaitMs=" + mMaxWaitTimeMillis;
+        }
+    }
+
+    private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final int mPriority;
+        private final long mSequenceNumber;
+        private final long mEnqueueTime;
+        private final Runnable mTask;
+
+        PrioritizedTask(final int priority, final Runnable task) {
+            mPriority = priority;
+            mSequenceNumber = mNextSequenceNumber.getAndIncrement();
+            mEnqueueTime = SystemClock.uptimeMillis();
+            mTask = task;
+        }
+
+        @Override
+        public int compareTo(final PrioritizedTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return mSequenceNumber < other.mSequenceNumber ? -1
+                    : (mSequenceNumber == other.mSequenceNumber ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            onTaskStarted(SystemClock.uptimeMillis() - mEnqueueTime);
+            mTask.run();
+        }
+    }
+
+    private final String mName;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mNextSequenceNumber = new AtomicLong();
+
+    private final Object mStatsLock = new Object();
+    private int mMaxQueueDepth;
+    private long mExecutedTaskCount;
+    private long mTotalWaitTimeMillis;
+    private long mMaxWaitTimeMillis;
+
+    LaneExecutor(final String name, final int threadCount, final ThreadFactory threadFactory) {
+        mName = name;
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+                THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), threadFactory);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Queues a task.
+     *
+     * @param priority the priority of the task. Higher priorities run first.
+     * @param task the task to run.
+     */
+    public void execute(final int priority, @Nonnull final Runnable task) {
+        mExecutor.execute(new PrioritizedTask(priority, task));
+        final int queueDepth = mExecutor.getQueue().size();
+        synchronized (mStatsLock) {
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, queueDepth);
+        }
+    }
+
+    void onTaskStarted(final long waitTimeMillis) {
+        synchronized (mStatsLock) {
+            ++mExecutedTaskCount;
+            mTotalWaitTimeMillis += waitTimeMillis;
+            mMaxWaitTimeMillis = Math.max(mMaxWaitTimeMillis, waitTimeMillis);
+        }
+    }
+
+    @Nonnull
+    public Stats getStats() {
+        final int queueDepth = mExecutor.getQueue().size();
+        synchronized (mStatsLock) {
+            return new Stats(mName, queueDepth, mMaxQueueDepth, mExecutedTaskCount,
+                    mTotalWaitTimeMillis, mMaxWaitTimeMillis);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import java.util.ArrayDeque;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Runs tasks one at a time in the order they are submitted, each on the lane it asks for.
+ *
+ * Owners that used to rely on a single shared thread for ordering keep that guarantee, while
+ * tasks of different owners run in parallel on the lanes of {@link ExecutorUtils}.
+ */
+public final class SerialTaskQueue {
+    private static final class Task {
+        public final String mLane;
+        public final int mPriority;
+        public final String mCoalescingKey;
+        public final Runnable mRunnable;
+
+        public Task(final String lane, final int priority, final String coalescingKey,
+                final Runnable runnable) {
+            mLane = lane;
+            mPriority = priority;
+            mCoalescingKey = coalescingKey;
+            mRunnable = runnable;
+        }
+    }
+
+    // Guarded by this.
+    private final ArrayDeque<Task> mPendingTasks = new ArrayDeque<>();
+    private boolean mIsRunning = false;
+
+    /**
+     * Queues a task to run after all the tasks already in this queue.
+     *
+     * @param lane the lane to run the task on, see {@link ExecutorUtils#execute}.
+     * @param priority the priority of the task in its lane.
+     * @param task the task to run.
+     */
+    public void execute(@Nonnull final String lane, final int priority,
+            @Nonnull final Runnable task) {
+        executeCoalesced(lane, priority, null /* coalescingKey */, task);
+    }
+
+    /**
+     * Queues a task unless the last task in the queue has the same key and has not started yet.
+     *
+     * Only the last task is considered, so that a dropped task can never be reordered with
+     * tasks queued before it: the task that absorbs it runs after all of them.
+     *
+     * @param lane the lane to run the task on, see {@link ExecutorUtils#execute}.
+     * @param priority the priority of the task in its lane.
+     * @param coalescingKey the key, or null to always queue the task.
+     * @param task the task to run.
+     * @return whether the task was queued.
+     */
+    public synchronized boolean executeCoalesced(@Nonnull final String lane, final int priority,
+            @Nullable final String coalescingKey, @Nonnull final Runnable task) {
+        if (null != coalescingKey) {
+            final Task lastTask = mPendingTasks.peekLast();
+            if (null != lastTask && coalescingKey.equals(lastTask.mCoalescingKey)) {
+                return false;
+            }
+        }
+        mPendingTasks.addLast(new Task(lane, priority, coalescingKey, task));
+        if (!mIsRunning) {
+            scheduleNextLocked();
+        }
+        return true;
+    }
+
+    private void scheduleNextLocked() {
+        final Task task = mPendingTasks.pollFirst();
+        if (null == task) {
+            mIsRunning = false;
+            return;
+        }
+        mIsRunning = true;
+        ExecutorUtils.execute(task.mLane, task.mPriority, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.mRunnable.run();
+                } finally {
+                    synchronized (SerialTaskQueue.this) {
+                        scheduleNextLocked();
+                    }
+                }
+            }
+        });
+    }
+}
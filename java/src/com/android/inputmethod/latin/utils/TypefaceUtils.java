@@ -19,90 +19,150 @@ package com.android.inputmethod.latin.utils;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.util.SparseArray;
+import android.text.TextUtils;
 
 public final class TypefaceUtils {
-    private static final char[] KEY_LABEL_REFERENCE_CHAR = { 'M' };
-    private static final char[] KEY_NUMERIC_HINT_LABEL_REFERENCE_CHAR = { '8' };
+    private static final int KEY_LABEL_REFERENCE_CHAR = 'M';
+    private static final int KEY_NUMERIC_HINT_LABEL_REFERENCE_CHAR = '8';
+
+    // The kinds of metrics that are cached for a code point.
+    private static final int METRIC_HEIGHT = 0;
+    private static final int METRIC_WIDTH = 1;
+    private static final int METRIC_ADVANCE = 2;
+
+    private static final int NOT_A_TYPEFACE_ID = -1;
 
     private TypefaceUtils() {
         // This utility class is not publicly instantiable.
     }
 
-    // This sparse array caches key label text height in pixel indexed by key label text size.
-    private static final SparseArray<Float> sTextHeightCache = new SparseArray<>();
-    // Working variable for the following method.
-    private static final Rect sTextHeightBounds = new Rect();
-
-    private static float getCharHeight(final char[] referenceChar, final Paint paint) {
-        final int key = getCharGeometryCacheKey(referenceChar[0], paint);
-        synchronized (sTextHeightCache) {
-            final Float cachedValue = sTextHeightCache.get(key);
-            if (cachedValue != null) {
-                return cachedValue;
-            }
+    // This cache is shared by all the views that draw text and may be accessed from any thread.
+    private static final CodePointMetricsCache sMetricsCache = new CodePointMetricsCache();
 
-            paint.getTextBounds(referenceChar, 0, 1, sTextHeightBounds);
-            final float height = sTextHeightBounds.height();
-            sTextHeightCache.put(key, height);
-            return height;
+    // The typefaces whose metrics are cached. The index of a typeface is its id in the cache keys.
+    // This is only replaced under the lock of the class, and never changed in place.
+    private static volatile Typeface[] sTypefaces = new Typeface[0];
+
+    // Working variable for the measurements below. A lock on a shared one would be contended by
+    // the threads that draw keys.
+    private static final ThreadLocal<Rect> sTextBounds = new ThreadLocal<Rect>() {
+        @Override
+        protected Rect initialValue() {
+            return new Rect();
         }
-    }
+    };
 
-    // This sparse array caches key label text width in pixel indexed by key label text size.
-    private static final SparseArray<Float> sTextWidthCache = new SparseArray<>();
-    // Working variable for the following method.
-    private static final Rect sTextWidthBounds = new Rect();
-
-    private static float getCharWidth(final char[] referenceChar, final Paint paint) {
-        final int key = getCharGeometryCacheKey(referenceChar[0], paint);
-        synchronized (sTextWidthCache) {
-            final Float cachedValue = sTextWidthCache.get(key);
-            if (cachedValue != null) {
-                return cachedValue;
+    private static int getTypefaceId(final Typeface typeface) {
+        final Typeface[] typefaces = sTypefaces;
+        for (int i = 0; i < typefaces.length; ++i) {
+            if (typefaces[i] == typeface) {
+                return i;
             }
+        }
+        synchronized (TypefaceUtils.class) {
+            final Typeface[] currentTypefaces = sTypefaces;
+            for (int i = typefaces.length; i < currentTypefaces.length; ++i) {
+                if (currentTypefaces[i] == typeface) {
+                    return i;
+                }
+            }
+            final int id = currentTypefaces.length;
+            if (id > CodePointMetricsCache.MAX_TYPEFACE_ID) {
+                return NOT_A_TYPEFACE_ID;
+            }
+            final Typeface[] newTypefaces = new Typeface[id + 1];
+            System.arraycopy(currentTypefaces, 0, newTypefaces, 0, id);
+            newTypefaces[id] = typeface;
+            sTypefaces = newTypefaces;
+            return id;
+        }
+    }
 
-            paint.getTextBounds(referenceChar, 0, 1, sTextWidthBounds);
-            final float width = sTextWidthBounds.width();
-            sTextWidthCache.put(key, width);
-            return width;
+    private static float getCodePointMetric(final int codePoint, final int kind,
+            final Paint paint) {
+        // Text scale x changes the metrics, but isn't part of the key. Text drawn with a scale
+        // is measured every time.
+        final int typefaceId = (paint.getTextScaleX() == 1.0f)
+                ? getTypefaceId(paint.getTypeface()) : NOT_A_TYPEFACE_ID;
+        if (typefaceId == NOT_A_TYPEFACE_ID) {
+            return measureCodePoint(codePoint, kind, paint);
         }
+        final long key = CodePointMetricsCache.getKey(
+                codePoint, kind, typefaceId, paint.getTextSize());
+        final float cachedValue = sMetricsCache.get(key);
+        if (cachedValue != CodePointMetricsCache.NOT_A_METRIC) {
+            return cachedValue;
+        }
+        final float value = measureCodePoint(codePoint, kind, paint);
+        sMetricsCache.put(key, value);
+        return value;
     }
 
-    private static int getCharGeometryCacheKey(final char referenceChar, final Paint paint) {
-        final int labelSize = (int)paint.getTextSize();
-        final Typeface face = paint.getTypeface();
-        final int codePointOffset = referenceChar << 15;
-        if (face == Typeface.DEFAULT) {
-            return codePointOffset + labelSize;
-        } else if (face == Typeface.DEFAULT_BOLD) {
-            return codePointOffset + labelSize + 0x1000;
-        } else if (face == Typeface.MONOSPACE) {
-            return codePointOffset + labelSize + 0x2000;
-        } else {
-            return codePointOffset + labelSize;
+    private static float measureCodePoint(final int codePoint, final int kind,
+            final Paint paint) {
+        final char[] chars = Character.toChars(codePoint);
+        if (kind == METRIC_ADVANCE) {
+            return getTextAdvance(chars, paint);
         }
+        final Rect bounds = sTextBounds.get();
+        paint.getTextBounds(chars, 0, chars.length, bounds);
+        return (kind == METRIC_HEIGHT) ? bounds.height() : bounds.width();
     }
 
     public static float getReferenceCharHeight(final Paint paint) {
-        return getCharHeight(KEY_LABEL_REFERENCE_CHAR, paint);
+        return getCodePointMetric(KEY_LABEL_REFERENCE_CHAR, METRIC_HEIGHT, paint);
     }
 
     public static float getReferenceCharWidth(final Paint paint) {
-        return getCharWidth(KEY_LABEL_REFERENCE_CHAR, paint);
+        return getCodePointMetric(KEY_LABEL_REFERENCE_CHAR, METRIC_WIDTH, paint);
     }
 
     public static float getReferenceDigitWidth(final Paint paint) {
-        return getCharWidth(KEY_NUMERIC_HINT_LABEL_REFERENCE_CHAR, paint);
+        return getCodePointMetric(KEY_NUMERIC_HINT_LABEL_REFERENCE_CHAR, METRIC_WIDTH, paint);
     }
 
-    // Working variable for the following method.
-    private static final Rect sStringWidthBounds = new Rect();
+    private static boolean isSingleCodePoint(final String string) {
+        final int length = string.length();
+        return length == 1 || (length == 2 && Character.isSurrogatePair(
+                string.charAt(0), string.charAt(1)));
+    }
 
+    /**
+     * @return the width of the bounds of <code>string</code>. The width of a single code point
+     * is cached.
+     */
     public static float getStringWidth(final String string, final Paint paint) {
-        synchronized (sStringWidthBounds) {
-            paint.getTextBounds(string, 0, string.length(), sStringWidthBounds);
-            return sStringWidthBounds.width();
+        if (isSingleCodePoint(string)) {
+            return getCodePointMetric(string.codePointAt(0), METRIC_WIDTH, paint);
+        }
+        final Rect bounds = sTextBounds.get();
+        paint.getTextBounds(string, 0, string.length(), bounds);
+        return bounds.width();
+    }
+
+    /**
+     * @return the advance width of <code>string</code>, that is the sum of the advance widths of
+     * its characters, or 0 if it is null or empty. The advance width of a single code point is
+     * cached.
+     */
+    public static float getStringAdvance(final String string, final Paint paint) {
+        if (TextUtils.isEmpty(string)) {
+            return 0.0f;
+        }
+        if (isSingleCodePoint(string)) {
+            return getCodePointMetric(string.codePointAt(0), METRIC_ADVANCE, paint);
+        }
+        // Characters are shaped with their neighbors, so longer strings are always measured.
+        return getTextAdvance(string.toCharArray(), paint);
+    }
+
+    private static float getTextAdvance(final char[] chars, final Paint paint) {
+        final float[] widths = new float[chars.length];
+        final int count = paint.getTextWidths(chars, 0, chars.length, widths);
+        float advance = 0.0f;
+        for (int i = 0; i < count; i++) {
+            advance += widths[i];
         }
+        return advance;
     }
 }
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.makedict.DictionaryHeader;
+import com.android.inputmethod.latin.makedict.DictionaryHeaderReader;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A persistent index of the installed word lists.
+ *
+ * Looking up the word lists for a locale lists the word list directories and reads the header of
+ * each word list. This index keeps the listing of each directory along with its modification
+ * time, and the header of each word list file along with its size and modification time, so
+ * that they are only read again once they change. Headers are read with
+ * {@link DictionaryHeaderReader} when possible, and by opening the dictionary otherwise.
+ *
+ * The index is saved in the files directory of the application in the background. The entries of
+ * the files and directories that no longer exist are dropped after the index is loaded and
+ * whenever it is saved.
+ */
+public final class WordListIndex {
+    private static final String TAG = WordListIndex.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    private static final String INDEX_FILE_NAME = "word_list_index";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int INDEX_FORMAT_VERSION = 1;
+
+    // File systems may only keep modification times to the second or coarser. A file or
+    // directory modified this recently may be modified again without its modification time
+    // changing, so it is not indexed.
+    private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = 2000;
+
+    private static final class DirectoryEntry {
+        public final long mModifiedTime;
+        @Nonnull public final String[] mFileNames;
+
+        public DirectoryEntry(final long modifiedTime, @Nonnull final String[] fileNames) {
+            mModifiedTime = modifiedTime;
+            mFileNames = fileNames;
+        }
+    }
+
+    private static final class HeaderEntry {
+        public final long mLength;
+        public final long mModifiedTime;
+        public final int mHeaderSize;
+        public final int mFormatVersion;
+        @Nonnull public final HashMap<String, String> mAttributes;
+
+        public HeaderEntry(final long length, final long modifiedTime, final int headerSize,
+                final int formatVersion, @Nonnull final HashMap<String, String> attributes) {
+            mLength = length;
+            mModifiedTime = modifiedTime;
+            mHeaderSize = headerSize;
+            mFormatVersion = formatVersion;
+            mAttributes = attributes;
+        }
+
+        @Nonnull
+        public DictionaryHeader toDictionaryHeader() throws UnsupportedFormatException {
+            final boolean hasHistoricalInfo = DictionaryHeader.ATTRIBUTE_VALUE_TRUE.equals(
+                    mAttributes.get(DictionaryHeader.HAS_HISTORICAL_INFO_KEY));
+            // Callers may modify the attributes of the header.
+            return new DictionaryHeader(mHeaderSize,
+                    new DictionaryOptions(new HashMap<>(mAttributes)),
+                    new FormatOptions(mFormatVersion, hasHistoricalInfo));
+        }
+    }
+
+    private static final WordListIndex sInstance = new WordListIndex();
+
+    // The file the index is saved to, or null if it is not saved. Guarded by this.
+    @Nullable private File mIndexFile;
+    // Keyed by the path of the directory. Guarded by this.
+    private final HashMap<String, DirectoryEntry> mDirectories = new HashMap<>();
+    // Keyed by the path of the file and the offset of the word list in it. Guarded by this.
+    private final HashMap<String, HeaderEntry> mHeaders = new HashMap<>();
+    // Guarded by this.
+    private boolean mIsSaveScheduled;
+
+    /**
+     * @return the index. It is only kept in memory until {@link #getInstance(Context)} is called.
+     */
+    @Nonnull
+    public static WordListIndex getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return the index, saved in the files directory of <code>context</code>.
+     */
+    @Nonnull
+    public static WordListIndex getInstance(@Nonnull final Context context) {
+        sInstance.setIndexFile(new File(context.getFilesDir(), INDEX_FILE_NAME));
+        return sInstance;
+    }
+
+    @UsedForTesting
+    WordListIndex() {
+    }
+
+    /**
+     * Loads the index saved in <code>indexFile</code> if this hasn't been done yet, and saves
+     * the index there from now on.
+     */
+    @UsedForTesting
+    synchronized void setIndexFile(@Nonnull final File indexFile) {
+        if (indexFile.equals(mIndexFile)) {
+            return;
+        }
+        mIndexFile = indexFile;
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            load(indexFile);
+        } catch (final IOException | RuntimeException e) {
+            // The index is only a cache: start over.
+            Log.w(TAG, "Can't load the word list index from " + indexFile, e);
+            mDirectories.clear();
+            mHeaders.clear();
+            return;
+        }
+        // Word lists are deleted when they are updated, so the loaded index may name files that
+        // are gone.
+        ExecutorUtils.execute(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_LOW, new Runnable() {
+            @Override
+            public void run() {
+                if (removeStaleEntries()) {
+                    synchronized (WordListIndex.this) {
+                        scheduleSave();
+                    }
+                }
+            }
+        });
+    }
+
+    @Nonnull
+    private static String getPathOfHeaderKey(@Nonnull final String key) {
+        return key.substring(0, key.lastIndexOf(':'));
+    }
+
+    /**
+     * Drops the entries of the files and directories that no longer exist.
+     *
+     * @return whether any entry was dropped.
+     */
+    private boolean removeStaleEntries() {
+        final HashMap<String, DirectoryEntry> directories;
+        final HashMap<String, HeaderEntry> headers;
+        synchronized (this) {
+            directories = new HashMap<>(mDirectories);
+            headers = new HashMap<>(mHeaders);
+        }
+        // Check the files without holding the lock.
+        final ArrayList<String> staleDirectories = new ArrayList<>();
+        for (final String path : directories.keySet()) {
+            if (!new File(path).isDirectory()) {
+                staleDirectories.add(path);
+            }
+        }
+        final ArrayList<String> staleHeaders = new ArrayList<>();
+        for (final String key : headers.keySet()) {
+            if (!new File(getPathOfHeaderKey(key)).isFile()) {
+                staleHeaders.add(key);
+            }
+        }
+        if (staleDirectories.isEmpty() && staleHeaders.isEmpty()) {
+            return false;
+        }
+        synchronized (this) {
+            // Entries replaced in the meantime are recent and kept.
+            for (final String path : staleDirectories) {
+                if (mDirectories.get(path) == directories.get(path)) {
+                    mDirectories.remove(path);
+                }
+            }
+            for (final String key : staleHeaders) {
+                if (mHeaders.get(key) == headers.get(key)) {
+                    mHeaders.remove(key);
+                }
+            }
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Removed " + staleDirectories.size() + " directories and "
+                    + staleHeaders.size() + " headers");
+        }
+        return true;
+    }
+
+    private static boolean isRecentlyModified(final long modifiedTime) {
+        return modifiedTime > System.currentTimeMillis() - MODIFICATION_TIME_GRANULARITY_MILLIS;
+    }
+
+    /**
+     * Lists the files of a directory, as {@link File#listFiles()} does.
+     *
+     * @return the files of the directory, or null if it is not a directory or can't be read.
+     */
+    @Nullable
+    public File[] listFiles(@Nonnull final File directory) {
+        final String path = directory.getPath();
+        final long modifiedTime = directory.lastModified();
+        synchronized (this) {
+            final DirectoryEntry entry = mDirectories.get(path);
+            if (null != entry && 0 != modifiedTime && entry.mModifiedTime == modifiedTime) {
+                return toFiles(directory, entry.mFileNames);
+            }
+        }
+        final String[] fileNames = directory.list();
+        synchronized (this) {
+            if (null == fileNames || 0 == modifiedTime || isRecentlyModified(modifiedTime)) {
+                if (null != mDirectories.remove(path)) {
+                    scheduleSave();
+                }
+            } else {
+                mDirectories.put(path, new DirectoryEntry(modifiedTime, fileNames));
+                scheduleSave();
+            }
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Listed " + path);
+        }
+        return null == fileNames ? null : toFiles(directory, fileNames);
+    }
+
+    @Nonnull
+    private static File[] toFiles(@Nonnull final File directory,
+            @Nonnull final String[] fileNames) {
+        final File[] files = new File[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            files[i] = new File(directory, fileNames[i]);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the header of a word list, as
+     * {@link BinaryDictionaryUtils#getHeaderWithOffsetAndLength(File,long,long)} does.
+     *
+     * @param file the file that contains the word list.
+     * @param offset the offset of the word list in the file.
+     * @param length the length of the word list.
+     * @return the header of the word list.
+     * @throws IOException if the header can't be read.
+     * @throws UnsupportedFormatException if the word list is not in a supported format.
+     */
+    @Nonnull
+    public DictionaryHeader getHeader(@Nonnull final File file, final long offset,
+            final long length) throws IOException, UnsupportedFormatException {
+        final String key = file.getPath() + ":" + offset;
+        // Word lists split in several files are directories, whose modification time doesn't
+        // change when their files do.
+        final boolean isFile = file.isFile();
+        final long modifiedTime = file.lastModified();
+        if (isFile) {
+            synchronized (this) {
+                final HeaderEntry entry = mHeaders.get(key);
+                if (null != entry && 0 != modifiedTime && entry.mLength == length
+                        && entry.mModifiedTime == modifiedTime) {
+                    return entry.toDictionaryHeader();
+                }
+            }
+        }
+        DictionaryHeader header = DictionaryHeaderReader.readHeader(file, offset, length);
+        if (null == header) {
+            header = BinaryDictionaryUtils.getHeaderWithOffsetAndLength(file, offset, length);
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Read the header of " + key);
+        }
+        if (isFile && 0 != modifiedTime && !isRecentlyModified(modifiedTime)) {
+            // The body offset of a single file word list is the size of its header.
+            synchronized (this) {
+                mHeaders.put(key, new HeaderEntry(length, modifiedTime, header.mBodyOffset,
+                        header.mFormatOptions.mVersion,
+                        new HashMap<>(header.mDictionaryOptions.mAttributes)));
+                scheduleSave();
+            }
+        }
+        return header;
+    }
+
+    // Must be called while holding the lock on this.
+    private void scheduleSave() {
+        if (null == mIndexFile || mIsSaveScheduled) {
+            return;
+        }
+        mIsSaveScheduled = true;
+        ExecutorUtils.execute(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_LOW, new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    @UsedForTesting
+    void save() {
+        removeStaleEntries();
+        final File indexFile;
+        final HashMap<String, DirectoryEntry> directories;
+        final HashMap<String, HeaderEntry> headers;
+        synchronized (this) {
+            mIsSaveScheduled = false;
+            indexFile = mIndexFile;
+            // The entries are immutable.
+            directories = new HashMap<>(mDirectories);
+            headers = new HashMap<>(mHeaders);
+        }
+        if (null == indexFile) {
+            return;
+        }
+        final File tempFile = new File(indexFile.getPath() + TEMP_FILE_SUFFIX);
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                write(out, directories, headers);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(indexFile)) {
+                throw new IOException("Can't rename " + tempFile + " to " + indexFile);
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Can't save the word list index to " + indexFile, e);
+            tempFile.delete();
+        }
+    }
+
+    private static void write(@Nonnull final DataOutputStream out,
+            @Nonnull final HashMap<String, DirectoryEntry> directories,
+            @Nonnull final HashMap<String, HeaderEntry> headers) throws IOException {
+        out.writeInt(INDEX_FORMAT_VERSION);
+        out.writeInt(directories.size());
+        for (final Map.Entry<String, DirectoryEntry> entry : directories.entrySet()) {
+            out.writeUTF(entry.getKey());
+            final DirectoryEntry directory = entry.getValue();
+            out.writeLong(directory.mModifiedTime);
+            out.writeInt(directory.mFileNames.length);
+            for (final String fileName : directory.mFileNames) {
+                out.writeUTF(fileName);
+            }
+        }
+        out.writeInt(headers.size());
+        for (final Map.Entry<String, HeaderEntry> entry : headers.entrySet()) {
+            out.writeUTF(entry.getKey());
+            final HeaderEntry header = entry.getValue();
+            out.writeLong(header.mLength);
+            out.writeLong(header.mModifiedTime);
+            out.writeInt(header.mHeaderSize);
+            out.writeInt(header.mFormatVersion);
+            out.writeInt(header.mAttributes.size());
+            for (final Map.Entry<String, String> attribute : header.mAttributes.entrySet()) {
+                out.writeUTF(attribute.getKey());
+                out.writeUTF(attribute.getValue());
+            }
+        }
+    }
+
+    // Must be called while holding the lock on this.
+    private void load(@Nonnull final File indexFile) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (INDEX_FORMAT_VERSION != in.readInt()) {
+                return;
+            }
+            final int directoryCount = in.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                final String path = in.readUTF();
+                final long modifiedTime = in.readLong();
+                final String[] fileNames = new String[in.readInt()];
+                for (int j = 0; j < fileNames.length; j++) {
+                    fileNames[j] = in.readUTF();
+                }
+                mDirectories.put(path, new DirectoryEntry(modifiedTime, fileNames));
+            }
+            final int headerCount = in.readInt();
+            for (int i = 0; i < headerCount; i++) {
+                final String key = in.readUTF();
+                final long length = in.readLong();
+                final long modifiedTime = in.readLong();
+                final int headerSize = in.readInt();
+                final int formatVersion = in.readInt();
+                final int attributeCount = in.readInt();
+                final HashMap<String, String> attributes = new HashMap<>();
+                for (int j = 0; j < attributeCount; j++) {
+                    attributes.put(in.readUTF(), in.readUTF());
+                }
+                mHeaders.put(key, new HeaderEntry(length, modifiedTime, headerSize,
+                        formatVersion, attributes));
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
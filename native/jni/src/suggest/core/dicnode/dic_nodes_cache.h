@@ -58,6 +58,13 @@ class DicNodesCache {
         mCachedDicNodesForContinuousSuggestion->clear();
     }
 
+    // Forget the DicNodes cached for the continuous suggestion, so that the next search starts
+    // from the root. They can't be continued once the context of the search has changed.
+    AK_FORCE_INLINE void invalidateCachedDicNodesForContinuousSuggestion() {
+        mLastCachedInputIndex = 0;
+        mCachedDicNodesForContinuousSuggestion->clear();
+    }
+
     AK_FORCE_INLINE void continueSearch() {
         resetTemporaryCaches();
         restoreActiveDicNodesFromCache();
@@ -16,11 +16,14 @@
 
 #include "suggest/core/session/dic_traverse_session.h"
 
+#include <algorithm>
+
 #include "defines.h"
 #include "dictionary/interface/dictionary_header_structure_policy.h"
 #include "dictionary/interface/dictionary_structure_with_buffer_policy.h"
 #include "dictionary/property/ngram_context.h"
 #include "suggest/core/dictionary/dictionary.h"
+#include "suggest/core/suggest_options.h"
 
 namespace latinime {
 
@@ -31,18 +34,36 @@ const int DicTraverseSession::DICTIONARY_SIZE_THRESHOLD_TO_USE_LARGE_CACHE_FOR_S
 
 void DicTraverseSession::init(const Dictionary *const dictionary,
         const NgramContext *const ngramContext, const SuggestOptions *const suggestOptions) {
+    const bool isSameDictionary = (dictionary == mDictionary);
+    const WordIdArray<MAX_PREV_WORD_COUNT_FOR_N_GRAM> lastPrevWordIdArray = mPrevWordIdArray;
+    const size_t lastPrevWordIdCount = mPrevWordIdCount;
     mDictionary = dictionary;
     mMultiWordCostMultiplier = getDictionaryStructurePolicy()->getHeaderStructurePolicy()
             ->getMultiWordCostMultiplier();
     mSuggestOptions = suggestOptions;
     mPrevWordIdCount = ngramContext->getPrevWordIds(getDictionaryStructurePolicy(),
             &mPrevWordIdArray, true /* tryLowerCaseSearch */).size();
+    // The DicNodes cached by the last search can only be continued when the next search is for
+    // the same dictionary, previous words and locale weight. Otherwise, the suggestions for the
+    // longer input would be computed from the paths of another search.
+    const bool hasSamePrevWordIds = (lastPrevWordIdCount == mPrevWordIdCount)
+            && std::equal(mPrevWordIdArray.begin(), mPrevWordIdArray.begin() + mPrevWordIdCount,
+                    lastPrevWordIdArray.begin());
+    if (!isSameDictionary || !hasSamePrevWordIds
+            || suggestOptions->weightForLocale() != mWeightForLocale) {
+        mDicNodesCache.invalidateCachedDicNodesForContinuousSuggestion();
+    }
+    mWeightForLocale = suggestOptions->weightForLocale();
 }
 
 void DicTraverseSession::setupForGetSuggestions(const ProximityInfo *pInfo,
         const int *inputCodePoints, const int inputSize, const int *const inputXs,
         const int *const inputYs, const int *const times, const int *const pointerIds,
         const float maxSpatialDistance, const int maxPointerCount) {
+    if (pInfo != mProximityInfo) {
+        // The cached DicNodes have been scored with the key positions of another keyboard.
+        mDicNodesCache.invalidateCachedDicNodesForContinuousSuggestion();
+    }
     mProximityInfo = pInfo;
     mMaxPointerCount = maxPointerCount;
     initializeProximityInfoStates(inputCodePoints, inputXs, inputYs, times, pointerIds, inputSize,
@@ -53,7 +53,8 @@ class DicTraverseSession {
     AK_FORCE_INLINE DicTraverseSession(JNIEnv *env, jstring localeStr, bool usesLargeCache)
             : mPrevWordIdCount(0), mProximityInfo(nullptr), mDictionary(nullptr),
               mSuggestOptions(nullptr), mDicNodesCache(usesLargeCache), mMultiBigramMap(),
-              mInputSize(0), mMaxPointerCount(1), mMultiWordCostMultiplier(1.0f) {
+              mInputSize(0), mMaxPointerCount(1), mWeightForLocale(0.0f),
+              mMultiWordCostMultiplier(1.0f) {
         // NOTE: mProximityInfoStates is an array of instances.
         // No need to initialize it explicitly here.
     }
@@ -179,6 +180,8 @@ class DicTraverseSession {
 
     int mInputSize;
     int mMaxPointerCount;
+    // The locale weight that the cached DicNodes have been scored with.
+    float mWeightForLocale;
 
     /////////////////////////////////
     // Configuration per dictionary
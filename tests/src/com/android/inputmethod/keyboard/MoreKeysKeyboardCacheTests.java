@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import android.graphics.Paint;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.text.InputType;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodSubtype;
+
+import com.android.inputmethod.latin.utils.ExecutorUtils;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link MoreKeysKeyboardCache}.
+ */
+@MediumTest
+public class MoreKeysKeyboardCacheTests extends KeyboardLayoutSetTestsBase {
+    private static final long WAIT_FOR_PREBUILD_SECONDS = 10;
+
+    @Override
+    protected int getKeyboardThemeForTests() {
+        return KeyboardTheme.THEME_ID_LXX_LIGHT;
+    }
+
+    private Keyboard createKeyboard() {
+        final InputMethodSubtype subtype = getSubtype(Locale.US, "qwerty");
+        final EditorInfo editorInfo = new EditorInfo();
+        editorInfo.inputType = InputType.TYPE_CLASS_TEXT;
+        return createKeyboardLayoutSet(subtype, editorInfo).getKeyboard(
+                KeyboardId.ELEMENT_ALPHABET);
+    }
+
+    private static ArrayList<Key> getKeysWithMoreKeys(final Keyboard keyboard) {
+        final ArrayList<Key> keys = new ArrayList<>();
+        for (final Key key : keyboard.getSortedKeys()) {
+            if (key.getMoreKeys() != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static ArrayList<Paint> newPaints(final int count) {
+        final ArrayList<Paint> paints = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            paints.add(new Paint());
+        }
+        return paints;
+    }
+
+    // The keyboard executor runs its tasks one at a time, so a task queued after the prebuild
+    // runs once the prebuild is done.
+    private static void waitForPrebuild() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(WAIT_FOR_PREBUILD_SECONDS, TimeUnit.SECONDS));
+    }
+
+    public void testPrebuild() throws InterruptedException {
+        final Keyboard keyboard = createKeyboard();
+        final ArrayList<Key> keys = getKeysWithMoreKeys(keyboard);
+        assertFalse(keys.isEmpty());
+        final MoreKeysKeyboardCache cache = new MoreKeysKeyboardCache();
+        cache.prebuild(getContext(), keyboard, keys, newPaints(keys.size()));
+        waitForPrebuild();
+        for (final Key key : keys) {
+            final Keyboard moreKeysKeyboard = cache.get(key);
+            assertNotNull(key.toString(), moreKeysKeyboard);
+            assertEquals(key.toString(), key.getMoreKeys().length,
+                    moreKeysKeyboard.getSortedKeys().size());
+        }
+    }
+
+    public void testPrebuildKeepsKeyboardBuiltOnLongPress() throws InterruptedException {
+        final Keyboard keyboard = createKeyboard();
+        final ArrayList<Key> keys = getKeysWithMoreKeys(keyboard);
+        final Key key = keys.get(0);
+        final MoreKeysKeyboardCache cache = new MoreKeysKeyboardCache();
+        final Keyboard moreKeysKeyboard = new MoreKeysKeyboard.Builder(getContext(), key,
+                keyboard, false /* isSingleMoreKeyWithPreview */, 0 /* keyPreviewVisibleWidth */,
+                0 /* keyPreviewVisibleHeight */, new Paint()).build();
+        cache.put(key, moreKeysKeyboard);
+        cache.prebuild(getContext(), keyboard, keys, newPaints(keys.size()));
+        waitForPrebuild();
+        assertSame(moreKeysKeyboard, cache.get(key));
+    }
+
+    public void testInvalidate() throws InterruptedException {
+        final Keyboard keyboard = createKeyboard();
+        final ArrayList<Key> keys = getKeysWithMoreKeys(keyboard);
+        final MoreKeysKeyboardCache cache = new MoreKeysKeyboardCache();
+        cache.prebuild(getContext(), keyboard, keys, newPaints(keys.size()));
+        cache.invalidate();
+        waitForPrebuild();
+        for (final Key key : keys) {
+            assertNull(key.toString(), cache.get(key));
+        }
+        final Key key = keys.get(0);
+        cache.put(key, new MoreKeysKeyboard.Builder(getContext(), key, keyboard,
+                false /* isSingleMoreKeyWithPreview */, 0 /* keyPreviewVisibleWidth */,
+                0 /* keyPreviewVisibleHeight */, new Paint()).build());
+        assertNull(cache.get(key));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.emoji;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.utils.JsonUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+public class RecentKeysCodecTests extends AndroidTestCase {
+    private static final List<Object> KEYS =
+            Arrays.asList(new Object[] { 0x1F600, "\uD83C\uDDEF\uD83C\uDDF5", ":-)", 0x263A });
+
+    public void testRoundTrip() {
+        final String str = RecentKeysCodec.encode(KEYS);
+        assertEquals(KEYS, RecentKeysCodec.decode(str));
+    }
+
+    public void testEmpty() {
+        final List<Object> noKeys = Arrays.asList(new Object[0]);
+        assertEquals("", RecentKeysCodec.encode(noKeys));
+        assertTrue(RecentKeysCodec.decode("").isEmpty());
+    }
+
+    public void testDecodeJson() {
+        final String jsonStr = JsonUtils.listToJsonStr(KEYS);
+        assertEquals(KEYS, RecentKeysCodec.decode(jsonStr));
+    }
+
+    public void testDecodeInvalid() {
+        assertTrue(RecentKeysCodec.decode("not Base64!").isEmpty());
+        assertTrue(RecentKeysCodec.decode("AA==").isEmpty());
+    }
+}
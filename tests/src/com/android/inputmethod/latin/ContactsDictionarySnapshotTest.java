@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Tests for {@link ContactsDictionarySnapshot}
+ */
+@SmallTest
+public class ContactsDictionarySnapshotTest extends AndroidTestCase {
+    private File mDictFile;
+    private ContactsDictionarySnapshot mSnapshot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDictFile = new File(getContext().getCacheDir(), "contacts_snapshot_test.dict");
+        mSnapshot = new ContactsDictionarySnapshot(mDictFile);
+        mSnapshot.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSnapshot.delete();
+        super.tearDown();
+    }
+
+    private static ContactsDictionarySnapshot.Contents newContents(final String... contactNames) {
+        return new ContactsDictionarySnapshot.Contents(Arrays.asList(contactNames),
+                Arrays.asList("Eric Schmidt"), Arrays.asList("eric@example.com", "eric"));
+    }
+
+    public void testMissingSnapshot() {
+        assertNull(mSnapshot.read());
+    }
+
+    public void testWriteAndRead() {
+        final ContactsDictionarySnapshot.Contents contents = newContents(
+                "Larry Page", "Sergey Brin", "\u00C9mile Zola", "");
+        assertTrue(mSnapshot.write(contents));
+        final ContactsDictionarySnapshot.Contents readContents =
+                new ContactsDictionarySnapshot(mDictFile).read();
+        assertEquals(contents.mContactNames, readContents.mContactNames);
+        assertEquals(contents.mProfileNames, readContents.mProfileNames);
+        assertEquals(contents.mAccountWords, readContents.mAccountWords);
+    }
+
+    public void testOverwriteAndDelete() {
+        assertTrue(mSnapshot.write(newContents("Larry Page", "Sergey Brin")));
+        assertTrue(mSnapshot.write(newContents("Larry Page")));
+        assertEquals(new HashSet<>(Arrays.asList("Larry Page")), mSnapshot.read().mContactNames);
+        mSnapshot.delete();
+        assertNull(mSnapshot.read());
+    }
+
+    public void testHasSameProfileAndAccounts() {
+        final ContactsDictionarySnapshot.Contents contents = newContents("Larry Page");
+        assertTrue(contents.hasSameProfileAndAccounts(Arrays.asList("Eric Schmidt"),
+                Arrays.asList("eric", "eric@example.com")));
+        assertFalse(contents.hasSameProfileAndAccounts(Arrays.asList("Eric E. Schmidt"),
+                Arrays.asList("eric@example.com", "eric")));
+        assertFalse(contents.hasSameProfileAndAccounts(Arrays.asList("Eric Schmidt"),
+                Arrays.asList("eric@example.com", "eric", "larry@example.com", "larry")));
+    }
+}
@@ -66,6 +66,9 @@ public class InputTestsBase extends ServiceTestCase<LatinIMEForTests> {
     protected static final int DELAY_TO_WAIT_FOR_PREDICTIONS_MILLIS = 200;
     // We wait for gesture computation for this delay
     protected static final int DELAY_TO_WAIT_FOR_GESTURE_MILLIS = 200;
+    // Suggestions computed off the UI thread are checked for this often, at most this many times
+    private static final int DELAY_TO_WAIT_FOR_SUGGESTIONS_MILLIS = 10;
+    private static final int MAX_CHECKS_FOR_SUGGESTIONS = 100;
     // If a dictionary takes longer to load, we could have serious problems.
     private final int TIMEOUT_TO_WAIT_FOR_LOADING_MAIN_DICTIONARY_IN_SECONDS = 5;
 
@@ -263,6 +266,17 @@ public class InputTestsBase extends ServiceTestCase<LatinIMEForTests> {
         // Empty class
     }
     protected void runMessages() {
+        runQueuedMessages();
+        // Suggestions are computed on another thread and shown by a message that comes later, so
+        // wait for it.
+        for (int i = 0; i < MAX_CHECKS_FOR_SUGGESTIONS
+                && mLatinIME.mInputLogic.isWaitingForSuggestions(); ++i) {
+            sleep(DELAY_TO_WAIT_FOR_SUGGESTIONS_MILLIS);
+            runQueuedMessages();
+        }
+    }
+
+    private void runQueuedMessages() {
         mLatinIME.mHandler.post(new Runnable() {
                 @Override
                 public void run() {
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.NgramContext.WordInfo;
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.utils.SuggestionResults;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+@SmallTest
+public class NextWordPredictionCacheTests extends AndroidTestCase {
+    private static final List<Object> STATE = Arrays.<Object>asList(Boolean.TRUE, 1);
+
+    private static SuggestionResults createPredictions(final boolean isBeginningOfSentence,
+            final String... words) {
+        final SuggestionResults results = new SuggestionResults(SuggestedWords.MAX_SUGGESTIONS,
+                isBeginningOfSentence, false /* firstSuggestionExceedsConfidenceThreshold */);
+        int score = 100;
+        for (final String word : words) {
+            results.add(new SuggestedWordInfo(word, "" /* prevWordsContext */, score--,
+                    SuggestedWordInfo.KIND_PREDICTION, null /* sourceDict */,
+                    SuggestedWordInfo.NOT_AN_INDEX /* indexOfTouchPointOfSecondWord */,
+                    SuggestedWordInfo.NOT_A_CONFIDENCE /* autoCommitFirstWordConfidence */));
+        }
+        return results;
+    }
+
+    private static NgramContext createContext(final String... prevWords) {
+        final WordInfo[] prevWordsInfo = new WordInfo[prevWords.length];
+        for (int i = 0; i < prevWords.length; i++) {
+            prevWordsInfo[i] = new WordInfo(prevWords[i]);
+        }
+        return new NgramContext(prevWordsInfo);
+    }
+
+    private static void put(final NextWordPredictionCache cache, final NgramContext ngramContext,
+            final String... words) {
+        cache.put(ngramContext, STATE, cache.getGeneration(),
+                createPredictions(ngramContext.isBeginningOfSentenceContext(), words),
+                Locale.ENGLISH);
+    }
+
+    public void testGetReturnsCopyForSameState() {
+        final NextWordPredictionCache cache = new NextWordPredictionCache();
+        final NgramContext ngramContext = createContext("the", "of");
+        assertNull(cache.get(ngramContext, STATE));
+        put(cache, ngramContext, "world", "year");
+
+        final SuggestionResults results = cache.get(createContext("the", "of"), STATE);
+        assertEquals(2, results.size());
+        assertEquals("world", results.first().mWord);
+        results.clear();
+        assertEquals(2, cache.get(ngramContext, STATE).size());
+
+        assertNull(cache.get(ngramContext, Arrays.<Object>asList(Boolean.TRUE, 2)));
+        assertNull(cache.get(createContext("the", "in"), STATE));
+        assertNull(cache.get(createContext("the"), STATE));
+    }
+
+    public void testEvictTouchedContextsAndWords() {
+        final NextWordPredictionCache cache = new NextWordPredictionCache();
+        put(cache, createContext("the"), "world", "year");
+        put(cache, createContext("of", "end"), "the");
+        put(cache, createContext("in"), "the", "a");
+        put(cache, createContext("hello"), "there");
+        put(cache, NgramContext.BEGINNING_OF_SENTENCE, "I", "The");
+
+        // Learning "World" after "The".
+        cache.evict(createContext("The"), "World", Locale.ENGLISH);
+        assertNull(cache.get(createContext("the"), STATE));
+        assertNotNull(cache.get(createContext("of", "end"), STATE));
+        assertNotNull(cache.get(createContext("hello"), STATE));
+        assertNotNull(cache.get(NgramContext.BEGINNING_OF_SENTENCE, STATE));
+
+        // Learning "the" after "of" changes the predictions after "of", "the", and those that
+        // contain "the".
+        cache.evict(createContext("of"), "the", Locale.ENGLISH);
+        assertNull(cache.get(createContext("of", "end"), STATE));
+        assertNull(cache.get(createContext("in"), STATE));
+        assertNull(cache.get(NgramContext.BEGINNING_OF_SENTENCE, STATE));
+        assertNotNull(cache.get(createContext("hello"), STATE));
+    }
+
+    public void testEvictionDuringComputationPreventsPut() {
+        final NextWordPredictionCache cache = new NextWordPredictionCache();
+        final NgramContext ngramContext = createContext("hello");
+        final int generation = cache.getGeneration();
+        cache.evict(createContext("good"), "morning", Locale.ENGLISH);
+        cache.put(ngramContext, STATE, generation, createPredictions(false, "there"),
+                Locale.ENGLISH);
+        assertNull(cache.get(ngramContext, STATE));
+        put(cache, ngramContext, "there");
+        assertNotNull(cache.get(ngramContext, STATE));
+        cache.clear();
+        assertNull(cache.get(ngramContext, STATE));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import static com.android.inputmethod.latin.PersonalDictionaryLookup.ANY_LOCALE;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.PersonalDictionaryIndex.Entry;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link PersonalDictionaryIndex}.
+ */
+@SmallTest
+public class PersonalDictionaryIndexTest extends AndroidTestCase {
+    private static PersonalDictionaryIndex buildIndex(final Entry... entries) {
+        final PersonalDictionaryIndex.Builder builder = new PersonalDictionaryIndex.Builder();
+        for (final Entry entry : entries) {
+            builder.addEntry(entry);
+        }
+        return builder.build();
+    }
+
+    public void testWordsMatchMoreGeneralLocales() {
+        final PersonalDictionaryIndex index = buildIndex(
+                new Entry(1, "Foo", "en_US", null, 17),
+                new Entry(2, "bar", "en", null, 17),
+                new Entry(3, "baz", "", null, 17));
+        assertEquals(3, index.getWordCount());
+        assertTrue(index.isValidWord("foo", Locale.US));
+        assertFalse(index.isValidWord("foo", Locale.UK));
+        assertTrue(index.isValidWord("bar", Locale.UK));
+        assertFalse(index.isValidWord("bar", ANY_LOCALE));
+        assertTrue(index.isValidWord("baz", Locale.GERMANY));
+        assertFalse(index.isValidWord("qux", Locale.US));
+
+        final Set<String> words = index.getWordsForLocale(Locale.US);
+        assertEquals(3, words.size());
+        assertTrue(words.contains("Foo"));
+        assertFalse(words.contains("foo"));
+    }
+
+    public void testShortcuts() {
+        final PersonalDictionaryIndex index = buildIndex(
+                new Entry(1, "Foo", "en_US", "f", 17),
+                new Entry(2, "bokabu", "en_US", "Bu", 17),
+                new Entry(3, "Expansion", "", "shortcut", 17),
+                new Entry(4, "bar", "en", null, 17));
+        assertEquals(3, index.getShortcutCount());
+        assertEquals("Foo", index.expandShortcut("f", Locale.US));
+        assertNull(index.expandShortcut("f", Locale.UK));
+        assertEquals("bokabu", index.expandShortcut("Bu", Locale.US));
+        assertNull(index.expandShortcut("bu", Locale.US));
+        assertNull(index.expandShortcut("B", Locale.US));
+        assertEquals("Expansion", index.expandShortcut("shortcut", ANY_LOCALE));
+        assertNull(index.expandShortcut("shortcut", Locale.US));
+
+        final Set<String> shortcuts = index.getShortcutsForLocales(Locale.ENGLISH, ANY_LOCALE);
+        assertEquals(1, shortcuts.size());
+        assertTrue(shortcuts.contains("shortcut"));
+    }
+
+    public void testLastRowWins() {
+        final PersonalDictionaryIndex index = buildIndex(
+                new Entry(1, "Foo", "en_US", "f", 20),
+                new Entry(2, "FOO", "en_US", "f", 10));
+        assertEquals(1, index.getWordCount());
+        assertEquals(1, index.getShortcutCount());
+        assertEquals("FOO", index.expandShortcut("f", Locale.US));
+        assertTrue(index.getWordsForLocale(Locale.US).contains("FOO"));
+    }
+
+    public void testRowsAreKept() {
+        final PersonalDictionaryIndex index = buildIndex(
+                new Entry(1, "Foo", "en_US", "f", 20),
+                new Entry(2, "FOO", "en_US", null, 10));
+        assertEquals(2, index.getRowCount());
+        assertEquals(2, index.getRowId(1));
+        assertEquals(10, index.getRowFrequency(1));
+        final Entry row = index.getRow(0);
+        assertEquals(1, row.mId);
+        assertEquals("Foo", row.mRawWord);
+        assertEquals("en_US", row.mLocaleString);
+        assertEquals("f", row.mShortcut);
+        assertEquals(20, row.mFrequency);
+        assertNull(index.getRow(1).mShortcut);
+    }
+}
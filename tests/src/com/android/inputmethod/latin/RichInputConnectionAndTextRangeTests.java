@@ -33,12 +33,14 @@ import android.view.inputmethod.InputConnectionWrapper;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.StringUtils;
 import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+import com.android.inputmethod.latin.utils.CapsModeUtils;
 import com.android.inputmethod.latin.utils.NgramContextUtils;
 import com.android.inputmethod.latin.utils.RunInLocale;
 import com.android.inputmethod.latin.utils.ScriptUtils;
 import com.android.inputmethod.latin.utils.TextRange;
 
 import java.util.Locale;
+import java.util.Random;
 
 @SmallTest
 public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
@@ -64,6 +66,7 @@ public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
         final CharSequence mTextBefore;
         final CharSequence mTextAfter;
         final ExtractedText mExtractedText;
+        int mGetTextAfterCursorCount;
 
         public MockConnection(final CharSequence text, final int cursorPosition) {
             super(null, false);
@@ -109,6 +112,7 @@ public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
          */
         @Override
         public CharSequence getTextAfterCursor(int n, int flags) {
+            ++mGetTextAfterCursorCount;
             return mTextAfter;
         }
 
@@ -135,6 +139,21 @@ public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
         public boolean finishComposingText() {
             return true;
         }
+
+        @Override
+        public boolean setComposingText(CharSequence text, int newCursorPosition) {
+            return true;
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            return true;
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+            return true;
+        }
     }
 
     static class MockInputMethodService extends InputMethodService {
@@ -279,6 +298,93 @@ public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
         assertTrue(TextUtils.equals(GREEK_WORD, r.mWord));
     }
 
+    public void testGetWordAtCursorUsesCachedText() {
+        final MockInputMethodService ims = new MockInputMethodService();
+        final RichInputConnection ic = new RichInputConnection(ims);
+        final SpacingAndPunctuations sap = mSpacingAndPunctuations;
+
+        MockConnection mockConnection = new MockConnection("one tw", "o three", null);
+        ims.setInputConnection(mockConnection);
+        ic.resetCachesUponCursorMoveAndReturnSuccess(ims.cursorPos(), ims.cursorPos(), true);
+        assertEquals("two", ic.getWordAtCursor(sap, ScriptUtils.SCRIPT_LATIN));
+        assertTrue(ic.isCursorFollowedByWordCharacter(sap));
+        assertEquals("two", ic.getWordAtCursor(sap, ScriptUtils.SCRIPT_LATIN));
+        // The text after the cursor is only fetched once until the cursor moves.
+        assertEquals(1, mockConnection.mGetTextAfterCursorCount);
+
+        mockConnection = new MockConnection("one two", " three", null);
+        ims.setInputConnection(mockConnection);
+        ic.resetCachesUponCursorMoveAndReturnSuccess(ims.cursorPos(), ims.cursorPos(), true);
+        assertFalse(ic.isCursorFollowedByWordCharacter(sap));
+        assertEquals("two", ic.getWordAtCursor(sap, ScriptUtils.SCRIPT_LATIN));
+        assertEquals(1, mockConnection.mGetTextAfterCursorCount);
+    }
+
+    public void testNgramContextIsKeptWhileComposing() {
+        final MockInputMethodService ims = new MockInputMethodService();
+        final RichInputConnection ic = new RichInputConnection(ims);
+        final SpacingAndPunctuations sap = mSpacingAndPunctuations;
+
+        ims.setInputConnection(new MockConnection("abc def ", "", null));
+        ic.resetCachesUponCursorMoveAndReturnSuccess(ims.cursorPos(), ims.cursorPos(), true);
+        ic.setComposingText("g", 1);
+        final NgramContext ngramContext = ic.getNgramContextFromNthPreviousWord(sap, 2);
+        assertEquals(NgramContextUtils.getNgramContextFromNthPreviousWord("abc def g", sap, 2),
+                ngramContext);
+        // Typing more letters of the composing word does not change the context.
+        ic.setComposingText("gh", 1);
+        assertSame(ngramContext, ic.getNgramContextFromNthPreviousWord(sap, 2));
+        assertEquals(NgramContextUtils.getNgramContextFromNthPreviousWord("abc def gh", sap, 2),
+                ngramContext);
+    }
+
+    /**
+     * Test that the caps mode kept by the connection is the one computed from the whole text,
+     * through random commits and deletions.
+     */
+    public void testCursorCapsModeMatchesCapsModeUtils() {
+        final MockInputMethodService ims = new MockInputMethodService();
+        final RichInputConnection ic = new RichInputConnection(ims);
+        final SpacingAndPunctuations sap = mSpacingAndPunctuations;
+        final String[] pieces = { "a", "Word", " ", "  ", ".", "e.g.", "U.S.", "?", "!", ",",
+                "\"", "'", "(", ")", "\n", "\t", "1", "22." };
+        final int[] reqModesList = {
+                TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS
+                        | TextUtils.CAP_MODE_SENTENCES,
+                TextUtils.CAP_MODE_WORDS | TextUtils.CAP_MODE_SENTENCES,
+                TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS,
+                TextUtils.CAP_MODE_SENTENCES };
+        final Random random = new Random(40);
+        final StringBuilder text = new StringBuilder();
+        ims.setInputConnection(new MockConnection("", "", null));
+        ic.resetCachesUponCursorMoveAndReturnSuccess(0, 0, true);
+        for (int i = 0; i < 2000; ++i) {
+            final int action = random.nextInt(6);
+            if (action == 0 && text.length() > 0) {
+                final int length = 1 + random.nextInt(Math.min(text.length(), 3));
+                ic.deleteTextBeforeCursor(length);
+                text.setLength(text.length() - length);
+            } else if (action == 1) {
+                final String piece = pieces[random.nextInt(pieces.length)];
+                ic.setComposingText(piece, 1);
+                ic.finishComposingText();
+                text.append(piece);
+            } else {
+                final String piece = pieces[random.nextInt(pieces.length)];
+                ic.commitText(piece, 1);
+                text.append(piece);
+            }
+            // The caps mode is asked for several times for each key press.
+            for (int j = 0; j < 2; ++j) {
+                final int reqModes = reqModesList[random.nextInt(reqModesList.length)];
+                final boolean hasSpaceBefore = random.nextBoolean();
+                assertEquals("After >" + text + "<", CapsModeUtils.getCapsMode(
+                        text.toString(), reqModes, sap, hasSpaceBefore),
+                        ic.getCursorCapsMode(reqModes, sap, hasSpaceBefore));
+            }
+        }
+    }
+
     /**
      * Test logic in getting the word range at the cursor.
      */
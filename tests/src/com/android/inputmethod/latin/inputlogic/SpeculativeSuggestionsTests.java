@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.inputlogic;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.InputType;
+import android.view.inputmethod.EditorInfo;
+
+import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.keyboard.KeyboardId;
+import com.android.inputmethod.keyboard.KeyboardLayoutSetTestsBase;
+import com.android.inputmethod.keyboard.KeyboardTheme;
+import com.android.inputmethod.latin.SuggestedWords;
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link SpeculativeSuggestions}.
+ */
+@SmallTest
+public class SpeculativeSuggestionsTests extends KeyboardLayoutSetTestsBase {
+    @Override
+    protected int getKeyboardThemeForTests() {
+        return KeyboardTheme.THEME_ID_LXX_LIGHT;
+    }
+
+    private Keyboard createKeyboard() {
+        final EditorInfo editorInfo = new EditorInfo();
+        editorInfo.inputType = InputType.TYPE_CLASS_TEXT;
+        return createKeyboardLayoutSet(getSubtype(Locale.US, "qwerty"), editorInfo)
+                .getKeyboard(KeyboardId.ELEMENT_ALPHABET);
+    }
+
+    // The suggestions are in the order of their scores, which account for the proximity of the
+    // touch points to the keys.
+    private static SuggestedWords createSuggestedWords(final String... words) {
+        final ArrayList<SuggestedWordInfo> list = new ArrayList<>();
+        for (int i = 0; i < words.length; i++) {
+            list.add(new SuggestedWordInfo(words[i], "" /* prevWordsContext */,
+                    words.length - i /* score */, SuggestedWordInfo.KIND_CORRECTION,
+                    null /* sourceDict */,
+                    SuggestedWordInfo.NOT_AN_INDEX /* indexOfTouchPointOfSecondWord */,
+                    SuggestedWordInfo.NOT_A_CONFIDENCE /* autoCommitFirstWordConfidence */));
+        }
+        return new SuggestedWords(list, null /* rawSuggestions */, null /* typedWord */,
+                false /* typedWordValid */, false /* willAutoCorrect */,
+                false /* isObsoleteSuggestions */, SuggestedWords.INPUT_STYLE_NONE,
+                SuggestedWords.NOT_A_SEQUENCE_NUMBER);
+    }
+
+    private static String toString(final int[] codePoints) {
+        return new String(codePoints, 0, codePoints.length);
+    }
+
+    public void testNextCodePointsFollowSuggestionOrder() {
+        final SuggestedWords suggestedWords = createSuggestedWords(
+                "th", "this", "to", "the", "thing", "Thus", "than");
+        final Keyboard keyboard = createKeyboard();
+        // "th" and "to" don't continue the input, and "thing" repeats the "i" of "this".
+        assertEquals("ieu", toString(SpeculativeSuggestions.getLikelyNextCodePoints(
+                suggestedWords, "th", keyboard, 3 /* maxCount */)));
+        assertEquals("ie", toString(SpeculativeSuggestions.getLikelyNextCodePoints(
+                suggestedWords, "th", keyboard, 2 /* maxCount */)));
+        assertEquals("ieua", toString(SpeculativeSuggestions.getLikelyNextCodePoints(
+                suggestedWords, "th", keyboard, 10 /* maxCount */)));
+    }
+
+    public void testNextCodePointsAreOnTheKeyboard() {
+        final Keyboard keyboard = createKeyboard();
+        // Upper case letters are typed with the lower case keys of the unshifted keyboard, and
+        // letters or symbols without a key of their own are skipped.
+        assertEquals("eo", toString(SpeculativeSuggestions.getLikelyNextCodePoints(
+                createSuggestedWords("TH\u00C9", "TH3", "THE", "THO"), "TH", keyboard,
+                3 /* maxCount */)));
+        assertEquals(0, SpeculativeSuggestions.getLikelyNextCodePoints(
+                createSuggestedWords("th"), "th", keyboard, 3 /* maxCount */).length);
+    }
+}
@@ -120,14 +120,13 @@ public final class BinaryDictDecoderUtils {
          */
         private static boolean fitsOnOneByte(final int character,
                 final HashMap<Integer, Integer> codePointToOneByteCodeMap) {
-            int codePoint = character;
             if (codePointToOneByteCodeMap != null) {
-                if (codePointToOneByteCodeMap.containsKey(character)) {
-                    codePoint = codePointToOneByteCodeMap.get(character);
-                }
+                // With a code point table, every one-byte character is read through the table,
+                // so only the characters in the table fit on one byte.
+                return codePointToOneByteCodeMap.containsKey(character);
             }
-            return codePoint >= FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE
-                    && codePoint <= FormatSpec.MAXIMAL_ONE_BYTE_CHARACTER_VALUE;
+            return character >= FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE
+                    && character <= FormatSpec.MAXIMAL_ONE_BYTE_CHARACTER_VALUE;
         }
 
         /**
@@ -178,13 +177,14 @@ public final class BinaryDictDecoderUtils {
                 final HashMap<Integer, Integer> codePointToOneByteCodeMap) {
             int index = fromIndex;
             for (int codePoint : codePoints) {
+                final int charSize = getCharSize(codePoint, codePointToOneByteCodeMap);
                 if (codePointToOneByteCodeMap != null) {
                     if (codePointToOneByteCodeMap.containsKey(codePoint)) {
                         // Convert code points
                         codePoint = codePointToOneByteCodeMap.get(codePoint);
                     }
                 }
-                if (1 == getCharSize(codePoint, codePointToOneByteCodeMap)) {
+                if (1 == charSize) {
                     buffer[index++] = (byte)codePoint;
                 } else {
                     buffer[index++] = (byte)(0xFF & (codePoint >> 16));
@@ -211,13 +211,14 @@ public final class BinaryDictDecoderUtils {
             int index = origin;
             for (int i = 0; i < length; i = word.offsetByCodePoints(i, 1)) {
                 int codePoint = word.codePointAt(i);
+                final int charSize = getCharSize(codePoint, codePointToOneByteCodeMap);
                 if (codePointToOneByteCodeMap != null) {
                     if (codePointToOneByteCodeMap.containsKey(codePoint)) {
                         // Convert code points
                         codePoint = codePointToOneByteCodeMap.get(codePoint);
                     }
                 }
-                if (1 == getCharSize(codePoint, codePointToOneByteCodeMap)) {
+                if (1 == charSize) {
                     buffer[index++] = (byte)codePoint;
                 } else {
                     buffer[index++] = (byte)(0xFF & (codePoint >> 16));
@@ -243,8 +244,14 @@ public final class BinaryDictDecoderUtils {
             final int length = word.length();
             int written = 0;
             for (int i = 0; i < length; i = word.offsetByCodePoints(i, 1)) {
-                final int codePoint = word.codePointAt(i);
+                int codePoint = word.codePointAt(i);
                 final int charSize = getCharSize(codePoint, codePointToOneByteCodeMap);
+                if (codePointToOneByteCodeMap != null) {
+                    if (codePointToOneByteCodeMap.containsKey(codePoint)) {
+                        // Convert code points
+                        codePoint = codePointToOneByteCodeMap.get(codePoint);
+                    }
+                }
                 if (1 == charSize) {
                     stream.write((byte) codePoint);
                 } else {
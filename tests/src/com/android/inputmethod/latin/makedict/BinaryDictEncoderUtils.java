@@ -27,8 +27,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Encodes binary files for a FusionDictionary.
@@ -302,15 +306,11 @@ public class BinaryDictEncoderUtils {
     }
 
     /**
-     * Get the offset from a position inside a current node array to a target node array, during
-     * update.
+     * Get the offset from a position inside a current node array to a target node array, from
+     * the addresses of the previous pass.
      *
-     * If the current node array is before the target node array, the target node array has not
-     * been updated yet, so we should return the offset from the old position of the current node
-     * array to the old position of the target node array. If on the other hand the target is
-     * before the current node array, it already has been updated, so we should return the offset
-     * from the new position in the current node array to the new position in the target node
-     * array.
+     * All the node arrays of a pass are sized against the addresses the previous pass gave them,
+     * so that they can be sized in any order, and in parallel.
      *
      * @param currentNodeArray node array containing the PtNode where the offset will be written
      * @param offsetFromStartOfCurrentNodeArray offset, in bytes, from the start of currentNodeArray
@@ -319,44 +319,23 @@ public class BinaryDictEncoderUtils {
      */
     private static int getOffsetToTargetNodeArrayDuringUpdate(final PtNodeArray currentNodeArray,
             final int offsetFromStartOfCurrentNodeArray, final PtNodeArray targetNodeArray) {
-        final boolean isTargetBeforeCurrent = (targetNodeArray.mCachedAddressBeforeUpdate
-                < currentNodeArray.mCachedAddressBeforeUpdate);
-        if (isTargetBeforeCurrent) {
-            return targetNodeArray.mCachedAddressAfterUpdate
-                    - (currentNodeArray.mCachedAddressAfterUpdate
-                            + offsetFromStartOfCurrentNodeArray);
-        }
         return targetNodeArray.mCachedAddressBeforeUpdate
                 - (currentNodeArray.mCachedAddressBeforeUpdate + offsetFromStartOfCurrentNodeArray);
     }
 
     /**
-     * Get the offset from a position inside a current node array to a target PtNode, during
-     * update.
+     * Get the offset from a position inside a current node array to a target PtNode, from the
+     * addresses of the previous pass.
      *
      * @param currentNodeArray node array containing the PtNode where the offset will be written
      * @param offsetFromStartOfCurrentNodeArray offset, in bytes, from the start of currentNodeArray
      * @param targetPtNode the target PtNode to get the offset to
      * @return the offset to the target PtNode
      */
-    // TODO: is there any way to factorize this method with the one above?
     private static int getOffsetToTargetPtNodeDuringUpdate(final PtNodeArray currentNodeArray,
             final int offsetFromStartOfCurrentNodeArray, final PtNode targetPtNode) {
-        final int oldOffsetBasePoint = currentNodeArray.mCachedAddressBeforeUpdate
-                + offsetFromStartOfCurrentNodeArray;
-        final boolean isTargetBeforeCurrent = (targetPtNode.mCachedAddressBeforeUpdate
-                < oldOffsetBasePoint);
-        // If the target is before the current node array, then its address has already been
-        // updated. We can use the AfterUpdate member, and compare it to our own member after
-        // update. Otherwise, the AfterUpdate member is not updated yet, so we need to use the
-        // BeforeUpdate member, and of course we have to compare this to our own address before
-        // update.
-        if (isTargetBeforeCurrent) {
-            final int newOffsetBasePoint = currentNodeArray.mCachedAddressAfterUpdate
-                    + offsetFromStartOfCurrentNodeArray;
-            return targetPtNode.mCachedAddressAfterUpdate - newOffsetBasePoint;
-        }
-        return targetPtNode.mCachedAddressBeforeUpdate - oldOffsetBasePoint;
+        return targetPtNode.mCachedAddressBeforeUpdate
+                - (currentNodeArray.mCachedAddressBeforeUpdate + offsetFromStartOfCurrentNodeArray);
     }
 
     /**
@@ -365,24 +344,23 @@ public class BinaryDictEncoderUtils {
      * Each node array stores its tentative address. During dictionary address computing, these
      * are not final, but they can be used to compute the node array size (the node array size
      * depends on the address of the children because the number of bytes necessary to store an
-     * address depends on its numeric value. The return value indicates whether the node array
-     * contents (as in, any of the addresses stored in the cache fields) have changed with
-     * respect to their previous value.
+     * address depends on its numeric value. The return value indicates whether the size of any
+     * PtNode of the node array has changed with respect to its previous value.
+     *
+     * This only writes the cached sizes of the node array and its PtNodes, so node arrays can
+     * be sized concurrently.
      *
      * @param ptNodeArray the node array to compute the size of.
-     * @param dict the dictionary in which the word/attributes are to be found.
-     * @return false if none of the cached addresses inside the node array changed, true otherwise.
+     * @param bigramTargets the PtNodes the bigrams of the node array point to, in order.
+     * @return false if none of the cached sizes inside the node array changed, true otherwise.
      */
     private static boolean computeActualPtNodeArraySize(final PtNodeArray ptNodeArray,
-            final FusionDictionary dict,
+            final PtNode[] bigramTargets,
             final HashMap<Integer, Integer> codePointToOneByteCodeMap) {
         boolean changed = false;
         int size = getPtNodeCountSize(ptNodeArray);
+        int bigramIndex = 0;
         for (PtNode ptNode : ptNodeArray.mData) {
-            ptNode.mCachedAddressAfterUpdate = ptNodeArray.mCachedAddressAfterUpdate + size;
-            if (ptNode.mCachedAddressAfterUpdate != ptNode.mCachedAddressBeforeUpdate) {
-                changed = true;
-            }
             int nodeSize = getNodeHeaderSize(ptNode, codePointToOneByteCodeMap);
             if (ptNode.isTerminal()) {
                 nodeSize += FormatSpec.PTNODE_FREQUENCY_SIZE;
@@ -395,20 +373,23 @@ public class BinaryDictEncoderUtils {
             nodeSize += getShortcutListSize(ptNode.mShortcutTargets,
                     null /* codePointToOneByteCodeMap */);
             if (null != ptNode.mBigrams) {
-                for (WeightedString bigram : ptNode.mBigrams) {
+                for (int i = 0; i < ptNode.mBigrams.size(); ++i) {
                     final int offset = getOffsetToTargetPtNodeDuringUpdate(ptNodeArray,
                             nodeSize + size + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE,
-                            FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord));
+                            bigramTargets[bigramIndex++]);
                     nodeSize += getByteSize(offset) + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE;
                 }
             }
-            ptNode.mCachedSize = nodeSize;
+            if (ptNode.mCachedSize != nodeSize) {
+                ptNode.mCachedSize = nodeSize;
+                changed = true;
+            }
             size += nodeSize;
         }
-        if (ptNodeArray.mCachedSize != size) {
-            ptNodeArray.mCachedSize = size;
-            changed = true;
+        if (ptNodeArray.mCachedSize < size) {
+            throw new RuntimeException("Increased size ?!");
         }
+        ptNodeArray.mCachedSize = size;
         return changed;
     }
 
@@ -422,7 +403,8 @@ public class BinaryDictEncoderUtils {
             final ArrayList<PtNodeArray> flatNodes) {
         int nodeArrayOffset = 0;
         for (final PtNodeArray nodeArray : flatNodes) {
-            nodeArray.mCachedAddressBeforeUpdate = nodeArrayOffset;
+            nodeArray.mCachedAddressBeforeUpdate = nodeArray.mCachedAddressAfterUpdate =
+                    nodeArrayOffset;
             int nodeCountSize = getPtNodeCountSize(nodeArray);
             int nodeffset = 0;
             for (final PtNode ptNode : nodeArray.mData) {
@@ -436,15 +418,98 @@ public class BinaryDictEncoderUtils {
     }
 
     /**
-     * Updates the cached addresses of node arrays after recomputing their new positions.
+     * Updates the cached addresses of node arrays and their PtNodes after their sizes have been
+     * recomputed.
+     *
+     * Only the node arrays that moved or changed have their PtNodes updated.
      *
      * @param flatNodes the list of node arrays.
+     * @param changedNodeArrays whether the size of a PtNode of each node array changed.
      */
-    private static void updatePtNodeArraysCachedAddresses(final ArrayList<PtNodeArray> flatNodes) {
-        for (final PtNodeArray nodeArray : flatNodes) {
-            nodeArray.mCachedAddressBeforeUpdate = nodeArray.mCachedAddressAfterUpdate;
-            for (final PtNode ptNode : nodeArray.mData) {
-                ptNode.mCachedAddressBeforeUpdate = ptNode.mCachedAddressAfterUpdate;
+    private static void updatePtNodeArraysCachedAddresses(final ArrayList<PtNodeArray> flatNodes,
+            final boolean[] changedNodeArrays) {
+        int nodeArrayOffset = 0;
+        for (int i = 0; i < flatNodes.size(); ++i) {
+            final PtNodeArray nodeArray = flatNodes.get(i);
+            if (nodeArray.mCachedAddressBeforeUpdate != nodeArrayOffset || changedNodeArrays[i]) {
+                nodeArray.mCachedAddressBeforeUpdate = nodeArray.mCachedAddressAfterUpdate =
+                        nodeArrayOffset;
+                int ptNodeOffset = nodeArrayOffset + getPtNodeCountSize(nodeArray);
+                for (final PtNode ptNode : nodeArray.mData) {
+                    ptNode.mCachedAddressBeforeUpdate = ptNode.mCachedAddressAfterUpdate =
+                            ptNodeOffset;
+                    ptNodeOffset += ptNode.mCachedSize;
+                }
+            }
+            nodeArrayOffset += nodeArray.mCachedSize;
+        }
+    }
+
+    /**
+     * The passes of an address computation, for logging and tests.
+     */
+    /* package for tests */ static final class AddressComputationStats {
+        // The number of node arrays that were sized in each pass.
+        final ArrayList<Integer> mSizedNodeArrayCounts = new ArrayList<>();
+        // The number of node arrays whose size changed in each pass.
+        final ArrayList<Integer> mChangedNodeArrayCounts = new ArrayList<>();
+        // The time each pass took, in milliseconds.
+        final ArrayList<Long> mPassTimesMs = new ArrayList<>();
+
+        int getPassCount() {
+            return mSizedNodeArrayCounts.size();
+        }
+    }
+
+    // Node arrays are sized by tasks of at most this many node arrays.
+    private static final int NODE_ARRAYS_PER_TASK = 256;
+    // Shared by all the address computations. Its threads are daemon threads, started when a
+    // computation needs them and stopped after they have been idle for a while.
+    private static final ForkJoinPool sComputeSizesPool = new ForkJoinPool();
+
+    /**
+     * Sizes a range of the node arrays of a pass.
+     */
+    private static final class ComputeSizesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<PtNodeArray> mFlatNodes;
+        private final PtNode[][] mBigramTargets;
+        private final HashMap<Integer, Integer> mCodePointToOneByteCodeMap;
+        private final int[] mNodeArrayIndices;
+        private final int mStart;
+        private final int mEnd;
+        private final boolean[] mChangedNodeArrays;
+
+        ComputeSizesTask(final ArrayList<PtNodeArray> flatNodes, final PtNode[][] bigramTargets,
+                final HashMap<Integer, Integer> codePointToOneByteCodeMap,
+                final int[] nodeArrayIndices, final int start, final int end,
+                final boolean[] changedNodeArrays) {
+            mFlatNodes = flatNodes;
+            mBigramTargets = bigramTargets;
+            mCodePointToOneByteCodeMap = codePointToOneByteCodeMap;
+            mNodeArrayIndices = nodeArrayIndices;
+            mStart = start;
+            mEnd = end;
+            mChangedNodeArrays = changedNodeArrays;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart > NODE_ARRAYS_PER_TASK) {
+                final int middle = (mStart + mEnd) >>> 1;
+                invokeAll(new ComputeSizesTask(mFlatNodes, mBigramTargets,
+                                mCodePointToOneByteCodeMap, mNodeArrayIndices, mStart, middle,
+                                mChangedNodeArrays),
+                        new ComputeSizesTask(mFlatNodes, mBigramTargets,
+                                mCodePointToOneByteCodeMap, mNodeArrayIndices, middle, mEnd,
+                                mChangedNodeArrays));
+                return;
+            }
+            for (int i = mStart; i < mEnd; ++i) {
+                final int index = mNodeArrayIndices[i];
+                mChangedNodeArrays[index] = computeActualPtNodeArraySize(mFlatNodes.get(index),
+                        mBigramTargets[index], mCodePointToOneByteCodeMap);
             }
         }
     }
@@ -466,6 +531,30 @@ public class BinaryDictEncoderUtils {
     /* package */ static ArrayList<PtNodeArray> computeAddresses(final FusionDictionary dict,
             final ArrayList<PtNodeArray> flatNodes,
             final HashMap<Integer, Integer> codePointToOneByteCodeMap) {
+        return computeAddresses(dict, flatNodes, codePointToOneByteCodeMap,
+                new AddressComputationStats());
+    }
+
+    /**
+     * Compute the addresses and sizes of an ordered list of PtNode arrays, and record how the
+     * computation went.
+     *
+     * The sizes of the PtNode arrays only depend on the distances to the PtNode arrays and
+     * PtNodes their addresses point to. After the first pass, a PtNode array is only sized again
+     * if the size of a PtNode array between itself and one of its targets changed in the previous
+     * pass, so the later passes only visit the few regions where addresses still shrink. The
+     * PtNode arrays of a pass are sized in parallel.
+     *
+     * @param dict the dictionary
+     * @param flatNodes the ordered list of PtNode arrays
+     * @param stats the statistics to record the passes into
+     * @return the same array it was passed. The nodes have been updated for address and size.
+     */
+    /* package for tests */ static ArrayList<PtNodeArray> computeAddresses(
+            final FusionDictionary dict, final ArrayList<PtNodeArray> flatNodes,
+            final HashMap<Integer, Integer> codePointToOneByteCodeMap,
+            final AddressComputationStats stats) {
+        final int nodeArrayCount = flatNodes.size();
         // First get the worst possible sizes and offsets
         for (final PtNodeArray n : flatNodes) {
             calculatePtNodeArrayMaximumSize(n, codePointToOneByteCodeMap);
@@ -475,30 +564,89 @@ public class BinaryDictEncoderUtils {
         MakedictLog.i("Compressing the array addresses. Original size : " + offset);
         MakedictLog.i("(Recursively seen size : " + offset + ")");
 
-        int passes = 0;
-        boolean changesDone = false;
-        do {
-            changesDone = false;
-            int ptNodeArrayStartOffset = 0;
-            for (final PtNodeArray ptNodeArray : flatNodes) {
-                ptNodeArray.mCachedAddressAfterUpdate = ptNodeArrayStartOffset;
-                final int oldNodeArraySize = ptNodeArray.mCachedSize;
-                final boolean changed = computeActualPtNodeArraySize(ptNodeArray, dict,
-                        codePointToOneByteCodeMap);
-                final int newNodeArraySize = ptNodeArray.mCachedSize;
-                if (oldNodeArraySize < newNodeArraySize) {
-                    throw new RuntimeException("Increased size ?!");
+        // Look the bigram targets up once, and find the range of node arrays each node array
+        // depends on: itself, and everything up to its farthest target on either side.
+        final IdentityHashMap<PtNodeArray, Integer> nodeArrayIndices = new IdentityHashMap<>();
+        final IdentityHashMap<PtNode, Integer> nodeArrayIndicesOfPtNodes = new IdentityHashMap<>();
+        for (int i = 0; i < nodeArrayCount; ++i) {
+            nodeArrayIndices.put(flatNodes.get(i), i);
+            for (final PtNode ptNode : flatNodes.get(i).mData) {
+                nodeArrayIndicesOfPtNodes.put(ptNode, i);
+            }
+        }
+        final PtNode[][] bigramTargets = new PtNode[nodeArrayCount][];
+        final int[] firstDependencies = new int[nodeArrayCount];
+        final int[] lastDependencies = new int[nodeArrayCount];
+        for (int i = 0; i < nodeArrayCount; ++i) {
+            final ArrayList<PtNode> targets = new ArrayList<>();
+            int first = i;
+            int last = i;
+            for (final PtNode ptNode : flatNodes.get(i).mData) {
+                if (null != ptNode.mChildren) {
+                    final int childrenIndex = nodeArrayIndices.get(ptNode.mChildren);
+                    first = Math.min(first, childrenIndex);
+                    last = Math.max(last, childrenIndex);
                 }
-                ptNodeArrayStartOffset += newNodeArraySize;
-                changesDone |= changed;
+                if (null == ptNode.mBigrams) continue;
+                for (final WeightedString bigram : ptNode.mBigrams) {
+                    final PtNode target =
+                            FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord);
+                    targets.add(target);
+                    if (null == target) continue;
+                    final int targetIndex = nodeArrayIndicesOfPtNodes.get(target);
+                    first = Math.min(first, targetIndex);
+                    last = Math.max(last, targetIndex);
+                }
+            }
+            bigramTargets[i] = targets.toArray(new PtNode[targets.size()]);
+            firstDependencies[i] = first;
+            lastDependencies[i] = last;
+        }
+
+        final boolean[] changedNodeArrays = new boolean[nodeArrayCount];
+        final int[] changedNodeArrayCounts = new int[nodeArrayCount + 1];
+        int[] dirtyNodeArrays = new int[nodeArrayCount];
+        for (int i = 0; i < nodeArrayCount; ++i) {
+            dirtyNodeArrays[i] = i;
+        }
+        int dirtyNodeArrayCount = nodeArrayCount;
+        while (dirtyNodeArrayCount > 0) {
+            if (stats.getPassCount() >= MAX_PASSES) {
+                throw new RuntimeException("Too many passes - probably a bug");
             }
-            updatePtNodeArraysCachedAddresses(flatNodes);
-            ++passes;
-            if (passes > MAX_PASSES) throw new RuntimeException("Too many passes - probably a bug");
-        } while (changesDone);
+            final long passStartTime = System.nanoTime();
+            Arrays.fill(changedNodeArrays, false);
+            sComputeSizesPool.invoke(new ComputeSizesTask(flatNodes, bigramTargets,
+                    codePointToOneByteCodeMap, dirtyNodeArrays, 0, dirtyNodeArrayCount,
+                    changedNodeArrays));
+            updatePtNodeArraysCachedAddresses(flatNodes, changedNodeArrays);
+
+            // A node array only needs to be sized again if one of the node arrays it
+            // depends on changed.
+            for (int i = 0; i < nodeArrayCount; ++i) {
+                changedNodeArrayCounts[i + 1] =
+                        changedNodeArrayCounts[i] + (changedNodeArrays[i] ? 1 : 0);
+            }
+            final int sizedNodeArrayCount = dirtyNodeArrayCount;
+            dirtyNodeArrayCount = 0;
+            for (int i = 0; i < nodeArrayCount; ++i) {
+                if (changedNodeArrayCounts[lastDependencies[i] + 1]
+                        != changedNodeArrayCounts[firstDependencies[i]]) {
+                    dirtyNodeArrays[dirtyNodeArrayCount++] = i;
+                }
+            }
+
+            final long passTimeMs = (System.nanoTime() - passStartTime) / 1000000;
+            stats.mSizedNodeArrayCounts.add(sizedNodeArrayCount);
+            stats.mChangedNodeArrayCounts.add(changedNodeArrayCounts[nodeArrayCount]);
+            stats.mPassTimesMs.add(passTimeMs);
+            MakedictLog.i("Pass " + stats.getPassCount() + " : sized " + sizedNodeArrayCount
+                    + " arrays, " + changedNodeArrayCounts[nodeArrayCount] + " changed, in "
+                    + passTimeMs + " ms");
+        }
 
         final PtNodeArray lastPtNodeArray = flatNodes.get(flatNodes.size() - 1);
-        MakedictLog.i("Compression complete in " + passes + " passes.");
+        MakedictLog.i("Compression complete in " + stats.getPassCount() + " passes.");
         MakedictLog.i("After address compression : "
                 + (lastPtNodeArray.mCachedAddressAfterUpdate + lastPtNodeArray.mCachedSize));
 
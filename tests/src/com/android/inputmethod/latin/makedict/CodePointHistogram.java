@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import java.util.HashMap;
+
+/**
+ * Counts the occurrences of code points without boxing them.
+ *
+ * The counts are kept in pages of 256 code points, which are only allocated for the blocks of
+ * the code points that occur. A dictionary usually uses a handful of blocks.
+ */
+final class CodePointHistogram {
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_COUNT = (Character.MAX_CODE_POINT >> PAGE_SHIFT) + 1;
+
+    // Allocated on the first code point.
+    private int[][] mPages;
+
+    public void add(final int codePoint) {
+        if (null == mPages) {
+            mPages = new int[PAGE_COUNT][];
+        }
+        int[] page = mPages[codePoint >> PAGE_SHIFT];
+        if (null == page) {
+            page = new int[PAGE_SIZE];
+            mPages[codePoint >> PAGE_SHIFT] = page;
+        }
+        ++page[codePoint & (PAGE_SIZE - 1)];
+    }
+
+    public int getCount(final int codePoint) {
+        if (null == mPages) {
+            return 0;
+        }
+        final int[] page = mPages[codePoint >> PAGE_SHIFT];
+        return null == page ? 0 : page[codePoint & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * @return the count of each code point that occurs.
+     */
+    public HashMap<Integer, Integer> toMap() {
+        final HashMap<Integer, Integer> counts = new HashMap<>();
+        if (null == mPages) {
+            return counts;
+        }
+        for (int pageIndex = 0; pageIndex < PAGE_COUNT; ++pageIndex) {
+            final int[] page = mPages[pageIndex];
+            if (null == page) continue;
+            for (int i = 0; i < PAGE_SIZE; ++i) {
+                if (0 != page[i]) {
+                    counts.put((pageIndex << PAGE_SHIFT) + i, page[i]);
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.CharEncoding;
+import com.android.inputmethod.latin.makedict.BinaryDictEncoderUtils.CodePointTable;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * Chooses the code point table of a dictionary by measuring the trie encoded with each of a few
+ * candidate tables.
+ *
+ * The candidates are made of the most frequent code points of the PtNodes, which the
+ * FusionDictionary counts while the words are added, so that no extra pass over the trie is
+ * needed to build them. Each candidate is then measured with the actual address computation of
+ * the encoder, since the size of the PtNodes changes the size of the addresses.
+ *
+ * This modifies the cached addresses and sizes of the PtNodes, so a dictionary must not be
+ * optimized and encoded at the same time.
+ */
+@UsedForTesting
+public final class CodePointTableOptimizer {
+    private static final int MAX_TABLE_SIZE = FormatSpec.MAXIMAL_ONE_BYTE_CHARACTER_VALUE
+            - FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE + 1;
+    // Smaller tables are measured as well, to show what they would cost: they take less cache at
+    // decoding time.
+    private static final int[] CANDIDATE_TABLE_SIZES = { 0, 32, 64, 128, MAX_TABLE_SIZE };
+    // The native decoder holds the table as an array of ints.
+    private static final int TABLE_ENTRY_SIZE_IN_MEMORY = 4;
+
+    private CodePointTableOptimizer() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * The measurements of a dictionary encoded with one candidate table.
+     */
+    public static final class Candidate {
+        // The number of code points in the table, or 0 for no table.
+        public final int mTableSize;
+        // The size of the trie, in bytes.
+        public final int mTrieSize;
+        // The size the table takes in the header, in bytes.
+        public final int mHeaderSize;
+        // The size of the code points of the PtNodes, in bytes.
+        public final long mCodePointBytes;
+        // The number of code points of the PtNodes that are decoded through the table.
+        public final long mTableLookupCount;
+        final CodePointTable mCodePointTable;
+
+        Candidate(final int tableSize, final int trieSize, final int headerSize,
+                final long codePointBytes, final long tableLookupCount,
+                final CodePointTable codePointTable) {
+            mTableSize = tableSize;
+            mTrieSize = trieSize;
+            mHeaderSize = headerSize;
+            mCodePointBytes = codePointBytes;
+            mTableLookupCount = tableLookupCount;
+            mCodePointTable = codePointTable;
+        }
+
+        public int getTotalSize() {
+            return mTrieSize + mHeaderSize;
+        }
+
+        public int getTableMemorySize() {
+            return mTableSize * TABLE_ENTRY_SIZE_IN_MEMORY;
+        }
+    }
+
+    /**
+     * The candidates measured for a dictionary, and the smallest of them.
+     */
+    public static final class Report {
+        public final String mLocale;
+        // The number of code points in the PtNodes, and the number of different ones.
+        public final long mCodePointCount;
+        public final int mDistinctCodePointCount;
+        public final ArrayList<Candidate> mCandidates;
+        public final Candidate mBestCandidate;
+
+        Report(final String locale, final long codePointCount, final int distinctCodePointCount,
+                final ArrayList<Candidate> candidates, final Candidate bestCandidate) {
+            mLocale = locale;
+            mCodePointCount = codePointCount;
+            mDistinctCodePointCount = distinctCodePointCount;
+            mCandidates = candidates;
+            mBestCandidate = bestCandidate;
+        }
+
+        /**
+         * @return the candidate without a code point table.
+         */
+        public Candidate getCandidateWithoutTable() {
+            return mCandidates.get(0);
+        }
+    }
+
+    private static final Comparator<Entry<Integer, Integer>> OCCURRENCE_COMPARATOR =
+            new Comparator<Entry<Integer, Integer>>() {
+                @Override
+                public int compare(final Entry<Integer, Integer> a,
+                        final Entry<Integer, Integer> b) {
+                    // Most frequent first, then in code point order so that the table does not
+                    // depend on the order of the words.
+                    final int countComparison = b.getValue().compareTo(a.getValue());
+                    return 0 != countComparison ? countComparison
+                            : a.getKey().compareTo(b.getKey());
+                }
+            };
+
+    /**
+     * @return the code points of the PtNodes of a dictionary, most frequent first.
+     */
+    /* package for tests */ static ArrayList<Entry<Integer, Integer>> getCodePointOccurrences(
+            final FusionDictionary dict) {
+        final ArrayList<Entry<Integer, Integer>> occurrences =
+                new ArrayList<>(dict.mCodePointOccurrences.toMap().entrySet());
+        Collections.sort(occurrences, OCCURRENCE_COMPARATOR);
+        return occurrences;
+    }
+
+    private static CodePointTable makeCodePointTable(
+            final ArrayList<Entry<Integer, Integer>> occurrences, final int tableSize) {
+        final HashMap<Integer, Integer> codePointToOneByteCodeMap = new HashMap<>();
+        for (int i = 0; i < tableSize; ++i) {
+            codePointToOneByteCodeMap.put(occurrences.get(i).getKey(),
+                    FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE + i);
+        }
+        return new CodePointTable(codePointToOneByteCodeMap,
+                new ArrayList<>(occurrences.subList(0, tableSize)));
+    }
+
+    private static int getStringSize(final String string) {
+        return CharEncoding.getCharArraySize(FusionDictionary.getCodePoints(string),
+                null /* codePointToOneByteCodeMap */) + FormatSpec.PTNODE_TERMINATOR_SIZE;
+    }
+
+    private static int getHeaderSize(final ArrayList<Entry<Integer, Integer>> occurrences,
+            final int tableSize) {
+        if (0 == tableSize) {
+            return 0;
+        }
+        int size = getStringSize(DictionaryHeader.CODE_POINT_TABLE_KEY);
+        for (int i = 0; i < tableSize; ++i) {
+            size += CharEncoding.getCharSize(occurrences.get(i).getKey(),
+                    null /* codePointToOneByteCodeMap */);
+        }
+        return size + FormatSpec.PTNODE_TERMINATOR_SIZE;
+    }
+
+    /**
+     * Measures the candidate tables of a dictionary.
+     *
+     * @param dict the dictionary.
+     * @return the report of the candidates.
+     */
+    public static Report optimize(final FusionDictionary dict) {
+        final ArrayList<Entry<Integer, Integer>> occurrences = getCodePointOccurrences(dict);
+        long codePointCount = 0;
+        for (final Entry<Integer, Integer> occurrence : occurrences) {
+            codePointCount += occurrence.getValue();
+        }
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        final PtNodeArray lastNodeArray = flatNodes.get(flatNodes.size() - 1);
+        final ArrayList<Candidate> candidates = new ArrayList<>();
+        Candidate bestCandidate = null;
+        int previousTableSize = -1;
+        for (final int candidateTableSize : CANDIDATE_TABLE_SIZES) {
+            final int tableSize = Math.min(candidateTableSize, occurrences.size());
+            if (tableSize == previousTableSize) {
+                continue;
+            }
+            previousTableSize = tableSize;
+            final CodePointTable codePointTable = makeCodePointTable(occurrences, tableSize);
+            // No table at all is not the same as an empty table: without a table, the code
+            // points from 0x20 to 0xFF fit on one byte.
+            final HashMap<Integer, Integer> codePointToOneByteCodeMap =
+                    0 == tableSize ? null : codePointTable.mCodePointToOneByteCodeMap;
+            long codePointBytes = 0;
+            long tableLookupCount = 0;
+            for (final Entry<Integer, Integer> occurrence : occurrences) {
+                final int charSize =
+                        CharEncoding.getCharSize(occurrence.getKey(), codePointToOneByteCodeMap);
+                codePointBytes += (long)charSize * occurrence.getValue();
+                if (null != codePointToOneByteCodeMap
+                        && codePointToOneByteCodeMap.containsKey(occurrence.getKey())) {
+                    tableLookupCount += occurrence.getValue();
+                }
+            }
+            BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, codePointToOneByteCodeMap);
+            final Candidate candidate = new Candidate(tableSize,
+                    lastNodeArray.mCachedAddressAfterUpdate + lastNodeArray.mCachedSize,
+                    getHeaderSize(occurrences, tableSize), codePointBytes, tableLookupCount,
+                    0 == tableSize ? new CodePointTable() : codePointTable);
+            candidates.add(candidate);
+            if (null == bestCandidate || candidate.getTotalSize() < bestCandidate.getTotalSize()) {
+                bestCandidate = candidate;
+            }
+        }
+        return new Report(dict.mOptions.mAttributes.get(DictionaryHeader.DICTIONARY_LOCALE_KEY),
+                codePointCount, occurrences.size(), candidates, bestCandidate);
+    }
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.define.DecoderSpecificConstants;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A dictionary with the same contents as a {@link FusionDictionary}, stored in primitive arrays
+ * instead of one object per PtNode.
+ *
+ * PtNodes are identified by an index in parallel node tables. The code points of all PtNodes and
+ * shortcut targets are stored in a single code point pool, and splitting a PtNode only splits its
+ * range in the pool. Shortcut and n-gram lists are linked lists stored in entry tables. The
+ * probability information is interned, since most words share a handful of values.
+ *
+ * The index of a terminal PtNode never changes once the word is added, so that n-gram entries
+ * refer to their target word by PtNode index.
+ */
+@UsedForTesting
+public final class CompactFusionDictionary implements WordPropertyDictionary {
+    public static final int NOT_A_NODE = -1;
+
+    private static final int ROOT_NODE = 0;
+    private static final int NOT_AN_ENTRY = -1;
+    private static final int NOT_A_PROBABILITY_INFO = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final byte FLAG_IS_NOT_A_WORD = 0x1;
+    private static final byte FLAG_IS_POSSIBLY_OFFENSIVE = 0x2;
+
+    public final DictionaryOptions mOptions;
+
+    // The node tables, indexed by PtNode.
+    private int mNodeCount;
+    private int[] mCharsStarts;
+    private int[] mCharsLengths;
+    private int[] mParents;
+    private int[] mFirstChildren;
+    private int[] mNextSiblings;
+    private int[] mProbabilityInfoIds; // NOT_A_PROBABILITY_INFO for non-terminals.
+    private int[] mFirstShortcuts;
+    private int[] mFirstNgrams;
+    private byte[] mFlags;
+
+    private int mCodePointCount;
+    private int[] mCodePoints;
+
+    // The shortcut entries. A shortcut target is a range in the code point pool.
+    private int mShortcutCount;
+    private int[] mShortcutTargetStarts;
+    private int[] mShortcutTargetLengths;
+    private int[] mShortcutProbabilityInfoIds;
+    private int[] mNextShortcuts;
+
+    // The n-gram entries. The target of an n-gram is the PtNode of the target word.
+    private int mNgramCount;
+    private int[] mNgramTargets;
+    private int[] mNgramProbabilityInfoIds;
+    private int[] mNextNgrams;
+
+    private final ArrayList<ProbabilityInfo> mProbabilityInfos = new ArrayList<>();
+    private final HashMap<ProbabilityInfo, Integer> mProbabilityInfoIdMap = new HashMap<>();
+
+    public CompactFusionDictionary(final DictionaryOptions options) {
+        mOptions = options;
+        mCharsStarts = new int[INITIAL_CAPACITY];
+        mCharsLengths = new int[INITIAL_CAPACITY];
+        mParents = new int[INITIAL_CAPACITY];
+        mFirstChildren = new int[INITIAL_CAPACITY];
+        mNextSiblings = new int[INITIAL_CAPACITY];
+        mProbabilityInfoIds = new int[INITIAL_CAPACITY];
+        mFirstShortcuts = new int[INITIAL_CAPACITY];
+        mFirstNgrams = new int[INITIAL_CAPACITY];
+        mFlags = new byte[INITIAL_CAPACITY];
+        mCodePoints = new int[INITIAL_CAPACITY];
+        mShortcutTargetStarts = new int[0];
+        mShortcutTargetLengths = new int[0];
+        mShortcutProbabilityInfoIds = new int[0];
+        mNextShortcuts = new int[0];
+        mNgramTargets = new int[0];
+        mNgramProbabilityInfoIds = new int[0];
+        mNextNgrams = new int[0];
+        // The root has no code points, and is never a terminal.
+        newNode(ROOT_NODE, 0 /* charsStart */, 0 /* charsLength */);
+    }
+
+    public void addOptionAttribute(final String key, final String value) {
+        mOptions.mAttributes.put(key, value);
+    }
+
+    private static int getCapacity(final int capacity, final int minimumCapacity) {
+        return Math.max(minimumCapacity, capacity + capacity / 2);
+    }
+
+    private int newNode(final int parent, final int charsStart, final int charsLength) {
+        if (mNodeCount == mCharsStarts.length) {
+            final int capacity = getCapacity(mNodeCount, mNodeCount + 1);
+            mCharsStarts = Arrays.copyOf(mCharsStarts, capacity);
+            mCharsLengths = Arrays.copyOf(mCharsLengths, capacity);
+            mParents = Arrays.copyOf(mParents, capacity);
+            mFirstChildren = Arrays.copyOf(mFirstChildren, capacity);
+            mNextSiblings = Arrays.copyOf(mNextSiblings, capacity);
+            mProbabilityInfoIds = Arrays.copyOf(mProbabilityInfoIds, capacity);
+            mFirstShortcuts = Arrays.copyOf(mFirstShortcuts, capacity);
+            mFirstNgrams = Arrays.copyOf(mFirstNgrams, capacity);
+            mFlags = Arrays.copyOf(mFlags, capacity);
+        }
+        final int node = mNodeCount++;
+        mCharsStarts[node] = charsStart;
+        mCharsLengths[node] = charsLength;
+        mParents[node] = parent;
+        mFirstChildren[node] = NOT_A_NODE;
+        mNextSiblings[node] = NOT_A_NODE;
+        mProbabilityInfoIds[node] = NOT_A_PROBABILITY_INFO;
+        mFirstShortcuts[node] = NOT_AN_ENTRY;
+        mFirstNgrams[node] = NOT_AN_ENTRY;
+        mFlags[node] = 0;
+        return node;
+    }
+
+    /**
+     * Appends code points to the pool.
+     *
+     * @return the start of the code points in the pool.
+     */
+    private int addCodePoints(final int[] codePoints, final int start, final int length) {
+        if (mCodePointCount + length > mCodePoints.length) {
+            mCodePoints = Arrays.copyOf(mCodePoints,
+                    getCapacity(mCodePoints.length, mCodePointCount + length));
+        }
+        System.arraycopy(codePoints, start, mCodePoints, mCodePointCount, length);
+        final int poolStart = mCodePointCount;
+        mCodePointCount += length;
+        return poolStart;
+    }
+
+    private int getProbabilityInfoId(final ProbabilityInfo probabilityInfo) {
+        final Integer id = mProbabilityInfoIdMap.get(probabilityInfo);
+        if (null != id) {
+            return id;
+        }
+        final int newId = mProbabilityInfos.size();
+        mProbabilityInfos.add(probabilityInfo);
+        mProbabilityInfoIdMap.put(probabilityInfo, newId);
+        return newId;
+    }
+
+    private int getFirstCodePoint(final int node) {
+        return mCodePoints[mCharsStarts[node]];
+    }
+
+    private boolean hasFlag(final int node, final byte flag) {
+        return 0 != (mFlags[node] & flag);
+    }
+
+    private static byte makeFlags(final boolean isNotAWord, final boolean isPossiblyOffensive) {
+        return (byte)((isNotAWord ? FLAG_IS_NOT_A_WORD : 0)
+                | (isPossiblyOffensive ? FLAG_IS_POSSIBLY_OFFENSIVE : 0));
+    }
+
+    public boolean isTerminal(final int node) {
+        return NOT_A_PROBABILITY_INFO != mProbabilityInfoIds[node];
+    }
+
+    /**
+     * Helper method to add a word as a string.
+     *
+     * This method behaves like {@link FusionDictionary#add}.
+     *
+     * @param word the word to add.
+     * @param probabilityInfo probability information of the word.
+     * @param shortcutTargets a list of shortcut targets for this word, or null.
+     * @param isNotAWord true if this should not be considered a word (e.g. shortcut only)
+     * @param isPossiblyOffensive true if this word is possibly offensive
+     */
+    public void add(final String word, final ProbabilityInfo probabilityInfo,
+            final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord,
+            final boolean isPossiblyOffensive) {
+        final int[] codePoints = FusionDictionary.getCodePoints(word);
+        if (0 == codePoints.length) {
+            throw new RuntimeException("Can't add an empty word");
+        }
+        if (codePoints.length >= DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH) {
+            MakedictLog.w("Ignoring a word that is too long: word.length = "
+                    + codePoints.length);
+            return;
+        }
+        final int nodeCount = mNodeCount;
+        final int node = getOrCreateNode(codePoints);
+        if (node >= nodeCount) {
+            mProbabilityInfoIds[node] = getProbabilityInfoId(probabilityInfo);
+            mFlags[node] = makeFlags(isNotAWord, isPossiblyOffensive);
+        } else {
+            // The PtNode already existed. Update the probability if higher.
+            final ProbabilityInfo maxProbabilityInfo = ProbabilityInfo.max(isTerminal(node)
+                    ? mProbabilityInfos.get(mProbabilityInfoIds[node]) : null, probabilityInfo);
+            mProbabilityInfoIds[node] = getProbabilityInfoId(maxProbabilityInfo);
+            // FusionDictionary merges the flags of a PtNode of the root, and replaces those of
+            // a deeper PtNode. Do the same so that both dictionaries have the same contents.
+            if (ROOT_NODE == mParents[node]) {
+                mFlags[node] = makeFlags(hasFlag(node, FLAG_IS_NOT_A_WORD) && isNotAWord,
+                        hasFlag(node, FLAG_IS_POSSIBLY_OFFENSIVE) || isPossiblyOffensive);
+            } else {
+                mFlags[node] = makeFlags(isNotAWord, isPossiblyOffensive);
+            }
+        }
+        if (null != shortcutTargets) {
+            for (final WeightedString shortcutTarget : shortcutTargets) {
+                addShortcut(node, shortcutTarget);
+            }
+        }
+    }
+
+    /**
+     * Finds the PtNode that ends with the given word, creating or splitting PtNodes as necessary.
+     */
+    private int getOrCreateNode(final int[] codePoints) {
+        int parent = ROOT_NODE;
+        int charIndex = 0;
+        while (charIndex < codePoints.length) {
+            final int codePoint = codePoints[charIndex];
+            int previous = NOT_A_NODE;
+            int node = mFirstChildren[parent];
+            while (NOT_A_NODE != node && getFirstCodePoint(node) < codePoint) {
+                previous = node;
+                node = mNextSiblings[node];
+            }
+            if (NOT_A_NODE == node || getFirstCodePoint(node) != codePoint) {
+                // No PtNode at this point to accept the word. Create one.
+                final int newNode = newNode(parent,
+                        addCodePoints(codePoints, charIndex, codePoints.length - charIndex),
+                        codePoints.length - charIndex);
+                mNextSiblings[newNode] = node;
+                setNextSibling(parent, previous, newNode);
+                return newNode;
+            }
+            final int charsStart = mCharsStarts[node];
+            final int charsLength = mCharsLengths[node];
+            int differentCharIndex = 1;
+            while (differentCharIndex < charsLength
+                    && charIndex + differentCharIndex < codePoints.length
+                    && mCodePoints[charsStart + differentCharIndex]
+                            == codePoints[charIndex + differentCharIndex]) {
+                ++differentCharIndex;
+            }
+            if (differentCharIndex < charsLength) {
+                // Partial match only. Insert a PtNode for the common prefix above this one. This
+                // PtNode keeps its index, its attributes and its children.
+                final int prefixNode = newNode(parent, charsStart, differentCharIndex);
+                mNextSiblings[prefixNode] = mNextSiblings[node];
+                setNextSibling(parent, previous, prefixNode);
+                mFirstChildren[prefixNode] = node;
+                mParents[node] = prefixNode;
+                mNextSiblings[node] = NOT_A_NODE;
+                mCharsStarts[node] = charsStart + differentCharIndex;
+                mCharsLengths[node] = charsLength - differentCharIndex;
+                node = prefixNode;
+            }
+            charIndex += differentCharIndex;
+            if (charIndex >= codePoints.length) {
+                return node;
+            }
+            parent = node;
+        }
+        return parent;
+    }
+
+    private void setNextSibling(final int parent, final int previous, final int node) {
+        if (NOT_A_NODE == previous) {
+            mFirstChildren[parent] = node;
+        } else {
+            mNextSiblings[previous] = node;
+        }
+    }
+
+    private boolean targetEquals(final int start, final int length, final int[] codePoints) {
+        if (length != codePoints.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (mCodePoints[start + i] != codePoints[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a shortcut target to a PtNode, or updates its probability if higher.
+     */
+    private void addShortcut(final int node, final WeightedString shortcutTarget) {
+        final int[] codePoints = FusionDictionary.getCodePoints(shortcutTarget.mWord);
+        int last = NOT_AN_ENTRY;
+        for (int shortcut = mFirstShortcuts[node]; NOT_AN_ENTRY != shortcut;
+                shortcut = mNextShortcuts[shortcut]) {
+            if (targetEquals(mShortcutTargetStarts[shortcut], mShortcutTargetLengths[shortcut],
+                    codePoints)) {
+                mShortcutProbabilityInfoIds[shortcut] = getProbabilityInfoId(ProbabilityInfo.max(
+                        mProbabilityInfos.get(mShortcutProbabilityInfoIds[shortcut]),
+                        shortcutTarget.mProbabilityInfo));
+                return;
+            }
+            last = shortcut;
+        }
+        if (mShortcutCount == mNextShortcuts.length) {
+            final int capacity = getCapacity(mShortcutCount, INITIAL_CAPACITY);
+            mShortcutTargetStarts = Arrays.copyOf(mShortcutTargetStarts, capacity);
+            mShortcutTargetLengths = Arrays.copyOf(mShortcutTargetLengths, capacity);
+            mShortcutProbabilityInfoIds = Arrays.copyOf(mShortcutProbabilityInfoIds, capacity);
+            mNextShortcuts = Arrays.copyOf(mNextShortcuts, capacity);
+        }
+        final int newShortcut = mShortcutCount++;
+        mShortcutTargetStarts[newShortcut] = addCodePoints(codePoints, 0, codePoints.length);
+        mShortcutTargetLengths[newShortcut] = codePoints.length;
+        mShortcutProbabilityInfoIds[newShortcut] =
+                getProbabilityInfoId(shortcutTarget.mProbabilityInfo);
+        mNextShortcuts[newShortcut] = NOT_AN_ENTRY;
+        if (NOT_AN_ENTRY == last) {
+            mFirstShortcuts[node] = newShortcut;
+        } else {
+            mNextShortcuts[last] = newShortcut;
+        }
+    }
+
+    /**
+     * Helper method to add a new bigram to the dictionary.
+     *
+     * As with {@link FusionDictionary#setBigram}, the second word is added with a probability of
+     * 0 if it is not in the dictionary yet.
+     *
+     * @param word0 the previous word of the context
+     * @param word1 the next word of the context
+     * @param probabilityInfo the bigram probability info
+     */
+    public void setBigram(final String word0, final String word1,
+            final ProbabilityInfo probabilityInfo) {
+        final int node0 = findWordInTree(word0);
+        if (NOT_A_NODE == node0) {
+            throw new RuntimeException("First word of bigram not found " + word0);
+        }
+        int node1 = findWordInTree(word1);
+        if (NOT_A_NODE == node1) {
+            add(word1, new ProbabilityInfo(0), null, false /* isNotAWord */,
+                    false /* isPossiblyOffensive */);
+            node1 = findWordInTree(word1);
+        }
+        int last = NOT_AN_ENTRY;
+        for (int ngram = mFirstNgrams[node0]; NOT_AN_ENTRY != ngram; ngram = mNextNgrams[ngram]) {
+            if (mNgramTargets[ngram] == node1) {
+                mNgramProbabilityInfoIds[ngram] = getProbabilityInfoId(probabilityInfo);
+                return;
+            }
+            last = ngram;
+        }
+        if (mNgramCount == mNextNgrams.length) {
+            final int capacity = getCapacity(mNgramCount, INITIAL_CAPACITY);
+            mNgramTargets = Arrays.copyOf(mNgramTargets, capacity);
+            mNgramProbabilityInfoIds = Arrays.copyOf(mNgramProbabilityInfoIds, capacity);
+            mNextNgrams = Arrays.copyOf(mNextNgrams, capacity);
+        }
+        final int newNgram = mNgramCount++;
+        mNgramTargets[newNgram] = node1;
+        mNgramProbabilityInfoIds[newNgram] = getProbabilityInfoId(probabilityInfo);
+        mNextNgrams[newNgram] = NOT_AN_ENTRY;
+        if (NOT_AN_ENTRY == last) {
+            mFirstNgrams[node0] = newNgram;
+        } else {
+            mNextNgrams[last] = newNgram;
+        }
+    }
+
+    /**
+     * Helper method to find a word in the dictionary.
+     *
+     * @return the index of the terminal PtNode of the word, or NOT_A_NODE if it's not there.
+     */
+    public int findWordInTree(final String word) {
+        final int[] codePoints = FusionDictionary.getCodePoints(word);
+        int node = ROOT_NODE;
+        int charIndex = 0;
+        while (charIndex < codePoints.length) {
+            node = mFirstChildren[node];
+            while (NOT_A_NODE != node && getFirstCodePoint(node) != codePoints[charIndex]) {
+                node = mNextSiblings[node];
+            }
+            if (NOT_A_NODE == node) return NOT_A_NODE;
+            final int charsStart = mCharsStarts[node];
+            final int charsLength = mCharsLengths[node];
+            if (codePoints.length - charIndex < charsLength) return NOT_A_NODE;
+            for (int i = 1; i < charsLength; ++i) {
+                if (mCodePoints[charsStart + i] != codePoints[charIndex + i]) return NOT_A_NODE;
+            }
+            charIndex += charsLength;
+        }
+        return isTerminal(node) ? node : NOT_A_NODE;
+    }
+
+    /**
+     * Helper method to find out whether a word is in the dict or not.
+     */
+    @Override
+    public boolean hasWord(final String s) {
+        if (null == s || "".equals(s)) {
+            throw new RuntimeException("Can't search for a null or empty string");
+        }
+        return NOT_A_NODE != findWordInTree(s);
+    }
+
+    /**
+     * @return the number of PtNodes of the dictionary.
+     */
+    public int countPtNodes() {
+        // The root is not a PtNode of the trie.
+        return mNodeCount - 1;
+    }
+
+    private String getWord(final int node) {
+        int length = 0;
+        for (int n = node; ROOT_NODE != n; n = mParents[n]) {
+            length += mCharsLengths[n];
+        }
+        final int[] codePoints = new int[length];
+        for (int n = node; ROOT_NODE != n; n = mParents[n]) {
+            length -= mCharsLengths[n];
+            System.arraycopy(mCodePoints, mCharsStarts[n], codePoints, length, mCharsLengths[n]);
+        }
+        return new String(codePoints, 0, codePoints.length);
+    }
+
+    /**
+     * Gets the properties of a word.
+     *
+     * @param node the terminal PtNode of the word, as returned by {@link #findWordInTree}.
+     */
+    public WordProperty getWordProperty(final int node) {
+        if (!isTerminal(node)) {
+            throw new IllegalArgumentException("Not a terminal PtNode: " + node);
+        }
+        ArrayList<WeightedString> shortcutTargets = null;
+        for (int shortcut = mFirstShortcuts[node]; NOT_AN_ENTRY != shortcut;
+                shortcut = mNextShortcuts[shortcut]) {
+            if (null == shortcutTargets) {
+                shortcutTargets = new ArrayList<>();
+            }
+            shortcutTargets.add(new WeightedString(new String(mCodePoints,
+                    mShortcutTargetStarts[shortcut], mShortcutTargetLengths[shortcut]),
+                    mProbabilityInfos.get(mShortcutProbabilityInfoIds[shortcut])));
+        }
+        ArrayList<WeightedString> bigrams = null;
+        for (int ngram = mFirstNgrams[node]; NOT_AN_ENTRY != ngram; ngram = mNextNgrams[ngram]) {
+            if (null == bigrams) {
+                bigrams = new ArrayList<>();
+            }
+            bigrams.add(new WeightedString(getWord(mNgramTargets[ngram]),
+                    mProbabilityInfos.get(mNgramProbabilityInfoIds[ngram])));
+        }
+        return new WordProperty(getWord(node), mProbabilityInfos.get(mProbabilityInfoIds[node]),
+                shortcutTargets, bigrams, hasFlag(node, FLAG_IS_NOT_A_WORD),
+                hasFlag(node, FLAG_IS_POSSIBLY_OFFENSIVE));
+    }
+
+    @Override
+    public WordProperty getWordProperty(final String word) {
+        final int node = findWordInTree(word);
+        return NOT_A_NODE == node ? null : getWordProperty(node);
+    }
+
+    /**
+     * Iterator to walk through a dictionary, in the same order as a FusionDictionary.
+     *
+     * PtNodes are visited in depth-first order following the parent links, so the iterator does
+     * not need a stack.
+     */
+    private final class DictionaryIterator implements Iterator<WordProperty> {
+        private int mNextTerminal;
+
+        DictionaryIterator() {
+            mNextTerminal = findNextTerminal(ROOT_NODE);
+        }
+
+        private int findNextTerminal(final int node) {
+            int n = node;
+            do {
+                if (NOT_A_NODE != mFirstChildren[n]) {
+                    n = mFirstChildren[n];
+                } else {
+                    while (NOT_A_NODE == mNextSiblings[n]) {
+                        if (ROOT_NODE == n) return NOT_A_NODE;
+                        n = mParents[n];
+                    }
+                    n = mNextSiblings[n];
+                }
+            } while (!isTerminal(n));
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return NOT_A_NODE != mNextTerminal;
+        }
+
+        @Override
+        public WordProperty next() {
+            if (NOT_A_NODE == mNextTerminal) {
+                throw new NoSuchElementException();
+            }
+            final WordProperty wordProperty = getWordProperty(mNextTerminal);
+            mNextTerminal = findNextTerminal(mNextTerminal);
+            return wordProperty;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Unsupported yet");
+        }
+    }
+
+    /**
+     * Method to return an iterator.
+     *
+     * This method enables Java's enhanced for loop.
+     */
+    @Override
+    public Iterator<WordProperty> iterator() {
+        return new DictionaryIterator();
+    }
+}
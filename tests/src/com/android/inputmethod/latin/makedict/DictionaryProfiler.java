@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.CharEncoding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Measures the trie of a dictionary from its words, without building the trie.
+ *
+ * The words must be added in code point order, so that the words sharing a prefix are added
+ * together. Only the PtNodes on the path to the last word are kept: a PtNode array is measured
+ * as soon as no later word can add to it. This way memory does not depend on the dictionary
+ * size, only on the length and fan-out of its paths.
+ *
+ * The sizes are estimated for the PtNode arrays laid out the way BinaryDictEncoderUtils lays
+ * them out, with 3-byte addresses and the attributes in the PtNodes.
+ */
+@UsedForTesting
+public final class DictionaryProfiler {
+    // The size of the pages the dictionary file is mapped in.
+    public static final int PAGE_SIZE = 4096;
+
+    /**
+     * The figures measured for a dictionary.
+     */
+    public static final class Profile {
+        public int mWordCount;
+        public int mPtNodeCount;
+        public int mPtNodeArrayCount;
+        // The number of PtNode arrays by number of PtNodes.
+        public final TreeMap<Integer, Integer> mFanOutHistogram = new TreeMap<>();
+        public long mEstimatedTrieSize;
+        // The number of words by number of n-grams.
+        public final TreeMap<Integer, Integer> mNgramListLengthHistogram = new TreeMap<>();
+        public long mNgramCount;
+        // The code points of the PtNodes, and how many of them are encoded on one byte.
+        public long mCodePointCount;
+        public long mOneByteCodePointCount;
+        public int mCodePointTableSize;
+        // The pages a lookup is expected to read for the first time, summed over all the words.
+        public double mEstimatedPageTouches;
+
+        public double getAverageEstimatedTrieSizePerWord() {
+            return 0 == mWordCount ? 0.0 : (double)mEstimatedTrieSize / mWordCount;
+        }
+
+        public double getAverageFanOut() {
+            return 0 == mPtNodeArrayCount ? 0.0 : (double)mPtNodeCount / mPtNodeArrayCount;
+        }
+
+        public double getAverageNgramListLength() {
+            return 0 == mWordCount ? 0.0 : (double)mNgramCount / mWordCount;
+        }
+
+        public double getOneByteCodePointRatio() {
+            return 0 == mCodePointCount ? 0.0 : (double)mOneByteCodePointCount / mCodePointCount;
+        }
+
+        public double getAverageEstimatedPageTouchesPerLookup() {
+            return 0 == mWordCount ? 0.0 : mEstimatedPageTouches / mWordCount;
+        }
+    }
+
+    /**
+     * A PtNode of the path to the last word, whose children may still grow.
+     */
+    private static final class OpenPtNode {
+        // The number of code points from the root to the end of this PtNode.
+        public final int mDepth;
+        public final int[] mChars;
+        public boolean mIsTerminal;
+        public int mAttributesSize;
+        public final ArrayList<ClosedPtNode> mChildren = new ArrayList<>();
+
+        public OpenPtNode(final int depth, final int[] chars) {
+            mDepth = depth;
+            mChars = chars;
+        }
+    }
+
+    /**
+     * A PtNode whose subtree has been measured.
+     */
+    private static final class ClosedPtNode {
+        public int[] mChars;
+        public final boolean mIsTerminal;
+        public final int mAttributesSize;
+        public final boolean mHasChildren;
+        // The size of all the PtNode arrays under this PtNode.
+        public final long mSubtreeSize;
+        // The number of words in the subtree, including this PtNode.
+        public final int mWordCount;
+
+        public ClosedPtNode(final int[] chars, final boolean isTerminal, final int attributesSize,
+                final boolean hasChildren, final long subtreeSize, final int wordCount) {
+            mChars = chars;
+            mIsTerminal = isTerminal;
+            mAttributesSize = attributesSize;
+            mHasChildren = hasChildren;
+            mSubtreeSize = subtreeSize;
+            mWordCount = wordCount;
+        }
+    }
+
+    private final HashMap<Integer, Integer> mCodePointToOneByteCodeMap;
+    private final Profile mProfile = new Profile();
+    private final ArrayList<OpenPtNode> mPath = new ArrayList<>();
+    private int[] mLastWord = new int[0];
+
+    /**
+     * @param attributes the header attributes of the dictionary, for its code point table.
+     */
+    public DictionaryProfiler(final HashMap<String, String> attributes) {
+        final String codePointTable = attributes.get(DictionaryHeader.CODE_POINT_TABLE_KEY);
+        if (null == codePointTable) {
+            mCodePointToOneByteCodeMap = null;
+        } else {
+            // The n-th code point of the table is encoded as the n-th one-byte code.
+            mCodePointToOneByteCodeMap = new HashMap<>();
+            final int[] codePoints = FusionDictionary.getCodePoints(codePointTable);
+            for (int i = 0; i < codePoints.length; ++i) {
+                mCodePointToOneByteCodeMap.put(codePoints[i],
+                        FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE + i);
+            }
+            mProfile.mCodePointTableSize = codePoints.length;
+        }
+        mPath.add(new OpenPtNode(0 /* depth */, new int[0]));
+    }
+
+    /**
+     * Adds a word. Words must be added in code point order, each only once.
+     *
+     * @param word the word.
+     * @param ngramCount the number of n-grams of the word.
+     * @param shortcutTargets the shortcut targets of the word, or null if it has none.
+     */
+    public void add(final String word, final int ngramCount,
+            final ArrayList<WeightedString> shortcutTargets) {
+        final int[] codePoints = FusionDictionary.getCodePoints(word);
+        if (0 == codePoints.length) return;
+        int commonLength = 0;
+        while (commonLength < codePoints.length && commonLength < mLastWord.length
+                && codePoints[commonLength] == mLastWord[commonLength]) {
+            ++commonLength;
+        }
+        if (commonLength == codePoints.length || (commonLength < mLastWord.length
+                && codePoints[commonLength] < mLastWord[commonLength])) {
+            throw new IllegalArgumentException("Words must be added once each, in code point"
+                    + " order, but \"" + word + "\" was added after \""
+                    + new String(mLastWord, 0, mLastWord.length) + "\"");
+        }
+        mLastWord = codePoints;
+
+        while (getLastOpenPtNode().mDepth > commonLength) {
+            closeLastOpenPtNode();
+        }
+        final OpenPtNode parent = getLastOpenPtNode();
+        if (parent.mDepth < commonLength) {
+            // The word branches off in the middle of the last child of the parent: split it.
+            final ClosedPtNode child = parent.mChildren.remove(parent.mChildren.size() - 1);
+            final int splitIndex = commonLength - parent.mDepth;
+            final OpenPtNode newParent = new OpenPtNode(commonLength,
+                    Arrays.copyOfRange(child.mChars, 0, splitIndex));
+            child.mChars = Arrays.copyOfRange(child.mChars, splitIndex, child.mChars.length);
+            newParent.mChildren.add(child);
+            mPath.add(newParent);
+        }
+        final int[] chars = Arrays.copyOfRange(codePoints, commonLength, codePoints.length);
+        final OpenPtNode ptNode = new OpenPtNode(codePoints.length, chars);
+        ptNode.mIsTerminal = true;
+        ptNode.mAttributesSize = ngramCount
+                * (FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE
+                        + FormatSpec.PTNODE_ATTRIBUTE_MAX_ADDRESS_SIZE)
+                + BinaryDictEncoderUtils.getShortcutListSize(shortcutTargets,
+                        null /* codePointToOneByteCodeMap */);
+        mPath.add(ptNode);
+
+        // Splitting a PtNode does not change the code points of the trie, so they can be
+        // counted as they are added.
+        for (final int codePoint : chars) {
+            if (1 == CharEncoding.getCharSize(codePoint, mCodePointToOneByteCodeMap)) {
+                ++mProfile.mOneByteCodePointCount;
+            }
+        }
+        mProfile.mCodePointCount += chars.length;
+        ++mProfile.mWordCount;
+        mProfile.mNgramCount += ngramCount;
+        final Integer wordCount = mProfile.mNgramListLengthHistogram.get(ngramCount);
+        mProfile.mNgramListLengthHistogram.put(ngramCount, null == wordCount ? 1 : wordCount + 1);
+    }
+
+    /**
+     * Measures the PtNode arrays that are still open.
+     *
+     * @return the profile of the dictionary. No word may be added after this.
+     */
+    public Profile finish() {
+        while (!mPath.isEmpty()) {
+            closeLastOpenPtNode();
+        }
+        // Every lookup starts by reading the page of the root PtNode array.
+        mProfile.mEstimatedPageTouches += mProfile.mWordCount;
+        return mProfile;
+    }
+
+    private OpenPtNode getLastOpenPtNode() {
+        return mPath.get(mPath.size() - 1);
+    }
+
+    private int getPtNodeSize(final ClosedPtNode ptNode) {
+        int size = FormatSpec.PTNODE_FLAGS_SIZE + BinaryDictEncoderUtils.getPtNodeCharactersSize(
+                ptNode.mChars, mCodePointToOneByteCodeMap);
+        if (ptNode.mIsTerminal) {
+            size += FormatSpec.PTNODE_FREQUENCY_SIZE;
+        }
+        if (ptNode.mHasChildren) {
+            size += FormatSpec.PTNODE_MAX_ADDRESS_SIZE;
+        }
+        return size + ptNode.mAttributesSize;
+    }
+
+    /**
+     * Measures the children of the last PtNode of the path, and passes its measures on to its
+     * parent.
+     *
+     * The PtNode arrays are laid out depth first: a PtNode array is followed by the subtrees of
+     * its PtNodes, in order. A lookup going through a PtNode reads the PtNode array up to that
+     * PtNode, then jumps to its children. Reading a range of bytes, or jumping across it, reads
+     * a new page with a probability of its size over the page size, up to one.
+     */
+    private void closeLastOpenPtNode() {
+        final OpenPtNode ptNode = mPath.remove(mPath.size() - 1);
+        final ArrayList<ClosedPtNode> children = ptNode.mChildren;
+        long subtreeSize = 0;
+        int wordCount = ptNode.mIsTerminal ? 1 : 0;
+        if (!children.isEmpty()) {
+            final int[] childSizes = new int[children.size()];
+            int ptNodeArraySize = BinaryDictIOUtils.getPtNodeCountSize(children.size());
+            for (int i = 0; i < children.size(); ++i) {
+                childSizes[i] = getPtNodeSize(children.get(i));
+                ptNodeArraySize += childSizes[i];
+            }
+            int offset = BinaryDictIOUtils.getPtNodeCountSize(children.size());
+            long sizeOfPreviousSubtrees = 0;
+            for (int i = 0; i < children.size(); ++i) {
+                final ClosedPtNode child = children.get(i);
+                offset += childSizes[i];
+                mProfile.mEstimatedPageTouches +=
+                        (double)child.mWordCount * offset / PAGE_SIZE;
+                if (child.mHasChildren) {
+                    final long distance = ptNodeArraySize - offset + sizeOfPreviousSubtrees;
+                    final int wordsBelow = child.mWordCount - (child.mIsTerminal ? 1 : 0);
+                    mProfile.mEstimatedPageTouches +=
+                            wordsBelow * Math.min(1.0, (double)distance / PAGE_SIZE);
+                }
+                sizeOfPreviousSubtrees += child.mSubtreeSize;
+                wordCount += child.mWordCount;
+            }
+            subtreeSize = ptNodeArraySize + sizeOfPreviousSubtrees;
+            mProfile.mEstimatedTrieSize += ptNodeArraySize;
+            mProfile.mPtNodeCount += children.size();
+            ++mProfile.mPtNodeArrayCount;
+            final Integer count = mProfile.mFanOutHistogram.get(children.size());
+            mProfile.mFanOutHistogram.put(children.size(), null == count ? 1 : count + 1);
+        }
+        if (mPath.isEmpty()) {
+            // This is the root, it has no PtNode of its own.
+            return;
+        }
+        getLastOpenPtNode().mChildren.add(new ClosedPtNode(ptNode.mChars, ptNode.mIsTerminal,
+                ptNode.mAttributesSize, !children.isEmpty(), subtreeSize, wordCount));
+    }
+}
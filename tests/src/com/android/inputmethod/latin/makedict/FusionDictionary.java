@@ -30,7 +30,7 @@ import java.util.LinkedList;
  * A dictionary that can fusion heads and tails of words for more compression.
  */
 @UsedForTesting
-public final class FusionDictionary implements Iterable<WordProperty> {
+public final class FusionDictionary implements WordPropertyDictionary {
     private static final boolean DBG = MakedictLog.DBG;
 
     private static int CHARACTER_NOT_FOUND_INDEX = -1;
@@ -277,6 +277,9 @@ public final class FusionDictionary implements Iterable<WordProperty> {
 
     public final DictionaryOptions mOptions;
     public final PtNodeArray mRootNodeArray;
+    // The number of times each code point occurs in the characters of the PtNodes. This is
+    // counted as words are added, since splitting a PtNode does not change it.
+    final CodePointHistogram mCodePointOccurrences = new CodePointHistogram();
 
     public FusionDictionary(final PtNodeArray rootNodeArray, final DictionaryOptions options) {
         mRootNodeArray = rootNodeArray;
@@ -308,6 +311,12 @@ public final class FusionDictionary implements Iterable<WordProperty> {
         return codePoints;
     }
 
+    private void countCodePoints(final int[] codePoints, final int start) {
+        for (int i = start; i < codePoints.length; ++i) {
+            mCodePointOccurrences.add(codePoints[i]);
+        }
+    }
+
     /**
      * Helper method to add a word as a string.
      *
@@ -417,6 +426,7 @@ public final class FusionDictionary implements Iterable<WordProperty> {
                     shortcutTargets, null /* bigrams */, probabilityInfo, isNotAWord,
                     isPossiblyOffensive);
             currentNodeArray.mData.add(insertionIndex, newPtNode);
+            countCodePoints(word, charIndex);
             if (DBG) checkStack(currentNodeArray);
         } else {
             // There is a word with a common prefix.
@@ -436,6 +446,7 @@ public final class FusionDictionary implements Iterable<WordProperty> {
                                     isNotAWord, isPossiblyOffensive);
                     currentPtNode.mChildren = new PtNodeArray();
                     currentPtNode.mChildren.mData.add(newNode);
+                    countCodePoints(word, charIndex + differentCharIndex);
                 }
             } else {
                 if (0 == differentCharIndex) {
@@ -475,6 +486,7 @@ public final class FusionDictionary implements Iterable<WordProperty> {
                         final int addIndex = word[charIndex + differentCharIndex]
                                 > currentPtNode.mChars[differentCharIndex] ? 1 : 0;
                         newChildren.mData.add(addIndex, newWord);
+                        countCodePoints(word, charIndex + differentCharIndex);
                     }
                     currentNodeArray.mData.set(nodeIndex, newParent);
                 }
@@ -592,6 +604,7 @@ public final class FusionDictionary implements Iterable<WordProperty> {
     /**
      * Helper method to find out whether a word is in the dict or not.
      */
+    @Override
     public boolean hasWord(final String s) {
         if (null == s || "".equals(s)) {
             throw new RuntimeException("Can't search for a null or empty string");
@@ -599,6 +612,14 @@ public final class FusionDictionary implements Iterable<WordProperty> {
         return null != findWordInTree(mRootNodeArray, s);
     }
 
+    @Override
+    public WordProperty getWordProperty(final String word) {
+        final PtNode ptNode = findWordInTree(mRootNodeArray, word);
+        if (null == ptNode) return null;
+        return new WordProperty(word, ptNode.mProbabilityInfo, ptNode.getShortcutTargets(),
+                ptNode.getBigrams(), ptNode.mIsNotAWord, ptNode.mIsPossiblyOffensive);
+    }
+
     /**
      * Recursively count the number of PtNodes in a given branch of the trie.
      *
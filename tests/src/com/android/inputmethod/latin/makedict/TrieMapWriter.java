@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Writes a trie map, the hash array mapped trie that stores the language model of version 4
+ * dictionaries. See native/jni/src/dictionary/utils/trie_map.h for the format.
+ *
+ * The map is written in a single pass without being built in memory first. Tables are allocated
+ * in the order they are written in, so that every entry is written right after the previous one.
+ */
+final class TrieMapWriter {
+    // The links to the lists of freed tables, one for each table size. They come before the
+    // entries, and a newly written map has no freed tables.
+    private static final int EMPTY_TABLE_LINKS_SIZE = 128;
+    private static final int FIELD0_SIZE = 4;
+    private static final int FIELD1_SIZE = 3;
+    private static final int VALUE_FLAG = 0x400000;
+    private static final int VALUE_MASK = 0x3FFFFF;
+    private static final int TERMINAL_LINK_FLAG = 0x800000;
+    private static final int NUM_OF_BITS_USED_FOR_ONE_LEVEL = 5;
+    private static final int LABEL_MASK = 0x1F;
+    private static final int MAX_NUM_OF_ENTRIES_IN_ONE_LEVEL = 1 << NUM_OF_BITS_USED_FOR_ONE_LEVEL;
+    private static final int ROOT_BITMAP_ENTRY_INDEX = 0;
+
+    /**
+     * The keys and values of one level of a map. Each key may have a map of the next level.
+     */
+    static final class Level {
+        final int[] mKeys;
+        final long[] mValues;
+        // null, or the next level of each key. The next level of a key may be null.
+        final Level[] mNextLevels;
+
+        Level(final int[] keys, final long[] values, final Level[] nextLevels) {
+            mKeys = keys;
+            mValues = values;
+            mNextLevels = nextLevels;
+        }
+
+        Level getNextLevel(final int index) {
+            return null == mNextLevels ? null : mNextLevels[index];
+        }
+    }
+
+    /**
+     * A table that has been allocated but not written yet.
+     *
+     * This is either the table of the entries of a level that share a label at a lower depth,
+     * or the value and next level of a key linked from its terminal entry.
+     */
+    private static final class PendingTable {
+        final Level mLevel;
+        // Indices in mLevel of the keys of each entry, in the order of the entries.
+        final int[][] mEntryKeyIndices;
+        final int mDepth;
+        final int mTerminalLinkKeyIndex;
+
+        PendingTable(final Level level, final int[][] entryKeyIndices, final int depth) {
+            mLevel = level;
+            mEntryKeyIndices = entryKeyIndices;
+            mDepth = depth;
+            mTerminalLinkKeyIndex = -1;
+        }
+
+        PendingTable(final Level level, final int terminalLinkKeyIndex) {
+            mLevel = level;
+            mEntryKeyIndices = null;
+            mDepth = 0;
+            mTerminalLinkKeyIndex = terminalLinkKeyIndex;
+        }
+
+        boolean isTerminalLink() {
+            return null == mEntryKeyIndices;
+        }
+    }
+
+    private final OutputStream mOutputStream;
+    private final ArrayDeque<PendingTable> mPendingTables = new ArrayDeque<>();
+    private int mNextTableIndex;
+
+    private TrieMapWriter(final OutputStream outputStream) {
+        mOutputStream = outputStream;
+    }
+
+    /**
+     * Writes a map.
+     *
+     * @param outputStream the stream to write the map to.
+     * @param rootLevel the keys of the map, without duplicates, and their values.
+     * @throws IOException if the map can't be written, or has too many entries to be addressed.
+     */
+    static void write(final OutputStream outputStream, final Level rootLevel)
+            throws IOException {
+        final TrieMapWriter writer = new TrieMapWriter(outputStream);
+        outputStream.write(new byte[EMPTY_TABLE_LINKS_SIZE]);
+        writer.mNextTableIndex = ROOT_BITMAP_ENTRY_INDEX + 1;
+        writer.writeBitmapEntry(rootLevel, getAllKeyIndices(rootLevel), 0 /* depth */);
+        while (!writer.mPendingTables.isEmpty()) {
+            writer.writeTable(writer.mPendingTables.poll());
+        }
+    }
+
+    private static int[] getAllKeyIndices(final Level level) {
+        final int[] keyIndices = new int[level.mKeys.length];
+        for (int i = 0; i < keyIndices.length; ++i) {
+            keyIndices[i] = i;
+        }
+        return keyIndices;
+    }
+
+    /**
+     * Shuffles the bits of a key the way native code does, so that keys that are close spread
+     * over the labels of the first level.
+     */
+    private static int getBitShuffledKey(final int key) {
+        int shuffledKey = 0;
+        for (int i = 0; i < 4; ++i) {
+            final int keyPiece = (key >>> (i * 8)) & 0xFF;
+            shuffledKey ^= ((keyPiece ^ (keyPiece << 7) ^ (keyPiece << 14) ^ (keyPiece << 21))
+                    & 0x11111111) << i;
+        }
+        return shuffledKey;
+    }
+
+    private static int getLabel(final int key, final int depth) {
+        return (getBitShuffledKey(key) >>> (depth * NUM_OF_BITS_USED_FOR_ONE_LEVEL)) & LABEL_MASK;
+    }
+
+    private int allocateTable(final int entryCount) throws IOException {
+        final int tableIndex = mNextTableIndex;
+        mNextTableIndex += entryCount;
+        // Table indices share their field with the value and terminal link flags.
+        if (mNextTableIndex > VALUE_MASK) {
+            throw new IOException("Too many entries in the trie map: " + mNextTableIndex);
+        }
+        return tableIndex;
+    }
+
+    /**
+     * Writes the bitmap entry of the keys that share all their labels up to a depth, and
+     * allocates the table of their entries at this depth.
+     */
+    private void writeBitmapEntry(final Level level, final int[] keyIndices, final int depth)
+            throws IOException {
+        if (0 == keyIndices.length) {
+            writeEntry(0 /* bitmap */, 0 /* tableIndex */);
+            return;
+        }
+        final int[] labels = new int[keyIndices.length];
+        final int[] keyCountPerLabel = new int[MAX_NUM_OF_ENTRIES_IN_ONE_LEVEL];
+        int bitmap = 0;
+        for (int i = 0; i < keyIndices.length; ++i) {
+            labels[i] = getLabel(level.mKeys[keyIndices[i]], depth);
+            ++keyCountPerLabel[labels[i]];
+            bitmap |= 1 << labels[i];
+        }
+        final int entryCount = Integer.bitCount(bitmap);
+        // The entries of a table are in the order of their labels.
+        final int[][] keyIndicesPerLabel = new int[MAX_NUM_OF_ENTRIES_IN_ONE_LEVEL][];
+        final int[][] entryKeyIndices = new int[entryCount][];
+        int entryIndex = 0;
+        for (int label = 0; label < MAX_NUM_OF_ENTRIES_IN_ONE_LEVEL; ++label) {
+            if (0 != keyCountPerLabel[label]) {
+                keyIndicesPerLabel[label] = new int[keyCountPerLabel[label]];
+                entryKeyIndices[entryIndex++] = keyIndicesPerLabel[label];
+                keyCountPerLabel[label] = 0;
+            }
+        }
+        for (int i = 0; i < keyIndices.length; ++i) {
+            keyIndicesPerLabel[labels[i]][keyCountPerLabel[labels[i]]++] = keyIndices[i];
+        }
+        final int tableIndex = allocateTable(entryCount);
+        mPendingTables.add(new PendingTable(level, entryKeyIndices, depth));
+        writeEntry(bitmap, tableIndex);
+    }
+
+    private void writeTable(final PendingTable table) throws IOException {
+        final Level level = table.mLevel;
+        if (table.isTerminalLink()) {
+            // The value entry, then the bitmap entry of the next level.
+            final long value = level.mValues[table.mTerminalLinkKeyIndex];
+            writeEntry((int)(value >>> (FIELD1_SIZE * 8)), (int)value);
+            final Level nextLevel = level.getNextLevel(table.mTerminalLinkKeyIndex);
+            if (null == nextLevel) {
+                writeEntry(0 /* bitmap */, 0 /* tableIndex */);
+            } else {
+                writeBitmapEntry(nextLevel, getAllKeyIndices(nextLevel), 0 /* depth */);
+            }
+            return;
+        }
+        for (final int[] keyIndices : table.mEntryKeyIndices) {
+            if (keyIndices.length > 1) {
+                writeBitmapEntry(level, keyIndices, table.mDepth + 1);
+                continue;
+            }
+            final int keyIndex = keyIndices[0];
+            final long value = level.mValues[keyIndex];
+            if (null == level.getNextLevel(keyIndex) && value < VALUE_MASK) {
+                writeEntry(level.mKeys[keyIndex], (int)value | VALUE_FLAG);
+            } else {
+                final int valueEntryIndex = allocateTable(2 /* entryCount */);
+                mPendingTables.add(new PendingTable(level, keyIndex));
+                writeEntry(level.mKeys[keyIndex], valueEntryIndex | TERMINAL_LINK_FLAG);
+            }
+        }
+    }
+
+    private void writeEntry(final int field0, final int field1) throws IOException {
+        BinaryDictEncoderUtils.writeUIntToStream(mOutputStream, field0, FIELD0_SIZE);
+        BinaryDictEncoderUtils.writeUIntToStream(mOutputStream, field1, FIELD1_SIZE);
+    }
+}
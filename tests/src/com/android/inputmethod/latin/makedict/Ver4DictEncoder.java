@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.common.FileUtils;
+import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.CharEncoding;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An implementation of DictEncoder for version 4 binary dictionaries.
+ *
+ * A version 4 dictionary is a directory that contains a header file and a body file. The body is
+ * made of the trie, the terminal position lookup table, the language model and the shortcut
+ * tables, each of them prefixed with its size; see Ver4DictBuffers in native code. Once the trie
+ * is laid out these parts don't depend on each other, so they are written on parallel threads,
+ * each to its own file through a small buffer, and then appended to the body.
+ */
+@UsedForTesting
+public class Ver4DictEncoder implements DictEncoder {
+    private static final String TEMP_DIR_SUFFIX = ".tmp";
+    private static final String HEADER_FILE_EXTENSION = ".header";
+    private static final String BODY_FILE_EXTENSION = ".body";
+    private static final String BUFFER_FILE_PREFIX = "buffer";
+    // The header attributes native code reads the entry counts from.
+    private static final String UNIGRAM_COUNT_KEY = "UNIGRAM_COUNT";
+    private static final String BIGRAM_COUNT_KEY = "BIGRAM_COUNT";
+
+    // The buffers of the body, in the order they are in the body.
+    private static final int TRIE_BUFFER_INDEX = 0;
+    private static final int TERMINAL_ADDRESS_TABLE_BUFFER_INDEX = 1;
+    private static final int LANGUAGE_MODEL_BUFFER_INDEX = 2;
+    private static final int LANGUAGE_MODEL_GLOBAL_COUNTERS_BUFFER_INDEX = 3;
+    private static final int SHORTCUT_LOOKUP_TABLE_BUFFER_INDEX = 4;
+    private static final int SHORTCUT_ADDRESS_TABLE_BUFFER_INDEX = 5;
+    private static final int SHORTCUT_CONTENT_BUFFER_INDEX = 6;
+    private static final int BUFFER_COUNT = 7;
+
+    private static final int BUFFER_SIZE_FIELD_SIZE = 4;
+    private static final int WRITING_BUFFER_SIZE = 64 * 1024;
+
+    private static final int PTNODE_ARRAY_SIZE_FIELD_SIZE = 2;
+    // The parent position, the children position and the forward link of a PtNode array are
+    // 3-byte signed offsets.
+    private static final int DICT_OFFSET_FIELD_SIZE = 3;
+    private static final int DICT_OFFSET_INVALID = 0;
+    private static final int DICT_OFFSET_ZERO_OFFSET = 0x7FFFFF;
+    private static final int DICT_OFFSET_NEGATIVE_FLAG = 0x800000;
+    private static final int MAX_DICT_OFFSET_VALUE = 0x7FFFFF;
+    private static final int NOT_A_DICT_POS = -1;
+    private static final int TERMINAL_ID_FIELD_SIZE = 4;
+    private static final int TERMINAL_ADDRESS_TABLE_ADDRESS_SIZE = 3;
+
+    // Total count and max value of counters, which only dynamic dictionaries use.
+    private static final int LANGUAGE_MODEL_GLOBAL_COUNTERS_SIZE = 8;
+    private static final int FLAG_NOT_A_WORD = 0x4;
+    private static final int FLAG_POSSIBLY_OFFENSIVE = 0x10;
+
+    private static final int SHORTCUT_ADDRESS_TABLE_BLOCK_SIZE = 64;
+    private static final int SHORTCUT_ADDRESS_TABLE_DATA_SIZE = 4;
+    private static final int SPARSE_TABLE_INDEX_SIZE = 4;
+    private static final int SPARSE_TABLE_NOT_EXIST = -1;
+
+    private final File mDictPlacedDir;
+
+    @UsedForTesting
+    public Ver4DictEncoder(final File dictPlacedDir) {
+        mDictPlacedDir = dictPlacedDir;
+    }
+
+    @Override
+    public void writeDictionary(final FusionDictionary dict, final FormatOptions formatOptions)
+            throws IOException, UnsupportedFormatException {
+        if (formatOptions.mVersion != FormatSpec.VERSION4) {
+            throw new UnsupportedFormatException("Requested file format version "
+                    + formatOptions.mVersion + ", but this encoder only supports version "
+                    + FormatSpec.VERSION4);
+        }
+        MakedictLog.i("Flattening the tree...");
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        final ArrayList<PtNode> terminals = new ArrayList<>();
+        final int trieSize = layOutTrie(flatNodes, terminals);
+        MakedictLog.i("Trie size : " + trieSize + ", terminals : " + terminals.size());
+
+        // Like native code, write the dictionary to a temporary directory and move it in place
+        // once complete.
+        final File tmpDir = new File(mDictPlacedDir.getPath() + TEMP_DIR_SUFFIX);
+        FileUtils.deleteRecursively(tmpDir);
+        if (!tmpDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + tmpDir);
+        }
+        boolean success = false;
+        try {
+            final File[] bufferFiles = new File[BUFFER_COUNT];
+            for (int i = 0; i < BUFFER_COUNT; ++i) {
+                bufferFiles[i] = new File(tmpDir, BUFFER_FILE_PREFIX + i);
+            }
+            writeBuffers(dict, formatOptions.mHasTimestamp, flatNodes, terminals, bufferFiles);
+            final String dictName = mDictPlacedDir.getName();
+            writeBody(bufferFiles, new File(tmpDir, dictName + BODY_FILE_EXTENSION));
+            writeHeader(dict, formatOptions, terminals,
+                    new File(tmpDir, dictName + HEADER_FILE_EXTENSION));
+            FileUtils.deleteRecursively(mDictPlacedDir);
+            if (!tmpDir.renameTo(mDictPlacedDir)) {
+                throw new IOException("Cannot rename " + tmpDir + " to " + mDictPlacedDir);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                FileUtils.deleteRecursively(tmpDir);
+            }
+        }
+    }
+
+    // The whole dictionary is written by writeDictionary, so the methods that write a trie node
+    // by node have nothing to do.
+    @Override
+    public void setPosition(int position) {
+    }
+
+    @Override
+    public int getPosition() {
+        return 0;
+    }
+
+    @Override
+    public void writePtNodeCount(int ptNodeCount) {
+    }
+
+    @Override
+    public void writePtNode(PtNode ptNode, FusionDictionary dict,
+            HashMap<Integer, Integer> codePointToOneByteCodeMap) {
+    }
+
+    private static int getPtNodeSize(final PtNode ptNode) {
+        return FormatSpec.PTNODE_FLAGS_SIZE + DICT_OFFSET_FIELD_SIZE
+                + BinaryDictEncoderUtils.getPtNodeCharactersSize(ptNode.mChars, null)
+                + (ptNode.isTerminal() ? TERMINAL_ID_FIELD_SIZE : 0) + DICT_OFFSET_FIELD_SIZE;
+    }
+
+    /**
+     * Computes the positions of the PtNodes and of the PtNode arrays, and assigns terminal ids.
+     *
+     * Unlike in version 2 dictionaries, all positions are written on 3 bytes, so the positions
+     * can be computed in a single pass.
+     *
+     * @param flatNodes the PtNode arrays, in the order they are written in.
+     * @param outTerminals the list to add the terminal PtNodes to, in the order of their ids.
+     * @return the size of the trie.
+     */
+    private static int layOutTrie(final ArrayList<PtNodeArray> flatNodes,
+            final ArrayList<PtNode> outTerminals) throws UnsupportedFormatException {
+        int position = 0;
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            if (ptNodeArray.mData.size() > FormatSpec.MAX_PTNODES_IN_A_PT_NODE_ARRAY) {
+                throw new UnsupportedFormatException("Too many PtNodes in a PtNode array: "
+                        + ptNodeArray.mData.size());
+            }
+            ptNodeArray.mCachedAddressBeforeUpdate = position;
+            ptNodeArray.mCachedAddressAfterUpdate = position;
+            position += PTNODE_ARRAY_SIZE_FIELD_SIZE;
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                ptNode.mCachedSize = getPtNodeSize(ptNode);
+                ptNode.mCachedAddressBeforeUpdate = position;
+                ptNode.mCachedAddressAfterUpdate = position;
+                position += ptNode.mCachedSize;
+                if (ptNode.isTerminal()) {
+                    ptNode.mTerminalId = outTerminals.size();
+                    outTerminals.add(ptNode);
+                }
+            }
+            position += DICT_OFFSET_FIELD_SIZE;
+            ptNodeArray.mCachedSize = position - ptNodeArray.mCachedAddressAfterUpdate;
+        }
+        // Offsets between PtNodes must fit in the offset fields.
+        if (position > MAX_DICT_OFFSET_VALUE) {
+            throw new UnsupportedFormatException("The trie is too large: " + position + " bytes");
+        }
+        flatNodes.get(0).mCachedParentAddress = NOT_A_DICT_POS;
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                if (null != ptNode.mChildren) {
+                    ptNode.mChildren.mCachedParentAddress = ptNode.mCachedAddressAfterUpdate;
+                }
+            }
+        }
+        return position;
+    }
+
+    private static OutputStream openBuffer(final File file) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(file), WRITING_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the buffers of the body, each to its own file. The trie must have been laid out.
+     */
+    private static void writeBuffers(final FusionDictionary dict, final boolean hasHistoricalInfo,
+            final ArrayList<PtNodeArray> flatNodes, final ArrayList<PtNode> terminals,
+            final File[] bufferFiles) throws IOException {
+        final ArrayList<Callable<Void>> sections = new ArrayList<>();
+        sections.add(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeTrie(flatNodes, bufferFiles[TRIE_BUFFER_INDEX]);
+                return null;
+            }
+        });
+        sections.add(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeTerminalAddressTable(terminals,
+                        bufferFiles[TERMINAL_ADDRESS_TABLE_BUFFER_INDEX]);
+                return null;
+            }
+        });
+        sections.add(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeLanguageModel(dict, hasHistoricalInfo, terminals,
+                        bufferFiles[LANGUAGE_MODEL_BUFFER_INDEX],
+                        bufferFiles[LANGUAGE_MODEL_GLOBAL_COUNTERS_BUFFER_INDEX]);
+                return null;
+            }
+        });
+        sections.add(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeShortcuts(terminals, bufferFiles[SHORTCUT_LOOKUP_TABLE_BUFFER_INDEX],
+                        bufferFiles[SHORTCUT_ADDRESS_TABLE_BUFFER_INDEX],
+                        bufferFiles[SHORTCUT_CONTENT_BUFFER_INDEX]);
+                return null;
+            }
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(sections.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            // invokeAll returns once all the sections are done, even if some of them failed.
+            for (final Future<Void> future : executor.invokeAll(sections)) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the dictionary", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int getDictOffset(final int targetPos, final int basePos) {
+        if (NOT_A_DICT_POS == targetPos) {
+            return DICT_OFFSET_INVALID;
+        }
+        final int offset = targetPos - basePos;
+        if (0 == offset) {
+            return DICT_OFFSET_ZERO_OFFSET;
+        }
+        return offset > 0 ? offset : (-offset | DICT_OFFSET_NEGATIVE_FLAG);
+    }
+
+    private static void writeTrie(final ArrayList<PtNodeArray> flatNodes, final File file)
+            throws IOException {
+        final OutputStream out = openBuffer(file);
+        try {
+            for (final PtNodeArray ptNodeArray : flatNodes) {
+                // Native code always uses the large size field.
+                BinaryDictEncoderUtils.writeUIntToStream(out, ptNodeArray.mData.size()
+                        | FormatSpec.LARGE_PTNODE_ARRAY_SIZE_FIELD_SIZE_FLAG,
+                        PTNODE_ARRAY_SIZE_FIELD_SIZE);
+                for (final PtNode ptNode : ptNodeArray.mData) {
+                    writePtNode(out, ptNode, ptNodeArray.mCachedParentAddress);
+                }
+                // No PtNode array has been extended yet, so there is no forward link.
+                BinaryDictEncoderUtils.writeUIntToStream(out, DICT_OFFSET_INVALID,
+                        DICT_OFFSET_FIELD_SIZE);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writePtNode(final OutputStream out, final PtNode ptNode,
+            final int parentPos) throws IOException {
+        final byte[] buffer = new byte[ptNode.mCachedSize];
+        final int nodePos = ptNode.mCachedAddressAfterUpdate;
+        // The children position is always written on 3 bytes, and this children position type
+        // means the PtNode has not been moved.
+        buffer[0] = (byte)BinaryDictEncoderUtils.makePtNodeFlags(ptNode.mChars.length > 1,
+                ptNode.isTerminal(), DICT_OFFSET_FIELD_SIZE, false /* hasShortcuts */,
+                false /* hasBigrams */, false /* isNotAWord */, false /* isPossiblyOffensive */);
+        int index = BinaryDictEncoderUtils.writeUIntToBuffer(buffer, FormatSpec.PTNODE_FLAGS_SIZE,
+                getDictOffset(parentPos, nodePos), DICT_OFFSET_FIELD_SIZE);
+        index = CharEncoding.writeCharArray(ptNode.mChars, buffer, index, null);
+        if (ptNode.mChars.length > 1) {
+            buffer[index++] = FormatSpec.PTNODE_CHARACTERS_TERMINATOR;
+        }
+        if (ptNode.isTerminal()) {
+            index = BinaryDictEncoderUtils.writeUIntToBuffer(buffer, index, ptNode.mTerminalId,
+                    TERMINAL_ID_FIELD_SIZE);
+        }
+        // The children position is relative to the position of the field.
+        final int childrenPos = null == ptNode.mChildren ? NOT_A_DICT_POS
+                : ptNode.mChildren.mCachedAddressAfterUpdate;
+        index = BinaryDictEncoderUtils.writeUIntToBuffer(buffer, index,
+                getDictOffset(childrenPos, nodePos + index), DICT_OFFSET_FIELD_SIZE);
+        if (index != ptNode.mCachedSize) {
+            throw new RuntimeException("Bug: wrote " + index + " bytes for a PtNode of "
+                    + ptNode.mCachedSize + " bytes");
+        }
+        out.write(buffer);
+    }
+
+    private static void writeTerminalAddressTable(final ArrayList<PtNode> terminals,
+            final File file) throws IOException {
+        final OutputStream out = openBuffer(file);
+        try {
+            for (final PtNode terminal : terminals) {
+                BinaryDictEncoderUtils.writeUIntToStream(out, terminal.mCachedAddressAfterUpdate,
+                        TERMINAL_ADDRESS_TABLE_ADDRESS_SIZE);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long getProbabilityEntry(final int flags,
+            final ProbabilityInfo probabilityInfo, final boolean hasHistoricalInfo) {
+        if (hasHistoricalInfo) {
+            // Flags, timestamp and count. The level is not stored in this version.
+            return ((long)flags << 48) | ((probabilityInfo.mTimestamp & 0xFFFFFFFFL) << 16)
+                    | (probabilityInfo.mCount & 0xFFFF);
+        }
+        return (flags << 8) | (probabilityInfo.mProbability & 0xFF);
+    }
+
+    /**
+     * Writes the language model, a trie map from the terminal id of each word to its unigram
+     * probability entry, and from the terminal ids of the targets of its bigrams to their
+     * probability entries at the next level.
+     */
+    private static void writeLanguageModel(final FusionDictionary dict,
+            final boolean hasHistoricalInfo, final ArrayList<PtNode> terminals,
+            final File languageModelFile, final File globalCountersFile) throws IOException {
+        final int terminalCount = terminals.size();
+        final int[] wordIds = new int[terminalCount];
+        final long[] unigramEntries = new long[terminalCount];
+        final TrieMapWriter.Level[] bigramLevels = new TrieMapWriter.Level[terminalCount];
+        for (int i = 0; i < terminalCount; ++i) {
+            final PtNode terminal = terminals.get(i);
+            wordIds[i] = terminal.mTerminalId;
+            final int flags = (terminal.mIsNotAWord ? FLAG_NOT_A_WORD : 0)
+                    | (terminal.mIsPossiblyOffensive ? FLAG_POSSIBLY_OFFENSIVE : 0);
+            unigramEntries[i] =
+                    getProbabilityEntry(flags, terminal.mProbabilityInfo, hasHistoricalInfo);
+            if (null == terminal.mBigrams || terminal.mBigrams.isEmpty()) {
+                continue;
+            }
+            final int bigramCount = terminal.mBigrams.size();
+            final int[] targetWordIds = new int[bigramCount];
+            final long[] bigramEntries = new long[bigramCount];
+            for (int j = 0; j < bigramCount; ++j) {
+                final WeightedString bigram = terminal.mBigrams.get(j);
+                final PtNode target = FusionDictionary.findWordInTree(dict.mRootNodeArray,
+                        bigram.mWord);
+                if (null == target) {
+                    throw new RuntimeException("Bigram target not in the dictionary: "
+                            + bigram.mWord);
+                }
+                targetWordIds[j] = target.mTerminalId;
+                bigramEntries[j] = getProbabilityEntry(0 /* flags */, bigram.mProbabilityInfo,
+                        hasHistoricalInfo);
+            }
+            bigramLevels[i] = new TrieMapWriter.Level(targetWordIds, bigramEntries,
+                    null /* nextLevels */);
+        }
+        final OutputStream out = openBuffer(languageModelFile);
+        try {
+            TrieMapWriter.write(out, new TrieMapWriter.Level(wordIds, unigramEntries,
+                    bigramLevels));
+        } finally {
+            out.close();
+        }
+        final OutputStream globalCountersOut = openBuffer(globalCountersFile);
+        try {
+            globalCountersOut.write(new byte[LANGUAGE_MODEL_GLOBAL_COUNTERS_SIZE]);
+        } finally {
+            globalCountersOut.close();
+        }
+    }
+
+    /**
+     * Writes the shortcut lists, and the sparse table from terminal ids to their positions.
+     *
+     * The ids are split in blocks. The lookup table has the index of the block in the address
+     * table for each block that has a shortcut list, and the address table has the position of
+     * the shortcut list of each id in these blocks.
+     */
+    private static void writeShortcuts(final ArrayList<PtNode> terminals,
+            final File lookupTableFile, final File addressTableFile, final File contentFile)
+            throws IOException {
+        final OutputStream lookupTableOut = openBuffer(lookupTableFile);
+        final OutputStream addressTableOut = openBuffer(addressTableFile);
+        final OutputStream contentOut = openBuffer(contentFile);
+        try {
+            int lastBlockEnd = 0;
+            int addressTableBlockCount = 0;
+            int contentSize = 0;
+            for (int blockStart = 0; blockStart < terminals.size();
+                    blockStart += SHORTCUT_ADDRESS_TABLE_BLOCK_SIZE) {
+                final int blockEnd = Math.min(blockStart + SHORTCUT_ADDRESS_TABLE_BLOCK_SIZE,
+                        terminals.size());
+                if (!hasShortcuts(terminals, blockStart, blockEnd)) {
+                    continue;
+                }
+                // The blocks since the last one with a shortcut list have none.
+                for (int i = lastBlockEnd; i < blockStart; i += SHORTCUT_ADDRESS_TABLE_BLOCK_SIZE) {
+                    BinaryDictEncoderUtils.writeUIntToStream(lookupTableOut,
+                            SPARSE_TABLE_NOT_EXIST, SPARSE_TABLE_INDEX_SIZE);
+                }
+                BinaryDictEncoderUtils.writeUIntToStream(lookupTableOut, addressTableBlockCount++,
+                        SPARSE_TABLE_INDEX_SIZE);
+                for (int i = blockStart; i < blockStart + SHORTCUT_ADDRESS_TABLE_BLOCK_SIZE; ++i) {
+                    final ArrayList<WeightedString> shortcutTargets =
+                            i < blockEnd ? terminals.get(i).mShortcutTargets : null;
+                    if (null == shortcutTargets || shortcutTargets.isEmpty()) {
+                        BinaryDictEncoderUtils.writeUIntToStream(addressTableOut,
+                                SPARSE_TABLE_NOT_EXIST, SHORTCUT_ADDRESS_TABLE_DATA_SIZE);
+                        continue;
+                    }
+                    BinaryDictEncoderUtils.writeUIntToStream(addressTableOut, contentSize,
+                            SHORTCUT_ADDRESS_TABLE_DATA_SIZE);
+                    final int shortcutCount = shortcutTargets.size();
+                    for (int j = 0; j < shortcutCount; ++j) {
+                        final WeightedString target = shortcutTargets.get(j);
+                        contentOut.write(BinaryDictEncoderUtils.makeShortcutFlags(
+                                j < shortcutCount - 1, target.getProbability()));
+                        contentSize += FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE
+                                + CharEncoding.writeString(contentOut, target.mWord, null);
+                    }
+                }
+                lastBlockEnd = blockStart + SHORTCUT_ADDRESS_TABLE_BLOCK_SIZE;
+            }
+        } finally {
+            lookupTableOut.close();
+            addressTableOut.close();
+            contentOut.close();
+        }
+    }
+
+    private static boolean hasShortcuts(final ArrayList<PtNode> terminals, final int start,
+            final int end) {
+        for (int i = start; i < end; ++i) {
+            final ArrayList<WeightedString> shortcutTargets = terminals.get(i).mShortcutTargets;
+            if (null != shortcutTargets && !shortcutTargets.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the body, the size of each buffer followed by its content, and deletes the buffers.
+     */
+    private static void writeBody(final File[] bufferFiles, final File bodyFile)
+            throws IOException {
+        final FileOutputStream bodyOut = new FileOutputStream(bodyFile);
+        try {
+            final FileChannel bodyChannel = bodyOut.getChannel();
+            for (final File bufferFile : bufferFiles) {
+                final long size = bufferFile.length();
+                BinaryDictEncoderUtils.writeUIntToStream(bodyOut, (int)size,
+                        BUFFER_SIZE_FIELD_SIZE);
+                final FileInputStream bufferIn = new FileInputStream(bufferFile);
+                try {
+                    final FileChannel bufferChannel = bufferIn.getChannel();
+                    long position = 0;
+                    while (position < size) {
+                        position += bufferChannel.transferTo(position, size - position,
+                                bodyChannel);
+                    }
+                } finally {
+                    bufferIn.close();
+                }
+                bufferFile.delete();
+            }
+        } finally {
+            bodyOut.close();
+        }
+    }
+
+    private static void writeHeader(final FusionDictionary dict,
+            final FormatOptions formatOptions, final ArrayList<PtNode> terminals,
+            final File headerFile) throws IOException, UnsupportedFormatException {
+        int bigramCount = 0;
+        for (final PtNode terminal : terminals) {
+            if (null != terminal.mBigrams) {
+                bigramCount += terminal.mBigrams.size();
+            }
+        }
+        final HashMap<String, String> attributes = new HashMap<>(dict.mOptions.mAttributes);
+        attributes.put(UNIGRAM_COUNT_KEY, Integer.toString(terminals.size()));
+        attributes.put(BIGRAM_COUNT_KEY, Integer.toString(bigramCount));
+        if (formatOptions.mHasTimestamp) {
+            attributes.put(DictionaryHeader.HAS_HISTORICAL_INFO_KEY,
+                    DictionaryHeader.ATTRIBUTE_VALUE_TRUE);
+        }
+        // Only the options of the dictionary are written to the header.
+        final FusionDictionary headerDict =
+                new FusionDictionary(new PtNodeArray(), new DictionaryOptions(attributes));
+        final OutputStream out = openBuffer(headerFile);
+        try {
+            BinaryDictEncoderUtils.writeDictionaryHeader(out, headerDict, formatOptions,
+                    null /* codePointOccurrenceArray */);
+        } finally {
+            out.close();
+        }
+    }
+}
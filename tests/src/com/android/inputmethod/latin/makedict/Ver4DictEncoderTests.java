@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.inputmethod.latin.BinaryDictionary;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.NgramContext.WordInfo;
+import com.android.inputmethod.latin.common.FileUtils;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+
+@LargeTest
+public class Ver4DictEncoderTests extends AndroidTestCase {
+    private static final String TEST_LOCALE = "test";
+
+    private File mDictDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDictDir = new File(getContext().getCacheDir(), "ver4_dict_encoder_test");
+        FileUtils.deleteRecursively(mDictDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteRecursively(mDictDir);
+        super.tearDown();
+    }
+
+    private static FusionDictionary createDictionary() {
+        final HashMap<String, String> attributes = new HashMap<>();
+        attributes.put(DictionaryHeader.DICTIONARY_LOCALE_KEY, "en_US");
+        attributes.put(DictionaryHeader.DICTIONARY_ID_KEY, "main:en_us");
+        attributes.put(DictionaryHeader.DICTIONARY_VERSION_KEY, "1");
+        return new FusionDictionary(new PtNodeArray(), new DictionaryOptions(attributes));
+    }
+
+    private BinaryDictionary writeAndOpen(final FusionDictionary dict) throws Exception {
+        new Ver4DictEncoder(mDictDir).writeDictionary(dict,
+                new FormatOptions(FormatSpec.VERSION4));
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                mDictDir.getAbsolutePath(), 0 /* offset */, 0 /* length */,
+                true /* useFullEditDistance */, Locale.ENGLISH, TEST_LOCALE,
+                false /* isUpdatable */);
+        assertTrue(binaryDictionary.isValidDictionary());
+        return binaryDictionary;
+    }
+
+    public void testWriteDictionary() throws Exception {
+        final FusionDictionary dict = createDictionary();
+        dict.add("this", new ProbabilityInfo(120), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        dict.add("thus", new ProbabilityInfo(80), null /* shortcutTargets */,
+                false /* isNotAWord */, true /* isPossiblyOffensive */);
+        final ArrayList<WeightedString> shortcutTargets = new ArrayList<>();
+        shortcutTargets.add(new WeightedString("thank you", 14));
+        dict.add("thx", new ProbabilityInfo(40), shortcutTargets, true /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        dict.add("\u00E9t\u00E9", new ProbabilityInfo(60), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        dict.setBigram("this", "thus", new ProbabilityInfo(30));
+
+        // An existing dictionary is replaced.
+        writeAndOpen(createDictionary()).close();
+        final BinaryDictionary binaryDictionary = writeAndOpen(dict);
+        try {
+            assertEquals(120, binaryDictionary.getFrequency("this"));
+            assertEquals(80, binaryDictionary.getFrequency("thus"));
+            assertEquals(60, binaryDictionary.getFrequency("\u00E9t\u00E9"));
+            assertFalse(binaryDictionary.isInDictionary("th"));
+            assertTrue(binaryDictionary.isValidNgram(
+                    new NgramContext(new WordInfo("this")), "thus"));
+            assertFalse(binaryDictionary.isValidNgram(
+                    new NgramContext(new WordInfo("thus")), "this"));
+
+            final WordProperty thx = binaryDictionary.getWordProperty("thx",
+                    false /* isBeginningOfSentence */);
+            assertTrue(thx.mIsNotAWord);
+            assertEquals(1, thx.mShortcutTargets.size());
+            assertEquals("thank you", thx.mShortcutTargets.get(0).mWord);
+            assertTrue(binaryDictionary.getWordProperty("thus",
+                    false /* isBeginningOfSentence */).mIsPossiblyOffensive);
+            assertEquals("4", binaryDictionary.getPropertyForGettingStats("UNIGRAM_COUNT"));
+        } finally {
+            binaryDictionary.close();
+        }
+    }
+
+    public void testWriteRandomDictionary() throws Exception {
+        final Random random = new Random(123456);
+        final FusionDictionary dict = createDictionary();
+        final ArrayList<String> words = new ArrayList<>();
+        final HashSet<String> addedWords = new HashSet<>();
+        while (words.size() < 2000) {
+            final StringBuilder sb = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; ++i) {
+                sb.append((char)('a' + random.nextInt(8)));
+            }
+            final String word = sb.toString();
+            if (addedWords.add(word)) {
+                words.add(word);
+                dict.add(word, new ProbabilityInfo(1 + random.nextInt(255)),
+                        null /* shortcutTargets */, false /* isNotAWord */,
+                        false /* isPossiblyOffensive */);
+            }
+        }
+        for (int i = 0; i < 500; ++i) {
+            dict.setBigram(words.get(random.nextInt(words.size())),
+                    words.get(random.nextInt(words.size())), new ProbabilityInfo(100));
+        }
+
+        final BinaryDictionary binaryDictionary = writeAndOpen(dict);
+        try {
+            for (final WordProperty wordProperty : dict) {
+                assertEquals(wordProperty.mWord, wordProperty.getProbability(),
+                        binaryDictionary.getFrequency(wordProperty.mWord));
+                if (null == wordProperty.mNgrams) {
+                    continue;
+                }
+                for (final NgramProperty ngram : wordProperty.mNgrams) {
+                    assertTrue(binaryDictionary.isValidNgram(ngram.mNgramContext,
+                            ngram.mTargetWord.mWord));
+                }
+            }
+        } finally {
+            binaryDictionary.close();
+        }
+    }
+}
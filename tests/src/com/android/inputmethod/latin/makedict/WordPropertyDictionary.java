@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+/**
+ * The words of an in-memory dictionary, whether it is a FusionDictionary or a
+ * CompactFusionDictionary.
+ */
+public interface WordPropertyDictionary extends Iterable<WordProperty> {
+    /**
+     * Helper method to find out whether a word is in the dict or not.
+     */
+    boolean hasWord(String word);
+
+    /**
+     * Gets the properties of a word.
+     *
+     * @return the properties of the word, or null if it's not there. The lists of the returned
+     * properties are not shared with the dictionary.
+     */
+    WordProperty getWordProperty(String word);
+}
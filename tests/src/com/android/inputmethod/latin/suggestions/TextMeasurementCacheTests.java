@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.suggestions;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.UnderlineSpan;
+
+@SmallTest
+public class TextMeasurementCacheTests extends AndroidTestCase {
+    private static final float TEXT_SIZE = 18.0f;
+
+    public void testWidthIsKeyedByTextSizeAndStyle() {
+        final TextMeasurementCache cache = new TextMeasurementCache();
+        assertEquals(TextMeasurementCache.NOT_A_WIDTH, cache.getWidth("hello", TEXT_SIZE, 0));
+        cache.putWidth("hello", TEXT_SIZE, 0, 42);
+        assertEquals(42, cache.getWidth("hello", TEXT_SIZE, 0));
+        assertEquals(42, cache.getWidth(new StringBuilder("hello"), TEXT_SIZE, 0));
+        assertEquals(TextMeasurementCache.NOT_A_WIDTH,
+                cache.getWidth("hello", TEXT_SIZE + 1.0f, 0));
+        assertEquals(TextMeasurementCache.NOT_A_WIDTH,
+                cache.getWidth("hello", TEXT_SIZE, TextMeasurementCache.STYLE_BOLD));
+        assertEquals(TextMeasurementCache.NOT_A_WIDTH, cache.getWidth("help", TEXT_SIZE, 0));
+    }
+
+    public void testEllipsizedTextIsKeyedByMaxWidth() {
+        final TextMeasurementCache cache = new TextMeasurementCache();
+        cache.putEllipsizedText("internationalization", TEXT_SIZE, 0, 100, "inter\u2026ation");
+        assertEquals("inter\u2026ation", cache.getEllipsizedText(
+                "internationalization", TEXT_SIZE, 0, 100).toString());
+        assertNull(cache.getEllipsizedText("internationalization", TEXT_SIZE, 0, 120));
+    }
+
+    public void testEllipsizedTextIsNotShared() {
+        final TextMeasurementCache cache = new TextMeasurementCache();
+        final Spannable ellipsizedText = new SpannableString("inter\u2026ation");
+        final UnderlineSpan span = new UnderlineSpan();
+        ellipsizedText.setSpan(span, 0, ellipsizedText.length(),
+                Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+        cache.putEllipsizedText("internationalization", TEXT_SIZE,
+                TextMeasurementCache.STYLE_UNDERLINE, 100, ellipsizedText);
+        ellipsizedText.removeSpan(span);
+        final CharSequence cachedText = cache.getEllipsizedText("internationalization",
+                TEXT_SIZE, TextMeasurementCache.STYLE_UNDERLINE, 100);
+        assertFalse(cachedText instanceof Spannable);
+        assertEquals(0, ((Spanned)cachedText).getSpanStart(span));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashSet;
+
+@SmallTest
+public class CodePointMetricsCacheTests extends AndroidTestCase {
+    private static final float TEXT_SIZE = 24.0f;
+
+    public void testKeysAreDistinct() {
+        final HashSet<Long> keys = new HashSet<>();
+        final int[] codePoints = { 'M', '8', 0x1F600 /* GRINNING FACE */,
+                Character.MAX_CODE_POINT };
+        for (final int codePoint : codePoints) {
+            for (int kind = 0; kind < 3; ++kind) {
+                for (int typefaceId = 0; typefaceId < 3; ++typefaceId) {
+                    assertTrue(keys.add(CodePointMetricsCache.getKey(
+                            codePoint, kind, typefaceId, TEXT_SIZE)));
+                    assertTrue(keys.add(CodePointMetricsCache.getKey(
+                            codePoint, kind, typefaceId, TEXT_SIZE + 0.5f)));
+                }
+            }
+        }
+        assertTrue(keys.add(CodePointMetricsCache.getKey(
+                'M', 0, CodePointMetricsCache.MAX_TYPEFACE_ID, TEXT_SIZE)));
+    }
+
+    public void testGetAndPut() {
+        final CodePointMetricsCache cache = new CodePointMetricsCache();
+        final long key = CodePointMetricsCache.getKey('M', 0, 0, TEXT_SIZE);
+        assertEquals(CodePointMetricsCache.NOT_A_METRIC, cache.get(key));
+        cache.put(key, 17.0f);
+        assertEquals(17.0f, cache.get(key));
+        cache.put(key, 17.0f);
+        assertEquals(17.0f, cache.get(key));
+        assertEquals(CodePointMetricsCache.NOT_A_METRIC,
+                cache.get(CodePointMetricsCache.getKey('M', 1, 0, TEXT_SIZE)));
+    }
+
+    public void testStaysBounded() {
+        final CodePointMetricsCache cache = new CodePointMetricsCache();
+        // Many more metrics than the cache holds. The latest ones are never lost.
+        for (int codePoint = 0; codePoint < 0x3000; ++codePoint) {
+            final long key = CodePointMetricsCache.getKey(codePoint, 0, 0, TEXT_SIZE);
+            cache.put(key, codePoint);
+            assertEquals((float)codePoint, cache.get(key));
+        }
+        int cachedCount = 0;
+        for (int codePoint = 0; codePoint < 0x3000; ++codePoint) {
+            final float value =
+                    cache.get(CodePointMetricsCache.getKey(codePoint, 0, 0, TEXT_SIZE));
+            if (value != CodePointMetricsCache.NOT_A_METRIC) {
+                assertEquals((float)codePoint, value);
+                ++cachedCount;
+            }
+        }
+        assertTrue(cachedCount > 0);
+        assertTrue(cachedCount < 0x3000);
+    }
+}
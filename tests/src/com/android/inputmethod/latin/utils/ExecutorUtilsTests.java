@@ -20,6 +20,8 @@ import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -54,4 +56,88 @@ public class ExecutorUtilsTests extends AndroidTestCase {
 
         assertEquals(NUM_OF_TASKS, v.get());
     }
+
+    public void testSerialTaskQueueKeepsOrderAcrossLanes() throws InterruptedException {
+        final SerialTaskQueue queue = new SerialTaskQueue();
+        final ArrayList<Integer> order = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(NUM_OF_TASKS);
+        final String[] lanes = { ExecutorUtils.LATENCY_CRITICAL, ExecutorUtils.BACKGROUND_WRITE,
+                ExecutorUtils.BULK_IO };
+        for (int i = 0; i < NUM_OF_TASKS; ++i) {
+            final int index = i;
+            queue.execute(lanes[i % lanes.length], ExecutorUtils.PRIORITY_NORMAL, new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (order) {
+                        order.add(index);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(DELAY_FOR_WAITING_TASKS_MILLISECONDS, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < NUM_OF_TASKS; ++i) {
+            assertEquals(i, (int)order.get(i));
+        }
+    }
+
+    public void testSerialTaskQueueCoalescesPendingTasks() throws InterruptedException {
+        final SerialTaskQueue queue = new SerialTaskQueue();
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger v = new AtomicInteger(0);
+        queue.execute(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Exception while waiting.", e);
+                }
+            }
+        });
+        final Runnable increment = new Runnable() {
+            @Override
+            public void run() {
+                v.incrementAndGet();
+            }
+        };
+        assertTrue(queue.executeCoalesced(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_LOW,
+                "key", increment));
+        assertFalse(queue.executeCoalesced(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_LOW,
+                "key", increment));
+        queue.execute(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_NORMAL, increment);
+        // The last pending task does not have the key any more, so this one is queued.
+        assertTrue(queue.executeCoalesced(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_LOW,
+                "key", increment));
+        queue.execute(ExecutorUtils.BULK_IO, ExecutorUtils.PRIORITY_NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        blocker.countDown();
+        assertTrue(done.await(DELAY_FOR_WAITING_TASKS_MILLISECONDS, TimeUnit.MILLISECONDS));
+        assertEquals(3, v.get());
+    }
+
+    public void testLaneStats() throws InterruptedException {
+        final long executedTaskCount =
+                ExecutorUtils.getLaneStats(ExecutorUtils.LATENCY_CRITICAL).mExecutedTaskCount;
+        final CountDownLatch done = new CountDownLatch(NUM_OF_TASKS);
+        for (int i = 0; i < NUM_OF_TASKS; ++i) {
+            ExecutorUtils.execute(ExecutorUtils.LATENCY_CRITICAL, ExecutorUtils.PRIORITY_HIGH,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            done.countDown();
+                        }
+                    });
+        }
+        assertTrue(done.await(DELAY_FOR_WAITING_TASKS_MILLISECONDS, TimeUnit.MILLISECONDS));
+        final LaneExecutor.Stats stats =
+                ExecutorUtils.getLaneStats(ExecutorUtils.LATENCY_CRITICAL);
+        assertEquals(executedTaskCount + NUM_OF_TASKS, stats.mExecutedTaskCount);
+        assertTrue(stats.mMaxWaitTimeMillis >= 0);
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.common.FileUtils;
+import com.android.inputmethod.latin.makedict.DictionaryHeader;
+import com.android.inputmethod.latin.makedict.DictionaryHeaderReader;
+import com.android.inputmethod.latin.makedict.FormatSpec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+@SmallTest
+public class WordListIndexTests extends AndroidTestCase {
+    // Older than the modification time granularity of the index.
+    private static final long OLD_MODIFIED_TIME = 1000000000000L;
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "word_list_index_test");
+        FileUtils.deleteRecursively(mDirectory);
+        mDirectory.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteRecursively(mDirectory);
+        super.tearDown();
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final String string) {
+        for (int i = 0; i < string.length(); i = string.offsetByCodePoints(i, 1)) {
+            final int codePoint = string.codePointAt(i);
+            if (codePoint >= 0x20 && codePoint <= 0xFF) {
+                out.write(codePoint);
+            } else {
+                out.write(codePoint >> 16);
+                out.write(codePoint >> 8);
+                out.write(codePoint);
+            }
+        }
+        out.write(0x1F);
+    }
+
+    private static byte[] createHeader(final String... attributes) {
+        final ByteArrayOutputStream attributesOut = new ByteArrayOutputStream();
+        for (final String attribute : attributes) {
+            writeString(attributesOut, attribute);
+        }
+        final int headerSize = 12 + attributesOut.size();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int[] words = { FormatSpec.MAGIC_NUMBER, (FormatSpec.VERSION202 << 16), headerSize };
+        for (final int word : words) {
+            out.write(word >> 24);
+            out.write(word >> 16);
+            out.write(word >> 8);
+            out.write(word);
+        }
+        out.write(attributesOut.toByteArray(), 0, attributesOut.size());
+        // Part of the body of the dictionary.
+        out.write(new byte[] { 1, 2, 3, 4 }, 0, 4);
+        return out.toByteArray();
+    }
+
+    private File writeFile(final String name, final byte[] contents) throws IOException {
+        final File file = new File(mDirectory, name);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        file.setLastModified(OLD_MODIFIED_TIME);
+        return file;
+    }
+
+    public void testReadHeader() throws Exception {
+        final String description = "\u0420\u0443\u0441\u0441\u043A\u0438\u0439";
+        final byte[] contents = createHeader("locale", "ru", "version", "54",
+                "dictionary", "main:ru", "description", description);
+        final File file = writeFile("main_ru.dict", contents);
+        final DictionaryHeader header =
+                DictionaryHeaderReader.readHeader(file, 0 /* offset */, file.length());
+        assertEquals("ru", header.mLocaleString);
+        assertEquals("54", header.mVersionString);
+        assertEquals("main:ru", header.mIdString);
+        assertEquals(description, header.getDescription());
+        assertEquals(FormatSpec.VERSION202, header.mFormatOptions.mVersion);
+        assertEquals(contents.length - 4, header.mBodyOffset);
+
+        // A word list in the middle of a file.
+        final byte[] padded = new byte[contents.length + 7];
+        System.arraycopy(contents, 0, padded, 7, contents.length);
+        final File paddedFile = writeFile("padded.dict", padded);
+        assertEquals("main:ru", DictionaryHeaderReader.readHeader(
+                paddedFile, 7 /* offset */, contents.length).mIdString);
+    }
+
+    public void testReadUnsupportedHeader() throws Exception {
+        final byte[] contents = createHeader("locale", "ru", "version", "54");
+        // No dictionary id.
+        assertNull(DictionaryHeaderReader.readHeader(writeFile("no_id.dict", contents),
+                0 /* offset */, contents.length));
+        // Truncated.
+        assertNull(DictionaryHeaderReader.readHeader(writeFile("truncated.dict",
+                Arrays.copyOf(contents, 20)), 0 /* offset */, 20));
+        // Not a dictionary.
+        assertNull(DictionaryHeaderReader.readHeader(writeFile("text.dict",
+                "Not a dictionary at all".getBytes()), 0 /* offset */, 23));
+        // A directory.
+        assertNull(DictionaryHeaderReader.readHeader(mDirectory, 0 /* offset */, 4096));
+    }
+
+    public void testHeaderIsReadAgainOnlyOnceModified() throws Exception {
+        final WordListIndex index = new WordListIndex();
+        final byte[] contents = createHeader("locale", "ru", "version", "54",
+                "dictionary", "main:ru");
+        final File file = writeFile("main_ru.dict", contents);
+        assertEquals("54", index.getHeader(file, 0 /* offset */, file.length()).mVersionString);
+
+        // Same size and modification time: the indexed header is returned.
+        writeFile("main_ru.dict", createHeader("locale", "ru", "version", "55",
+                "dictionary", "main:ru"));
+        assertEquals("54", index.getHeader(file, 0 /* offset */, file.length()).mVersionString);
+
+        file.setLastModified(OLD_MODIFIED_TIME + 1000);
+        assertEquals("55", index.getHeader(file, 0 /* offset */, file.length()).mVersionString);
+    }
+
+    public void testListFilesIsReadAgainOnlyOnceModified() throws Exception {
+        final WordListIndex index = new WordListIndex();
+        writeFile("a.dict", new byte[1]);
+        mDirectory.setLastModified(OLD_MODIFIED_TIME);
+        assertEquals(1, index.listFiles(mDirectory).length);
+
+        writeFile("b.dict", new byte[1]);
+        mDirectory.setLastModified(OLD_MODIFIED_TIME);
+        assertEquals(1, index.listFiles(mDirectory).length);
+
+        mDirectory.setLastModified(OLD_MODIFIED_TIME + 1000);
+        assertEquals(2, index.listFiles(mDirectory).length);
+        assertNull(index.listFiles(new File(mDirectory, "a.dict")));
+    }
+
+    public void testIndexIsSaved() throws Exception {
+        final File indexFile = new File(mDirectory, "index");
+        final WordListIndex index = new WordListIndex();
+        index.setIndexFile(indexFile);
+        final File file = writeFile("main_ru.dict", createHeader("locale", "ru",
+                "version", "54", "dictionary", "main:ru"));
+        index.getHeader(file, 0 /* offset */, file.length());
+        index.save();
+
+        writeFile("main_ru.dict", createHeader("locale", "ru", "version", "55",
+                "dictionary", "main:ru"));
+        final WordListIndex loadedIndex = new WordListIndex();
+        loadedIndex.setIndexFile(indexFile);
+        assertEquals("54",
+                loadedIndex.getHeader(file, 0 /* offset */, file.length()).mVersionString);
+    }
+
+    public void testDeletedFilesAreNotSaved() throws Exception {
+        final File indexFile = new File(mDirectory, "index");
+        final WordListIndex index = new WordListIndex();
+        index.setIndexFile(indexFile);
+        final File file = writeFile("main_ru.dict", createHeader("locale", "ru",
+                "version", "54", "dictionary", "main:ru"));
+        index.getHeader(file, 0 /* offset */, file.length());
+        final File subdirectory = new File(mDirectory, "sub");
+        subdirectory.mkdirs();
+        subdirectory.setLastModified(OLD_MODIFIED_TIME);
+        assertEquals(0, index.listFiles(subdirectory).length);
+        assertTrue(file.delete());
+        assertTrue(subdirectory.delete());
+        index.save();
+
+        // The same file and directory again, with the same modification time and size.
+        writeFile("main_ru.dict", createHeader("locale", "ru", "version", "55",
+                "dictionary", "main:ru"));
+        subdirectory.mkdirs();
+        new File(subdirectory, "a.dict").createNewFile();
+        subdirectory.setLastModified(OLD_MODIFIED_TIME);
+        final WordListIndex loadedIndex = new WordListIndex();
+        loadedIndex.setIndexFile(indexFile);
+        assertEquals("55",
+                loadedIndex.getHeader(file, 0 /* offset */, file.length()).mVersionString);
+        assertEquals(1, loadedIndex.listFiles(subdirectory).length);
+    }
+}
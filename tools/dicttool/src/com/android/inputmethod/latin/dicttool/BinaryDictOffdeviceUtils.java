@@ -16,8 +16,10 @@
 
 package com.android.inputmethod.latin.dicttool;
 
+import com.android.inputmethod.latin.BinaryDictionary;
 import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils;
 import com.android.inputmethod.latin.makedict.BinaryDictIOUtils;
+import com.android.inputmethod.latin.makedict.CompactFusionDictionary;
 import com.android.inputmethod.latin.makedict.DictDecoder;
 import com.android.inputmethod.latin.makedict.DictionaryHeader;
 import com.android.inputmethod.latin.makedict.FormatSpec;
@@ -25,6 +27,8 @@ import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
 import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
 import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+import com.android.inputmethod.latin.makedict.WeightedString;
+import com.android.inputmethod.latin.makedict.WordProperty;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -296,4 +300,111 @@ public final class BinaryDictOffdeviceUtils {
             throw new RuntimeException("Can't read file " + filename, e);
         }
     }
+
+    /**
+     * Reads a binary dictionary one word at a time, in the order the dictionary iterates them.
+     */
+    public static class BinaryWordPropertyStream implements WordPropertyStream {
+        private final BinaryDictionary mBinaryDictionary;
+        private final HashMap<String, String> mAttributes;
+        private int mToken = 0;
+        private boolean mIsDone = false;
+
+        public BinaryWordPropertyStream(@Nonnull final File dictFile)
+                throws UnsupportedFormatException {
+            // dictType is not being used in dicttool. Passing an empty string.
+            mBinaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                    0 /* offset */, 0 /* length */, true /* useFullEditDistance */,
+                    null /* locale */, "" /* dictType */, true /* isUpdatable */);
+            final DictionaryHeader header;
+            try {
+                header = mBinaryDictionary.getHeader();
+            } catch (final UnsupportedFormatException e) {
+                mBinaryDictionary.close();
+                throw e;
+            }
+            if (null == header) {
+                mBinaryDictionary.close();
+                throw new UnsupportedFormatException("Cannot read the dictionary header.");
+            }
+            mAttributes = header.mDictionaryOptions.mAttributes;
+        }
+
+        @Override @Nonnull
+        public HashMap<String, String> getAttributes() {
+            return mAttributes;
+        }
+
+        @Override @Nullable
+        public WordProperty next() throws IOException {
+            if (mIsDone) return null;
+            final BinaryDictionary.GetNextWordPropertyResult result =
+                    mBinaryDictionary.getNextWordProperty(mToken);
+            if (null == result.mWordProperty) {
+                throw new IOException("Broken dictionary, can't read the word after " + mToken);
+            }
+            mToken = result.mNextToken;
+            mIsDone = (0 == mToken);
+            return result.mWordProperty;
+        }
+
+        @Override
+        public void close() {
+            mBinaryDictionary.close();
+        }
+    }
+
+    /**
+     * Opens a dictionary for reading one word at a time, decrypting/uncompressing it as necessary.
+     *
+     * Unlike {@link #getDictionary(String, boolean)}, this does not hold the words in memory.
+     */
+    @Nonnull
+    static WordPropertyStream getWordPropertyStream(final String filename) {
+        final File file = new File(filename);
+        try {
+            final DecoderChainSpec<File> decodedSpec = getRawDictionaryOrNull(file);
+            if (null == decodedSpec) {
+                throw new RuntimeException("Does not seem to be a dictionary file " + filename);
+            }
+            if (CombinedInputOutput.isCombinedDictionary(decodedSpec.mResult.getAbsolutePath())) {
+                return new CombinedInputOutput.CombinedWordPropertyStream(new BufferedReader(
+                        new InputStreamReader(new FileInputStream(decodedSpec.mResult), "UTF-8")));
+            }
+            return new BinaryWordPropertyStream(decodedSpec.mResult);
+        } catch (final IOException | UnsupportedFormatException e) {
+            throw new RuntimeException("Can't read file " + filename, e);
+        }
+    }
+
+    /**
+     * Reads a dictionary into a CompactFusionDictionary, decrypting/uncompressing it as necessary.
+     *
+     * This holds the words in much less memory than {@link #getDictionary(String, boolean)}.
+     */
+    @Nonnull
+    static CompactFusionDictionary getCompactDictionary(final String filename) {
+        try (final WordPropertyStream stream = getWordPropertyStream(filename)) {
+            final CompactFusionDictionary dict = new CompactFusionDictionary(
+                    new DictionaryOptions(stream.getAttributes()));
+            WordProperty wordProperty;
+            while (null != (wordProperty = stream.next())) {
+                if (wordProperty.mIsBeginningOfSentence) {
+                    // Like FusionDictionary, a CompactFusionDictionary only holds bigrams.
+                    continue;
+                }
+                dict.add(wordProperty.mWord, wordProperty.mProbabilityInfo,
+                        wordProperty.mShortcutTargets, wordProperty.mIsNotAWord,
+                        wordProperty.mIsPossiblyOffensive);
+                if (wordProperty.mHasNgrams) {
+                    for (final WeightedString bigram : wordProperty.getBigrams()) {
+                        dict.setBigram(wordProperty.mWord, bigram.mWord, bigram.mProbabilityInfo);
+                    }
+                }
+            }
+            return dict;
+        } catch (final IOException e) {
+            throw new RuntimeException("Can't read file " + filename, e);
+        }
+    }
 }
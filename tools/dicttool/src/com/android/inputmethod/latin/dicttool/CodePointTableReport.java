@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.CodePointTableOptimizer;
+import com.android.inputmethod.latin.makedict.CodePointTableOptimizer.Candidate;
+import com.android.inputmethod.latin.makedict.CodePointTableOptimizer.Report;
+import com.android.inputmethod.latin.makedict.FusionDictionary;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the size of dictionaries encoded with and without a code point table.
+ */
+public class CodePointTableReport extends Dicttool.Command {
+    public static final String COMMAND = "codepointtable";
+
+    public CodePointTableReport() {
+    }
+
+    @Override
+    public String getHelp() {
+        return COMMAND + " [-j <threads>] <dict> [<dict> ...] : measures the trie of each"
+                + " dictionary encoded with candidate code point tables, and reports the size and"
+                + " decoding cost of each table per locale.\n"
+                + "  Dictionaries are measured on <threads> threads, by default one per processor";
+    }
+
+    @Override
+    public void run() {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int argIndex = 0;
+        if (mArgs.length > 1 && "-j".equals(mArgs[0])) {
+            threadCount = Integer.parseInt(mArgs[1]);
+            if (threadCount < 1) {
+                throw new RuntimeException("Wrong thread count for command " + COMMAND);
+            }
+            argIndex = 2;
+        }
+        if (mArgs.length <= argIndex) {
+            throw new RuntimeException("Not enough arguments for command " + COMMAND);
+        }
+        final ArrayList<Future<Report>> reports = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threadCount, mArgs.length - argIndex));
+        try {
+            for (int i = argIndex; i < mArgs.length; ++i) {
+                final String filename = mArgs[i];
+                reports.add(executor.submit(new Callable<Report>() {
+                    @Override
+                    public Report call() {
+                        // Each dictionary is measured on its own thread, since measuring a
+                        // dictionary updates the cached addresses of its PtNodes.
+                        final FusionDictionary dict = BinaryDictOffdeviceUtils.getDictionary(
+                                filename, false /* report */);
+                        return CodePointTableOptimizer.optimize(dict);
+                    }
+                }));
+            }
+            for (int i = 0; i < reports.size(); ++i) {
+                printReport(System.out, mArgs[argIndex + i], reports.get(i).get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while measuring the dictionaries", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String formatCandidate(final Candidate candidate, final long codePointCount) {
+        return String.format(Locale.ROOT, "  %10d %10d %10d %10d %10.2f %9.1f%% %10d",
+                candidate.mTableSize, candidate.mTrieSize, candidate.mHeaderSize,
+                candidate.getTotalSize(),
+                0 == codePointCount ? 0.0f : (float)candidate.mCodePointBytes / codePointCount,
+                0 == codePointCount ? 0.0f
+                        : 100.0f * candidate.mTableLookupCount / codePointCount,
+                candidate.getTableMemorySize());
+    }
+
+    static void printReport(final PrintStream out, final String filename, final Report report) {
+        out.println("Locale : " + report.mLocale + " (" + filename + ")");
+        out.println("  Code points in PtNodes : " + report.mCodePointCount + " ("
+                + report.mDistinctCodePointCount + " different)");
+        out.println(String.format(Locale.ROOT, "  %10s %10s %10s %10s %10s %10s %10s",
+                "Table", "Trie", "Header", "Total", "Bytes/char", "Lookups", "Memory"));
+        for (final Candidate candidate : report.mCandidates) {
+            out.println(formatCandidate(candidate, report.mCodePointCount));
+        }
+        final Candidate best = report.mBestCandidate;
+        final int withoutTableSize = report.getCandidateWithoutTable().getTotalSize();
+        if (0 == best.mTableSize) {
+            out.println("  Best : no code point table");
+        } else {
+            out.println(String.format(Locale.ROOT,
+                    "  Best : %d code points, saves %d bytes (%.1f%%)", best.mTableSize,
+                    withoutTableSize - best.getTotalSize(),
+                    100.0f * (withoutTableSize - best.getTotalSize()) / withoutTableSize));
+        }
+    }
+}
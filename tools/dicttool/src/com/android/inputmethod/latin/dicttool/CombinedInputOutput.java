@@ -76,138 +76,190 @@ public class CombinedInputOutput {
      */
     public static FusionDictionary readDictionaryCombined(final BufferedReader reader)
             throws IOException {
-        String headerLine = reader.readLine();
-        while (headerLine.startsWith(COMMENT_LINE_STARTER)) {
-            headerLine = reader.readLine();
-        }
-        final String header[] = headerLine.split(",");
-        final HashMap<String, String> attributes = new HashMap<>();
-        for (String item : header) {
-            final String keyValue[] = item.split("=");
-            if (2 != keyValue.length) {
-                throw new RuntimeException("Wrong header format : " + headerLine);
+        final CombinedWordPropertyStream stream = new CombinedWordPropertyStream(reader);
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(stream.getAttributes()));
+        WordProperty wordProperty;
+        while (null != (wordProperty = stream.next())) {
+            dict.add(wordProperty.mWord, wordProperty.mProbabilityInfo,
+                    wordProperty.mShortcutTargets, wordProperty.mIsNotAWord,
+                    wordProperty.mIsPossiblyOffensive);
+            if (wordProperty.mHasNgrams) {
+                for (WeightedString s : wordProperty.getBigrams()) {
+                    dict.setBigram(wordProperty.mWord, s.mWord, s.mProbabilityInfo);
+                }
             }
-            attributes.put(keyValue[0], keyValue[1]);
         }
+        return dict;
+    }
 
-        attributes.remove(OPTIONS_TAG);
-        final FusionDictionary dict =
-                new FusionDictionary(new PtNodeArray(), new DictionaryOptions(attributes));
+    /**
+     * Reads a combined format file one word at a time.
+     *
+     * Words come out in the order they are written in the file, with their shortcuts and bigrams.
+     */
+    public static class CombinedWordPropertyStream implements WordPropertyStream {
+        private final BufferedReader mReader;
+        private final HashMap<String, String> mAttributes;
+        // The word line that starts the next word, or null if there are no more words.
+        private String mNextWordLine;
+        // As in the file format, the probability info carries over from one word to the next.
+        private ProbabilityInfo mProbabilityInfo = new ProbabilityInfo(0);
 
-        String line;
-        String word = null;
-        ProbabilityInfo probabilityInfo = new ProbabilityInfo(0);
-        boolean isNotAWord = false;
-        boolean isPossiblyOffensive = false;
-        ArrayList<WeightedString> bigrams = new ArrayList<>();
-        ArrayList<WeightedString> shortcuts = new ArrayList<>();
-        while (null != (line = reader.readLine())) {
-            if (line.startsWith(COMMENT_LINE_STARTER)) continue;
-            final String args[] = line.trim().split(",");
-            if (args[0].matches(CombinedFormatUtils.WORD_TAG + "=.*")) {
-                if (null != word) {
-                    dict.add(word, probabilityInfo, shortcuts.isEmpty() ? null : shortcuts,
-                            isNotAWord, isPossiblyOffensive);
-                    for (WeightedString s : bigrams) {
-                        dict.setBigram(word, s.mWord, s.mProbabilityInfo);
-                    }
-                }
-                if (!shortcuts.isEmpty()) shortcuts = new ArrayList<>();
-                if (!bigrams.isEmpty()) bigrams = new ArrayList<>();
-                isNotAWord = false;
-                isPossiblyOffensive = false;
-                for (String param : args) {
-                    final String params[] = param.split("=", 2);
-                    if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
-                    switch (params[0]) {
-                        case CombinedFormatUtils.WORD_TAG:
-                            word = params[1];
-                            break;
-                        case CombinedFormatUtils.PROBABILITY_TAG:
-                            probabilityInfo = new ProbabilityInfo(Integer.parseInt(params[1]),
-                                    probabilityInfo.mTimestamp, probabilityInfo.mLevel,
-                                    probabilityInfo.mCount);
-                            break;
-                        case CombinedFormatUtils.HISTORICAL_INFO_TAG:
-                            final String[] historicalInfoParams = params[1].split(
-                                    CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR);
-                            if (historicalInfoParams.length != HISTORICAL_INFO_ELEMENT_COUNT) {
-                                throw new RuntimeException("Wrong format (historical info) : "
-                                        + line);
-                            }
-                            probabilityInfo = new ProbabilityInfo(probabilityInfo.mProbability,
-                                    Integer.parseInt(historicalInfoParams[0]),
-                                    Integer.parseInt(historicalInfoParams[1]),
-                                    Integer.parseInt(historicalInfoParams[2]));
-                            break;
-                        case CombinedFormatUtils.NOT_A_WORD_TAG:
-                            isNotAWord = CombinedFormatUtils.isLiteralTrue(params[1]);
-                            break;
-                        case CombinedFormatUtils.POSSIBLY_OFFENSIVE_TAG:
-                            isPossiblyOffensive = CombinedFormatUtils.isLiteralTrue(params[1]);
-                            break;
-                    }
-                }
-            } else if (args[0].matches(CombinedFormatUtils.SHORTCUT_TAG + "=.*")) {
-                String shortcut = null;
-                int shortcutFreq = 0;
-                for (String param : args) {
-                    final String params[] = param.split("=", 2);
-                    if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
-                    if (CombinedFormatUtils.SHORTCUT_TAG.equals(params[0])) {
-                        shortcut = params[1];
-                    } else if (CombinedFormatUtils.PROBABILITY_TAG.equals(params[0])) {
-                        shortcutFreq = WHITELIST_TAG.equals(params[1])
-                                ? FormatSpec.SHORTCUT_WHITELIST_FREQUENCY
-                                : Integer.parseInt(params[1]);
-                    }
-                }
-                if (null != shortcut) {
-                    shortcuts.add(new WeightedString(shortcut, shortcutFreq));
-                } else {
-                    throw new RuntimeException("Wrong format : " + line);
+        /**
+         * @param reader the buffered reader to read the data from, positioned at the start of
+         *   the file. It is closed by {@link #close()}.
+         */
+        public CombinedWordPropertyStream(final BufferedReader reader) throws IOException {
+            mReader = reader;
+            String headerLine = reader.readLine();
+            while (headerLine.startsWith(COMMENT_LINE_STARTER)) {
+                headerLine = reader.readLine();
+            }
+            final String header[] = headerLine.split(",");
+            mAttributes = new HashMap<>();
+            for (String item : header) {
+                final String keyValue[] = item.split("=");
+                if (2 != keyValue.length) {
+                    throw new RuntimeException("Wrong header format : " + headerLine);
                 }
-            } else if (args[0].matches(CombinedFormatUtils.BIGRAM_TAG + "=.*")) {
-                String secondWordOfBigram = null;
-                ProbabilityInfo bigramProbabilityInfo = new ProbabilityInfo(0);
-                for (String param : args) {
-                    final String params[] = param.split("=", 2);
-                    if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
-                    if (CombinedFormatUtils.BIGRAM_TAG.equals(params[0])) {
-                        secondWordOfBigram = params[1];
-                    } else if (CombinedFormatUtils.PROBABILITY_TAG.equals(params[0])) {
-                        bigramProbabilityInfo = new ProbabilityInfo(Integer.parseInt(params[1]),
-                                bigramProbabilityInfo.mTimestamp, bigramProbabilityInfo.mLevel,
-                                bigramProbabilityInfo.mCount);
-                    }  else if (CombinedFormatUtils.HISTORICAL_INFO_TAG.equals(params[0])) {
-                        final String[] historicalInfoParams =
-                                params[1].split(CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR);
+                mAttributes.put(keyValue[0], keyValue[1]);
+            }
+            mAttributes.remove(OPTIONS_TAG);
+            mNextWordLine = readNextWordLine();
+        }
+
+        @Override
+        public HashMap<String, String> getAttributes() {
+            return mAttributes;
+        }
+
+        @Override
+        public WordProperty next() throws IOException {
+            final String wordLine = mNextWordLine;
+            if (null == wordLine) return null;
+            String word = null;
+            boolean isNotAWord = false;
+            boolean isPossiblyOffensive = false;
+            for (String param : wordLine.trim().split(",")) {
+                final String params[] = param.split("=", 2);
+                if (2 != params.length) throw new RuntimeException("Wrong format : " + wordLine);
+                switch (params[0]) {
+                    case CombinedFormatUtils.WORD_TAG:
+                        word = params[1];
+                        break;
+                    case CombinedFormatUtils.PROBABILITY_TAG:
+                        mProbabilityInfo = new ProbabilityInfo(Integer.parseInt(params[1]),
+                                mProbabilityInfo.mTimestamp, mProbabilityInfo.mLevel,
+                                mProbabilityInfo.mCount);
+                        break;
+                    case CombinedFormatUtils.HISTORICAL_INFO_TAG:
+                        final String[] historicalInfoParams = params[1].split(
+                                CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR);
                         if (historicalInfoParams.length != HISTORICAL_INFO_ELEMENT_COUNT) {
-                            throw new RuntimeException("Wrong format (historical info) : " + line);
+                            throw new RuntimeException("Wrong format (historical info) : "
+                                    + wordLine);
                         }
-                        bigramProbabilityInfo = new ProbabilityInfo(
-                                bigramProbabilityInfo.mProbability,
+                        mProbabilityInfo = new ProbabilityInfo(mProbabilityInfo.mProbability,
                                 Integer.parseInt(historicalInfoParams[0]),
                                 Integer.parseInt(historicalInfoParams[1]),
                                 Integer.parseInt(historicalInfoParams[2]));
-                    }
+                        break;
+                    case CombinedFormatUtils.NOT_A_WORD_TAG:
+                        isNotAWord = CombinedFormatUtils.isLiteralTrue(params[1]);
+                        break;
+                    case CombinedFormatUtils.POSSIBLY_OFFENSIVE_TAG:
+                        isPossiblyOffensive = CombinedFormatUtils.isLiteralTrue(params[1]);
+                        break;
                 }
-                if (null != secondWordOfBigram) {
-                    bigrams.add(new WeightedString(secondWordOfBigram, bigramProbabilityInfo));
-                } else {
-                    throw new RuntimeException("Wrong format : " + line);
+            }
+            final ArrayList<WeightedString> bigrams = new ArrayList<>();
+            final ArrayList<WeightedString> shortcuts = new ArrayList<>();
+            String line;
+            while (null != (line = mReader.readLine())) {
+                if (line.startsWith(COMMENT_LINE_STARTER)) continue;
+                final String args[] = line.trim().split(",");
+                if (args[0].matches(CombinedFormatUtils.WORD_TAG + "=.*")) {
+                    break;
+                } else if (args[0].matches(CombinedFormatUtils.SHORTCUT_TAG + "=.*")) {
+                    shortcuts.add(parseShortcut(line, args));
+                } else if (args[0].matches(CombinedFormatUtils.BIGRAM_TAG + "=.*")) {
+                    bigrams.add(parseBigram(line, args));
                 }
             }
+            mNextWordLine = line;
+            return new WordProperty(word, mProbabilityInfo,
+                    shortcuts.isEmpty() ? null : shortcuts, bigrams.isEmpty() ? null : bigrams,
+                    isNotAWord, isPossiblyOffensive);
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
         }
-        if (null != word) {
-            dict.add(word, probabilityInfo, shortcuts.isEmpty() ? null : shortcuts, isNotAWord,
-                    isPossiblyOffensive);
-            for (WeightedString s : bigrams) {
-                dict.setBigram(word, s.mWord, s.mProbabilityInfo);
+
+        // Skips to the first word line. Shortcut and bigram lines before it belong to no word.
+        private String readNextWordLine() throws IOException {
+            String line;
+            while (null != (line = mReader.readLine())) {
+                if (line.startsWith(COMMENT_LINE_STARTER)) continue;
+                if (line.trim().split(",")[0].matches(CombinedFormatUtils.WORD_TAG + "=.*")) {
+                    return line;
+                }
             }
+            return null;
         }
 
-        return dict;
+        private static WeightedString parseShortcut(final String line, final String[] args) {
+            String shortcut = null;
+            int shortcutFreq = 0;
+            for (String param : args) {
+                final String params[] = param.split("=", 2);
+                if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
+                if (CombinedFormatUtils.SHORTCUT_TAG.equals(params[0])) {
+                    shortcut = params[1];
+                } else if (CombinedFormatUtils.PROBABILITY_TAG.equals(params[0])) {
+                    shortcutFreq = WHITELIST_TAG.equals(params[1])
+                            ? FormatSpec.SHORTCUT_WHITELIST_FREQUENCY
+                            : Integer.parseInt(params[1]);
+                }
+            }
+            if (null == shortcut) {
+                throw new RuntimeException("Wrong format : " + line);
+            }
+            return new WeightedString(shortcut, shortcutFreq);
+        }
+
+        private static WeightedString parseBigram(final String line, final String[] args) {
+            String secondWordOfBigram = null;
+            ProbabilityInfo bigramProbabilityInfo = new ProbabilityInfo(0);
+            for (String param : args) {
+                final String params[] = param.split("=", 2);
+                if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
+                if (CombinedFormatUtils.BIGRAM_TAG.equals(params[0])) {
+                    secondWordOfBigram = params[1];
+                } else if (CombinedFormatUtils.PROBABILITY_TAG.equals(params[0])) {
+                    bigramProbabilityInfo = new ProbabilityInfo(Integer.parseInt(params[1]),
+                            bigramProbabilityInfo.mTimestamp, bigramProbabilityInfo.mLevel,
+                            bigramProbabilityInfo.mCount);
+                }  else if (CombinedFormatUtils.HISTORICAL_INFO_TAG.equals(params[0])) {
+                    final String[] historicalInfoParams =
+                            params[1].split(CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR);
+                    if (historicalInfoParams.length != HISTORICAL_INFO_ELEMENT_COUNT) {
+                        throw new RuntimeException("Wrong format (historical info) : " + line);
+                    }
+                    bigramProbabilityInfo = new ProbabilityInfo(
+                            bigramProbabilityInfo.mProbability,
+                            Integer.parseInt(historicalInfoParams[0]),
+                            Integer.parseInt(historicalInfoParams[1]),
+                            Integer.parseInt(historicalInfoParams[2]));
+                }
+            }
+            if (null == secondWordOfBigram) {
+                throw new RuntimeException("Wrong format : " + line);
+            }
+            return new WeightedString(secondWordOfBigram, bigramProbabilityInfo);
+        }
     }
 
     /**
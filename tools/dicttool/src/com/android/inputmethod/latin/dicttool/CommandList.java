@@ -22,6 +22,7 @@ public class CommandList {
         Dicttool.addCommand("info", Info.class);
         Dicttool.addCommand("header", Header.class);
         Dicttool.addCommand("diff", Diff.class);
+        Dicttool.addCommand("codepointtable", CodePointTableReport.class);
         Dicttool.addCommand("compress", Compress.Compressor.class);
         Dicttool.addCommand("uncompress", Compress.Uncompressor.class);
         Dicttool.addCommand("encrypt", Crypt.Encrypter.class);
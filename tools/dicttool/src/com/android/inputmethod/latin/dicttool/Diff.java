@@ -16,12 +16,14 @@
 
 package com.android.inputmethod.latin.dicttool;
 
+import com.android.inputmethod.latin.makedict.CompactFusionDictionary;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
-import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
 import com.android.inputmethod.latin.makedict.WeightedString;
 import com.android.inputmethod.latin.makedict.WordProperty;
+import com.android.inputmethod.latin.makedict.WordPropertyDictionary;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -33,8 +35,14 @@ public class Diff extends Dicttool.Command {
 
     @Override
     public String getHelp() {
-        return COMMAND + " [-p] <dict> <dict> : shows differences between two dictionaries.\n"
-                + "  If -p (plumbing) option is given, produce output suitable for a script";
+        return COMMAND + " [-p] [-c] [-s] [-j <threads>] <dict> <dict> : shows differences between"
+                + " two dictionaries.\n"
+                + "  If -p (plumbing) option is given, produce output suitable for a script\n"
+                + "  If -c (compact) option is given, load the dictionaries in a compact form\n"
+                + "    that uses much less memory\n"
+                + "  If -s (streaming) option is given, read the dictionaries one word at a time\n"
+                + "    instead of loading them, and list the differences in code point order\n"
+                + "  If -j option is given, stream and split the words across <threads> threads";
     }
 
     @Override
@@ -42,56 +50,115 @@ public class Diff extends Dicttool.Command {
         if (mArgs.length < 2) {
             throw new RuntimeException("Not enough arguments for command " + COMMAND);
         }
-        final boolean plumbing;
-        if ("-p".equals(mArgs[0])) {
-            plumbing = true;
-            mArgs = Arrays.copyOfRange(mArgs, 1, mArgs.length);
-            if (mArgs.length != 2) { // There should be only 2 arguments left
-                throw new RuntimeException("Wrong number of arguments for command " + COMMAND);
+        boolean plumbing = false;
+        boolean compact = false;
+        boolean streaming = false;
+        int threadCount = 1;
+        int argIndex = 0;
+        for (; argIndex < mArgs.length - 2; ++argIndex) {
+            if ("-p".equals(mArgs[argIndex])) {
+                plumbing = true;
+            } else if ("-c".equals(mArgs[argIndex])) {
+                compact = true;
+            } else if ("-s".equals(mArgs[argIndex])) {
+                streaming = true;
+            } else if ("-j".equals(mArgs[argIndex])) {
+                streaming = true;
+                ++argIndex;
+                threadCount = Integer.parseInt(mArgs[argIndex]);
+                if (threadCount < 1) {
+                    throw new RuntimeException("Wrong thread count for command " + COMMAND);
+                }
+            } else {
+                break;
             }
-        } else {
-            plumbing = false;
         }
-        final FusionDictionary dict0 =
-                BinaryDictOffdeviceUtils.getDictionary(mArgs[0], false /* report */);
-        if (null == dict0) throw new RuntimeException("Can't read dictionary " + mArgs[0]);
-        final FusionDictionary dict1 =
-                BinaryDictOffdeviceUtils.getDictionary(mArgs[1], false /* report */);
-        if (null == dict1) throw new RuntimeException("Can't read dictionary " + mArgs[1]);
-        if (!plumbing) {
-            System.out.println("Header :");
-            diffHeaders(dict0, dict1);
-            if (languageDiffers(dict0, dict1)) {
-                // We only check for the language here. The rationale is that one may meaningfully
-                // diff a en_US with a en_GB dictionary, but someone who diffs a de dict with a
-                // pt_BR dict is almost certainly only interested in header-level diff, and the word
-                // diff would be very large, meaningless, and annoying.
+        if (mArgs.length - argIndex != 2) { // There should be only 2 arguments left
+            throw new RuntimeException("Wrong number of arguments for command " + COMMAND);
+        }
+        final String filename0 = mArgs[argIndex];
+        final String filename1 = mArgs[argIndex + 1];
+        if (streaming) {
+            try (final WordPropertyStream stream0 =
+                    BinaryDictOffdeviceUtils.getWordPropertyStream(filename0);
+                    final WordPropertyStream stream1 =
+                            BinaryDictOffdeviceUtils.getWordPropertyStream(filename1)) {
+                if (!plumbing
+                        && !diffHeadersAndCheckLanguage(stream0.getAttributes(),
+                                stream1.getAttributes())) {
+                    return;
+                }
+                StreamingDiff.diffWords(stream0, stream1, threadCount, System.out);
+            } catch (final IOException e) {
+                throw new RuntimeException("Can't diff " + filename0 + " and " + filename1, e);
+            }
+            return;
+        }
+        if (compact) {
+            final CompactFusionDictionary dict0 =
+                    BinaryDictOffdeviceUtils.getCompactDictionary(filename0);
+            final CompactFusionDictionary dict1 =
+                    BinaryDictOffdeviceUtils.getCompactDictionary(filename1);
+            if (!plumbing
+                    && !diffHeadersAndCheckLanguage(dict0.mOptions.mAttributes,
+                            dict1.mOptions.mAttributes)) {
                 return;
             }
-            System.out.println("Body :");
+            diffWords(dict0, dict1);
+            return;
+        }
+        final FusionDictionary dict0 =
+                BinaryDictOffdeviceUtils.getDictionary(filename0, false /* report */);
+        if (null == dict0) throw new RuntimeException("Can't read dictionary " + filename0);
+        final FusionDictionary dict1 =
+                BinaryDictOffdeviceUtils.getDictionary(filename1, false /* report */);
+        if (null == dict1) throw new RuntimeException("Can't read dictionary " + filename1);
+        if (!plumbing
+                && !diffHeadersAndCheckLanguage(dict0.mOptions.mAttributes,
+                        dict1.mOptions.mAttributes)) {
+            return;
         }
         diffWords(dict0, dict1);
     }
 
-    private static boolean languageDiffers(final FusionDictionary dict0,
-            final FusionDictionary dict1) {
+    /**
+     * Prints the differences between the headers.
+     *
+     * @return whether the words of the dictionaries are worth diffing.
+     */
+    private static boolean diffHeadersAndCheckLanguage(final HashMap<String, String> attributes0,
+            final HashMap<String, String> attributes1) {
+        System.out.println("Header :");
+        diffHeaders(attributes0, attributes1);
+        if (languageDiffers(attributes0, attributes1)) {
+            // We only check for the language here. The rationale is that one may meaningfully
+            // diff a en_US with a en_GB dictionary, but someone who diffs a de dict with a
+            // pt_BR dict is almost certainly only interested in header-level diff, and the word
+            // diff would be very large, meaningless, and annoying.
+            return false;
+        }
+        System.out.println("Body :");
+        return true;
+    }
+
+    private static boolean languageDiffers(final HashMap<String, String> attributes0,
+            final HashMap<String, String> attributes1) {
         // If either of the dictionaries have no locale, assume it's okay
-        if (null == dict0.mOptions.mAttributes.get("locale")) return false;
-        if (null == dict1.mOptions.mAttributes.get("locale")) return false;
-        final String dict0Lang = dict0.mOptions.mAttributes.get("locale").split("_", 3)[0];
-        final String dict1Lang = dict1.mOptions.mAttributes.get("locale").split("_", 3)[0];
+        if (null == attributes0.get("locale")) return false;
+        if (null == attributes1.get("locale")) return false;
+        final String dict0Lang = attributes0.get("locale").split("_", 3)[0];
+        final String dict1Lang = attributes1.get("locale").split("_", 3)[0];
         return !dict0Lang.equals(dict1Lang);
     }
 
-    private static void diffHeaders(final FusionDictionary dict0, final FusionDictionary dict1) {
+    private static void diffHeaders(final HashMap<String, String> attributes0,
+            final HashMap<String, String> attributes1) {
         boolean hasDifferences = false;
-        final HashMap<String, String> options1 = new HashMap<>(dict1.mOptions.mAttributes);
-        for (final String optionKey : dict0.mOptions.mAttributes.keySet()) {
-            if (!dict0.mOptions.mAttributes.get(optionKey).equals(
-                    dict1.mOptions.mAttributes.get(optionKey))) {
-                System.out.println("  " + optionKey + " : "
-                        + dict0.mOptions.mAttributes.get(optionKey) + " <=> "
-                        + dict1.mOptions.mAttributes.get(optionKey));
+        final HashMap<String, String> options1 = new HashMap<>(attributes1);
+        for (final String optionKey : attributes0.keySet()) {
+            if (!attributes0.get(optionKey).equals(attributes1.get(optionKey))) {
+                System.out.println("  " + optionKey + " : " + attributes0.get(optionKey) + " <=> "
+                        + attributes1.get(optionKey));
                 hasDifferences = true;
             }
             options1.remove(optionKey);
@@ -105,46 +172,33 @@ public class Diff extends Dicttool.Command {
         }
     }
 
-    private static void diffWords(final FusionDictionary dict0, final FusionDictionary dict1) {
+    private static void diffWords(final WordPropertyDictionary dict0,
+            final WordPropertyDictionary dict1) {
         boolean hasDifferences = false;
         for (final WordProperty word0Property : dict0) {
-            final PtNode word1PtNode = FusionDictionary.findWordInTree(dict1.mRootNodeArray,
-                    word0Property.mWord);
-            if (null == word1PtNode) {
+            final WordProperty word1Property = dict1.getWordProperty(word0Property.mWord);
+            if (null == word1Property) {
                 // This word is not in dict1
                 System.out.println("Deleted: " + word0Property.mWord + " "
                         + word0Property.getProbability());
                 hasDifferences = true;
             } else {
                 // We found the word. Compare frequencies, shortcuts, bigrams
-                if (word0Property.getProbability() != word1PtNode.getProbability()) {
-                    System.out.println("Probability changed: " + word0Property.mWord + " "
-                            + word0Property.getProbability() + " -> "
-                            + word1PtNode.getProbability());
-                    hasDifferences = true;
-                }
-                if (word0Property.mIsNotAWord != word1PtNode.getIsNotAWord()) {
-                    System.out.println("Not a word: " + word0Property.mWord + " "
-                            + word0Property.mIsNotAWord + " -> " + word1PtNode.getIsNotAWord());
-                    hasDifferences = true;
-                }
-                if (word0Property.mIsPossiblyOffensive != word1PtNode.getIsPossiblyOffensive()) {
-                    System.out.println("Possibly-offensive: " + word0Property.mWord + " "
-                            + word0Property.mIsPossiblyOffensive + " -> "
-                            + word1PtNode.getIsPossiblyOffensive());
-                    hasDifferences = true;
-                }
-                hasDifferences |= hasAttributesDifferencesAndPrintThemIfAny(word0Property.mWord,
-                        "Bigram", word0Property.getBigrams(), word1PtNode.getBigrams());
-                hasDifferences |= hasAttributesDifferencesAndPrintThemIfAny(word0Property.mWord,
-                        "Shortcut", word0Property.mShortcutTargets,
-                        word1PtNode.getShortcutTargets());
+                hasDifferences |= hasFlagsDifferencesAndPrintThemIfAny(System.out,
+                        word0Property.mWord, word0Property.getProbability(),
+                        word1Property.getProbability(), word0Property.mIsNotAWord,
+                        word1Property.mIsNotAWord, word0Property.mIsPossiblyOffensive,
+                        word1Property.mIsPossiblyOffensive);
+                hasDifferences |= hasAttributesDifferencesAndPrintThemIfAny(System.out,
+                        word0Property.mWord, "Bigram", word0Property.getBigrams(),
+                        word1Property.getBigrams());
+                hasDifferences |= hasAttributesDifferencesAndPrintThemIfAny(System.out,
+                        word0Property.mWord, "Shortcut", word0Property.mShortcutTargets,
+                        word1Property.mShortcutTargets);
             }
         }
         for (final WordProperty word1Property : dict1) {
-            final PtNode word0PtNode = FusionDictionary.findWordInTree(dict0.mRootNodeArray,
-                    word1Property.mWord);
-            if (null == word0PtNode) {
+            if (!dict0.hasWord(word1Property.mWord)) {
                 // This word is not in dict0
                 System.out.println("Added: " + word1Property.mWord + " "
                         + word1Property.getProbability());
@@ -156,13 +210,35 @@ public class Diff extends Dicttool.Command {
         }
     }
 
-    private static boolean hasAttributesDifferencesAndPrintThemIfAny(final String word,
-            final String type, final ArrayList<WeightedString> list0,
+    static boolean hasFlagsDifferencesAndPrintThemIfAny(final PrintStream out,
+            final String word, final int probability0, final int probability1,
+            final boolean isNotAWord0, final boolean isNotAWord1,
+            final boolean isPossiblyOffensive0, final boolean isPossiblyOffensive1) {
+        boolean hasDifferences = false;
+        if (probability0 != probability1) {
+            out.println("Probability changed: " + word + " " + probability0 + " -> "
+                    + probability1);
+            hasDifferences = true;
+        }
+        if (isNotAWord0 != isNotAWord1) {
+            out.println("Not a word: " + word + " " + isNotAWord0 + " -> " + isNotAWord1);
+            hasDifferences = true;
+        }
+        if (isPossiblyOffensive0 != isPossiblyOffensive1) {
+            out.println("Possibly-offensive: " + word + " " + isPossiblyOffensive0 + " -> "
+                    + isPossiblyOffensive1);
+            hasDifferences = true;
+        }
+        return hasDifferences;
+    }
+
+    static boolean hasAttributesDifferencesAndPrintThemIfAny(final PrintStream out,
+            final String word, final String type, final ArrayList<WeightedString> list0,
             final ArrayList<WeightedString> list1) {
         if (null == list1) {
             if (null == list0) return false;
             for (final WeightedString attribute0 : list0) {
-                System.out.println(type + " removed: " + word + " " + attribute0.mWord + " "
+                out.println(type + " removed: " + word + " " + attribute0.mWord + " "
                         + attribute0.getProbability());
             }
             return true;
@@ -178,7 +254,7 @@ public class Diff extends Dicttool.Command {
                     boolean foundString = false;
                     for (final WeightedString attribute1 : list1) {
                         if (attribute0.mWord.equals(attribute1.mWord)) {
-                            System.out.println(type + " freq changed: " + word + " "
+                            out.println(type + " freq changed: " + word + " "
                                     + attribute0.mWord + " " + attribute0.getProbability() + " -> "
                                     + attribute1.getProbability());
                             list1.remove(attribute1);
@@ -188,7 +264,7 @@ public class Diff extends Dicttool.Command {
                     }
                     if (!foundString) {
                         // We come here if we haven't found any matching string.
-                        System.out.println(type + " removed: " + word + " " + attribute0.mWord + " "
+                        out.println(type + " removed: " + word + " " + attribute0.mWord + " "
                                 + attribute0.getProbability());
                     }
                 } else {
@@ -200,7 +276,7 @@ public class Diff extends Dicttool.Command {
         // are not included in list0.
         for (final WeightedString attribute1 : list1) {
             hasDifferences = true;
-            System.out.println(type + " added: " + word + " " + attribute1.mWord + " "
+            out.println(type + " added: " + word + " " + attribute1.mWord + " "
                     + attribute1.getProbability());
         }
         return hasDifferences;
@@ -16,24 +16,44 @@
 
 package com.android.inputmethod.latin.dicttool;
 
+import com.android.inputmethod.latin.common.FileUtils;
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.Entry;
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.SortedWords;
+import com.android.inputmethod.latin.makedict.DictionaryProfiler;
+import com.android.inputmethod.latin.makedict.DictionaryProfiler.Profile;
 import com.android.inputmethod.latin.makedict.FormatSpec;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
 import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
 import com.android.inputmethod.latin.makedict.WeightedString;
 import com.android.inputmethod.latin.makedict.WordProperty;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 public class Info extends Dicttool.Command {
     public static final String COMMAND = "info";
+    private static final String PROFILE_OPTION = "--profile";
+    private static final String PROFILE_PREFIX = "P:";
 
     public Info() {
     }
 
     @Override
     public String getHelp() {
-        return COMMAND + " <filename>: prints various information about a dictionary file";
+        return COMMAND + " <filename>: prints various information about a dictionary file\n"
+                + COMMAND + " " + PROFILE_OPTION + " <filename>: prints the header attributes and"
+                + " the size and lookup cost figures of a dictionary file, one \"key = value\""
+                + " per line, without loading the dictionary in memory.\n"
+                + "  The trie figures are estimated for the PtNode arrays laid out in depth-first"
+                + " order, with 3-byte addresses and the attributes in the PtNodes. The code point"
+                + " table hit ratio is the ratio of the code points of the PtNodes that are in"
+                + " the table, or 0 if there is no table.";
     }
 
     private static void showInfo(final FusionDictionary dict, final boolean plumbing) {
@@ -100,11 +120,82 @@ public class Info extends Dicttool.Command {
         }
     }
 
+    private static int getListSize(final ArrayList<?> list) {
+        return null == list ? 0 : list.size();
+    }
+
+    private static void printProfileValue(final String key, final long value) {
+        System.out.println(PROFILE_PREFIX + key + " = " + value);
+    }
+
+    private static void printProfileValue(final String key, final double value) {
+        System.out.println(PROFILE_PREFIX + key + " = "
+                + String.format(Locale.ROOT, "%.4f", value));
+    }
+
+    private static void showProfile(final String filename) {
+        final HashMap<String, String> attributes;
+        final Profile profile;
+        try (final WordPropertyStream stream =
+                BinaryDictOffdeviceUtils.getWordPropertyStream(filename)) {
+            attributes = stream.getAttributes();
+            final DictionaryProfiler profiler = new DictionaryProfiler(attributes);
+            // The profiler needs the words sharing a prefix to come together.
+            try (final SortedWords words = SortedWordRuns.sortWords(stream)) {
+                Entry entry;
+                while (null != (entry = words.next())) {
+                    profiler.add(entry.mWord,
+                            getListSize(entry.mBigrams) + getListSize(entry.mNgrams),
+                            entry.mShortcuts);
+                }
+            }
+            profile = profiler.finish();
+        } catch (final IOException e) {
+            throw new RuntimeException("Can't read file " + filename, e);
+        }
+        final long fileSize = FileUtils.getSizeRecursively(new File(filename));
+        System.out.print(new DictionaryOptions(attributes).toString(0, true /* plumbing */));
+        printProfileValue("words", profile.mWordCount);
+        printProfileValue("file_bytes", fileSize);
+        printProfileValue("file_bytes_per_word",
+                0 == profile.mWordCount ? 0.0 : (double)fileSize / profile.mWordCount);
+        printProfileValue("estimated_trie_bytes", profile.mEstimatedTrieSize);
+        printProfileValue("estimated_trie_bytes_per_word",
+                profile.getAverageEstimatedTrieSizePerWord());
+        printProfileValue("ptnodes", profile.mPtNodeCount);
+        printProfileValue("ptnode_arrays", profile.mPtNodeArrayCount);
+        printProfileValue("fanout.mean", profile.getAverageFanOut());
+        for (final Map.Entry<Integer, Integer> bucket : profile.mFanOutHistogram.entrySet()) {
+            printProfileValue("fanout." + bucket.getKey(), bucket.getValue());
+        }
+        printProfileValue("ngrams", profile.mNgramCount);
+        printProfileValue("ngram_list_length.mean", profile.getAverageNgramListLength());
+        for (final Map.Entry<Integer, Integer> bucket
+                : profile.mNgramListLengthHistogram.entrySet()) {
+            printProfileValue("ngram_list_length." + bucket.getKey(), bucket.getValue());
+        }
+        printProfileValue("code_points", profile.mCodePointCount);
+        printProfileValue("code_point_table_size", profile.mCodePointTableSize);
+        printProfileValue("code_point_table_hit_ratio",
+                0 == profile.mCodePointTableSize ? 0.0 : profile.getOneByteCodePointRatio());
+        printProfileValue("one_byte_code_point_ratio", profile.getOneByteCodePointRatio());
+        printProfileValue("page_size", DictionaryProfiler.PAGE_SIZE);
+        printProfileValue("estimated_cold_lookup_page_touches",
+                profile.getAverageEstimatedPageTouchesPerLookup());
+    }
+
     @Override
     public void run() {
         if (mArgs.length < 1) {
             throw new RuntimeException("Not enough arguments for command " + COMMAND);
         }
+        if (PROFILE_OPTION.equals(mArgs[0])) {
+            if (mArgs.length != 2) {
+                throw new RuntimeException("Wrong number of arguments for command " + COMMAND);
+            }
+            showProfile(mArgs[1]);
+            return;
+        }
         final boolean plumbing;
         if ("-p".equals(mArgs[0])) {
             plumbing = true;
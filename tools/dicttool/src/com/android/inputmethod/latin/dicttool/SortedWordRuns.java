@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.makedict.NgramProperty;
+import com.android.inputmethod.latin.makedict.ProbabilityInfo;
+import com.android.inputmethod.latin.makedict.WeightedString;
+import com.android.inputmethod.latin.makedict.WordProperty;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the words of a dictionary in code point order without loading it in memory.
+ *
+ * The words are read once, cut into sorted runs of at most {@link #RUN_SIZE} words and spilled
+ * to temporary files. The runs are then merged back in code point order, so memory does not
+ * depend on the dictionary size.
+ */
+final class SortedWordRuns {
+    private static final String PREFIX = "dicttool-sort";
+    private static final String SUFFIX = ".tmp";
+    private static final int RUN_SIZE = 100000;
+    private static final String NGRAM_SEPARATOR = " ";
+    private static final String BEGINNING_OF_SENTENCE = "<s>";
+
+    private SortedWordRuns() {
+        // This utility class is not publicly instantiable.
+    }
+
+    static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(final String s0, final String s1) {
+            final int length0 = s0.length();
+            final int length1 = s1.length();
+            int i = 0;
+            while (i < length0 && i < length1) {
+                final int codePoint0 = s0.codePointAt(i);
+                final int codePoint1 = s1.codePointAt(i);
+                if (codePoint0 != codePoint1) {
+                    return codePoint0 < codePoint1 ? -1 : 1;
+                }
+                i += Character.charCount(codePoint0);
+            }
+            return (length0 - i) - (length1 - i);
+        }
+    };
+
+    /**
+     * The attributes of a word that the diff compares, in a form that can be spilled to disk.
+     */
+    static final class Entry {
+        public final String mWord;
+        public final int mProbability;
+        public final boolean mIsNotAWord;
+        public final boolean mIsPossiblyOffensive;
+        // These lists are null rather than empty when there are no such attributes.
+        public final ArrayList<WeightedString> mBigrams;
+        public final ArrayList<WeightedString> mNgrams;
+        public final ArrayList<WeightedString> mShortcuts;
+
+        public Entry(final String word, final int probability, final boolean isNotAWord,
+                final boolean isPossiblyOffensive, final ArrayList<WeightedString> bigrams,
+                final ArrayList<WeightedString> ngrams, final ArrayList<WeightedString> shortcuts) {
+            mWord = word;
+            mProbability = probability;
+            mIsNotAWord = isNotAWord;
+            mIsPossiblyOffensive = isPossiblyOffensive;
+            mBigrams = bigrams;
+            mNgrams = ngrams;
+            mShortcuts = shortcuts;
+        }
+
+        public static Entry fromWordProperty(final WordProperty wordProperty) {
+            final ArrayList<WeightedString> bigrams = new ArrayList<>();
+            final ArrayList<WeightedString> ngrams = new ArrayList<>();
+            if (null != wordProperty.mNgrams) {
+                for (final NgramProperty ngram : wordProperty.mNgrams) {
+                    final NgramContext ngramContext = ngram.mNgramContext;
+                    if (ngramContext.getPrevWordCount() == 1) {
+                        bigrams.add(ngram.mTargetWord);
+                        continue;
+                    }
+                    // Higher order n-grams are labelled with the whole phrase, in reading order.
+                    final StringBuilder phrase = new StringBuilder();
+                    for (int n = ngramContext.getPrevWordCount(); n >= 1; --n) {
+                        phrase.append(ngramContext.isNthPrevWordBeginningOfSentence(n)
+                                ? BEGINNING_OF_SENTENCE : ngramContext.getNthPrevWord(n));
+                        phrase.append(NGRAM_SEPARATOR);
+                    }
+                    phrase.append(ngram.mTargetWord.mWord);
+                    ngrams.add(new WeightedString(phrase.toString(),
+                            ngram.mTargetWord.mProbabilityInfo));
+                }
+            }
+            final ArrayList<WeightedString> shortcuts = null == wordProperty.mShortcutTargets
+                    ? new ArrayList<WeightedString>()
+                    : new ArrayList<>(wordProperty.mShortcutTargets);
+            return new Entry(wordProperty.mWord, wordProperty.getProbability(),
+                    wordProperty.mIsNotAWord, wordProperty.mIsPossiblyOffensive,
+                    bigrams.isEmpty() ? null : bigrams, ngrams.isEmpty() ? null : ngrams,
+                    shortcuts.isEmpty() ? null : shortcuts);
+        }
+
+        public void write(final DataOutputStream out) throws IOException {
+            out.writeUTF(mWord);
+            out.writeInt(mProbability);
+            out.writeBoolean(mIsNotAWord);
+            out.writeBoolean(mIsPossiblyOffensive);
+            writeWeightedStrings(out, mBigrams);
+            writeWeightedStrings(out, mNgrams);
+            writeWeightedStrings(out, mShortcuts);
+        }
+
+        public static Entry read(final DataInputStream in) throws IOException {
+            return new Entry(in.readUTF(), in.readInt(), in.readBoolean(), in.readBoolean(),
+                    readWeightedStrings(in), readWeightedStrings(in), readWeightedStrings(in));
+        }
+
+        private static void writeWeightedStrings(final DataOutputStream out,
+                final ArrayList<WeightedString> list) throws IOException {
+            if (null == list) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(list.size());
+            for (final WeightedString weightedString : list) {
+                final ProbabilityInfo probabilityInfo = weightedString.mProbabilityInfo;
+                out.writeUTF(weightedString.mWord);
+                out.writeInt(probabilityInfo.mProbability);
+                out.writeInt(probabilityInfo.mTimestamp);
+                out.writeInt(probabilityInfo.mLevel);
+                out.writeInt(probabilityInfo.mCount);
+            }
+        }
+
+        private static ArrayList<WeightedString> readWeightedStrings(final DataInputStream in)
+                throws IOException {
+            final int count = in.readInt();
+            if (0 == count) return null;
+            final ArrayList<WeightedString> list = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final String word = in.readUTF();
+                list.add(new WeightedString(word, new ProbabilityInfo(in.readInt(), in.readInt(),
+                        in.readInt(), in.readInt())));
+            }
+            return list;
+        }
+    }
+
+    static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry e0, final Entry e1) {
+            return CODE_POINT_ORDER.compare(e0.mWord, e1.mWord);
+        }
+    };
+
+    /**
+     * A file of records, each preceded by a marker so that the end of the file is explicit.
+     */
+    static final class RecordFile {
+        public final File mFile;
+        private final DataOutputStream mOut;
+
+        public RecordFile() throws IOException {
+            mFile = File.createTempFile(PREFIX, SUFFIX);
+            mFile.deleteOnExit();
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile)));
+        }
+
+        public DataOutputStream startRecord() throws IOException {
+            mOut.writeBoolean(true);
+            return mOut;
+        }
+
+        public void finish() throws IOException {
+            mOut.writeBoolean(false);
+            mOut.close();
+        }
+
+        public static DataInputStream open(final File file) throws IOException {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        public static boolean hasNextRecord(final DataInputStream in) throws IOException {
+            return in.readBoolean();
+        }
+    }
+
+    /**
+     * Reads a dictionary to the end and spills its words as sorted runs, one list per partition.
+     */
+    static ArrayList<ArrayList<File>> spillSortedRuns(final WordPropertyStream stream,
+            final int partitionCount) throws IOException {
+        final ArrayList<ArrayList<File>> runs = new ArrayList<>(partitionCount);
+        final ArrayList<ArrayList<Entry>> buffers = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; ++i) {
+            runs.add(new ArrayList<File>());
+            buffers.add(new ArrayList<Entry>());
+        }
+        int bufferedCount = 0;
+        WordProperty wordProperty;
+        while (null != (wordProperty = stream.next())) {
+            buffers.get(getPartition(wordProperty.mWord, partitionCount))
+                    .add(Entry.fromWordProperty(wordProperty));
+            if (++bufferedCount >= RUN_SIZE) {
+                writeRuns(buffers, runs);
+                bufferedCount = 0;
+            }
+        }
+        writeRuns(buffers, runs);
+        return runs;
+    }
+
+    private static void writeRuns(final ArrayList<ArrayList<Entry>> buffers,
+            final ArrayList<ArrayList<File>> runs) throws IOException {
+        for (int i = 0; i < buffers.size(); ++i) {
+            final ArrayList<Entry> buffer = buffers.get(i);
+            if (buffer.isEmpty()) continue;
+            // The sort is stable, which keeps duplicate words in the order they were read in.
+            Collections.sort(buffer, ENTRY_ORDER);
+            final RecordFile run = new RecordFile();
+            for (final Entry entry : buffer) {
+                entry.write(run.startRecord());
+            }
+            run.finish();
+            runs.get(i).add(run.mFile);
+            buffer.clear();
+        }
+    }
+
+    private static int getPartition(final String word, final int partitionCount) {
+        return (word.hashCode() & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    /**
+     * Merges sorted runs into a single stream of entries in code point order.
+     *
+     * When a word appears several times, only its last occurrence in the dictionary is kept, as
+     * when the dictionary is loaded into a FusionDictionary.
+     */
+    static final class MergedRuns implements Closeable {
+        private static final class Cursor {
+            public final int mRunIndex;
+            public final DataInputStream mIn;
+            public Entry mEntry;
+
+            public Cursor(final int runIndex, final DataInputStream in) {
+                mRunIndex = runIndex;
+                mIn = in;
+            }
+
+            public boolean advance() throws IOException {
+                mEntry = RecordFile.hasNextRecord(mIn) ? Entry.read(mIn) : null;
+                return null != mEntry;
+            }
+        }
+
+        private final ArrayList<Cursor> mCursors = new ArrayList<>();
+        // Later runs hold later words of the dictionary, so they sort after earlier runs.
+        private final PriorityQueue<Cursor> mQueue = new PriorityQueue<>(11,
+                new Comparator<Cursor>() {
+                    @Override
+                    public int compare(final Cursor c0, final Cursor c1) {
+                        final int order = ENTRY_ORDER.compare(c0.mEntry, c1.mEntry);
+                        if (0 != order) return order;
+                        return c0.mRunIndex - c1.mRunIndex;
+                    }
+                });
+
+        public MergedRuns(final ArrayList<File> runs) throws IOException {
+            for (int i = 0; i < runs.size(); ++i) {
+                final Cursor cursor = new Cursor(i, RecordFile.open(runs.get(i)));
+                mCursors.add(cursor);
+                if (cursor.advance()) {
+                    mQueue.add(cursor);
+                }
+            }
+        }
+
+        public Entry next() throws IOException {
+            Entry entry = null;
+            while (!mQueue.isEmpty()) {
+                final Cursor cursor = mQueue.peek();
+                if (null != entry && !entry.mWord.equals(cursor.mEntry.mWord)) {
+                    break;
+                }
+                mQueue.poll();
+                entry = cursor.mEntry;
+                if (cursor.advance()) {
+                    mQueue.add(cursor);
+                }
+            }
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (final Cursor cursor : mCursors) {
+                cursor.mIn.close();
+            }
+        }
+    }
+
+    static void deleteFiles(final ArrayList<ArrayList<File>> fileLists) {
+        for (final ArrayList<File> files : fileLists) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * The words of a dictionary in code point order, merged back from sorted runs on disk.
+     */
+    static final class SortedWords implements Closeable {
+        private final ArrayList<ArrayList<File>> mRuns;
+        private final MergedRuns mMergedRuns;
+
+        private SortedWords(final ArrayList<ArrayList<File>> runs) throws IOException {
+            mRuns = runs;
+            mMergedRuns = new MergedRuns(runs.get(0));
+        }
+
+        /**
+         * @return the next word in code point order, or null if all the words have been read.
+         */
+        public Entry next() throws IOException {
+            return mMergedRuns.next();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                mMergedRuns.close();
+            } finally {
+                deleteFiles(mRuns);
+            }
+        }
+    }
+
+    /**
+     * Reads a dictionary to the end and returns its words in code point order, so that words
+     * sharing a prefix come together.
+     *
+     * @param stream the dictionary.
+     * @return the words, which must be closed to delete the temporary files.
+     */
+    static SortedWords sortWords(final WordPropertyStream stream) throws IOException {
+        final ArrayList<ArrayList<File>> runs = spillSortedRuns(stream, 1 /* partitionCount */);
+        try {
+            return new SortedWords(runs);
+        } catch (final IOException e) {
+            deleteFiles(runs);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.Entry;
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.MergedRuns;
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.RecordFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Diffs the words of two dictionaries without loading either of them in memory.
+ *
+ * The words of each dictionary are sorted in code point order by {@link SortedWordRuns}, which
+ * spills them to temporary files, and the two dictionaries are joined word by word, so memory does
+ * not depend on the dictionary size.
+ *
+ * To use several threads, the words are dealt into partitions by hash. Each partition is merged
+ * and joined on its own thread, and the reports of the partitions are merged in code point order
+ * before being printed, so the output does not depend on the number of threads.
+ */
+final class StreamingDiff {
+    private StreamingDiff() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Receives the differences found for each word, in code point order of the words.
+     */
+    private interface Report {
+        public void add(final String word, final String differences) throws IOException;
+    }
+
+    /**
+     * Joins the sorted entries of one partition of both dictionaries.
+     *
+     * @return whether any differences were found.
+     */
+    private static boolean diffPartition(final ArrayList<File> runs0,
+            final ArrayList<File> runs1, final Report report) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, false /* autoFlush */, "UTF-8");
+        boolean hasDifferences = false;
+        try (final MergedRuns merged0 = new MergedRuns(runs0);
+                final MergedRuns merged1 = new MergedRuns(runs1)) {
+            Entry entry0 = merged0.next();
+            Entry entry1 = merged1.next();
+            while (null != entry0 || null != entry1) {
+                final int order;
+                if (null == entry0) {
+                    order = 1;
+                } else if (null == entry1) {
+                    order = -1;
+                } else {
+                    order = SortedWordRuns.ENTRY_ORDER.compare(entry0, entry1);
+                }
+                final String word;
+                if (order < 0) {
+                    // This word is not in dict1
+                    word = entry0.mWord;
+                    out.println("Deleted: " + word + " " + entry0.mProbability);
+                    entry0 = merged0.next();
+                } else if (order > 0) {
+                    // This word is not in dict0
+                    word = entry1.mWord;
+                    out.println("Added: " + word + " " + entry1.mProbability);
+                    entry1 = merged1.next();
+                } else {
+                    word = entry0.mWord;
+                    diffEntries(out, entry0, entry1);
+                    entry0 = merged0.next();
+                    entry1 = merged1.next();
+                }
+                out.flush();
+                if (buffer.size() > 0) {
+                    report.add(word, buffer.toString("UTF-8"));
+                    buffer.reset();
+                    hasDifferences = true;
+                }
+            }
+        }
+        return hasDifferences;
+    }
+
+    private static void diffEntries(final PrintStream out, final Entry entry0,
+            final Entry entry1) {
+        Diff.hasFlagsDifferencesAndPrintThemIfAny(out, entry0.mWord, entry0.mProbability,
+                entry1.mProbability, entry0.mIsNotAWord, entry1.mIsNotAWord,
+                entry0.mIsPossiblyOffensive, entry1.mIsPossiblyOffensive);
+        Diff.hasAttributesDifferencesAndPrintThemIfAny(out, entry0.mWord, "Bigram",
+                entry0.mBigrams, entry1.mBigrams);
+        Diff.hasAttributesDifferencesAndPrintThemIfAny(out, entry0.mWord, "Ngram",
+                entry0.mNgrams, entry1.mNgrams);
+        Diff.hasAttributesDifferencesAndPrintThemIfAny(out, entry0.mWord, "Shortcut",
+                entry0.mShortcuts, entry1.mShortcuts);
+    }
+
+    /**
+     * Prints the differences between the words of two dictionaries, in code point order.
+     *
+     * @param stream0 the first dictionary.
+     * @param stream1 the second dictionary.
+     * @param threadCount the number of threads to join the dictionaries with.
+     * @param out the stream to print to.
+     */
+    public static void diffWords(final WordPropertyStream stream0,
+            final WordPropertyStream stream1, final int threadCount, final PrintStream out)
+            throws IOException {
+        final ArrayList<ArrayList<File>> runs0 =
+                SortedWordRuns.spillSortedRuns(stream0, threadCount);
+        final ArrayList<ArrayList<File>> runs1;
+        try {
+            runs1 = SortedWordRuns.spillSortedRuns(stream1, threadCount);
+        } catch (final IOException e) {
+            SortedWordRuns.deleteFiles(runs0);
+            throw e;
+        }
+        final boolean hasDifferences;
+        try {
+            if (1 == threadCount) {
+                hasDifferences = diffPartition(runs0.get(0), runs1.get(0), new Report() {
+                    @Override
+                    public void add(final String word, final String differences) {
+                        out.print(differences);
+                    }
+                });
+            } else {
+                hasDifferences = diffPartitionsInParallel(runs0, runs1, threadCount, out);
+            }
+        } finally {
+            SortedWordRuns.deleteFiles(runs0);
+            SortedWordRuns.deleteFiles(runs1);
+        }
+        if (!hasDifferences) {
+            out.println("  No differences");
+        }
+    }
+
+    private static boolean diffPartitionsInParallel(final ArrayList<ArrayList<File>> runs0,
+            final ArrayList<ArrayList<File>> runs1, final int partitionCount,
+            final PrintStream out) throws IOException {
+        final ArrayList<File> reports = new ArrayList<>(partitionCount);
+        final ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+        try {
+            final ArrayList<Future<Boolean>> results = new ArrayList<>(partitionCount);
+            for (int i = 0; i < partitionCount; ++i) {
+                final RecordFile reportFile = new RecordFile();
+                reports.add(reportFile.mFile);
+                final ArrayList<File> partitionRuns0 = runs0.get(i);
+                final ArrayList<File> partitionRuns1 = runs1.get(i);
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        final boolean hasDifferences = diffPartition(partitionRuns0,
+                                partitionRuns1, new Report() {
+                                    @Override
+                                    public void add(final String word, final String differences)
+                                            throws IOException {
+                                        final DataOutputStream record = reportFile.startRecord();
+                                        record.writeUTF(word);
+                                        // Differences may be longer than writeUTF allows.
+                                        final byte[] bytes = differences.getBytes("UTF-8");
+                                        record.writeInt(bytes.length);
+                                        record.write(bytes);
+                                    }
+                                });
+                        reportFile.finish();
+                        return hasDifferences;
+                    }
+                }));
+            }
+            boolean hasDifferences = false;
+            for (final Future<Boolean> result : results) {
+                hasDifferences |= result.get();
+            }
+            printReports(reports, out);
+            return hasDifferences;
+        } catch (final InterruptedException e) {
+            throw new IOException("Interrupted while diffing", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (final File report : reports) {
+                report.delete();
+            }
+        }
+    }
+
+    // Partitions hold disjoint sets of words, so merging by word is enough to restore the order.
+    private static void printReports(final ArrayList<File> reports, final PrintStream out)
+            throws IOException {
+        final ArrayList<DataInputStream> inputs = new ArrayList<>(reports.size());
+        final ArrayList<String> words = new ArrayList<>(reports.size());
+        final PriorityQueue<Integer> queue = new PriorityQueue<>(reports.size(),
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(final Integer i0, final Integer i1) {
+                        return SortedWordRuns.CODE_POINT_ORDER.compare(words.get(i0),
+                                words.get(i1));
+                    }
+                });
+        try {
+            for (int i = 0; i < reports.size(); ++i) {
+                final DataInputStream in = RecordFile.open(reports.get(i));
+                inputs.add(in);
+                words.add(RecordFile.hasNextRecord(in) ? in.readUTF() : null);
+                if (null != words.get(i)) {
+                    queue.add(i);
+                }
+            }
+            while (!queue.isEmpty()) {
+                final int i = queue.poll();
+                final DataInputStream in = inputs.get(i);
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                out.print(new String(bytes, "UTF-8"));
+                words.set(i, RecordFile.hasNextRecord(in) ? in.readUTF() : null);
+                if (null != words.get(i)) {
+                    queue.add(i);
+                }
+            }
+        } finally {
+            for (final DataInputStream in : inputs) {
+                in.close();
+            }
+        }
+    }
+}
@@ -52,6 +52,7 @@ public class Test extends Dicttool.Command {
         FusionDictionaryTest.class,
         BinaryDictDecoderEncoderTests.class,
         BinaryDictEncoderFlattenTreeTests.class,
+        StreamingDiffTests.class,
     };
     private ArrayList<Method> mAllTestMethods = new ArrayList<>();
     private ArrayList<String> mUsedTestMethods = new ArrayList<>();
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.WordProperty;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A dictionary that is read one word at a time, in the order it is stored in, instead of being
+ * loaded into a FusionDictionary.
+ */
+public interface WordPropertyStream extends Closeable {
+    /**
+     * @return the header attributes of the dictionary.
+     */
+    @Nonnull
+    public HashMap<String, String> getAttributes();
+
+    /**
+     * @return the next word of the dictionary, or null if all the words have been read.
+     */
+    @Nullable
+    public WordProperty next() throws IOException;
+}
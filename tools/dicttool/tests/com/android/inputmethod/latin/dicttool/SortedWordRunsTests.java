@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.Entry;
+import com.android.inputmethod.latin.dicttool.SortedWordRuns.SortedWords;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Unit tests for SortedWordRuns
+ */
+public class SortedWordRunsTests extends TestCase {
+    private static final String WORD_BMP = "z\uFF41";
+    private static final String WORD_SUPPLEMENTARY = "z\uD83D\uDE00";
+    private static final String DICT = "dictionary=main:en_US,locale=en_US\n"
+            + " word=world,f=81\n"
+            + " word=hello,f=100\n"
+            + "  bigram=world,f=91\n"
+            + " word=new,f=10\n"
+            + " word=" + WORD_SUPPLEMENTARY + ",f=7\n"
+            + " word=" + WORD_BMP + ",f=6\n"
+            + " word=hello,f=30\n";
+
+    public void testSortWords() throws IOException {
+        final StringBuilder words = new StringBuilder();
+        try (final WordPropertyStream stream = new CombinedInputOutput.CombinedWordPropertyStream(
+                new BufferedReader(new StringReader(DICT)));
+                final SortedWords sortedWords = SortedWordRuns.sortWords(stream)) {
+            Entry entry;
+            while (null != (entry = sortedWords.next())) {
+                words.append(entry.mWord).append(' ').append(entry.mProbability).append('\n');
+            }
+        }
+        // The last occurrence of a word is kept, and the supplementary character sorts last
+        // although its surrogates sort first in UTF-16.
+        assertEquals("hello 30\nnew 10\nworld 81\n" + WORD_BMP + " 6\n"
+                + WORD_SUPPLEMENTARY + " 7\n", words.toString());
+    }
+}
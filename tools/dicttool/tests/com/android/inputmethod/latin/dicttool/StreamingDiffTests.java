@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+/**
+ * Unit tests for StreamingDiff
+ */
+public class StreamingDiffTests extends TestCase {
+    private static final String WORD_BMP = "z\uFF41";
+    private static final String WORD_SUPPLEMENTARY = "z\uD83D\uDE00";
+    private static final String DICT0 = "dictionary=main:en_US,locale=en_US\n"
+            + " word=hello,f=100\n"
+            + "  bigram=world,f=90\n"
+            + " word=world,f=80\n"
+            + "  shortcut=wrld,f=14\n"
+            + " word=gone,f=10\n"
+            + " word=" + WORD_SUPPLEMENTARY + ",f=5\n"
+            + " word=" + WORD_BMP + ",f=5\n";
+    private static final String DICT1 = "dictionary=main:en_US,locale=en_US\n"
+            + " word=world,f=81\n"
+            + " word=hello,f=100,not_a_word=true\n"
+            + "  bigram=world,f=91\n"
+            + "  bigram=there,f=20\n"
+            + " word=new,f=10\n"
+            + " word=" + WORD_SUPPLEMENTARY + ",f=7\n"
+            + " word=" + WORD_BMP + ",f=6\n";
+    // Words come out in code point order, so the supplementary character sorts last although
+    // its surrogates sort first in UTF-16.
+    private static final String EXPECTED_DIFF = "Deleted: gone 10\n"
+            + "Not a word: hello false -> true\n"
+            + "Bigram freq changed: hello world 90 -> 91\n"
+            + "Bigram added: hello there 20\n"
+            + "Added: new 10\n"
+            + "Probability changed: world 80 -> 81\n"
+            + "Shortcut removed: world wrld 14\n"
+            + "Probability changed: " + WORD_BMP + " 5 -> 6\n"
+            + "Probability changed: " + WORD_SUPPLEMENTARY + " 5 -> 7\n";
+
+    private static String diff(final String dict0, final String dict1, final int threadCount)
+            throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, true /* autoFlush */, "UTF-8");
+        try (final WordPropertyStream stream0 = new CombinedInputOutput.CombinedWordPropertyStream(
+                new BufferedReader(new StringReader(dict0)));
+                final WordPropertyStream stream1 =
+                        new CombinedInputOutput.CombinedWordPropertyStream(
+                                new BufferedReader(new StringReader(dict1)))) {
+            StreamingDiff.diffWords(stream0, stream1, threadCount, out);
+        }
+        return buffer.toString("UTF-8").replace(System.lineSeparator(), "\n");
+    }
+
+    public void testDiff() throws IOException {
+        assertEquals(EXPECTED_DIFF, diff(DICT0, DICT1, 1));
+    }
+
+    public void testDiffWithThreads() throws IOException {
+        assertEquals(EXPECTED_DIFF, diff(DICT0, DICT1, 3));
+    }
+
+    public void testNoDifferences() throws IOException {
+        assertEquals("  No differences\n", diff(DICT0, DICT0, 2));
+    }
+
+    public void testLastDuplicateWins() throws IOException {
+        final String dict0 = "dictionary=main:en_US,locale=en_US\n"
+                + " word=hello,f=100\n";
+        final String dict1 = "dictionary=main:en_US,locale=en_US\n"
+                + " word=hello,f=100\n"
+                + " word=hello,f=50\n";
+        assertEquals("Probability changed: hello 100 -> 50\n", diff(dict0, dict1, 1));
+    }
+}
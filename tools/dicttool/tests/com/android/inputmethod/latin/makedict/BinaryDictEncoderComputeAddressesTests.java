@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.BinaryDictEncoderUtils.AddressComputationStats;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for BinaryDictEncoderUtils.computeAddresses().
+ */
+public class BinaryDictEncoderComputeAddressesTests extends TestCase {
+    private static final int WORD_COUNT = 5000;
+    private static final int BIGRAM_COUNT = 10000;
+
+    private static FusionDictionary makeDictionary(final long seed) {
+        final Random random = new Random(seed);
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(new HashMap<String, String>()));
+        final ArrayList<String> words = new ArrayList<>();
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            final StringBuilder builder = new StringBuilder();
+            final int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; ++j) {
+                builder.append((char)('a' + random.nextInt(8)));
+            }
+            final String word = builder.toString();
+            dict.add(word, new ProbabilityInfo(random.nextInt(256)), null,
+                    false /* isNotAWord */, false /* isPossiblyOffensive */);
+            words.add(word);
+        }
+        for (int i = 0; i < BIGRAM_COUNT; ++i) {
+            dict.setBigram(words.get(random.nextInt(words.size())),
+                    words.get(random.nextInt(words.size())),
+                    new ProbabilityInfo(random.nextInt(256)));
+        }
+        return dict;
+    }
+
+    // Computes the size of a PtNode from the final addresses, the way it will be written.
+    private static int getActualPtNodeSize(final FusionDictionary dict, final PtNode ptNode) {
+        int size = FormatSpec.PTNODE_FLAGS_SIZE
+                + BinaryDictEncoderUtils.getPtNodeCharactersSize(ptNode.mChars, null);
+        if (ptNode.isTerminal()) {
+            size += FormatSpec.PTNODE_FREQUENCY_SIZE;
+        }
+        size += BinaryDictEncoderUtils.getByteSize(
+                BinaryDictEncoderUtils.getChildrenPosition(ptNode, null));
+        size += BinaryDictEncoderUtils.getShortcutListSize(ptNode.mShortcutTargets, null);
+        if (null != ptNode.mBigrams) {
+            for (final WeightedString bigram : ptNode.mBigrams) {
+                final PtNode target =
+                        FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord);
+                final int offset = target.mCachedAddressAfterUpdate
+                        - (ptNode.mCachedAddressAfterUpdate + size
+                                + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE);
+                size += BinaryDictEncoderUtils.getByteSize(offset)
+                        + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE;
+            }
+        }
+        return size;
+    }
+
+    public void testAddressesAreConsistent() {
+        final FusionDictionary dict = makeDictionary(WORD_COUNT);
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        final AddressComputationStats stats = new AddressComputationStats();
+        BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, null, stats);
+        BinaryDictEncoderUtils.checkFlatPtNodeArrayList(flatNodes);
+
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            int address = ptNodeArray.mCachedAddressAfterUpdate
+                    + BinaryDictIOUtils.getPtNodeCountSize(ptNodeArray.mData.size());
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                assertEquals(address, ptNode.mCachedAddressAfterUpdate);
+                assertEquals(address, ptNode.mCachedAddressBeforeUpdate);
+                assertEquals(getActualPtNodeSize(dict, ptNode), ptNode.mCachedSize);
+                address += ptNode.mCachedSize;
+            }
+            assertEquals(ptNodeArray.mCachedAddressAfterUpdate + ptNodeArray.mCachedSize,
+                    address);
+        }
+    }
+
+    public void testOnlyDependentNodeArraysAreSizedAgain() {
+        final FusionDictionary dict = makeDictionary(WORD_COUNT + 1);
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        final AddressComputationStats stats = new AddressComputationStats();
+        BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, null, stats);
+
+        final int passCount = stats.getPassCount();
+        assertTrue(passCount > 1);
+        assertEquals(passCount, stats.mChangedNodeArrayCounts.size());
+        assertEquals(passCount, stats.mPassTimesMs.size());
+        // Every node array is sized in the first pass, and nothing changes in the last one.
+        assertEquals(flatNodes.size(), (int)stats.mSizedNodeArrayCounts.get(0));
+        assertEquals(0, (int)stats.mChangedNodeArrayCounts.get(passCount - 1));
+        for (int i = 0; i < passCount; ++i) {
+            assertTrue(stats.mChangedNodeArrayCounts.get(i) <= stats.mSizedNodeArrayCounts.get(i));
+        }
+    }
+
+    public void testDictionaryWithoutBigrams() {
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(new HashMap<String, String>()));
+        dict.add("foo", new ProbabilityInfo(1), null, false /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        dict.add("fool", new ProbabilityInfo(1), null, false /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        dict.add("bar", new ProbabilityInfo(1), null, false /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        final AddressComputationStats stats = new AddressComputationStats();
+        BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, null, stats);
+        BinaryDictEncoderUtils.checkFlatPtNodeArrayList(flatNodes);
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                assertEquals(getActualPtNodeSize(dict, ptNode), ptNode.mCachedSize);
+            }
+        }
+    }
+}
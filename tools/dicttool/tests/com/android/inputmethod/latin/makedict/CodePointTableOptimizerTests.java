@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.CharEncoding;
+import com.android.inputmethod.latin.makedict.CodePointTableOptimizer.Candidate;
+import com.android.inputmethod.latin.makedict.CodePointTableOptimizer.Report;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Random;
+
+/**
+ * Unit tests for CodePointTableOptimizer.
+ */
+public class CodePointTableOptimizerTests extends TestCase {
+    private static FusionDictionary makeDictionary(final String alphabet, final int wordCount) {
+        final HashMap<String, String> attributes = new HashMap<>();
+        attributes.put(DictionaryHeader.DICTIONARY_LOCALE_KEY, "test");
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(attributes));
+        final Random random = new Random(wordCount);
+        for (int i = 0; i < wordCount; ++i) {
+            final StringBuilder builder = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; ++j) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            dict.add(builder.toString(), new ProbabilityInfo(100), null,
+                    false /* isNotAWord */, false /* isPossiblyOffensive */);
+        }
+        return dict;
+    }
+
+    private static void countCodePoints(final PtNodeArray nodeArray,
+            final HashMap<Integer, Integer> counts) {
+        for (final PtNode ptNode : nodeArray.mData) {
+            for (final int codePoint : ptNode.mChars) {
+                final Integer count = counts.get(codePoint);
+                counts.put(codePoint, null == count ? 1 : count + 1);
+            }
+            if (null != ptNode.mChildren) {
+                countCodePoints(ptNode.mChildren, counts);
+            }
+        }
+    }
+
+    public void testCodePointOccurrencesMatchTheTrie() {
+        final FusionDictionary dict = makeDictionary("abcde\u00E9", 3000);
+        final HashMap<Integer, Integer> counts = new HashMap<>();
+        countCodePoints(dict.mRootNodeArray, counts);
+        assertEquals(counts, dict.mCodePointOccurrences.toMap());
+        assertEquals((int)counts.get((int)'a'), dict.mCodePointOccurrences.getCount('a'));
+        assertEquals(0, dict.mCodePointOccurrences.getCount('z'));
+
+        int previousCount = Integer.MAX_VALUE;
+        for (final Entry<Integer, Integer> occurrence
+                : CodePointTableOptimizer.getCodePointOccurrences(dict)) {
+            assertTrue(occurrence.getValue() <= previousCount);
+            previousCount = occurrence.getValue();
+        }
+    }
+
+    public void testCharSizeWithTable() {
+        final HashMap<Integer, Integer> codePointToOneByteCodeMap = new HashMap<>();
+        codePointToOneByteCodeMap.put(0x0430, FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE);
+        assertEquals(1, CharEncoding.getCharSize(0x0430, codePointToOneByteCodeMap));
+        // With a table, one-byte codes are read through the table.
+        assertEquals(3, CharEncoding.getCharSize('a', codePointToOneByteCodeMap));
+        assertEquals(1, CharEncoding.getCharSize('a', null /* codePointToOneByteCodeMap */));
+        assertEquals(3, CharEncoding.getCharSize(0x0430, null /* codePointToOneByteCodeMap */));
+    }
+
+    public void testTableIsUsedForCyrillic() {
+        final Report report = CodePointTableOptimizer.optimize(
+                makeDictionary("\u0430\u0431\u0432\u0433\u0434\u0435", 3000));
+        assertEquals("test", report.mLocale);
+        assertEquals(6, report.mDistinctCodePointCount);
+        final Candidate withoutTable = report.getCandidateWithoutTable();
+        assertEquals(0, withoutTable.mTableSize);
+        assertEquals(3 * report.mCodePointCount, withoutTable.mCodePointBytes);
+        // 0 and 6 code points.
+        assertEquals(2, report.mCandidates.size());
+        final Candidate best = report.mBestCandidate;
+        assertEquals(6, best.mTableSize);
+        assertEquals(report.mCodePointCount, best.mCodePointBytes);
+        assertEquals(report.mCodePointCount, best.mTableLookupCount);
+        assertTrue(best.getTotalSize() < withoutTable.getTotalSize());
+        assertEquals(6, best.mCodePointTable.mCodePointToOneByteCodeMap.size());
+    }
+
+    public void testNoTableForLatin1() {
+        final Report report = CodePointTableOptimizer.optimize(
+                makeDictionary("abcdef\u00E9", 3000));
+        // A table can't make these code points smaller, and takes room in the header.
+        assertSame(report.getCandidateWithoutTable(), report.mBestCandidate);
+        assertEquals(report.mCodePointCount, report.mBestCandidate.mCodePointBytes);
+        assertEquals(0, report.mBestCandidate.mTableLookupCount);
+    }
+}
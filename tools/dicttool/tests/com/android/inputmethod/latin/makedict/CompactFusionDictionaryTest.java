@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Unit tests for CompactFusionDictionary.
+ */
+public class CompactFusionDictionaryTest extends TestCase {
+    private static final int WORD_COUNT = 3000;
+    private static final int BIGRAM_COUNT = 2000;
+
+    private static String generateWord(final Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = 1 + random.nextInt(10);
+        for (int i = 0; i < length; ++i) {
+            // A small alphabet, so that words share many prefixes and PtNodes get split.
+            if (random.nextInt(20) == 0) {
+                builder.appendCodePoint(0x1F600 + random.nextInt(4));
+            } else {
+                builder.append((char)('a' + random.nextInt(5)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void assertSameWordProperty(final WordProperty expected,
+            final WordProperty actual) {
+        assertEquals(expected.mWord, actual.mWord);
+        assertEquals(expected.mWord, expected.mProbabilityInfo, actual.mProbabilityInfo);
+        assertEquals(expected.mWord, expected.mIsNotAWord, actual.mIsNotAWord);
+        assertEquals(expected.mWord, expected.mIsPossiblyOffensive, actual.mIsPossiblyOffensive);
+        assertEquals(expected.mWord, expected.mShortcutTargets, actual.mShortcutTargets);
+        assertEquals(expected.mWord, expected.getBigrams(), actual.getBigrams());
+    }
+
+    public void testSameContentsAsFusionDictionary() {
+        final long seed = System.currentTimeMillis();
+        System.out.println("Seed is " + seed);
+        final Random random = new Random(seed);
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(new HashMap<String, String>()));
+        final CompactFusionDictionary compactDict = new CompactFusionDictionary(
+                new DictionaryOptions(new HashMap<String, String>()));
+        final ArrayList<String> words = new ArrayList<>();
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            final String word = generateWord(random);
+            final ProbabilityInfo probabilityInfo = random.nextInt(10) == 0
+                    ? new ProbabilityInfo(random.nextInt(256), 1000 + random.nextInt(3),
+                            random.nextInt(3), random.nextInt(3))
+                    : new ProbabilityInfo(random.nextInt(256));
+            ArrayList<WeightedString> shortcutTargets = null;
+            if (random.nextInt(10) == 0) {
+                shortcutTargets = new ArrayList<>();
+                shortcutTargets.add(new WeightedString(generateWord(random),
+                        random.nextInt(15)));
+            }
+            final boolean isNotAWord = random.nextBoolean();
+            final boolean isPossiblyOffensive = random.nextInt(10) == 0;
+            // Each dictionary gets its own copy of the shortcut list, since FusionDictionary
+            // keeps the list it is given.
+            dict.add(word, probabilityInfo,
+                    null == shortcutTargets ? null : new ArrayList<>(shortcutTargets),
+                    isNotAWord, isPossiblyOffensive);
+            compactDict.add(word, probabilityInfo, shortcutTargets, isNotAWord,
+                    isPossiblyOffensive);
+            words.add(word);
+        }
+        for (int i = 0; i < BIGRAM_COUNT; ++i) {
+            final String word0 = words.get(random.nextInt(words.size()));
+            // Some targets are not in the dictionary yet.
+            final String word1 = random.nextInt(10) == 0 ? generateWord(random)
+                    : words.get(random.nextInt(words.size()));
+            final ProbabilityInfo probabilityInfo = new ProbabilityInfo(random.nextInt(256));
+            dict.setBigram(word0, word1, probabilityInfo);
+            compactDict.setBigram(word0, word1, probabilityInfo);
+        }
+
+        assertEquals(FusionDictionary.countPtNodes(dict.mRootNodeArray),
+                compactDict.countPtNodes());
+        final Iterator<WordProperty> compactIterator = compactDict.iterator();
+        for (final WordProperty wordProperty : dict) {
+            assertTrue(compactIterator.hasNext());
+            assertSameWordProperty(wordProperty, compactIterator.next());
+        }
+        assertFalse(compactIterator.hasNext());
+
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            final String word = generateWord(random);
+            final PtNode ptNode = FusionDictionary.findWordInTree(dict.mRootNodeArray, word);
+            final int node = compactDict.findWordInTree(word);
+            if (null == ptNode) {
+                assertEquals(word, CompactFusionDictionary.NOT_A_NODE, node);
+            } else {
+                assertSameWordProperty(new WordProperty(word, ptNode.mProbabilityInfo,
+                        ptNode.getShortcutTargets(), ptNode.getBigrams(),
+                        ptNode.getIsNotAWord(), ptNode.getIsPossiblyOffensive()),
+                        compactDict.getWordProperty(node));
+            }
+        }
+    }
+
+    public void testEmptyDictionary() {
+        final CompactFusionDictionary dict = new CompactFusionDictionary(
+                new DictionaryOptions(new HashMap<String, String>()));
+        assertFalse(dict.iterator().hasNext());
+        assertEquals(0, dict.countPtNodes());
+        assertFalse(dict.hasWord("a"));
+    }
+
+    public void testPrefixes() {
+        final CompactFusionDictionary dict = new CompactFusionDictionary(
+                new DictionaryOptions(new HashMap<String, String>()));
+        dict.add("abcd", new ProbabilityInfo(10), null, false /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        dict.add("ab", new ProbabilityInfo(20), null, false /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        dict.add("abce", new ProbabilityInfo(30), null, false /* isNotAWord */,
+                false /* isPossiblyOffensive */);
+        assertTrue(dict.hasWord("ab"));
+        assertTrue(dict.hasWord("abcd"));
+        assertTrue(dict.hasWord("abce"));
+        assertFalse(dict.hasWord("a"));
+        assertFalse(dict.hasWord("abc"));
+        assertFalse(dict.hasWord("abcde"));
+        // "ab", then "c" and its children "d" and "e".
+        assertEquals(4, dict.countPtNodes());
+        final Iterator<WordProperty> iterator = dict.iterator();
+        assertEquals("ab", iterator.next().mWord);
+        assertEquals("abcd", iterator.next().mWord);
+        assertEquals("abce", iterator.next().mWord);
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.DictionaryProfiler.Profile;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Unit tests for DictionaryProfiler.
+ */
+public class DictionaryProfilerTests extends TestCase {
+    private static final int WORD_COUNT = 3000;
+
+    private static String generateWord(final Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = 1 + random.nextInt(10);
+        for (int i = 0; i < length; ++i) {
+            if (random.nextInt(20) == 0) {
+                builder.appendCodePoint(0x0430 + random.nextInt(3));
+            } else {
+                builder.append((char)('a' + random.nextInt(5)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void measure(final PtNodeArray ptNodeArray,
+            final TreeMap<Integer, Integer> fanOutHistogram, final long[] size) {
+        final Integer count = fanOutHistogram.get(ptNodeArray.mData.size());
+        fanOutHistogram.put(ptNodeArray.mData.size(), null == count ? 1 : count + 1);
+        size[0] += BinaryDictIOUtils.getPtNodeCountSize(ptNodeArray.mData.size());
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            size[0] += FormatSpec.PTNODE_FLAGS_SIZE
+                    + BinaryDictEncoderUtils.getPtNodeCharactersSize(ptNode.mChars, null)
+                    + BinaryDictEncoderUtils.getShortcutListSize(ptNode.mShortcutTargets, null);
+            if (ptNode.isTerminal()) {
+                size[0] += FormatSpec.PTNODE_FREQUENCY_SIZE;
+            }
+            if (null != ptNode.mBigrams) {
+                size[0] += ptNode.mBigrams.size() * (FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE
+                        + FormatSpec.PTNODE_ATTRIBUTE_MAX_ADDRESS_SIZE);
+            }
+            if (null != ptNode.mChildren) {
+                size[0] += FormatSpec.PTNODE_MAX_ADDRESS_SIZE;
+                measure(ptNode.mChildren, fanOutHistogram, size);
+            }
+        }
+    }
+
+    public void testSameTrieAsFusionDictionary() {
+        final Random random = new Random(WORD_COUNT);
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(new HashMap<String, String>()));
+        final ArrayList<String> words = new ArrayList<>();
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            ArrayList<WeightedString> shortcutTargets = null;
+            if (random.nextInt(10) == 0) {
+                shortcutTargets = new ArrayList<>();
+                shortcutTargets.add(new WeightedString(generateWord(random), 10));
+            }
+            final String word = generateWord(random);
+            dict.add(word, new ProbabilityInfo(100), shortcutTargets, false /* isNotAWord */,
+                    false /* isPossiblyOffensive */);
+            words.add(word);
+        }
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            dict.setBigram(words.get(random.nextInt(words.size())),
+                    words.get(random.nextInt(words.size())), new ProbabilityInfo(50));
+        }
+
+        // Feed the words in code point order. Java strings sort by UTF-16 unit, which is the same
+        // order for these code points.
+        final DictionaryProfiler profiler = new DictionaryProfiler(new HashMap<String, String>());
+        final TreeSet<String> sortedWords = new TreeSet<>(words);
+        for (final String word : sortedWords) {
+            final PtNode ptNode = FusionDictionary.findWordInTree(dict.mRootNodeArray, word);
+            profiler.add(word, null == ptNode.mBigrams ? 0 : ptNode.mBigrams.size(),
+                    ptNode.mShortcutTargets);
+        }
+        final Profile profile = profiler.finish();
+
+        final TreeMap<Integer, Integer> fanOutHistogram = new TreeMap<>();
+        final long[] size = new long[1];
+        measure(dict.mRootNodeArray, fanOutHistogram, size);
+        assertEquals(sortedWords.size(), profile.mWordCount);
+        assertEquals(FusionDictionary.countPtNodes(dict.mRootNodeArray), profile.mPtNodeCount);
+        assertEquals(fanOutHistogram, profile.mFanOutHistogram);
+        assertEquals(size[0], profile.mEstimatedTrieSize);
+
+        long codePointCount = 0;
+        long oneByteCodePointCount = 0;
+        final HashMap<Integer, Integer> codePointOccurrences = dict.mCodePointOccurrences.toMap();
+        for (final Integer codePoint : codePointOccurrences.keySet()) {
+            final int count = codePointOccurrences.get(codePoint);
+            codePointCount += count;
+            if (codePoint < 0x100) {
+                oneByteCodePointCount += count;
+            }
+        }
+        assertEquals(codePointCount, profile.mCodePointCount);
+        assertEquals(oneByteCodePointCount, profile.mOneByteCodePointCount);
+        assertEquals(0, profile.mCodePointTableSize);
+
+        long ngramCount = 0;
+        for (final Integer length : profile.mNgramListLengthHistogram.keySet()) {
+            ngramCount += (long)length * profile.mNgramListLengthHistogram.get(length);
+        }
+        assertEquals(profile.mNgramCount, ngramCount);
+        // The whole trie takes a few pages, and the root is always read.
+        assertTrue(profile.getAverageEstimatedPageTouchesPerLookup() > 1.0);
+        assertTrue(profile.getAverageEstimatedPageTouchesPerLookup()
+                < 1.0 + (double)size[0] / DictionaryProfiler.PAGE_SIZE);
+    }
+
+    public void testCodePointTable() {
+        final HashMap<String, String> attributes = new HashMap<>();
+        attributes.put(DictionaryHeader.CODE_POINT_TABLE_KEY, "\u0430\u0431");
+        final DictionaryProfiler profiler = new DictionaryProfiler(attributes);
+        profiler.add("a\u0430", 0, null);
+        profiler.add("\u0430\u0431\u0432", 2, null);
+        final Profile profile = profiler.finish();
+        assertEquals(2, profile.mCodePointTableSize);
+        assertEquals(5, profile.mCodePointCount);
+        // With a table, only the code points of the table fit on one byte.
+        assertEquals(3, profile.mOneByteCodePointCount);
+        assertEquals(1, (int)profile.mNgramListLengthHistogram.get(0));
+        assertEquals(1, (int)profile.mNgramListLengthHistogram.get(2));
+    }
+
+    public void testSplitAndPrefixes() {
+        final DictionaryProfiler profiler = new DictionaryProfiler(new HashMap<String, String>());
+        profiler.add("ab", 0, null);
+        profiler.add("abcd", 0, null);
+        profiler.add("abce", 0, null);
+        profiler.add("b", 0, null);
+        final Profile profile = profiler.finish();
+        // The root holds "ab" and "b", "ab" holds "c", and "c" holds "d" and "e".
+        assertEquals(5, profile.mPtNodeCount);
+        assertEquals(3, profile.mPtNodeArrayCount);
+        assertEquals(2, (int)profile.mFanOutHistogram.get(2));
+        assertEquals(1, (int)profile.mFanOutHistogram.get(1));
+        assertEquals(6, profile.mCodePointCount);
+    }
+
+    public void testWordsMustBeInOrder() {
+        final DictionaryProfiler profiler = new DictionaryProfiler(new HashMap<String, String>());
+        profiler.add("b", 0, null);
+        try {
+            profiler.add("a", 0, null);
+            fail("Words out of order were accepted");
+        } catch (final IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}